@@ -0,0 +1,249 @@
+package com.palominolabs.http.server;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.io.Files;
+import com.google.inject.AbstractModule;
+import com.google.inject.Guice;
+import com.google.inject.Injector;
+import com.google.inject.servlet.ServletModule;
+import java.io.File;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import javax.annotation.Nonnull;
+import javax.annotation.concurrent.Immutable;
+import javax.servlet.http.HttpServlet;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import org.apache.http.HttpResponse;
+import org.apache.http.client.methods.HttpGet;
+import org.apache.http.impl.client.CloseableHttpClient;
+import org.apache.http.impl.client.HttpClients;
+import org.apache.http.util.EntityUtils;
+import org.eclipse.jetty.util.resource.Resource;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import static com.google.common.base.Preconditions.checkState;
+
+/**
+ * Measures the bytes the wrapper's handler chain allocates per request, for each of a few configurations and request
+ * paths, with a {@link HandlerAllocationProfiler}. Only the request thread's allocations between the outermost handler
+ * and the end of the request log are counted, so the numbers leave out the connector's parsing and writing.
+ *
+ * Requests are sent one at a time over one keep-alive connection, so that each request's log entry is written before
+ * the next request starts.
+ *
+ * This is in the server's package so that it can set the profiler, which isn't part of the server's API.
+ */
+public final class AllocationBenchmark {
+
+    private static final Logger logger = LoggerFactory.getLogger(AllocationBenchmark.class);
+
+    public static final String CONFIG_NO_ACCESS_LOG = "no-access-log";
+    public static final String CONFIG_LOGBACK_ACCESS = "logback-access";
+    public static final String CONFIG_BINARY_ACCESS_LOG = "binary-access-log";
+    /**
+     * Binary access log, request timing, deadlines, the watchdog and heavy hitters
+     */
+    public static final String CONFIG_ALL_FEATURES = "all-features";
+
+    public static final List<String> CONFIGS = ImmutableList.of(CONFIG_NO_ACCESS_LOG, CONFIG_LOGBACK_ACCESS,
+        CONFIG_BINARY_ACCESS_LOG, CONFIG_ALL_FEATURES);
+
+    /**
+     * Path names, as used in reports and budgets, and the paths they request
+     */
+    public static final List<String> PATHS = ImmutableList.of("servlet", "indexed", "static", "missing");
+    private static final String[] URIS = {"/servlet", "/indexed", "/static/file.bin", "/missing"};
+    private static final int[] STATUSES = {200, 200, 200, 404};
+
+    private static final String HOST = "localhost";
+
+    /**
+     * How long to wait for the last request's log entry to be written before reading or resetting the counters
+     */
+    private static final long SETTLE_MILLIS = 100;
+
+    private final int port;
+    private final int requests;
+
+    /**
+     * @param port     port to run the servers on
+     * @param requests requests to measure for each configuration and path, after as many again to warm up
+     */
+    public AllocationBenchmark(int port, int requests) {
+        this.port = port;
+        this.requests = requests;
+    }
+
+    /**
+     * @param config one of {@link #CONFIGS}
+     * @return allocations for each of {@link #PATHS}, in order
+     */
+    @Nonnull
+    public List<Result> measure(@Nonnull String config) throws Exception {
+        final HttpServlet servlet = new OkServlet();
+        Injector injector = Guice.createInjector(new AbstractModule() {
+            @Override
+            protected void configure() {
+                binder().requireExplicitBindings();
+                install(new HttpServerWrapperModule());
+                install(new ServletModule() {
+                    @Override
+                    protected void configureServlets() {
+                        serve("/servlet").with(servlet);
+                    }
+                });
+            }
+        });
+
+        File workDir = Files.createTempDir();
+        HandlerAllocationProfiler profiler = new HandlerAllocationProfiler();
+        HttpServerWrapper server = injector.getInstance(HttpServerWrapperFactory.class)
+            .getHttpServerWrapper(newConfig(config, servlet, workDir));
+        server.setAllocationProfiler(profiler);
+        server.start();
+
+        ImmutableList.Builder<Result> results = ImmutableList.builder();
+        try (CloseableHttpClient client = HttpClients.createDefault()) {
+            for (int i = 0; i < PATHS.size(); i++) {
+                String uri = "http://" + HOST + ":" + port + URIS[i];
+                for (int j = 0; j < requests; j++) {
+                    send(client, uri, STATUSES[i]);
+                }
+                Thread.sleep(SETTLE_MILLIS);
+                profiler.reset();
+                for (int j = 0; j < requests; j++) {
+                    send(client, uri, STATUSES[i]);
+                }
+                Thread.sleep(SETTLE_MILLIS);
+
+                Result result = new Result(profiler.getRequests(), profiler.getTotalBytes(), profiler.getStages());
+                logger.info(config + " " + PATHS.get(i) + ": " + result.getBytesPerRequest() + " bytes/request");
+                results.add(result);
+            }
+        } finally {
+            server.stop();
+            delete(workDir);
+        }
+        return results.build();
+    }
+
+    private HttpServerWrapperConfig newConfig(String name, HttpServlet servlet, File workDir)
+        throws IOException {
+        File staticDir = new File(workDir, "static");
+        checkState(staticDir.mkdir(), "Could not create %s", staticDir);
+        byte[] file = new byte[1024];
+        Arrays.fill(file, (byte) 'y');
+        Files.write(file, new File(staticDir, "file.bin"));
+
+        HttpServerWrapperConfig config = new HttpServerWrapperConfig()
+            .withHttpServerConnectorConfig(HttpServerConnectorConfig.forHttp(HOST, port))
+            .withServletDispatchConfig(new ServletDispatchConfig().withServlet("/indexed", servlet))
+            .withResourceHandlerConfig(new HttpResourceHandlerConfig()
+                .withBaseResource(Resource.newResource(staticDir))
+                .withContextPath("/static"));
+        BinaryAccessLogConfig binaryAccessLogConfig =
+            new BinaryAccessLogConfig(new File(workDir, "access")).withMaxSegments(2);
+        switch (name) {
+            case CONFIG_NO_ACCESS_LOG:
+                config.setAccessLogConfigFileInClasspath(null);
+                break;
+            case CONFIG_LOGBACK_ACCESS:
+                config.setAccessLogConfigFileInClasspath("/load-test-logback-access.xml");
+                break;
+            case CONFIG_BINARY_ACCESS_LOG:
+                config.setBinaryAccessLogConfig(binaryAccessLogConfig);
+                break;
+            case CONFIG_ALL_FEATURES:
+                config.setBinaryAccessLogConfig(binaryAccessLogConfig);
+                config.setRequestTimingConfig(new RequestTimingConfig());
+                config.setRequestDeadlineConfig(new RequestDeadlineConfig().withMaxTimeoutMillis(60000));
+                config.setRequestWatchdogConfig(new RequestWatchdogConfig());
+                config.setHeavyHittersConfig(new HeavyHittersConfig());
+                break;
+            default:
+                throw new IllegalArgumentException("Unknown configuration " + name + "; expected one of " + CONFIGS);
+        }
+        return config;
+    }
+
+    private static void send(CloseableHttpClient client, String uri, int status) throws IOException {
+        HttpResponse response = client.execute(new HttpGet(uri));
+        EntityUtils.consume(response.getEntity());
+        checkState(response.getStatusLine().getStatusCode() == status, "Unexpected response %s from %s",
+            response.getStatusLine(), uri);
+    }
+
+    private static void delete(File file) {
+        File[] children = file.listFiles();
+        if (children != null) {
+            for (File child : children) {
+                delete(child);
+            }
+        }
+        file.delete();
+    }
+
+    /**
+     * Allocations for one configuration and path
+     */
+    @Immutable
+    public static final class Result {
+        private final long bytesPerRequest;
+        private final Map<String, Long> stageBytesPerRequest;
+
+        Result(long requests, long totalBytes, List<HandlerAllocationProfiler.StageAllocation> stages) {
+            bytesPerRequest = requests == 0 ? 0 : totalBytes / requests;
+            Map<String, Long> stageBytes = new LinkedHashMap<>();
+            for (HandlerAllocationProfiler.StageAllocation stage : stages) {
+                Long bytes = stageBytes.get(stage.getName());
+                stageBytes.put(stage.getName(), (bytes == null ? 0 : bytes) + stage.getBytes());
+            }
+            for (Map.Entry<String, Long> entry : stageBytes.entrySet()) {
+                entry.setValue(requests == 0 ? 0 : entry.getValue() / requests);
+            }
+            stageBytesPerRequest = Collections.unmodifiableMap(stageBytes);
+        }
+
+        public long getBytesPerRequest() {
+            return bytesPerRequest;
+        }
+
+        /**
+         * @return each handler, filter and request log's own bytes per request by class name, in the order the server
+         * instrumented them
+         */
+        @Nonnull
+        public Map<String, Long> getStageBytesPerRequest() {
+            return stageBytesPerRequest;
+        }
+
+        /**
+         * @return one line per stage, for failure messages
+         */
+        @Nonnull
+        public String describeStages() {
+            StringBuilder description = new StringBuilder();
+            for (Map.Entry<String, Long> stage : stageBytesPerRequest.entrySet()) {
+                description.append('\n').append(stage.getKey()).append(": ").append(stage.getValue())
+                    .append(" bytes/request");
+            }
+            return description.toString();
+        }
+    }
+
+    private static final class OkServlet extends HttpServlet {
+        @Override
+        protected void doGet(HttpServletRequest req, HttpServletResponse resp) throws IOException {
+            resp.setStatus(HttpServletResponse.SC_OK);
+            resp.setContentLength(2);
+            resp.getOutputStream().write('o');
+            resp.getOutputStream().write('k');
+        }
+    }
+}
@@ -0,0 +1,152 @@
+package com.palominolabs.http.server.loadtest;
+
+import com.google.common.io.Files;
+import com.google.inject.AbstractModule;
+import com.google.inject.Guice;
+import com.google.inject.Injector;
+import com.google.inject.servlet.ServletModule;
+import com.palominolabs.http.server.BinaryAccessLogConfig;
+import com.palominolabs.http.server.HttpServerConnectorConfig;
+import com.palominolabs.http.server.HttpServerWrapper;
+import com.palominolabs.http.server.HttpServerWrapperConfig;
+import com.palominolabs.http.server.HttpServerWrapperFactory;
+import com.palominolabs.http.server.HttpServerWrapperModule;
+import com.palominolabs.http.server.LatencyHistogram;
+import com.palominolabs.http.server.ServletDispatchConfig;
+import java.io.File;
+import java.io.IOException;
+import javax.annotation.Nonnull;
+import javax.servlet.http.HttpServlet;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import org.apache.http.HttpResponse;
+import org.apache.http.client.methods.HttpGet;
+import org.apache.http.impl.client.CloseableHttpClient;
+import org.apache.http.impl.client.HttpClients;
+import org.apache.http.util.EntityUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import static com.google.common.base.Preconditions.checkState;
+
+/**
+ * Compares the service time of a servlet bound with a Guice ServletModule to the same servlet in a {@link
+ * ServletDispatchConfig}, with a number of other servlets bound ahead of it. GuiceFilter tries the patterns in order,
+ * so the request is for the last one bound to show how dispatch scales with the number of bindings.
+ *
+ * Requests are sent one at a time over one keep-alive connection, since the difference is per request CPU time
+ * rather than anything that depends on load.
+ */
+final class DispatchBenchmark {
+
+    private static final Logger logger = LoggerFactory.getLogger(DispatchBenchmark.class);
+
+    static final String MODE_GUICE = "guice";
+    static final String MODE_INDEXED = "indexed";
+
+    private static final String HOST = "localhost";
+
+    private final int port;
+    private final int requests;
+
+    /**
+     * @param port     port to run the servers on
+     * @param requests requests to measure for each binding count and mode, after as many again to warm up
+     */
+    DispatchBenchmark(int port, int requests) {
+        this.port = port;
+        this.requests = requests;
+    }
+
+    /**
+     * @param bindings servlets to bind, each at its own prefix
+     * @param mode     {@link #MODE_GUICE} or {@link #MODE_INDEXED}
+     * @return service times of requests for the last servlet bound
+     */
+    @Nonnull
+    LatencyHistogram measure(final int bindings, final String mode) throws Exception {
+        final HttpServlet servlet = new OkServlet();
+        Injector injector = Guice.createInjector(new AbstractModule() {
+            @Override
+            protected void configure() {
+                binder().requireExplicitBindings();
+                install(new HttpServerWrapperModule());
+                install(new ServletModule() {
+                    @Override
+                    protected void configureServlets() {
+                        if (mode.equals(MODE_GUICE)) {
+                            for (int i = 0; i < bindings; i++) {
+                                serve(pattern(i)).with(servlet);
+                            }
+                        }
+                    }
+                });
+            }
+        });
+
+        HttpServerWrapperConfig config = new HttpServerWrapperConfig()
+            .withHttpServerConnectorConfig(HttpServerConnectorConfig.forHttp(HOST, port));
+        if (mode.equals(MODE_INDEXED)) {
+            ServletDispatchConfig dispatchConfig = new ServletDispatchConfig();
+            for (int i = 0; i < bindings; i++) {
+                dispatchConfig.addServlet(pattern(i), servlet);
+            }
+            config.setServletDispatchConfig(dispatchConfig);
+        }
+
+        File accessLogDir = Files.createTempDir();
+        // logback-access logs to the console without a config file, which would swamp the difference
+        config.setBinaryAccessLogConfig(new BinaryAccessLogConfig(accessLogDir).withMaxSegments(2));
+        HttpServerWrapper server = injector.getInstance(HttpServerWrapperFactory.class).getHttpServerWrapper(config);
+        server.start();
+
+        String uri = "http://" + HOST + ":" + port + "/svc/" + (bindings - 1) + "/item";
+        LatencyHistogram serviceTime = new LatencyHistogram();
+        try (CloseableHttpClient client = HttpClients.createDefault()) {
+            for (int i = 0; i < requests; i++) {
+                send(client, uri);
+            }
+            for (int i = 0; i < requests; i++) {
+                long start = System.nanoTime();
+                send(client, uri);
+                serviceTime.recordNanos(System.nanoTime() - start);
+            }
+        } finally {
+            server.stop();
+            delete(accessLogDir);
+        }
+        logger.info(bindings + " bindings, " + mode + ": " + serviceTime);
+        return serviceTime;
+    }
+
+    private static String pattern(int i) {
+        return "/svc/" + i + "/*";
+    }
+
+    private static void send(CloseableHttpClient client, String uri) throws IOException {
+        HttpResponse response = client.execute(new HttpGet(uri));
+        EntityUtils.consume(response.getEntity());
+        checkState(response.getStatusLine().getStatusCode() == 200, "Unexpected response %s from %s",
+            response.getStatusLine(), uri);
+    }
+
+    private static void delete(File file) {
+        File[] children = file.listFiles();
+        if (children != null) {
+            for (File child : children) {
+                delete(child);
+            }
+        }
+        file.delete();
+    }
+
+    private static final class OkServlet extends HttpServlet {
+        @Override
+        protected void doGet(HttpServletRequest req, HttpServletResponse resp) throws IOException {
+            resp.setStatus(HttpServletResponse.SC_OK);
+            resp.setContentLength(2);
+            resp.getOutputStream().write('o');
+            resp.getOutputStream().write('k');
+        }
+    }
+}
@@ -0,0 +1,266 @@
+package com.palominolabs.http.server.loadtest;
+
+import com.google.common.base.Splitter;
+import com.palominolabs.http.server.AllocationBenchmark;
+import com.palominolabs.http.server.CapturedRequest;
+import com.palominolabs.http.server.HttpServerWrapper;
+import com.palominolabs.http.server.ServletDispatchConfig;
+import com.palominolabs.http.server.StartupReport;
+import com.palominolabs.http.server.TrafficCaptureReader;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Properties;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import static com.google.common.base.Preconditions.checkArgument;
+
+/**
+ * Command line entry point for load tests against a {@link HttpServerWrapper} on loopback.
+ *
+ * <pre>
+ * LoadTest run &lt;scenario.properties&gt; [report file]
+ * LoadTest startup &lt;scenario.properties&gt; [iterations] [report file]
+ * LoadTest replay &lt;capture file&gt; &lt;base URI&gt; [speed] [report file]
+ * LoadTest dispatch [binding counts, e.g. 1,10,100,1000] [requests] [report file]
+ * LoadTest allocation [requests] [report file]
+ * LoadTest compare &lt;old report&gt; &lt;new report&gt;
+ * </pre>
+ *
+ * {@code run} runs a scenario at a fixed rate, or searches for the highest rate with a p99 within the target. {@code
+ * startup} starts and stops the scenario's server repeatedly and reports how long startup and each of its phases
+ * took. {@code replay} sends the requests in a {@link TrafficCaptureReader traffic capture} to a running server, e.g.
+ * {@code http://localhost:8080}, with the captured timing sped up by {@code speed}. {@code dispatch} compares Guice
+ * servlet dispatch to a {@link ServletDispatchConfig} index as the number of servlet bindings grows. {@code
+ * allocation} reports the bytes each handler stage allocates per request, for each {@link AllocationBenchmark}
+ * configuration and path. {@code compare} shows the differences between two reports, e.g. from two versions of the
+ * wrapper.
+ */
+public final class LoadTest {
+
+    private static final Logger logger = LoggerFactory.getLogger(LoadTest.class);
+
+    private static final int DISPATCH_PORT = 18080;
+
+    private LoadTest() {
+    }
+
+    public static void main(String[] args) throws Exception {
+        if (args.length >= 2 && args[0].equals("run")) {
+            LoadTestScenario scenario = LoadTestScenario.load(new File(args[1]));
+            writeReport(run(scenario), args.length > 2 ? args[2] : null);
+        } else if (args.length >= 2 && args[0].equals("startup")) {
+            LoadTestScenario scenario = LoadTestScenario.load(new File(args[1]));
+            int iterations = args.length > 2 ? Integer.parseInt(args[2]) : 20;
+            writeReport(startup(scenario, iterations), args.length > 3 ? args[3] : null);
+        } else if (args.length >= 3 && args[0].equals("replay")) {
+            double speed = args.length > 3 ? Double.parseDouble(args[3]) : 1;
+            writeReport(replay(new File(args[1]), args[2], speed), args.length > 4 ? args[4] : null);
+        } else if (args.length >= 1 && args[0].equals("dispatch")) {
+            String counts = args.length > 1 ? args[1] : "1,10,100,1000";
+            int requests = args.length > 2 ? Integer.parseInt(args[2]) : 20000;
+            writeReport(dispatch(DISPATCH_PORT, counts, requests), args.length > 3 ? args[3] : null);
+        } else if (args.length >= 1 && args[0].equals("allocation")) {
+            int requests = args.length > 1 ? Integer.parseInt(args[1]) : 5000;
+            writeReport(allocation(DISPATCH_PORT, requests), args.length > 2 ? args[2] : null);
+        } else if (args.length == 3 && args[0].equals("compare")) {
+            Writer out = new OutputStreamWriter(System.out, StandardCharsets.UTF_8);
+            LoadTestReport.compare(LoadTestReport.read(new File(args[1])), LoadTestReport.read(new File(args[2])),
+                out);
+            out.flush();
+        } else {
+            System.err.println("Usage:\n"
+                + "  LoadTest run <scenario.properties> [report file]\n"
+                + "  LoadTest startup <scenario.properties> [iterations] [report file]\n"
+                + "  LoadTest replay <capture file> <base URI> [speed] [report file]\n"
+                + "  LoadTest dispatch [binding counts] [requests] [report file]\n"
+                + "  LoadTest allocation [requests] [report file]\n"
+                + "  LoadTest compare <old report> <new report>");
+            System.exit(1);
+        }
+    }
+
+    static LoadTestReport run(LoadTestScenario scenario) throws Exception {
+        LoadTestReport report = new LoadTestReport("run");
+        report.putScenario(scenario);
+
+        LoadTestTarget target = new LoadTestTarget(scenario);
+        HttpServerWrapper server = target.newServer();
+        server.start();
+        try (OpenLoopLoadGenerator generator = new OpenLoopLoadGenerator(scenario, target.getBaseUri())) {
+            if (scenario.getMode().equals(LoadTestScenario.MODE_FIXED)) {
+                report.putRun("result", measure(scenario, generator, scenario.getRate()));
+            } else {
+                search(scenario, generator, report);
+            }
+        } finally {
+            server.stop();
+            target.deleteFiles();
+        }
+        return report;
+    }
+
+    /**
+     * Find the highest rate that is sustainable at the scenario's target p99 by doubling the rate until a run misses
+     * the target, then bisecting until the bounds are within 5% of each other.
+     */
+    private static void search(LoadTestScenario scenario, OpenLoopLoadGenerator generator, LoadTestReport report)
+        throws InterruptedException {
+        int low = 0;
+        int high = Integer.MAX_VALUE;
+        int rate = scenario.getSearchMinRate();
+        LoadTestRun best = null;
+
+        for (int step = 1; ; step++) {
+            LoadTestRun run = measure(scenario, generator, rate);
+            report.putRun(String.format(Locale.ROOT, "step.%02d", step), run);
+
+            if (run.isSustainable(scenario.getTargetP99Millis())) {
+                low = rate;
+                best = run;
+                if (rate >= scenario.getSearchMaxRate()) {
+                    break;
+                }
+            } else {
+                high = rate;
+                if (low == 0) {
+                    break;
+                }
+            }
+            if (high != Integer.MAX_VALUE && high - low <= Math.max(1, low / 20)) {
+                break;
+            }
+            rate = high == Integer.MAX_VALUE ? (int) Math.min(2L * rate, scenario.getSearchMaxRate())
+                : low + (high - low) / 2;
+        }
+
+        report.put("result.max.sustainable.rate", low);
+        if (best != null) {
+            report.putRun("result", best);
+        }
+    }
+
+    private static LoadTestRun measure(LoadTestScenario scenario, OpenLoopLoadGenerator generator, int rate)
+        throws InterruptedException {
+        if (scenario.getWarmupSeconds() > 0) {
+            generator.run(rate, scenario.getWarmupSeconds());
+        }
+        LoadTestRun run = generator.run(rate, scenario.getDurationSeconds());
+        logger.info(scenario.getName() + ": " + run);
+        return run;
+    }
+
+    static LoadTestReport startup(LoadTestScenario scenario, int iterations) throws Exception {
+        LoadTestReport report = new LoadTestReport("startup");
+        report.putScenario(scenario);
+        report.put("iterations", iterations);
+
+        LoadTestTarget target = new LoadTestTarget(scenario);
+        // the first start is cold, so it is reported on its own and left out of the means
+        long firstTotalMillis = 0;
+        long totalMillis = 0;
+        Map<String, Long> phaseMillis = new LinkedHashMap<>();
+        try {
+            for (int i = 0; i < iterations; i++) {
+                HttpServerWrapper server = target.newServer();
+                server.start();
+                server.stop();
+
+                StartupReport startupReport = server.getStartupReport();
+                if (i == 0) {
+                    firstTotalMillis = startupReport.getTotalMillis();
+                    continue;
+                }
+                totalMillis += startupReport.getTotalMillis();
+                for (StartupReport.Phase phase : startupReport.getPhases()) {
+                    Long sum = phaseMillis.get(phase.getName());
+                    phaseMillis.put(phase.getName(), (sum == null ? 0 : sum) + phase.getDurationMillis());
+                }
+            }
+        } finally {
+            target.deleteFiles();
+        }
+
+        int measured = Math.max(1, iterations - 1);
+        report.put("startup.first.total.ms", firstTotalMillis);
+        report.put("startup.mean.total.ms", String.format(Locale.ROOT, "%.1f", totalMillis / (double) measured));
+        for (Map.Entry<String, Long> entry : phaseMillis.entrySet()) {
+            report.put("startup.mean.phase." + entry.getKey() + ".ms",
+                String.format(Locale.ROOT, "%.1f", entry.getValue() / (double) measured));
+        }
+        return report;
+    }
+
+    static LoadTestReport replay(File capture, String baseUri, double speed) throws Exception {
+        checkArgument(speed > 0, "Speed must be positive");
+        List<CapturedRequest> requests = TrafficCaptureReader.read(capture);
+
+        LoadTestReport report = new LoadTestReport("replay");
+        report.put("capture", capture.getName());
+        report.put("captured.requests", requests.size());
+        report.put("speed", speed);
+
+        // client settings only
+        LoadTestScenario scenario = LoadTestScenario.fromProperties("replay", new Properties());
+        try (OpenLoopLoadGenerator generator = new OpenLoopLoadGenerator(scenario, baseUri)) {
+            LoadTestRun run = generator.replay(requests, speed);
+            logger.info("replay of " + capture.getName() + ": " + run);
+            report.putRun("result", run);
+        }
+        return report;
+    }
+
+    static LoadTestReport dispatch(int port, String bindingCounts, int requests) throws Exception {
+        LoadTestReport report = new LoadTestReport("dispatch");
+        report.put("requests", requests);
+
+        DispatchBenchmark benchmark = new DispatchBenchmark(port, requests);
+        for (String count : Splitter.on(',').trimResults().omitEmptyStrings().split(bindingCounts)) {
+            int bindings = Integer.parseInt(count);
+            checkArgument(bindings > 0, "Binding counts must be positive");
+            for (String mode : new String[]{DispatchBenchmark.MODE_GUICE, DispatchBenchmark.MODE_INDEXED}) {
+                report.putHistogram("bindings." + bindings + "." + mode + ".service.time",
+                    benchmark.measure(bindings, mode));
+            }
+        }
+        return report;
+    }
+
+    static LoadTestReport allocation(int port, int requests) throws Exception {
+        LoadTestReport report = new LoadTestReport("allocation");
+        report.put("requests", requests);
+
+        AllocationBenchmark benchmark = new AllocationBenchmark(port, requests);
+        for (String config : AllocationBenchmark.CONFIGS) {
+            List<AllocationBenchmark.Result> results = benchmark.measure(config);
+            for (int i = 0; i < results.size(); i++) {
+                AllocationBenchmark.Result result = results.get(i);
+                String prefix = config + "." + AllocationBenchmark.PATHS.get(i);
+                report.put(prefix + ".bytes.per.request", result.getBytesPerRequest());
+                for (Map.Entry<String, Long> stage : result.getStageBytesPerRequest().entrySet()) {
+                    report.put(prefix + ".stage." + stage.getKey() + ".bytes.per.request", stage.getValue());
+                }
+            }
+        }
+        return report;
+    }
+
+    private static void writeReport(LoadTestReport report, String file) throws IOException {
+        Writer out = new OutputStreamWriter(System.out, StandardCharsets.UTF_8);
+        report.write(out);
+        out.flush();
+        if (file != null) {
+            try (Writer fileOut = new OutputStreamWriter(new FileOutputStream(file), StandardCharsets.UTF_8)) {
+                report.write(fileOut);
+            }
+        }
+    }
+}
@@ -0,0 +1,128 @@
+package com.palominolabs.http.server.loadtest;
+
+import com.palominolabs.http.server.HttpServerWrapper;
+import com.palominolabs.http.server.LatencyHistogram;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Properties;
+import java.util.Set;
+import java.util.TreeMap;
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+
+/**
+ * A load test's results as {@code key: value} lines in a fixed order, so that reports from two versions of the
+ * wrapper can be compared with diff or with {@link #compare(Map, Map, Appendable)}. Reports contain no timestamps or
+ * host names; they only differ where the measurements do.
+ */
+final class LoadTestReport {
+
+    private static final double[] PERCENTILES = {50, 90, 99, 99.9};
+
+    private final Map<String, String> values = new LinkedHashMap<>();
+
+    LoadTestReport(@Nonnull String kind) {
+        put("report", kind);
+        String version = HttpServerWrapper.class.getPackage().getImplementationVersion();
+        put("wrapper.version", version == null ? "unknown" : version);
+        put("java.version", System.getProperty("java.version"));
+        put("os.arch", System.getProperty("os.arch"));
+        put("processors", Runtime.getRuntime().availableProcessors());
+    }
+
+    void putScenario(@Nonnull LoadTestScenario scenario) {
+        put("scenario", scenario.getName());
+        for (Map.Entry<String, String> entry : scenario.getProperties().entrySet()) {
+            put("scenario." + entry.getKey(), entry.getValue());
+        }
+    }
+
+    void putRun(@Nonnull String prefix, @Nonnull LoadTestRun run) {
+        put(prefix + ".rate", run.getRate());
+        put(prefix + ".achieved.rate", String.format(Locale.ROOT, "%.1f", run.getAchievedRate()));
+        put(prefix + ".requests", run.getRequests());
+        put(prefix + ".errors", run.getErrors());
+        putHistogram(prefix + ".latency", run.getLatency());
+        putHistogram(prefix + ".service.time", run.getServiceTime());
+    }
+
+    void put(@Nonnull String key, @Nonnull Object value) {
+        // keys are used as properties keys when reports are read back
+        values.put(key.replaceAll("[\\s:=]+", "_"), value.toString());
+    }
+
+    void write(@Nonnull Appendable out) throws IOException {
+        for (Map.Entry<String, String> entry : values.entrySet()) {
+            out.append(entry.getKey()).append(": ").append(entry.getValue()).append('\n');
+        }
+    }
+
+    @Nonnull
+    static Map<String, String> read(@Nonnull File file) throws IOException {
+        Properties properties = new Properties();
+        try (InputStream in = new FileInputStream(file)) {
+            properties.load(new InputStreamReader(in, StandardCharsets.UTF_8));
+        }
+        // properties don't keep the order of the file
+        Map<String, String> map = new TreeMap<>();
+        for (String key : properties.stringPropertyNames()) {
+            map.put(key, properties.getProperty(key));
+        }
+        return map;
+    }
+
+    /**
+     * Write one line per key with the old value, the new value, and for numbers the change in percent.
+     */
+    static void compare(@Nonnull Map<String, String> oldReport, @Nonnull Map<String, String> newReport,
+        @Nonnull Appendable out) throws IOException {
+        Set<String> keys = new LinkedHashSet<>(oldReport.keySet());
+        keys.addAll(newReport.keySet());
+        for (String key : keys) {
+            String oldValue = oldReport.get(key);
+            String newValue = newReport.get(key);
+            out.append(String.format(Locale.ROOT, "%-40s %15s %15s", key, oldValue == null ? "-" : oldValue,
+                newValue == null ? "-" : newValue));
+            Double oldNumber = parse(oldValue);
+            Double newNumber = parse(newValue);
+            if (oldNumber != null && newNumber != null && oldNumber != 0) {
+                out.append(String.format(Locale.ROOT, " %+8.1f%%", (newNumber - oldNumber) * 100 / oldNumber));
+            }
+            out.append('\n');
+        }
+    }
+
+    void putHistogram(@Nonnull String prefix, @Nonnull LatencyHistogram histogram) {
+        for (double percentile : PERCENTILES) {
+            String name = percentile == Math.rint(percentile) ? Integer.toString((int) percentile)
+                : Double.toString(percentile).replace(".", "");
+            put(prefix + ".p" + name + ".ms", millis(histogram.getPercentileNanos(percentile)));
+        }
+        put(prefix + ".max.ms", millis(histogram.getMaxNanos()));
+        put(prefix + ".mean.ms", millis(histogram.getMeanNanos()));
+    }
+
+    private static String millis(long nanos) {
+        return String.format(Locale.ROOT, "%.3f", nanos / 1e6);
+    }
+
+    @Nullable
+    private static Double parse(@Nullable String value) {
+        if (value == null) {
+            return null;
+        }
+        try {
+            return Double.parseDouble(value);
+        } catch (NumberFormatException e) {
+            return null;
+        }
+    }
+}
@@ -0,0 +1,97 @@
+package com.palominolabs.http.server.loadtest;
+
+import com.palominolabs.http.server.LatencyHistogram;
+import java.util.Locale;
+import java.util.concurrent.TimeUnit;
+import javax.annotation.Nonnull;
+import javax.annotation.concurrent.Immutable;
+
+/**
+ * The result of running requests at one rate.
+ *
+ * Latency is measured from when each request was scheduled to be sent, not from when it was sent, so time a request
+ * spent waiting behind slow ones counts. Service time is measured from when it was sent, and is what a closed-loop
+ * load generator would report.
+ */
+@Immutable
+public final class LoadTestRun {
+
+    private final int rate;
+    private final long requests;
+    private final long errors;
+    private final long elapsedNanos;
+    private final LatencyHistogram latency;
+    private final LatencyHistogram serviceTime;
+
+    LoadTestRun(int rate, long requests, long errors, long elapsedNanos, LatencyHistogram latency,
+        LatencyHistogram serviceTime) {
+        this.rate = rate;
+        this.requests = requests;
+        this.errors = errors;
+        this.elapsedNanos = elapsedNanos;
+        this.latency = latency;
+        this.serviceTime = serviceTime;
+    }
+
+    /**
+     * @return the requested rate, in requests per second
+     */
+    public int getRate() {
+        return rate;
+    }
+
+    /**
+     * @return requests that completed, with or without errors
+     */
+    public long getRequests() {
+        return requests;
+    }
+
+    /**
+     * @return requests that failed, got a 4xx or 5xx, or were never sent because the run was abandoned
+     */
+    public long getErrors() {
+        return errors;
+    }
+
+    /**
+     * @return completed requests per second, from the first being scheduled to the last completing
+     */
+    public double getAchievedRate() {
+        return elapsedNanos == 0 ? 0 : requests * (double) TimeUnit.SECONDS.toNanos(1) / elapsedNanos;
+    }
+
+    /**
+     * @return latency measured from each request's scheduled send time
+     */
+    @Nonnull
+    public LatencyHistogram getLatency() {
+        return latency;
+    }
+
+    /**
+     * @return latency measured from each request's actual send time
+     */
+    @Nonnull
+    public LatencyHistogram getServiceTime() {
+        return serviceTime;
+    }
+
+    /**
+     * @param targetP99Millis highest acceptable p99 latency
+     * @return true if there were no errors, the p99 is within the target and the client kept up with the rate
+     */
+    public boolean isSustainable(int targetP99Millis) {
+        return errors == 0
+            && latency.getPercentileNanos(99) <= TimeUnit.MILLISECONDS.toNanos(targetP99Millis)
+            && getAchievedRate() >= rate * 0.95;
+    }
+
+    @Override
+    public String toString() {
+        return String.format(Locale.ROOT,
+            "rate=%d achieved=%.1f requests=%d errors=%d p50=%.3fms p99=%.3fms max=%.3fms", rate, getAchievedRate(),
+            requests, errors, latency.getPercentileNanos(50) / 1e6, latency.getPercentileNanos(99) / 1e6,
+            latency.getMaxNanos() / 1e6);
+    }
+}
@@ -0,0 +1,206 @@
+package com.palominolabs.http.server.loadtest;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Map;
+import java.util.Properties;
+import java.util.TreeMap;
+import javax.annotation.Nonnull;
+import javax.annotation.concurrent.Immutable;
+
+import static com.google.common.base.Preconditions.checkArgument;
+
+/**
+ * What a load test runs: how the server is configured, what the client requests, and at what rate. Loaded from a
+ * properties file; every property has a default, so a scenario only needs the ones it changes.
+ */
+@Immutable
+public final class LoadTestScenario {
+
+    /**
+     * Run once at {@link #getRate()}
+     */
+    public static final String MODE_FIXED = "fixed";
+    /**
+     * Search for the highest rate whose p99 is under {@link #getTargetP99Millis()}
+     */
+    public static final String MODE_SEARCH = "search";
+
+    private final String name;
+    private final Map<String, String> properties;
+
+    private LoadTestScenario(String name, Map<String, String> properties) {
+        this.name = name;
+        this.properties = properties;
+
+        checkArgument(getMode().equals(MODE_FIXED) || getMode().equals(MODE_SEARCH), "Unknown mode " + getMode());
+        checkArgument(getConnections() > 0, "connections must be > 0");
+        checkArgument(getShards() > 0, "shards must be > 0");
+        checkArgument(getRate() > 0, "rate must be > 0");
+        checkArgument(getServletWeight() >= 0 && getStaticWeight() >= 0
+            && getServletWeight() + getStaticWeight() > 0, "Weights must be >= 0 and not all 0");
+        checkArgument(getSearchMinRate() > 0 && getSearchMinRate() <= getSearchMaxRate(),
+            "searchMinRate must be > 0 and <= searchMaxRate");
+    }
+
+    /**
+     * @param file properties file. The scenario is named after the file, without its extension.
+     */
+    @Nonnull
+    public static LoadTestScenario load(@Nonnull File file) throws IOException {
+        Properties properties = new Properties();
+        try (InputStream in = new FileInputStream(file)) {
+            properties.load(in);
+        }
+        String name = file.getName().replaceFirst("\\.properties$", "");
+        return fromProperties(name, properties);
+    }
+
+    @Nonnull
+    public static LoadTestScenario fromProperties(@Nonnull String name, @Nonnull Properties properties) {
+        Map<String, String> map = new TreeMap<>();
+        for (String key : properties.stringPropertyNames()) {
+            map.put(key, properties.getProperty(key).trim());
+        }
+        return new LoadTestScenario(name, map);
+    }
+
+    @Nonnull
+    public String getName() {
+        return name;
+    }
+
+    /**
+     * @return the properties that were set, sorted by name
+     */
+    @Nonnull
+    public Map<String, String> getProperties() {
+        return new TreeMap<>(properties);
+    }
+
+    @Nonnull
+    public String getMode() {
+        return getString("mode", MODE_FIXED);
+    }
+
+    public boolean isTls() {
+        return getBoolean("tls", false);
+    }
+
+    /**
+     * @return false to open a new connection for every request
+     */
+    public boolean isKeepAlive() {
+        return getBoolean("keepAlive", true);
+    }
+
+    /**
+     * @return the most connections, and so requests in flight, the client uses
+     */
+    public int getConnections() {
+        return getInt("connections", 64);
+    }
+
+    public int getPort() {
+        return getInt("port", 18080);
+    }
+
+    /**
+     * @see HttpServerConnectorConfig#setShards(int)
+     */
+    public int getShards() {
+        return getInt("shards", 1);
+    }
+
+    /**
+     * @return requests per second in fixed mode
+     */
+    public int getRate() {
+        return getInt("rate", 1000);
+    }
+
+    /**
+     * @return how long to run at each rate before measuring, to let the JIT and pools settle
+     */
+    public int getWarmupSeconds() {
+        return getInt("warmupSeconds", 5);
+    }
+
+    /**
+     * @return how long each measured run lasts
+     */
+    public int getDurationSeconds() {
+        return getInt("durationSeconds", 30);
+    }
+
+    /**
+     * @return relative share of requests to the servlet
+     */
+    public int getServletWeight() {
+        return getInt("servletWeight", 1);
+    }
+
+    /**
+     * @return relative share of requests for the static file
+     */
+    public int getStaticWeight() {
+        return getInt("staticWeight", 0);
+    }
+
+    /**
+     * @return size of the servlet's response body
+     */
+    public int getResponseBytes() {
+        return getInt("responseBytes", 1024);
+    }
+
+    /**
+     * @return size of the static file
+     */
+    public int getStaticFileBytes() {
+        return getInt("staticFileBytes", 16 * 1024);
+    }
+
+    public int getRequestTimeoutMillis() {
+        return getInt("requestTimeoutMillis", 5000);
+    }
+
+    /**
+     * @return in search mode, the highest p99 a rate can have and still count as sustainable
+     */
+    public int getTargetP99Millis() {
+        return getInt("targetP99Millis", 10);
+    }
+
+    public int getSearchMinRate() {
+        return getInt("searchMinRate", 500);
+    }
+
+    public int getSearchMaxRate() {
+        return getInt("searchMaxRate", 100000);
+    }
+
+    private String getString(String key, String defaultValue) {
+        String value = properties.get(key);
+        return value == null ? defaultValue : value;
+    }
+
+    private boolean getBoolean(String key, boolean defaultValue) {
+        String value = properties.get(key);
+        return value == null ? defaultValue : Boolean.parseBoolean(value);
+    }
+
+    private int getInt(String key, int defaultValue) {
+        String value = properties.get(key);
+        if (value == null) {
+            return defaultValue;
+        }
+        try {
+            return Integer.parseInt(value);
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException(key + " must be an integer, not " + value, e);
+        }
+    }
+}
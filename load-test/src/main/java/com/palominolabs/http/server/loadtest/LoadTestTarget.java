@@ -0,0 +1,142 @@
+package com.palominolabs.http.server.loadtest;
+
+import com.google.common.io.Files;
+import com.google.inject.AbstractModule;
+import com.google.inject.Guice;
+import com.google.inject.Injector;
+import com.google.inject.servlet.ServletModule;
+import com.palominolabs.http.server.BinaryAccessLogConfig;
+import com.palominolabs.http.server.HttpResourceHandlerConfig;
+import com.palominolabs.http.server.HttpServerConnectorConfig;
+import com.palominolabs.http.server.HttpServerWrapper;
+import com.palominolabs.http.server.HttpServerWrapperConfig;
+import com.palominolabs.http.server.HttpServerWrapperFactory;
+import com.palominolabs.http.server.HttpServerWrapperModule;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.security.GeneralSecurityException;
+import java.security.KeyStore;
+import java.util.Arrays;
+import javax.annotation.Nonnull;
+import javax.servlet.http.HttpServlet;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import org.eclipse.jetty.util.resource.Resource;
+
+/**
+ * The server a load test runs against: a {@link HttpServerWrapper} on loopback with a servlet at {@link
+ * #SERVLET_PATH} and a static file at {@link #STATIC_PATH}, configured from a {@link LoadTestScenario}.
+ */
+final class LoadTestTarget {
+
+    static final String SERVLET_PATH = "/servlet";
+    static final String STATIC_PATH = "/static/file.bin";
+
+    private static final String HOST = "localhost";
+
+    private final LoadTestScenario scenario;
+    private final HttpServerWrapperFactory factory;
+    private final File workDir;
+    private final File staticDir;
+
+    LoadTestTarget(@Nonnull LoadTestScenario scenario) throws IOException {
+        this.scenario = scenario;
+
+        final byte[] body = new byte[scenario.getResponseBytes()];
+        Arrays.fill(body, (byte) 'x');
+        Injector injector = Guice.createInjector(new AbstractModule() {
+            @Override
+            protected void configure() {
+                binder().requireExplicitBindings();
+                install(new HttpServerWrapperModule());
+                install(new ServletModule() {
+                    @Override
+                    protected void configureServlets() {
+                        serve(SERVLET_PATH).with(new FixedBodyServlet(body));
+                    }
+                });
+            }
+        });
+        factory = injector.getInstance(HttpServerWrapperFactory.class);
+
+        workDir = Files.createTempDir();
+        staticDir = new File(workDir, "static");
+        if (!staticDir.mkdir()) {
+            throw new IOException("Could not create " + staticDir);
+        }
+        byte[] file = new byte[scenario.getStaticFileBytes()];
+        Arrays.fill(file, (byte) 'y');
+        Files.write(file, new File(staticDir, "file.bin"));
+    }
+
+    /**
+     * @return a new, not yet started server
+     */
+    @Nonnull
+    HttpServerWrapper newServer() throws IOException, GeneralSecurityException {
+        HttpServerConnectorConfig connectorConfig;
+        if (scenario.isTls()) {
+            connectorConfig = HttpServerConnectorConfig.forHttps(HOST, scenario.getPort())
+                .withTlsKeystore(loadKeyStore())
+                .withTlsKeystorePassphrase("password");
+        } else {
+            connectorConfig = HttpServerConnectorConfig.forHttp(HOST, scenario.getPort());
+        }
+        connectorConfig.setShards(scenario.getShards());
+
+        // logback-access logs to the console without a config file, which would slow down every request
+        return factory.getHttpServerWrapper(new HttpServerWrapperConfig()
+            .withHttpServerConnectorConfig(connectorConfig)
+            .withBinaryAccessLogConfig(new BinaryAccessLogConfig(new File(workDir, "access")).withMaxSegments(2))
+            .withResourceHandlerConfig(new HttpResourceHandlerConfig()
+                .withBaseResource(Resource.newResource(staticDir))
+                .withContextPath("/static")));
+    }
+
+    @Nonnull
+    String getBaseUri() {
+        return (scenario.isTls() ? "https" : "http") + "://" + HOST + ":" + scenario.getPort();
+    }
+
+    /**
+     * Delete the static file and access logs
+     */
+    void deleteFiles() {
+        delete(workDir);
+    }
+
+    private static void delete(File file) {
+        File[] children = file.listFiles();
+        if (children != null) {
+            for (File child : children) {
+                delete(child);
+            }
+        }
+        file.delete();
+    }
+
+    private static KeyStore loadKeyStore() throws IOException, GeneralSecurityException {
+        KeyStore keyStore = KeyStore.getInstance("PKCS12");
+        try (InputStream in = LoadTestTarget.class.getResourceAsStream("/load-test-cert-and-key.p12")) {
+            keyStore.load(in, "password".toCharArray());
+        }
+        return keyStore;
+    }
+
+    private static final class FixedBodyServlet extends HttpServlet {
+        private final byte[] body;
+
+        FixedBodyServlet(byte[] body) {
+            this.body = body;
+        }
+
+        @Override
+        protected void doGet(HttpServletRequest req, HttpServletResponse resp) throws IOException {
+            resp.setStatus(HttpServletResponse.SC_OK);
+            resp.setContentType("application/octet-stream");
+            resp.setContentLength(body.length);
+            resp.getOutputStream().write(body);
+        }
+    }
+}
@@ -0,0 +1,270 @@
+package com.palominolabs.http.server.loadtest;
+
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import com.palominolabs.http.server.CapturedRequest;
+import com.palominolabs.http.server.LatencyHistogram;
+import com.palominolabs.http.server.TrafficCaptureReader;
+import java.io.Closeable;
+import java.io.IOException;
+import java.security.GeneralSecurityException;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+import javax.annotation.Nonnull;
+import javax.net.ssl.SSLContext;
+import org.apache.http.HttpResponse;
+import org.apache.http.client.config.RequestConfig;
+import org.apache.http.client.methods.HttpGet;
+import org.apache.http.client.methods.HttpUriRequest;
+import org.apache.http.client.methods.RequestBuilder;
+import org.apache.http.config.Registry;
+import org.apache.http.config.RegistryBuilder;
+import org.apache.http.conn.socket.ConnectionSocketFactory;
+import org.apache.http.conn.socket.PlainConnectionSocketFactory;
+import org.apache.http.conn.ssl.SSLConnectionSocketFactory;
+import org.apache.http.conn.ssl.SSLContexts;
+import org.apache.http.conn.ssl.TrustSelfSignedStrategy;
+import org.apache.http.entity.ByteArrayEntity;
+import org.apache.http.impl.NoConnectionReuseStrategy;
+import org.apache.http.impl.client.CloseableHttpClient;
+import org.apache.http.impl.client.HttpClientBuilder;
+import org.apache.http.impl.client.HttpClients;
+import org.apache.http.impl.conn.PoolingHttpClientConnectionManager;
+import org.apache.http.util.EntityUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Sends requests on a fixed schedule, whether or not earlier requests have completed, and measures each one's latency
+ * from when it was scheduled. A closed-loop generator waits for a response before sending the next request, so when
+ * the server stalls it stops sending and the stall shows up in one sample instead of all the ones that should have
+ * been sent during it (coordinated omission).
+ *
+ * Requests are either generated at a fixed rate, or replayed from a {@link TrafficCaptureReader traffic capture} with
+ * the same gaps between them as when they were captured, optionally sped up.
+ *
+ * Requests wait in a queue for one of {@link LoadTestScenario#getConnections()} client threads, each with its own
+ * connection. If more than {@link LoadTestScenario#getRequestTimeoutMillis()} worth of requests are waiting, the run
+ * is abandoned and the requests not yet sent are counted as errors.
+ */
+final class OpenLoopLoadGenerator implements Closeable {
+
+    private static final Logger logger = LoggerFactory.getLogger(OpenLoopLoadGenerator.class);
+
+    /**
+     * Set by the client from the request and entity, so not replayed
+     */
+    private static final Set<String> UNREPLAYED_HEADERS = new TreeSet<>(String.CASE_INSENSITIVE_ORDER);
+
+    static {
+        UNREPLAYED_HEADERS.addAll(Arrays.asList("Host", "Content-Length", "Transfer-Encoding", "Connection",
+            "Keep-Alive", "Proxy-Connection", "TE", "Upgrade", "Expect"));
+    }
+
+    private final LoadTestScenario scenario;
+    private final String baseUri;
+    private final String servletUri;
+    private final String staticUri;
+    private final CloseableHttpClient client;
+    private final ThreadPoolExecutor workers;
+
+    OpenLoopLoadGenerator(@Nonnull LoadTestScenario scenario, @Nonnull String baseUri)
+        throws GeneralSecurityException {
+        this.scenario = scenario;
+        this.baseUri = baseUri;
+        this.servletUri = baseUri + LoadTestTarget.SERVLET_PATH;
+        this.staticUri = baseUri + LoadTestTarget.STATIC_PATH;
+
+        // the target uses a self-signed certificate
+        SSLContext sslContext = SSLContexts.custom().loadTrustMaterial(null, new TrustSelfSignedStrategy()).build();
+        Registry<ConnectionSocketFactory> socketFactories = RegistryBuilder.<ConnectionSocketFactory>create()
+            .register("http", PlainConnectionSocketFactory.getSocketFactory())
+            .register("https",
+                new SSLConnectionSocketFactory(sslContext, SSLConnectionSocketFactory.ALLOW_ALL_HOSTNAME_VERIFIER))
+            .build();
+        PoolingHttpClientConnectionManager connectionManager = new PoolingHttpClientConnectionManager(socketFactories);
+        connectionManager.setMaxTotal(scenario.getConnections());
+        connectionManager.setDefaultMaxPerRoute(scenario.getConnections());
+
+        int timeout = scenario.getRequestTimeoutMillis();
+        HttpClientBuilder builder = HttpClients.custom()
+            .setConnectionManager(connectionManager)
+            .setDefaultRequestConfig(RequestConfig.custom()
+                .setConnectTimeout(timeout)
+                .setSocketTimeout(timeout)
+                .setConnectionRequestTimeout(timeout)
+                .build());
+        if (!scenario.isKeepAlive()) {
+            builder.setConnectionReuseStrategy(NoConnectionReuseStrategy.INSTANCE);
+        }
+        client = builder.build();
+
+        workers = new ThreadPoolExecutor(scenario.getConnections(), scenario.getConnections(), 0,
+            TimeUnit.MILLISECONDS, new LinkedBlockingQueue<Runnable>(),
+            new ThreadFactoryBuilder().setNameFormat("load-test-client-%d").setDaemon(true).build());
+        workers.prestartAllCoreThreads();
+    }
+
+    /**
+     * @param rate            requests per second
+     * @param durationSeconds how long to send requests for
+     * @return the result, once every request has completed
+     */
+    @Nonnull
+    LoadTestRun run(final int rate, int durationSeconds) throws InterruptedException {
+        final int servletWeight = scenario.getServletWeight();
+        final int totalWeight = servletWeight + scenario.getStaticWeight();
+
+        return send(rate, (long) rate * durationSeconds, new Schedule() {
+            @Override
+            public long offsetNanos(long i) {
+                return (long) (i * 1e9 / rate);
+            }
+
+            @Override
+            public HttpUriRequest request(long i) {
+                return new HttpGet(i % totalWeight < servletWeight ? servletUri : staticUri);
+            }
+        });
+    }
+
+    /**
+     * @param requests captured requests, in the order they arrived
+     * @param speed    how much faster than captured to send them, e.g. 1 to keep the captured timing or 2 for twice
+     *                 the rate
+     * @return the result, once every request has completed. Its rate is the average rate of the replay.
+     */
+    @Nonnull
+    LoadTestRun replay(final List<CapturedRequest> requests, final double speed) throws InterruptedException {
+        if (requests.isEmpty()) {
+            return send(1, 0, null);
+        }
+
+        final long firstOffsetNanos = requests.get(0).getOffsetNanos();
+        long spanNanos = (long) ((requests.get(requests.size() - 1).getOffsetNanos() - firstOffsetNanos) / speed);
+        int rate = (int) Math.max(1, Math.round(requests.size() * 1e9 / Math.max(spanNanos, 1_000_000_000L)));
+
+        return send(rate, requests.size(), new Schedule() {
+            @Override
+            public long offsetNanos(long i) {
+                return (long) ((requests.get((int) i).getOffsetNanos() - firstOffsetNanos) / speed);
+            }
+
+            @Override
+            public HttpUriRequest request(long i) {
+                return buildRequest(requests.get((int) i));
+            }
+        });
+    }
+
+    private HttpUriRequest buildRequest(CapturedRequest captured) {
+        RequestBuilder builder = RequestBuilder.create(captured.getMethod()).setUri(baseUri + captured.getUri());
+        long contentLength = -1;
+        for (Map.Entry<String, String> header : captured.getHeaders().entries()) {
+            if (header.getKey().equalsIgnoreCase("Content-Length")) {
+                contentLength = Long.parseLong(header.getValue().trim());
+            }
+            if (!UNREPLAYED_HEADERS.contains(header.getKey())) {
+                builder.addHeader(header.getKey(), header.getValue());
+            }
+        }
+
+        byte[] body = captured.getBody();
+        if (body != null && body.length > 0) {
+            builder.setEntity(new ByteArrayEntity(body));
+        } else if (contentLength > 0) {
+            // the body wasn't captured, so send one of the same size
+            builder.setEntity(new ByteArrayEntity(new byte[(int) Math.min(contentLength, Integer.MAX_VALUE)]));
+        }
+        return builder.build();
+    }
+
+    /**
+     * @param rate     average requests per second, used to size the backlog
+     * @param total    requests to send
+     * @param schedule when to send each request, and what to send
+     */
+    private LoadTestRun send(int rate, long total, Schedule schedule) throws InterruptedException {
+        long maxBacklog = Math.max(scenario.getConnections(), (long) rate * scenario.getRequestTimeoutMillis() / 1000);
+
+        final LatencyHistogram latency = new LatencyHistogram();
+        final LatencyHistogram serviceTime = new LatencyHistogram();
+        final AtomicLong completed = new AtomicLong();
+        final AtomicLong errors = new AtomicLong();
+        final CountDownLatch done = new CountDownLatch(1);
+        final AtomicLong remaining = new AtomicLong(total);
+
+        long start = System.nanoTime();
+        for (long i = 0; i < total; i++) {
+            final long scheduled = start + schedule.offsetNanos(i);
+            long wait;
+            while ((wait = scheduled - System.nanoTime()) > 0) {
+                LockSupport.parkNanos(wait);
+            }
+
+            if (workers.getQueue().size() > maxBacklog) {
+                long abandoned = total - i;
+                logger.info("Abandoning run at " + rate + "/s with " + abandoned + " requests unsent");
+                errors.addAndGet(abandoned);
+                if (remaining.addAndGet(-abandoned) == 0) {
+                    done.countDown();
+                }
+                break;
+            }
+
+            final HttpUriRequest request = schedule.request(i);
+            workers.execute(new Runnable() {
+                @Override
+                public void run() {
+                    long sent = System.nanoTime();
+                    try {
+                        HttpResponse response = client.execute(request);
+                        EntityUtils.consume(response.getEntity());
+                        if (response.getStatusLine().getStatusCode() >= 400) {
+                            errors.incrementAndGet();
+                        }
+                    } catch (IOException e) {
+                        logger.debug("Request failed", e);
+                        errors.incrementAndGet();
+                    } finally {
+                        long now = System.nanoTime();
+                        latency.recordNanos(now - scheduled);
+                        serviceTime.recordNanos(now - sent);
+                        completed.incrementAndGet();
+                        if (remaining.decrementAndGet() == 0) {
+                            done.countDown();
+                        }
+                    }
+                }
+            });
+        }
+
+        if (total > 0) {
+            done.await();
+        }
+        return new LoadTestRun(rate, completed.get(), errors.get(), System.nanoTime() - start, latency, serviceTime);
+    }
+
+    @Override
+    public void close() throws IOException {
+        workers.shutdownNow();
+        client.close();
+    }
+
+    private interface Schedule {
+        /**
+         * @return when to send request i, relative to the start of the run
+         */
+        long offsetNanos(long i);
+
+        HttpUriRequest request(long i);
+    }
+}
@@ -0,0 +1,52 @@
+package com.palominolabs.http.server;
+
+import org.junit.Test;
+
+import java.io.FileInputStream;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Properties;
+
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Fails when the handler chain allocates more per request than its budget in allocation-budgets.properties, or in the
+ * file in the allocationBudgets system property.
+ */
+public final class AllocationBudgetTest {
+
+    @Test
+    public void testAllocationsWithinBudgets() throws Exception {
+        Properties budgets = loadBudgets();
+        AllocationBenchmark benchmark = new AllocationBenchmark(28080, 500);
+
+        List<String> overBudget = new ArrayList<>();
+        for (String config : AllocationBenchmark.CONFIGS) {
+            List<AllocationBenchmark.Result> results = benchmark.measure(config);
+            for (int i = 0; i < results.size(); i++) {
+                String key = config + "." + AllocationBenchmark.PATHS.get(i);
+                String budget = budgets.getProperty(key);
+                assertNotNull("No budget for " + key, budget);
+
+                AllocationBenchmark.Result result = results.get(i);
+                if (result.getBytesPerRequest() > Long.parseLong(budget.trim())) {
+                    overBudget.add(key + ": " + result.getBytesPerRequest() + " bytes/request, budget " + budget
+                        + result.describeStages());
+                }
+            }
+        }
+        assertTrue("Over budget:\n" + overBudget, overBudget.isEmpty());
+    }
+
+    private static Properties loadBudgets() throws Exception {
+        Properties budgets = new Properties();
+        String file = System.getProperty("allocationBudgets");
+        try (InputStream in = file != null ? new FileInputStream(file)
+            : AllocationBudgetTest.class.getResourceAsStream("/allocation-budgets.properties")) {
+            budgets.load(in);
+        }
+        return budgets;
+    }
+}
@@ -0,0 +1,120 @@
+package com.palominolabs.http.server.loadtest;
+
+import com.google.common.collect.ImmutableListMultimap;
+import com.palominolabs.http.server.CapturedRequest;
+import com.palominolabs.http.server.HttpServerWrapper;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public final class LoadTestTest {
+
+    @Test
+    public void testFixedRateRun() throws Exception {
+        Properties properties = new Properties();
+        properties.setProperty("rate", "200");
+        properties.setProperty("warmupSeconds", "0");
+        properties.setProperty("durationSeconds", "1");
+        properties.setProperty("connections", "8");
+        properties.setProperty("servletWeight", "3");
+        properties.setProperty("staticWeight", "1");
+        properties.setProperty("port", "28080");
+
+        Map<String, String> report = writeAndRead(LoadTest.run(LoadTestScenario.fromProperties("test", properties)));
+
+        assertEquals("run", report.get("report"));
+        assertEquals("test", report.get("scenario"));
+        assertEquals("200", report.get("scenario.rate"));
+        assertEquals("200", report.get("result.requests"));
+        assertEquals("0", report.get("result.errors"));
+        double p50 = Double.parseDouble(report.get("result.latency.p50.ms"));
+        double p99 = Double.parseDouble(report.get("result.latency.p99.ms"));
+        assertTrue(p50 > 0 && p50 <= p99);
+        assertTrue(Double.parseDouble(report.get("result.achieved.rate")) > 150);
+    }
+
+    @Test
+    public void testReplay() throws Exception {
+        Properties properties = new Properties();
+        properties.setProperty("port", "28080");
+        LoadTestScenario scenario = LoadTestScenario.fromProperties("test", properties);
+        LoadTestTarget target = new LoadTestTarget(scenario);
+        HttpServerWrapper server = target.newServer();
+        server.start();
+
+        List<CapturedRequest> requests = new ArrayList<>();
+        for (int i = 0; i < 20; i++) {
+            String uri = i % 2 == 0 ? LoadTestTarget.SERVLET_PATH + "?i=" + i : LoadTestTarget.STATIC_PATH;
+            requests.add(new CapturedRequest(TimeUnit.MILLISECONDS.toNanos(100 * i), "GET", uri,
+                ImmutableListMultimap.of("Host", "example.com", "X-Test", "1"), null));
+        }
+
+        try (OpenLoopLoadGenerator generator = new OpenLoopLoadGenerator(scenario, target.getBaseUri())) {
+            long start = System.nanoTime();
+            // 2 seconds of captured traffic at 4x
+            LoadTestRun run = generator.replay(requests, 4);
+            long elapsedMillis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+
+            assertEquals(20, run.getRequests());
+            assertEquals(0, run.getErrors());
+            assertTrue(String.valueOf(elapsedMillis), elapsedMillis >= 450 && elapsedMillis < 1900);
+        } finally {
+            server.stop();
+            target.deleteFiles();
+        }
+    }
+
+    @Test
+    public void testDispatch() throws Exception {
+        Map<String, String> report = writeAndRead(LoadTest.dispatch(28080, "1,50", 200));
+
+        assertEquals("dispatch", report.get("report"));
+        for (String prefix : new String[]{"bindings.1.guice", "bindings.1.indexed", "bindings.50.guice",
+            "bindings.50.indexed"}) {
+            assertTrue(prefix, Double.parseDouble(report.get(prefix + ".service.time.p50.ms")) > 0);
+        }
+    }
+
+    @Test
+    public void testCompare() throws Exception {
+        Map<String, String> oldReport = new LinkedHashMap<>();
+        oldReport.put("wrapper.version", "1.2.1");
+        oldReport.put("result.latency.p99.ms", "2.000");
+        Map<String, String> newReport = new LinkedHashMap<>();
+        newReport.put("wrapper.version", "1.3.0");
+        newReport.put("result.latency.p99.ms", "1.500");
+
+        StringBuilder out = new StringBuilder();
+        LoadTestReport.compare(oldReport, newReport, out);
+
+        String[] lines = out.toString().split("\n");
+        assertEquals(2, lines.length);
+        assertTrue(lines[0], lines[0].matches("wrapper\\.version +1\\.2\\.1 +1\\.3\\.0"));
+        assertTrue(lines[1], lines[1].matches("result\\.latency\\.p99\\.ms +2\\.000 +1\\.500 +-25\\.0%"));
+    }
+
+    private static Map<String, String> writeAndRead(LoadTestReport report) throws Exception {
+        File file = File.createTempFile("load-test", ".txt");
+        try {
+            try (Writer out = new OutputStreamWriter(new FileOutputStream(file), StandardCharsets.UTF_8)) {
+                report.write(out);
+            }
+            return LoadTestReport.read(file);
+        } finally {
+            file.delete();
+        }
+    }
+}
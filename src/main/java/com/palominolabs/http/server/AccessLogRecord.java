@@ -0,0 +1,141 @@
+package com.palominolabs.http.server;
+
+import java.net.InetSocketAddress;
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import javax.annotation.concurrent.Immutable;
+import org.eclipse.jetty.http.HttpHeader;
+import org.eclipse.jetty.server.Request;
+import org.eclipse.jetty.server.Response;
+
+/**
+ * One request as recorded by a {@link BinaryAccessLog} and read back by a {@link BinaryAccessLogReader}. Text fields
+ * may have been truncated to {@link BinaryAccessLogConfig#getMaxFieldBytes()}.
+ */
+@Immutable
+public final class AccessLogRecord {
+
+    private static final byte[] NO_ADDRESS = new byte[0];
+
+    private final long timestampMillis;
+    private final int durationMillis;
+    private final int status;
+    private final long responseBytes;
+    private final byte[] remoteAddress;
+    @Nullable
+    private final String method;
+    @Nullable
+    private final String uri;
+    @Nullable
+    private final String protocol;
+    @Nullable
+    private final String remoteUser;
+    @Nullable
+    private final String referer;
+    @Nullable
+    private final String userAgent;
+
+    AccessLogRecord(long timestampMillis, int durationMillis, int status, long responseBytes, byte[] remoteAddress,
+        @Nullable String method, @Nullable String uri, @Nullable String protocol, @Nullable String remoteUser,
+        @Nullable String referer, @Nullable String userAgent) {
+        this.timestampMillis = timestampMillis;
+        this.durationMillis = durationMillis;
+        this.status = status;
+        this.responseBytes = responseBytes;
+        this.remoteAddress = remoteAddress;
+        this.method = method;
+        this.uri = uri;
+        this.protocol = protocol;
+        this.remoteUser = remoteUser;
+        this.referer = referer;
+        this.userAgent = userAgent;
+    }
+
+    /**
+     * Copy what's needed from a completed request, since Jetty recycles the request once logging is done.
+     */
+    static AccessLogRecord of(Request request, Response response) {
+        InetSocketAddress address = request.getRemoteInetSocketAddress();
+        byte[] addressBytes = address == null || address.getAddress() == null ? NO_ADDRESS
+            : address.getAddress().getAddress();
+
+        return new AccessLogRecord(request.getTimeStamp(),
+            (int) Math.min(Integer.MAX_VALUE, System.currentTimeMillis() - request.getTimeStamp()),
+            response.getCommittedMetaData().getStatus(), response.getHttpChannel().getBytesWritten(), addressBytes,
+            request.getMethod(), request.getOriginalURI(), request.getProtocol(), request.getRemoteUser(),
+            request.getHeader(HttpHeader.REFERER.asString()), request.getHeader(HttpHeader.USER_AGENT.asString()));
+    }
+
+    /**
+     * @return when the server started reading the request, in epoch millis
+     */
+    public long getTimestampMillis() {
+        return timestampMillis;
+    }
+
+    /**
+     * @return millis from when the server started reading the request until it was logged
+     */
+    public int getDurationMillis() {
+        return durationMillis;
+    }
+
+    public int getStatus() {
+        return status;
+    }
+
+    /**
+     * @return bytes written to the connection for the response, including headers
+     */
+    public long getResponseBytes() {
+        return responseBytes;
+    }
+
+    /**
+     * @return the client's IPv4 or IPv6 address, or an empty array if unknown
+     */
+    @Nonnull
+    public byte[] getRemoteAddress() {
+        return remoteAddress.clone();
+    }
+
+    @Nullable
+    public String getMethod() {
+        return method;
+    }
+
+    /**
+     * @return the request target as sent, including any query string
+     */
+    @Nullable
+    public String getUri() {
+        return uri;
+    }
+
+    @Nullable
+    public String getProtocol() {
+        return protocol;
+    }
+
+    @Nullable
+    public String getRemoteUser() {
+        return remoteUser;
+    }
+
+    @Nullable
+    public String getReferer() {
+        return referer;
+    }
+
+    @Nullable
+    public String getUserAgent() {
+        return userAgent;
+    }
+
+    /**
+     * For the writer, which reads the address without copying it.
+     */
+    byte[] remoteAddressBytes() {
+        return remoteAddress;
+    }
+}
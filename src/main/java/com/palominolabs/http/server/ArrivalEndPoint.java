@@ -0,0 +1,50 @@
+package com.palominolabs.http.server;
+
+import java.nio.channels.SelectionKey;
+import java.nio.channels.SocketChannel;
+import javax.annotation.Nullable;
+import org.eclipse.jetty.io.Connection;
+import org.eclipse.jetty.io.ManagedSelector;
+import org.eclipse.jetty.io.SocketChannelEndPoint;
+import org.eclipse.jetty.io.ssl.SslConnection;
+import org.eclipse.jetty.util.thread.Scheduler;
+
+/**
+ * A socket end point that tells its {@link ArrivalHttpConnection} when the selector sees bytes to read. That happens on
+ * the selector thread, before the work of reading them is queued for a pool thread, so the connection knows how long a
+ * request waited for a thread.
+ *
+ * The HTTP connection is found through the end point's connection rather than the other way around: behind the PROXY
+ * protocol the HTTP connection's end point doesn't lead back to this one.
+ */
+final class ArrivalEndPoint extends SocketChannelEndPoint {
+
+    private final long acceptedNanos = System.nanoTime();
+
+    ArrivalEndPoint(SocketChannel channel, ManagedSelector selector, SelectionKey key, Scheduler scheduler) {
+        super(channel, selector, key, scheduler);
+    }
+
+    @Override
+    public Runnable onSelected() {
+        if ((_key.readyOps() & SelectionKey.OP_READ) != 0) {
+            ArrivalHttpConnection connection = getHttpConnection();
+            if (connection != null) {
+                connection.bytesSelected(acceptedNanos, System.nanoTime());
+            }
+        }
+        return super.onSelected();
+    }
+
+    /**
+     * @return the HTTP connection, or null while a PROXY header is still being read
+     */
+    @Nullable
+    private ArrivalHttpConnection getHttpConnection() {
+        Connection connection = getConnection();
+        if (connection instanceof SslConnection) {
+            connection = ((SslConnection) connection).getDecryptedEndPoint().getConnection();
+        }
+        return connection instanceof ArrivalHttpConnection ? (ArrivalHttpConnection) connection : null;
+    }
+}
@@ -0,0 +1,88 @@
+package com.palominolabs.http.server;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import org.eclipse.jetty.http.HttpCompliance;
+import org.eclipse.jetty.io.Connection;
+import org.eclipse.jetty.io.EndPoint;
+import org.eclipse.jetty.server.Connector;
+import org.eclipse.jetty.server.HttpConfiguration;
+import org.eclipse.jetty.server.HttpConnection;
+import org.eclipse.jetty.server.Request;
+
+/**
+ * An HttpConnection that knows when its current request arrived, for request deadlines and timing.
+ *
+ * Jetty's own request time stamp is taken once a pool thread has picked up the connection and parsed the request, so
+ * it leaves out the time the request spent waiting for a thread. Instead, an {@link ArrivalEndPoint} records when the
+ * selector saw bytes to read. A request that was read without the selector, e.g. a pipelined request already in the
+ * buffer, arrived when it was first asked about.
+ */
+final class ArrivalHttpConnection extends HttpConnection {
+
+    private volatile long acceptedNanos;
+    private volatile long selectedNanos;
+    private volatile long arrivalNanos;
+    private volatile boolean completedRequest;
+
+    ArrivalHttpConnection(HttpConfiguration config, Connector connector, EndPoint endPoint, HttpCompliance compliance,
+        boolean recordComplianceViolations) {
+        super(config, connector, endPoint, compliance, recordComplianceViolations);
+    }
+
+    /**
+     * @param request a request
+     * @return the connection the request arrived on, or null if it didn't arrive on one of these, e.g. on a
+     * LocalConnector
+     */
+    @Nullable
+    static ArrivalHttpConnection of(@Nonnull Request request) {
+        Connection connection = request.getHttpChannel().getEndPoint().getConnection();
+        return connection instanceof ArrivalHttpConnection ? (ArrivalHttpConnection) connection : null;
+    }
+
+    /**
+     * Called on the selector thread.
+     *
+     * @param acceptedNanos System.nanoTime() when the connection was accepted
+     * @param nowNanos      System.nanoTime() now
+     */
+    void bytesSelected(long acceptedNanos, long nowNanos) {
+        this.acceptedNanos = acceptedNanos;
+        selectedNanos = nowNanos;
+    }
+
+    /**
+     * @return System.nanoTime() when the current request arrived
+     */
+    long getArrivalNanos() {
+        long arrival = arrivalNanos;
+        if (arrival == 0) {
+            long selected = selectedNanos;
+            arrival = selected == 0 ? System.nanoTime() : selected;
+            arrivalNanos = arrival;
+        }
+        return arrival;
+    }
+
+    /**
+     * @return for the first request on the connection, the time from accepting the connection to the request arriving,
+     * which includes any PROXY header and TLS handshake; otherwise -1
+     */
+    long getAcceptNanos() {
+        long accepted = acceptedNanos;
+        if (completedRequest || accepted == 0) {
+            return -1;
+        }
+        return Math.max(0, getArrivalNanos() - accepted);
+    }
+
+    @Override
+    public void onCompleted() {
+        // the next request is read either after the selector sees it, or right away if it is already buffered
+        completedRequest = true;
+        selectedNanos = 0;
+        arrivalNanos = 0;
+        super.onCompleted();
+    }
+}
@@ -0,0 +1,32 @@
+package com.palominolabs.http.server;
+
+import java.nio.channels.SelectionKey;
+import java.nio.channels.SocketChannel;
+import java.util.concurrent.Executor;
+import javax.annotation.Nullable;
+import org.eclipse.jetty.io.ByteBufferPool;
+import org.eclipse.jetty.io.ChannelEndPoint;
+import org.eclipse.jetty.io.ManagedSelector;
+import org.eclipse.jetty.server.ConnectionFactory;
+import org.eclipse.jetty.server.Server;
+import org.eclipse.jetty.server.ServerConnector;
+import org.eclipse.jetty.util.thread.Scheduler;
+
+/**
+ * A ServerConnector whose end points are {@link ArrivalEndPoint}s, so that its {@link ArrivalHttpConnection}s know when
+ * requests arrive.
+ */
+class ArrivalServerConnector extends ServerConnector {
+
+    ArrivalServerConnector(Server server, @Nullable Executor executor, @Nullable Scheduler scheduler,
+        ByteBufferPool byteBufferPool, int acceptors, int selectors, ConnectionFactory... connectionFactories) {
+        super(server, executor, scheduler, byteBufferPool, acceptors, selectors, connectionFactories);
+    }
+
+    @Override
+    protected ChannelEndPoint newEndPoint(SocketChannel channel, ManagedSelector selector, SelectionKey key) {
+        ArrivalEndPoint endPoint = new ArrivalEndPoint(channel, selector, key, getScheduler());
+        endPoint.setIdleTimeout(getIdleTimeout());
+        return endPoint;
+    }
+}
@@ -0,0 +1,277 @@
+package com.palominolabs.http.server;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.concurrent.atomic.AtomicLong;
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import javax.annotation.concurrent.ThreadSafe;
+import org.eclipse.jetty.server.Request;
+import org.eclipse.jetty.server.RequestLog;
+import org.eclipse.jetty.server.Response;
+import org.eclipse.jetty.util.component.AbstractLifeCycle;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * An access log that writes binary records to memory-mapped segment files. See {@link BinaryAccessLogConfig}.
+ *
+ * Request threads only copy the request's fields into an {@link AccessLogRecord} and add it to a
+ * {@link SingleConsumerQueue}. Its writer thread encodes records into the current segment and starts a new segment
+ * when it is full. Each record's length is written after its body, so a segment can be read while it is being written.
+ * A record that can't be written is logged and dropped.
+ *
+ * Segment layout, all big endian:
+ *
+ * - header: int magic ("JHAL"), short version, short reserved, long creation time in epoch millis
+ * - records, each: int record length including this field, long timestamp millis, int duration millis, short status,
+ * byte address length, 16 bytes of address, long response bytes, then method, URI, protocol, remote user, referer
+ * and user agent, each as a short byte count (-1 for none) followed by that many bytes of UTF-8
+ * - a record length of 0, or the end of the file, ends the segment
+ */
+@ThreadSafe
+public final class BinaryAccessLog extends AbstractLifeCycle implements RequestLog {
+
+    private static final Logger logger = LoggerFactory.getLogger(BinaryAccessLog.class);
+
+    static final int MAGIC = 0x4A48414C;
+    static final short VERSION = 1;
+    static final int SEGMENT_HEADER_BYTES = 16;
+    static final int ADDRESS_BYTES = 16;
+    static final int FIXED_RECORD_BYTES = 4 + 8 + 4 + 2 + 1 + ADDRESS_BYTES + 8;
+    static final int TEXT_FIELDS = 6;
+    static final String SEGMENT_SUFFIX = ".bal";
+
+    private final File directory;
+    private final int segmentSizeBytes;
+    private final int maxSegments;
+    private final int maxFieldBytes;
+
+    private final SingleConsumerQueue<AccessLogRecord> queue;
+    private final AtomicLong writtenRecords = new AtomicLong();
+    private final AtomicLong droppedRecords = new AtomicLong();
+    private final AtomicLong segments = new AtomicLong();
+
+    // only used by the writer thread
+
+    private final ByteBuffer scratch;
+    private final Deque<File> segmentFiles = new ArrayDeque<>();
+    private int segmentSequence;
+    @Nullable
+    private RandomAccessFile segmentFile;
+    @Nullable
+    private MappedByteBuffer segment;
+
+    BinaryAccessLog(@Nonnull BinaryAccessLogConfig config) {
+        this.directory = config.getDirectory();
+        this.segmentSizeBytes = config.getSegmentSizeBytes();
+        this.maxSegments = config.getMaxSegments();
+        this.maxFieldBytes = config.getMaxFieldBytes();
+        this.scratch = ByteBuffer.allocate(FIXED_RECORD_BYTES + TEXT_FIELDS * (2 + maxFieldBytes));
+        // drain what's left after stopping
+        this.queue = new SingleConsumerQueue<>("binary-access-log-writer", config.getQueueCapacity(), true,
+            new SingleConsumerQueue.Sink<AccessLogRecord>() {
+                @Override
+                public void accept(@Nonnull AccessLogRecord record) {
+                    try {
+                        write(record);
+                    } catch (RuntimeException e) {
+                        // the segment may be part written, so start a fresh one for the next record
+                        logger.warn("Could not write access log record", e);
+                        droppedRecords.incrementAndGet();
+                        closeSegment();
+                    }
+                }
+
+                @Override
+                public void idle() {
+                }
+
+                @Override
+                public void stopped() {
+                    closeSegment();
+                }
+            });
+    }
+
+    @Override
+    protected void doStart() throws Exception {
+        if (!directory.isDirectory() && !directory.mkdirs()) {
+            throw new IOException("Could not create access log directory " + directory);
+        }
+
+        // segments left by earlier runs count towards maxSegments, and are deleted first
+        segmentFiles.clear();
+        segmentFiles.addAll(BinaryAccessLogReader.listSegments(directory));
+
+        queue.start();
+    }
+
+    @Override
+    protected void doStop() throws Exception {
+        queue.stop();
+    }
+
+    @Override
+    public void log(Request request, Response response) {
+        if (queue.isRunning()) {
+            queue.add(AccessLogRecord.of(request, response));
+        }
+    }
+
+    /**
+     * @return records written to segments
+     */
+    public long getWrittenRecords() {
+        return writtenRecords.get();
+    }
+
+    /**
+     * @return records dropped because the queue was full, a record didn't fit in a segment, or a write failed
+     */
+    public long getDroppedRecords() {
+        return droppedRecords.get() + queue.getDropped();
+    }
+
+    /**
+     * @return segments started since the log was started
+     */
+    public long getSegments() {
+        return segments.get();
+    }
+
+    private void write(AccessLogRecord record) {
+        encode(record);
+        int length = scratch.position();
+        if (length > segmentSizeBytes - SEGMENT_HEADER_BYTES) {
+            droppedRecords.incrementAndGet();
+            return;
+        }
+
+        try {
+            if (segment == null || segment.remaining() < length) {
+                closeSegment();
+                openSegment();
+            }
+        } catch (IOException e) {
+            logger.warn("Could not start access log segment in " + directory, e);
+            closeSegment();
+            droppedRecords.incrementAndGet();
+            return;
+        }
+
+        // write the length last so readers never see part of a record
+        int start = segment.position();
+        scratch.flip();
+        scratch.position(4);
+        segment.position(start + 4);
+        segment.put(scratch);
+        segment.putInt(start, length);
+        writtenRecords.incrementAndGet();
+    }
+
+    private void encode(AccessLogRecord record) {
+        scratch.clear();
+        scratch.putInt(0);
+        scratch.putLong(record.getTimestampMillis());
+        scratch.putInt(record.getDurationMillis());
+        scratch.putShort((short) record.getStatus());
+        byte[] address = record.remoteAddressBytes();
+        scratch.put((byte) address.length);
+        scratch.put(address);
+        for (int i = address.length; i < ADDRESS_BYTES; i++) {
+            scratch.put((byte) 0);
+        }
+        scratch.putLong(record.getResponseBytes());
+        putText(record.getMethod());
+        putText(record.getUri());
+        putText(record.getProtocol());
+        putText(record.getRemoteUser());
+        putText(record.getReferer());
+        putText(record.getUserAgent());
+    }
+
+    private void putText(@Nullable String text) {
+        if (text == null) {
+            scratch.putShort((short) -1);
+            return;
+        }
+        byte[] bytes = text.getBytes(StandardCharsets.UTF_8);
+        int length = truncatedLength(bytes, maxFieldBytes);
+        scratch.putShort((short) length);
+        scratch.put(bytes, 0, length);
+    }
+
+    /**
+     * @param utf8     UTF-8 bytes
+     * @param maxBytes max bytes to keep
+     * @return length of the longest prefix of at most maxBytes that doesn't split a code point
+     */
+    static int truncatedLength(byte[] utf8, int maxBytes) {
+        if (utf8.length <= maxBytes) {
+            return utf8.length;
+        }
+        int length = maxBytes;
+        // back up while the first byte cut off is a continuation byte (10xxxxxx)
+        while (length > 0 && (utf8[length] & 0xC0) == 0x80) {
+            length--;
+        }
+        return length;
+    }
+
+    private void openSegment() throws IOException {
+        long now = System.currentTimeMillis();
+        // zero padded so that names sort in the order segments were written
+        File file = new File(directory, String.format("access-%013d-%06d%s", now, segmentSequence++, SEGMENT_SUFFIX));
+        RandomAccessFile randomAccessFile = new RandomAccessFile(file, "rw");
+        try {
+            segment = randomAccessFile.getChannel().map(FileChannel.MapMode.READ_WRITE, 0, segmentSizeBytes);
+        } catch (IOException e) {
+            randomAccessFile.close();
+            throw e;
+        }
+        segmentFile = randomAccessFile;
+        segment.putInt(MAGIC);
+        segment.putShort(VERSION);
+        segment.putShort((short) 0);
+        segment.putLong(now);
+        segments.incrementAndGet();
+
+        segmentFiles.addLast(file);
+        while (maxSegments != -1 && segmentFiles.size() > maxSegments) {
+            File oldest = segmentFiles.removeFirst();
+            if (!oldest.delete()) {
+                logger.warn("Could not delete old access log segment " + oldest);
+            }
+        }
+    }
+
+    private void closeSegment() {
+        if (segmentFile == null) {
+            return;
+        }
+        try {
+            int written = segment.position();
+            segment.force();
+            // the rest of the mapping is never touched again, so the file can shrink under it
+            segmentFile.getChannel().truncate(written);
+        } catch (IOException e) {
+            logger.debug("Could not truncate access log segment", e);
+        } finally {
+            try {
+                segmentFile.close();
+            } catch (IOException e) {
+                logger.debug("Could not close access log segment", e);
+            }
+            segmentFile = null;
+            segment = null;
+        }
+    }
+}
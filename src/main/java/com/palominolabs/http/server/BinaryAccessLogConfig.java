@@ -0,0 +1,145 @@
+package com.palominolabs.http.server;
+
+import java.io.File;
+import javax.annotation.Nonnull;
+import javax.annotation.concurrent.NotThreadSafe;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkNotNull;
+
+/**
+ * Config for a {@link BinaryAccessLog}, which replaces logback-access when set on {@link HttpServerWrapperConfig}.
+ *
+ * Requests are written as compact binary records to memory-mapped segment files in a directory. A new segment is
+ * started when the current one is full. Use {@link BinaryAccessLogReader} to convert segments to combined log format
+ * text.
+ */
+@NotThreadSafe
+public final class BinaryAccessLogConfig {
+
+    @Nonnull
+    private final File directory;
+
+    private int segmentSizeBytes = 64 * 1024 * 1024;
+
+    private int maxSegments = -1;
+
+    private int queueCapacity = 64 * 1024;
+
+    private int maxFieldBytes = 2048;
+
+    /**
+     * @param directory directory to write segments to. It is created if it doesn't exist.
+     */
+    public BinaryAccessLogConfig(@Nonnull File directory) {
+        this.directory = checkNotNull(directory);
+    }
+
+    @Nonnull
+    public File getDirectory() {
+        return directory;
+    }
+
+    public int getSegmentSizeBytes() {
+        return segmentSizeBytes;
+    }
+
+    /**
+     * Default is 64 MiB. The file is truncated to the bytes actually written when the segment is closed.
+     *
+     * @param segmentSizeBytes size each segment file is mapped with
+     */
+    public void setSegmentSizeBytes(int segmentSizeBytes) {
+        checkArgument(segmentSizeBytes >= 64 * 1024, "Segment size must be at least 64k");
+        this.segmentSizeBytes = segmentSizeBytes;
+    }
+
+    public int getMaxSegments() {
+        return maxSegments;
+    }
+
+    /**
+     * Once the directory holds more than this many segments, the oldest are deleted, including segments from earlier
+     * runs. Default is -1 (keep all).
+     *
+     * @param maxSegments segments to keep, or -1 to keep all
+     */
+    public void setMaxSegments(int maxSegments) {
+        checkArgument(maxSegments == -1 || maxSegments > 0, "Max segments must be -1 or positive");
+        this.maxSegments = maxSegments;
+    }
+
+    public int getQueueCapacity() {
+        return queueCapacity;
+    }
+
+    /**
+     * Records wait in a queue for the writer thread. If the writer falls this far behind, further records are dropped
+     * and counted rather than slowing down requests. Default is 65536.
+     *
+     * @param queueCapacity max records waiting to be written
+     */
+    public void setQueueCapacity(int queueCapacity) {
+        checkArgument(queueCapacity > 0, "Queue capacity must be positive");
+        this.queueCapacity = queueCapacity;
+    }
+
+    public int getMaxFieldBytes() {
+        return maxFieldBytes;
+    }
+
+    /**
+     * Longer URIs, referers, user agents etc. are truncated to this many bytes of UTF-8. Default is 2048.
+     *
+     * @param maxFieldBytes max bytes of each text field
+     */
+    public void setMaxFieldBytes(int maxFieldBytes) {
+        checkArgument(maxFieldBytes > 0 && maxFieldBytes <= Short.MAX_VALUE,
+            "Max field bytes must be positive and at most %s", Short.MAX_VALUE);
+        this.maxFieldBytes = maxFieldBytes;
+    }
+
+    /**
+     * @param segmentSizeBytes segment size
+     * @return this
+     * @see BinaryAccessLogConfig#setSegmentSizeBytes(int)
+     */
+    @Nonnull
+    public BinaryAccessLogConfig withSegmentSizeBytes(int segmentSizeBytes) {
+        setSegmentSizeBytes(segmentSizeBytes);
+        return this;
+    }
+
+    /**
+     * @param maxSegments max segments
+     * @return this
+     * @see BinaryAccessLogConfig#setMaxSegments(int)
+     */
+    @Nonnull
+    public BinaryAccessLogConfig withMaxSegments(int maxSegments) {
+        setMaxSegments(maxSegments);
+        return this;
+    }
+
+    /**
+     * @param queueCapacity queue capacity
+     * @return this
+     * @see BinaryAccessLogConfig#setQueueCapacity(int)
+     */
+    @Nonnull
+    public BinaryAccessLogConfig withQueueCapacity(int queueCapacity) {
+        setQueueCapacity(queueCapacity);
+        return this;
+    }
+
+    /**
+     * @param maxFieldBytes max field bytes
+     * @return this
+     * @see BinaryAccessLogConfig#setMaxFieldBytes(int)
+     */
+    @Nonnull
+    public BinaryAccessLogConfig withMaxFieldBytes(int maxFieldBytes) {
+        setMaxFieldBytes(maxFieldBytes);
+        return this;
+    }
+}
@@ -0,0 +1,187 @@
+package com.palominolabs.http.server;
+
+import com.google.common.collect.Lists;
+import java.io.File;
+import java.io.FilenameFilter;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.RandomAccessFile;
+import java.io.Writer;
+import java.net.InetAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.text.SimpleDateFormat;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.List;
+import java.util.Locale;
+import java.util.TimeZone;
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+
+/**
+ * Reads segments written by a {@link BinaryAccessLog}, and converts them to combined log format text.
+ *
+ * Run it from the command line with segment files or directories of segments as arguments to print them to stdout:
+ *
+ * <pre>
+ * java -cp ... com.palominolabs.http.server.BinaryAccessLogReader /var/log/app/access &gt; access.log
+ * </pre>
+ */
+public final class BinaryAccessLogReader {
+
+    private BinaryAccessLogReader() {
+    }
+
+    public static void main(String[] args) throws IOException {
+        if (args.length == 0) {
+            System.err.println("Usage: BinaryAccessLogReader <segment file or directory>...");
+            System.exit(1);
+        }
+
+        Writer out = new OutputStreamWriter(System.out, StandardCharsets.UTF_8);
+        for (String arg : args) {
+            File file = new File(arg);
+            for (File segment : file.isDirectory() ? listSegments(file) : Lists.newArrayList(file)) {
+                exportCombined(segment, out);
+            }
+        }
+        out.flush();
+    }
+
+    /**
+     * @param directory a directory of segments
+     * @return the segments in the directory, in the order they were written
+     */
+    @Nonnull
+    public static List<File> listSegments(@Nonnull File directory) throws IOException {
+        File[] files = directory.listFiles(new FilenameFilter() {
+            @Override
+            public boolean accept(File dir, String name) {
+                return name.endsWith(BinaryAccessLog.SEGMENT_SUFFIX);
+            }
+        });
+        if (files == null) {
+            throw new IOException("Could not list " + directory);
+        }
+        Arrays.sort(files);
+        return Lists.newArrayList(files);
+    }
+
+    /**
+     * @param segment a segment file, which may still be being written
+     * @return the complete records in the segment
+     * @throws IOException if the file couldn't be read or isn't a segment
+     */
+    @Nonnull
+    public static List<AccessLogRecord> read(@Nonnull File segment) throws IOException {
+        ByteBuffer buffer;
+        try (RandomAccessFile file = new RandomAccessFile(segment, "r")) {
+            buffer = file.getChannel().map(FileChannel.MapMode.READ_ONLY, 0, file.length());
+        }
+
+        if (buffer.remaining() < BinaryAccessLog.SEGMENT_HEADER_BYTES || buffer.getInt() != BinaryAccessLog.MAGIC) {
+            throw new IOException(segment + " is not an access log segment");
+        }
+        short version = buffer.getShort();
+        if (version != BinaryAccessLog.VERSION) {
+            throw new IOException(segment + " has unsupported version " + version);
+        }
+        buffer.position(BinaryAccessLog.SEGMENT_HEADER_BYTES);
+
+        List<AccessLogRecord> records = Lists.newArrayList();
+        while (buffer.remaining() >= 4) {
+            int start = buffer.position();
+            int length = buffer.getInt(start);
+            if (length == 0) {
+                break;
+            }
+            if (length < BinaryAccessLog.FIXED_RECORD_BYTES || length > buffer.remaining()) {
+                throw new IOException(segment + " has a corrupt record at offset " + start);
+            }
+            buffer.position(start + 4);
+            records.add(readRecord(buffer));
+            buffer.position(start + length);
+        }
+        return records;
+    }
+
+    /**
+     * Write the records of a segment as combined log format lines. Times are in UTC, and the size is the bytes
+     * written for the response including headers, as in Jetty's own NCSA request log.
+     *
+     * @param segment segment file
+     * @param out     where to write the lines
+     * @throws IOException if the segment couldn't be read or the lines couldn't be written
+     */
+    public static void exportCombined(@Nonnull File segment, @Nonnull Appendable out) throws IOException {
+        SimpleDateFormat dateFormat = new SimpleDateFormat("dd/MMM/yyyy:HH:mm:ss Z", Locale.US);
+        dateFormat.setTimeZone(TimeZone.getTimeZone("UTC"));
+
+        StringBuilder line = new StringBuilder();
+        for (AccessLogRecord record : read(segment)) {
+            line.setLength(0);
+            byte[] address = record.getRemoteAddress();
+            line.append(address.length == 0 ? "-" : InetAddress.getByAddress(address).getHostAddress())
+                .append(" - ")
+                .append(record.getRemoteUser() == null ? "-" : record.getRemoteUser())
+                .append(" [")
+                .append(dateFormat.format(new Date(record.getTimestampMillis())))
+                .append("] \"");
+            appendEscaped(line, record.getMethod());
+            line.append(' ');
+            appendEscaped(line, record.getUri());
+            line.append(' ');
+            appendEscaped(line, record.getProtocol());
+            line.append("\" ")
+                .append(record.getStatus())
+                .append(' ')
+                .append(record.getResponseBytes())
+                .append(" \"");
+            appendEscaped(line, record.getReferer() == null ? "-" : record.getReferer());
+            line.append("\" \"");
+            appendEscaped(line, record.getUserAgent() == null ? "-" : record.getUserAgent());
+            line.append("\"\n");
+            out.append(line);
+        }
+    }
+
+    private static AccessLogRecord readRecord(ByteBuffer buffer) {
+        long timestampMillis = buffer.getLong();
+        int durationMillis = buffer.getInt();
+        int status = buffer.getShort() & 0xFFFF;
+        byte[] address = new byte[buffer.get()];
+        buffer.get(address);
+        buffer.position(buffer.position() + BinaryAccessLog.ADDRESS_BYTES - address.length);
+        long responseBytes = buffer.getLong();
+
+        return new AccessLogRecord(timestampMillis, durationMillis, status, responseBytes, address, readText(buffer),
+            readText(buffer), readText(buffer), readText(buffer), readText(buffer), readText(buffer));
+    }
+
+    @Nullable
+    private static String readText(ByteBuffer buffer) {
+        short length = buffer.getShort();
+        if (length == -1) {
+            return null;
+        }
+        byte[] bytes = new byte[length];
+        buffer.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    private static void appendEscaped(StringBuilder line, @Nullable String text) {
+        if (text == null) {
+            line.append('-');
+            return;
+        }
+        for (int i = 0; i < text.length(); i++) {
+            char c = text.charAt(i);
+            if (c == '"' || c == '\\') {
+                line.append('\\');
+            }
+            line.append(c);
+        }
+    }
+}
@@ -0,0 +1,162 @@
+package com.palominolabs.http.server;
+
+import java.util.Objects;
+import javax.annotation.Nullable;
+import javax.annotation.concurrent.NotThreadSafe;
+
+import static com.google.common.base.Preconditions.checkArgument;
+
+/**
+ * Config for the {@link InstrumentedByteBufferPool} shared by all connectors of a {@link HttpServerWrapper}. The
+ * defaults match the pool Jetty would otherwise create for each connector, except that there is one pool per server.
+ */
+@NotThreadSafe
+public final class ByteBufferPoolConfig {
+
+    private int bucketSizeIncrement = 1024;
+
+    private int maxPooledBufferSize = 64 * 1024;
+
+    private long maxRetainedHeapBytes = -1;
+
+    private long maxRetainedDirectBytes = -1;
+
+    @Nullable
+    private Boolean direct = null;
+
+    public int getBucketSizeIncrement() {
+        return bucketSizeIncrement;
+    }
+
+    /**
+     * Buffers are pooled in buckets whose capacities are multiples of this size. Requests are rounded up to the next
+     * bucket size. Default is 1024.
+     *
+     * @param bucketSizeIncrement bucket size increment in bytes, must be positive
+     */
+    public void setBucketSizeIncrement(int bucketSizeIncrement) {
+        checkArgument(bucketSizeIncrement > 0, "Bucket size increment must be positive");
+        this.bucketSizeIncrement = bucketSizeIncrement;
+    }
+
+    public int getMaxPooledBufferSize() {
+        return maxPooledBufferSize;
+    }
+
+    /**
+     * Buffers larger than this are allocated on demand and never retained. Default is 64k.
+     *
+     * @param maxPooledBufferSize max pooled buffer size in bytes, must be positive
+     */
+    public void setMaxPooledBufferSize(int maxPooledBufferSize) {
+        checkArgument(maxPooledBufferSize > 0, "Max pooled buffer size must be positive");
+        this.maxPooledBufferSize = maxPooledBufferSize;
+    }
+
+    public long getMaxRetainedHeapBytes() {
+        return maxRetainedHeapBytes;
+    }
+
+    /**
+     * Once the pool holds this many bytes of idle heap buffers, released heap buffers are dropped for the GC to collect
+     * instead of being retained. Default is -1 (no limit).
+     *
+     * @param maxRetainedHeapBytes max bytes of idle heap buffers to retain, -1 for no limit
+     */
+    public void setMaxRetainedHeapBytes(long maxRetainedHeapBytes) {
+        checkArgument(maxRetainedHeapBytes >= -1, "Max retained heap bytes must be -1 or non-negative");
+        this.maxRetainedHeapBytes = maxRetainedHeapBytes;
+    }
+
+    public long getMaxRetainedDirectBytes() {
+        return maxRetainedDirectBytes;
+    }
+
+    /**
+     * Like {@link ByteBufferPoolConfig#setMaxRetainedHeapBytes(long)}, but for direct buffers. Default is -1 (no
+     * limit).
+     *
+     * @param maxRetainedDirectBytes max bytes of idle direct buffers to retain, -1 for no limit
+     */
+    public void setMaxRetainedDirectBytes(long maxRetainedDirectBytes) {
+        checkArgument(maxRetainedDirectBytes >= -1, "Max retained direct bytes must be -1 or non-negative");
+        this.maxRetainedDirectBytes = maxRetainedDirectBytes;
+    }
+
+    @Nullable
+    public Boolean getDirect() {
+        return direct;
+    }
+
+    /**
+     * Jetty asks for direct or heap buffers depending on what the buffer is used for. Set this to force all buffers to
+     * be direct (off-heap) or heap buffers instead. Default is null (use whatever Jetty asks for).
+     *
+     * @param direct true for direct buffers, false for heap buffers, null to let Jetty choose
+     */
+    public void setDirect(@Nullable Boolean direct) {
+        this.direct = direct;
+    }
+
+    /**
+     * @param bucketSizeIncrement bucket size increment
+     * @return this
+     * @see ByteBufferPoolConfig#setBucketSizeIncrement(int)
+     */
+    public ByteBufferPoolConfig withBucketSizeIncrement(int bucketSizeIncrement) {
+        setBucketSizeIncrement(bucketSizeIncrement);
+        return this;
+    }
+
+    /**
+     * @param maxPooledBufferSize max pooled buffer size
+     * @return this
+     * @see ByteBufferPoolConfig#setMaxPooledBufferSize(int)
+     */
+    public ByteBufferPoolConfig withMaxPooledBufferSize(int maxPooledBufferSize) {
+        setMaxPooledBufferSize(maxPooledBufferSize);
+        return this;
+    }
+
+    /**
+     * @param maxRetainedHeapBytes max retained heap bytes
+     * @return this
+     * @see ByteBufferPoolConfig#setMaxRetainedHeapBytes(long)
+     */
+    public ByteBufferPoolConfig withMaxRetainedHeapBytes(long maxRetainedHeapBytes) {
+        setMaxRetainedHeapBytes(maxRetainedHeapBytes);
+        return this;
+    }
+
+    /**
+     * @param maxRetainedDirectBytes max retained direct bytes
+     * @return this
+     * @see ByteBufferPoolConfig#setMaxRetainedDirectBytes(long)
+     */
+    public ByteBufferPoolConfig withMaxRetainedDirectBytes(long maxRetainedDirectBytes) {
+        setMaxRetainedDirectBytes(maxRetainedDirectBytes);
+        return this;
+    }
+
+    /**
+     * @param direct direct buffer override
+     * @return this
+     * @see ByteBufferPoolConfig#setDirect(Boolean)
+     */
+    public ByteBufferPoolConfig withDirect(@Nullable Boolean direct) {
+        setDirect(direct);
+        return this;
+    }
+
+    /**
+     * @return true if every setting still has its default value
+     */
+    boolean isDefault() {
+        ByteBufferPoolConfig defaults = new ByteBufferPoolConfig();
+        return bucketSizeIncrement == defaults.bucketSizeIncrement
+            && maxPooledBufferSize == defaults.maxPooledBufferSize
+            && maxRetainedHeapBytes == defaults.maxRetainedHeapBytes
+            && maxRetainedDirectBytes == defaults.maxRetainedDirectBytes
+            && Objects.equals(direct, defaults.direct);
+    }
+}
@@ -0,0 +1,75 @@
+package com.palominolabs.http.server;
+
+import com.google.common.collect.ImmutableListMultimap;
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import javax.annotation.concurrent.Immutable;
+
+/**
+ * One request as captured by {@link TrafficCaptureConfig traffic capture} and read back by a {@link
+ * TrafficCaptureReader}.
+ */
+@Immutable
+public final class CapturedRequest {
+
+    private final long offsetNanos;
+    private final String method;
+    private final String uri;
+    private final ImmutableListMultimap<String, String> headers;
+    @Nullable
+    private final byte[] body;
+
+    public CapturedRequest(long offsetNanos, @Nonnull String method, @Nonnull String uri,
+        @Nonnull ImmutableListMultimap<String, String> headers, @Nullable byte[] body) {
+        this.offsetNanos = offsetNanos;
+        this.method = method;
+        this.uri = uri;
+        this.headers = headers;
+        this.body = body;
+    }
+
+    /**
+     * @return when the request arrived, relative to when capture started
+     */
+    public long getOffsetNanos() {
+        return offsetNanos;
+    }
+
+    @Nonnull
+    public String getMethod() {
+        return method;
+    }
+
+    /**
+     * @return the request target as sent, including any query string
+     */
+    @Nonnull
+    public String getUri() {
+        return uri;
+    }
+
+    /**
+     * @return headers in the order they were sent, without the excluded ones
+     */
+    @Nonnull
+    public ImmutableListMultimap<String, String> getHeaders() {
+        return headers;
+    }
+
+    /**
+     * @return the body, or null if bodies weren't captured or it was too long. It may be shorter than the body that
+     * was sent if the application didn't read all of it.
+     */
+    @Nullable
+    public byte[] getBody() {
+        return body == null ? null : body.clone();
+    }
+
+    /**
+     * For the writer, which reads the body without copying it.
+     */
+    @Nullable
+    byte[] bodyBytes() {
+        return body;
+    }
+}
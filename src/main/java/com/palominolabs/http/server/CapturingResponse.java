@@ -0,0 +1,148 @@
+package com.palominolabs.http.server;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.PrintWriter;
+import javax.servlet.ServletOutputStream;
+import javax.servlet.WriteListener;
+import javax.servlet.http.HttpServletResponse;
+import javax.servlet.http.HttpServletResponseWrapper;
+
+/**
+ * Passes the response body through to the wrapped response while keeping a copy of it, up to a size limit.
+ */
+final class CapturingResponse extends HttpServletResponseWrapper {
+
+    private final int maxCapturedBytes;
+
+    private final ByteArrayOutputStream captured = new ByteArrayOutputStream();
+
+    private boolean overflowed = false;
+
+    private ServletOutputStream outputStream;
+
+    private PrintWriter writer;
+
+    CapturingResponse(HttpServletResponse response, int maxCapturedBytes) {
+        super(response);
+        this.maxCapturedBytes = maxCapturedBytes;
+    }
+
+    @Override
+    public ServletOutputStream getOutputStream() throws IOException {
+        if (writer != null) {
+            throw new IllegalStateException("getWriter() has already been called");
+        }
+        if (outputStream == null) {
+            outputStream = new TeeOutputStream(super.getOutputStream());
+        }
+        return outputStream;
+    }
+
+    @Override
+    public PrintWriter getWriter() throws IOException {
+        if (outputStream != null) {
+            throw new IllegalStateException("getOutputStream() has already been called");
+        }
+        if (writer == null) {
+            // make the charset explicit in the content type, like Jetty does when it creates the writer
+            setCharacterEncoding(getCharacterEncoding());
+            writer = new PrintWriter(
+                new OutputStreamWriter(new TeeOutputStream(super.getOutputStream()), getCharacterEncoding()));
+        }
+        return writer;
+    }
+
+    @Override
+    public void flushBuffer() throws IOException {
+        if (writer != null) {
+            writer.flush();
+        }
+        super.flushBuffer();
+    }
+
+    @Override
+    public void resetBuffer() {
+        super.resetBuffer();
+        captured.reset();
+    }
+
+    @Override
+    public void reset() {
+        super.reset();
+        captured.reset();
+    }
+
+    /**
+     * Flush anything still buffered in the writer. Call once the response has been written.
+     */
+    void finish() {
+        if (writer != null) {
+            writer.flush();
+        }
+    }
+
+    /**
+     * @return true if the body was too big to capture
+     */
+    boolean isOverflowed() {
+        return overflowed;
+    }
+
+    byte[] getCapturedBody() {
+        return captured.toByteArray();
+    }
+
+    private void capture(byte[] b, int off, int len) {
+        if (overflowed) {
+            return;
+        }
+        if (captured.size() + len > maxCapturedBytes) {
+            overflowed = true;
+            captured.reset();
+            return;
+        }
+        captured.write(b, off, len);
+    }
+
+    private final class TeeOutputStream extends ServletOutputStream {
+        private final ServletOutputStream delegate;
+
+        private TeeOutputStream(ServletOutputStream delegate) {
+            this.delegate = delegate;
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            delegate.write(b);
+            capture(new byte[]{(byte) b}, 0, 1);
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            delegate.write(b, off, len);
+            capture(b, off, len);
+        }
+
+        @Override
+        public void flush() throws IOException {
+            delegate.flush();
+        }
+
+        @Override
+        public void close() throws IOException {
+            delegate.close();
+        }
+
+        @Override
+        public boolean isReady() {
+            return delegate.isReady();
+        }
+
+        @Override
+        public void setWriteListener(WriteListener writeListener) {
+            delegate.setWriteListener(writeListener);
+        }
+    }
+}
@@ -0,0 +1,55 @@
+package com.palominolabs.http.server;
+
+import java.net.InetSocketAddress;
+import javax.annotation.CheckForNull;
+import javax.annotation.Nullable;
+import javax.annotation.concurrent.Immutable;
+
+/**
+ * A connection, reported when it closes.
+ */
+@Immutable
+public final class ConnectionEvent {
+
+    @Nullable
+    private final InetSocketAddress localAddress;
+    @Nullable
+    private final InetSocketAddress remoteAddress;
+    private final long openedMillis;
+    private final long durationMillis;
+
+    ConnectionEvent(@Nullable InetSocketAddress localAddress, @Nullable InetSocketAddress remoteAddress,
+        long openedMillis, long durationMillis) {
+        this.localAddress = localAddress;
+        this.remoteAddress = remoteAddress;
+        this.openedMillis = openedMillis;
+        this.durationMillis = durationMillis;
+    }
+
+    @CheckForNull
+    public InetSocketAddress getLocalAddress() {
+        return localAddress;
+    }
+
+    @CheckForNull
+    public InetSocketAddress getRemoteAddress() {
+        return remoteAddress;
+    }
+
+    /**
+     * @return when the connection was opened, in milliseconds since the epoch
+     */
+    public long getOpenedMillis() {
+        return openedMillis;
+    }
+
+    public long getDurationMillis() {
+        return durationMillis;
+    }
+
+    @Override
+    public String toString() {
+        return "ConnectionEvent{remote=" + remoteAddress + ", local=" + localAddress + ", durationMillis="
+            + durationMillis + "}";
+    }
+}
@@ -0,0 +1,75 @@
+package com.palominolabs.http.server;
+
+import javax.net.ssl.SSLEngine;
+import javax.net.ssl.SSLSession;
+import org.eclipse.jetty.io.ChannelEndPoint;
+import org.eclipse.jetty.io.Connection;
+import org.eclipse.jetty.io.EndPoint;
+import org.eclipse.jetty.io.ssl.SslHandshakeListener;
+
+/**
+ * Added as a bean to each connector to report connections and TLS handshakes to the {@link ServerEventListener}.
+ * Jetty adds connector beans of these types as listeners to every connection the connector creates.
+ */
+final class ConnectorEventListener implements Connection.Listener, SslHandshakeListener {
+
+    private final ServerEventListener listener;
+
+    /**
+     * -1 to not report connections
+     */
+    private final long connectionThresholdMillis;
+
+    private final boolean tlsHandshakeEvents;
+
+    ConnectorEventListener(ServerEventListener listener, long connectionThresholdMillis,
+        boolean tlsHandshakeEvents) {
+        this.listener = listener;
+        this.connectionThresholdMillis = connectionThresholdMillis;
+        this.tlsHandshakeEvents = tlsHandshakeEvents;
+    }
+
+    @Override
+    public void onOpened(Connection connection) {
+    }
+
+    @Override
+    public void onClosed(Connection connection) {
+        if (connectionThresholdMillis == -1) {
+            return;
+        }
+        // only report the connection on the socket, not e.g. the HTTP connection layered over a TLS connection
+        EndPoint endPoint = connection.getEndPoint();
+        if (!(endPoint instanceof ChannelEndPoint)) {
+            return;
+        }
+
+        long openedMillis = connection.getCreatedTimeStamp();
+        long durationMillis = System.currentTimeMillis() - openedMillis;
+        if (durationMillis < connectionThresholdMillis) {
+            return;
+        }
+
+        listener.onConnection(new ConnectionEvent(endPoint.getLocalAddress(), endPoint.getRemoteAddress(),
+            openedMillis, durationMillis));
+    }
+
+    @Override
+    public void handshakeSucceeded(Event event) {
+        if (tlsHandshakeEvents) {
+            SSLEngine engine = event.getSSLEngine();
+            SSLSession session = engine.getSession();
+            listener.onTlsHandshake(new TlsHandshakeEvent(engine.getPeerHost(), engine.getPeerPort(),
+                session.getProtocol(), session.getCipherSuite(), null));
+        }
+    }
+
+    @Override
+    public void handshakeFailed(Event event, Throwable failure) {
+        if (tlsHandshakeEvents) {
+            SSLEngine engine = event.getSSLEngine();
+            listener.onTlsHandshake(new TlsHandshakeEvent(engine.getPeerHost(), engine.getPeerPort(), null, null,
+                failure));
+        }
+    }
+}
@@ -0,0 +1,61 @@
+package com.palominolabs.http.server;
+
+import javax.annotation.concurrent.Immutable;
+
+/**
+ * Counters for one listening socket of a connector with more than one shard, as of when the snapshot was taken.
+ *
+ * @see HttpServerConnectorConfig#setShards(int)
+ */
+@Immutable
+public final class ConnectorShardStats {
+
+    private final String listenHost;
+    private final int listenPort;
+    private final int shard;
+    private final long acceptedConnections;
+    private final int openConnections;
+
+    ConnectorShardStats(String listenHost, int listenPort, int shard, long acceptedConnections, int openConnections) {
+        this.listenHost = listenHost;
+        this.listenPort = listenPort;
+        this.shard = shard;
+        this.acceptedConnections = acceptedConnections;
+        this.openConnections = openConnections;
+    }
+
+    public String getListenHost() {
+        return listenHost;
+    }
+
+    public int getListenPort() {
+        return listenPort;
+    }
+
+    /**
+     * @return index of the shard, starting at 0
+     */
+    public int getShard() {
+        return shard;
+    }
+
+    /**
+     * @return connections the kernel handed to this shard since it was opened
+     */
+    public long getAcceptedConnections() {
+        return acceptedConnections;
+    }
+
+    /**
+     * @return connections of this shard that are currently open
+     */
+    public int getOpenConnections() {
+        return openConnections;
+    }
+
+    @Override
+    public String toString() {
+        return listenHost + ":" + listenPort + "#" + shard + "{accepted=" + acceptedConnections + ", open="
+            + openConnections + "}";
+    }
+}
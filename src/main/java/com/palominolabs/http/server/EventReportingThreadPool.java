@@ -0,0 +1,47 @@
+package com.palominolabs.http.server;
+
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import org.eclipse.jetty.util.thread.QueuedThreadPool;
+
+/**
+ * A QueuedThreadPool with the default settings that reports saturation and rejected jobs to the {@link
+ * ServerEventListener}.
+ */
+final class EventReportingThreadPool extends QueuedThreadPool {
+
+    private final ServerEventListener listener;
+    private final int queueThreshold;
+
+    /**
+     * True from when the queue reaches the threshold until it drops below it, so each episode is reported once
+     */
+    private final AtomicBoolean saturated = new AtomicBoolean();
+
+    EventReportingThreadPool(ServerEventListener listener, int queueThreshold) {
+        this.listener = listener;
+        this.queueThreshold = queueThreshold;
+    }
+
+    @Override
+    public void execute(Runnable job) {
+        try {
+            super.execute(job);
+        } catch (RejectedExecutionException e) {
+            listener.onThreadPool(newEvent(ThreadPoolEvent.Type.REJECTED));
+            throw e;
+        }
+
+        if (getQueueSize() >= queueThreshold) {
+            if (saturated.compareAndSet(false, true)) {
+                listener.onThreadPool(newEvent(ThreadPoolEvent.Type.SATURATED));
+            }
+        } else if (saturated.get()) {
+            saturated.set(false);
+        }
+    }
+
+    private ThreadPoolEvent newEvent(ThreadPoolEvent.Type type) {
+        return new ThreadPoolEvent(type, getThreads(), getIdleThreads(), getMaxThreads(), getQueueSize());
+    }
+}
@@ -0,0 +1,319 @@
+package com.palominolabs.http.server;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.Lists;
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+import javax.annotation.Nonnull;
+import javax.annotation.concurrent.Immutable;
+import javax.annotation.concurrent.ThreadSafe;
+import javax.servlet.Filter;
+import javax.servlet.FilterChain;
+import javax.servlet.FilterConfig;
+import javax.servlet.ServletException;
+import javax.servlet.ServletRequest;
+import javax.servlet.ServletResponse;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import org.eclipse.jetty.server.Handler;
+import org.eclipse.jetty.server.Request;
+import org.eclipse.jetty.server.RequestLog;
+import org.eclipse.jetty.server.Response;
+import org.eclipse.jetty.server.handler.ContextHandler;
+import org.eclipse.jetty.server.handler.ContextHandlerCollection;
+import org.eclipse.jetty.server.handler.HandlerCollection;
+import org.eclipse.jetty.server.handler.HandlerWrapper;
+import org.eclipse.jetty.server.handler.RequestLogHandler;
+import org.eclipse.jetty.servlet.FilterHolder;
+import org.eclipse.jetty.servlet.ServletContextHandler;
+import org.eclipse.jetty.util.component.ContainerLifeCycle;
+
+import static com.google.common.base.Preconditions.checkState;
+
+/**
+ * Measures the bytes allocated by each stage of the handler chain with the JVM's per-thread allocation counters, for
+ * allocation benchmarks and budget tests. When one of these is set, {@link HttpServerWrapper} has it
+ * {@link #instrument(Handler) instrument} the handler tree once it is built; otherwise nothing is wrapped.
+ *
+ * A stage's bytes are its own: what its nested stages allocated is subtracted. Only the thread that handles the
+ * request is measured, so work an async servlet hands to another thread isn't counted.
+ */
+@ThreadSafe
+final class HandlerAllocationProfiler {
+
+    /**
+     * Deeper stages are measured as part of the stage that contains them
+     */
+    private static final int MAX_DEPTH = 32;
+
+    private final com.sun.management.ThreadMXBean threads;
+
+    private final List<Stage> stages = Lists.newCopyOnWriteArrayList();
+    private final AtomicLong requests = new AtomicLong();
+    private final AtomicLong totalBytes = new AtomicLong();
+
+    /**
+     * Per thread: the allocated bytes counter when each stage on the stack was entered, and what its nested stages
+     * have allocated so far
+     */
+    private final ThreadLocal<Frames> frames = new ThreadLocal<Frames>() {
+        @Override
+        protected Frames initialValue() {
+            return new Frames();
+        }
+    };
+
+    HandlerAllocationProfiler() {
+        java.lang.management.ThreadMXBean bean = ManagementFactory.getThreadMXBean();
+        checkState(bean instanceof com.sun.management.ThreadMXBean
+                && ((com.sun.management.ThreadMXBean) bean).isThreadAllocatedMemorySupported(),
+            "This JVM doesn't count allocated bytes per thread");
+        threads = (com.sun.management.ThreadMXBean) bean;
+        threads.setThreadAllocatedMemoryEnabled(true);
+    }
+
+    /**
+     * Put the handler, and each handler, filter and request log in the tree under it, in its own stage. Resource
+     * contexts are measured as part of the collection that holds them. Must be called before the handlers start.
+     *
+     * @return the handler's stage
+     */
+    @Nonnull
+    Handler instrument(@Nonnull Handler handler) {
+        if (handler instanceof ServletContextHandler) {
+            // its own handlers are linked together when it starts, so only its filters get stages
+            FilterHolder[] holders = ((ServletContextHandler) handler).getServletHandler().getFilters();
+            if (holders != null) {
+                for (FilterHolder holder : holders) {
+                    Filter filter = holder.getFilter();
+                    if (filter != null) {
+                        holder.setFilter(wrap(filter.getClass().getSimpleName(), filter));
+                    }
+                }
+            }
+        } else if (handler instanceof RequestLogHandler) {
+            RequestLogHandler logHandler = (RequestLogHandler) handler;
+            RequestLog requestLog = logHandler.getRequestLog();
+            if (requestLog != null) {
+                logHandler.setRequestLog(wrap(requestLog.getClass().getSimpleName(), requestLog));
+            }
+        } else if (handler instanceof HandlerWrapper && !(handler instanceof ContextHandler)) {
+            HandlerWrapper wrapper = (HandlerWrapper) handler;
+            if (wrapper.getHandler() != null) {
+                wrapper.setHandler(instrument(wrapper.getHandler()));
+            }
+        } else if (handler instanceof HandlerCollection && !(handler instanceof ContextHandlerCollection)) {
+            HandlerCollection collection = (HandlerCollection) handler;
+            if (collection.getHandlers() != null) {
+                Handler[] children = collection.getHandlers().clone();
+                for (int i = 0; i < children.length; i++) {
+                    children[i] = instrument(children[i]);
+                }
+                collection.setHandlers(children);
+            }
+        }
+        return wrap(handler.getClass().getSimpleName(), handler);
+    }
+
+    @Nonnull
+    private Handler wrap(@Nonnull String name, @Nonnull Handler handler) {
+        final Stage stage = newStage(name);
+        HandlerWrapper wrapper = new HandlerWrapper() {
+            @Override
+            public void handle(String target, Request baseRequest, HttpServletRequest request,
+                HttpServletResponse response) throws IOException, ServletException {
+                enter();
+                try {
+                    super.handle(target, baseRequest, request, response);
+                } finally {
+                    exit(stage, true);
+                }
+            }
+        };
+        wrapper.setHandler(handler);
+        return wrapper;
+    }
+
+    @Nonnull
+    private Filter wrap(@Nonnull String name, @Nonnull final Filter filter) {
+        final Stage stage = newStage(name);
+        return new Filter() {
+            @Override
+            public void init(FilterConfig filterConfig) throws ServletException {
+                filter.init(filterConfig);
+            }
+
+            @Override
+            public void doFilter(ServletRequest request, ServletResponse response, FilterChain chain)
+                throws IOException, ServletException {
+                enter();
+                try {
+                    filter.doFilter(request, response, chain);
+                } finally {
+                    exit(stage, false);
+                }
+            }
+
+            @Override
+            public void destroy() {
+                filter.destroy();
+            }
+        };
+    }
+
+    /**
+     * @return a request log that is started and stopped with, and counts the allocations of, the given one
+     */
+    @Nonnull
+    private RequestLog wrap(@Nonnull String name, @Nonnull RequestLog requestLog) {
+        return new StageRequestLog(newStage(name), requestLog);
+    }
+
+    /**
+     * @return requests that have gone through the outermost stage
+     */
+    long getRequests() {
+        return requests.get();
+    }
+
+    /**
+     * @return bytes allocated by all stages, including writing the request log
+     */
+    long getTotalBytes() {
+        return totalBytes.get();
+    }
+
+    /**
+     * @return each stage's bytes, in the order the stages were created
+     */
+    @Nonnull
+    List<StageAllocation> getStages() {
+        ImmutableList.Builder<StageAllocation> result = ImmutableList.builder();
+        for (Stage stage : stages) {
+            result.add(new StageAllocation(stage.name, stage.calls.get(), stage.bytes.get()));
+        }
+        return result.build();
+    }
+
+    /**
+     * Start counting from zero, e.g. after a warmup
+     */
+    void reset() {
+        requests.set(0);
+        totalBytes.set(0);
+        for (Stage stage : stages) {
+            stage.calls.set(0);
+            stage.bytes.set(0);
+        }
+    }
+
+    private Stage newStage(String name) {
+        Stage stage = new Stage(name);
+        stages.add(stage);
+        return stage;
+    }
+
+    private void enter() {
+        Frames threadFrames = frames.get();
+        int depth = threadFrames.depth++;
+        if (depth < MAX_DEPTH) {
+            threadFrames.startBytes[depth] = allocatedBytes();
+            threadFrames.nestedBytes[depth] = 0;
+        }
+    }
+
+    /**
+     * @param request true if the stage is a handler, so the outermost one marks a request
+     */
+    private void exit(Stage stage, boolean request) {
+        long now = allocatedBytes();
+        Frames threadFrames = frames.get();
+        int depth = --threadFrames.depth;
+        if (depth >= MAX_DEPTH) {
+            return;
+        }
+        long inclusive = now - threadFrames.startBytes[depth];
+        stage.calls.incrementAndGet();
+        stage.bytes.addAndGet(inclusive - threadFrames.nestedBytes[depth]);
+        if (depth > 0) {
+            threadFrames.nestedBytes[depth - 1] += inclusive;
+        } else {
+            totalBytes.addAndGet(inclusive);
+            if (request) {
+                requests.incrementAndGet();
+            }
+        }
+    }
+
+    private long allocatedBytes() {
+        return threads.getThreadAllocatedBytes(Thread.currentThread().getId());
+    }
+
+    private static final class Frames {
+        private final long[] startBytes = new long[MAX_DEPTH];
+        private final long[] nestedBytes = new long[MAX_DEPTH];
+        private int depth;
+    }
+
+    private static final class Stage {
+        private final String name;
+        private final AtomicLong calls = new AtomicLong();
+        private final AtomicLong bytes = new AtomicLong();
+
+        Stage(String name) {
+            this.name = name;
+        }
+    }
+
+    private final class StageRequestLog extends ContainerLifeCycle implements RequestLog {
+        private final Stage stage;
+        private final RequestLog requestLog;
+
+        StageRequestLog(Stage stage, RequestLog requestLog) {
+            this.stage = stage;
+            this.requestLog = requestLog;
+            addBean(requestLog);
+        }
+
+        @Override
+        public void log(Request request, Response response) {
+            enter();
+            try {
+                requestLog.log(request, response);
+            } finally {
+                exit(stage, false);
+            }
+        }
+    }
+
+    /**
+     * Bytes allocated by one stage
+     */
+    @Immutable
+    static final class StageAllocation {
+        private final String name;
+        private final long calls;
+        private final long bytes;
+
+        StageAllocation(String name, long calls, long bytes) {
+            this.name = name;
+            this.calls = calls;
+            this.bytes = bytes;
+        }
+
+        @Nonnull
+        String getName() {
+            return name;
+        }
+
+        long getCalls() {
+            return calls;
+        }
+
+        long getBytes() {
+            return bytes;
+        }
+    }
+}
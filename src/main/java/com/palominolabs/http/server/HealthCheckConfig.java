@@ -0,0 +1,178 @@
+package com.palominolabs.http.server;
+
+import com.google.common.collect.Lists;
+import java.util.List;
+import javax.annotation.Nonnull;
+import javax.annotation.concurrent.NotThreadSafe;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkNotNull;
+
+/**
+ * Config for a health endpoint for load balancer probes.
+ *
+ * GET and HEAD requests for the path are answered before any other handler, so they skip access logging, the
+ * servlet filters and the other request features. The response is a 200 with body "OK" if the server is ready, or a
+ * 503 with body "UNAVAILABLE" if it isn't. The server isn't ready if a {@link ReadinessCheck} failed the last time the
+ * checks ran, while its thread pool is low on threads, or once {@link HttpServerWrapper#stop()} has been called.
+ */
+@NotThreadSafe
+public final class HealthCheckConfig {
+
+    @Nonnull
+    private String path = "/health";
+
+    private final List<ReadinessCheck> readinessChecks = Lists.newArrayList();
+
+    private long cacheMillis = 1000;
+
+    private boolean failWhenLowOnThreads = true;
+
+    private long shutdownDelayMillis = 0;
+
+    private boolean logRequests = false;
+
+    @Nonnull
+    public String getPath() {
+        return path;
+    }
+
+    /**
+     * @param path request path to answer, matched exactly. Default is /health.
+     */
+    public void setPath(@Nonnull String path) {
+        checkArgument(checkNotNull(path).startsWith("/"), "Path must start with /");
+        this.path = path;
+    }
+
+    @Nonnull
+    public List<ReadinessCheck> getReadinessChecks() {
+        return readinessChecks;
+    }
+
+    /**
+     * @param readinessCheck a check that must pass for the server to be ready. Checks run in the order added.
+     */
+    public void addReadinessCheck(@Nonnull ReadinessCheck readinessCheck) {
+        readinessChecks.add(checkNotNull(readinessCheck));
+    }
+
+    public long getCacheMillis() {
+        return cacheMillis;
+    }
+
+    /**
+     * Checks run at most once per this interval, by whichever probe arrives first after it has passed; other probes
+     * use the last result. Default is 1000.
+     *
+     * @param cacheMillis how long to use a result before running the checks again
+     */
+    public void setCacheMillis(long cacheMillis) {
+        checkArgument(cacheMillis >= 0, "Cache millis must not be negative");
+        this.cacheMillis = cacheMillis;
+    }
+
+    public boolean isFailWhenLowOnThreads() {
+        return failWhenLowOnThreads;
+    }
+
+    /**
+     * @param failWhenLowOnThreads true to report not ready while the thread pool is low on threads, so load balancers
+     *                             send traffic elsewhere while the server is overloaded. Default is true.
+     */
+    public void setFailWhenLowOnThreads(boolean failWhenLowOnThreads) {
+        this.failWhenLowOnThreads = failWhenLowOnThreads;
+    }
+
+    public long getShutdownDelayMillis() {
+        return shutdownDelayMillis;
+    }
+
+    /**
+     * When {@link HttpServerWrapper#stop()} is called, the endpoint reports not ready for this long before the server
+     * actually stops, which gives load balancers time to notice and stop sending requests. Default is 0.
+     *
+     * @param shutdownDelayMillis how long to keep serving after stop() is called
+     */
+    public void setShutdownDelayMillis(long shutdownDelayMillis) {
+        checkArgument(shutdownDelayMillis >= 0, "Shutdown delay must not be negative");
+        this.shutdownDelayMillis = shutdownDelayMillis;
+    }
+
+    public boolean isLogRequests() {
+        return logRequests;
+    }
+
+    /**
+     * @param logRequests true to write probes to the access log. Default is false.
+     */
+    public void setLogRequests(boolean logRequests) {
+        this.logRequests = logRequests;
+    }
+
+    /**
+     * @param path path
+     * @return this
+     * @see HealthCheckConfig#setPath(String)
+     */
+    @Nonnull
+    public HealthCheckConfig withPath(@Nonnull String path) {
+        setPath(path);
+        return this;
+    }
+
+    /**
+     * @param readinessCheck readiness check
+     * @return this
+     * @see HealthCheckConfig#addReadinessCheck(ReadinessCheck)
+     */
+    @Nonnull
+    public HealthCheckConfig withReadinessCheck(@Nonnull ReadinessCheck readinessCheck) {
+        addReadinessCheck(readinessCheck);
+        return this;
+    }
+
+    /**
+     * @param cacheMillis cache millis
+     * @return this
+     * @see HealthCheckConfig#setCacheMillis(long)
+     */
+    @Nonnull
+    public HealthCheckConfig withCacheMillis(long cacheMillis) {
+        setCacheMillis(cacheMillis);
+        return this;
+    }
+
+    /**
+     * @param failWhenLowOnThreads fail when low on threads
+     * @return this
+     * @see HealthCheckConfig#setFailWhenLowOnThreads(boolean)
+     */
+    @Nonnull
+    public HealthCheckConfig withFailWhenLowOnThreads(boolean failWhenLowOnThreads) {
+        setFailWhenLowOnThreads(failWhenLowOnThreads);
+        return this;
+    }
+
+    /**
+     * @param shutdownDelayMillis shutdown delay
+     * @return this
+     * @see HealthCheckConfig#setShutdownDelayMillis(long)
+     */
+    @Nonnull
+    public HealthCheckConfig withShutdownDelayMillis(long shutdownDelayMillis) {
+        setShutdownDelayMillis(shutdownDelayMillis);
+        return this;
+    }
+
+    /**
+     * @param logRequests log requests
+     * @return this
+     * @see HealthCheckConfig#setLogRequests(boolean)
+     */
+    @Nonnull
+    public HealthCheckConfig withLogRequests(boolean logRequests) {
+        setLogRequests(logRequests);
+        return this;
+    }
+}
@@ -0,0 +1,150 @@
+package com.palominolabs.http.server;
+
+import com.google.common.collect.Lists;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import javax.annotation.Nullable;
+import javax.servlet.DispatcherType;
+import javax.servlet.ServletException;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import org.eclipse.jetty.http.HttpHeader;
+import org.eclipse.jetty.http.HttpMethod;
+import org.eclipse.jetty.server.Request;
+import org.eclipse.jetty.server.RequestLog;
+import org.eclipse.jetty.server.handler.HandlerWrapper;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Answers health probes ahead of all other handlers. See {@link HealthCheckConfig}.
+ *
+ * Probes between check runs only read a few volatile fields and write a pre-encoded body.
+ */
+final class HealthHandler extends HandlerWrapper {
+
+    private static final Logger logger = LoggerFactory.getLogger(HealthHandler.class);
+
+    private static final byte[] READY_BODY = "OK\n".getBytes(StandardCharsets.US_ASCII);
+    private static final byte[] NOT_READY_BODY = "UNAVAILABLE\n".getBytes(StandardCharsets.US_ASCII);
+
+    private final String path;
+    private final List<ReadinessCheck> readinessChecks;
+    private final long cacheNanos;
+    private final boolean failWhenLowOnThreads;
+    private final long shutdownDelayMillis;
+    @Nullable
+    private final RequestLog requestLog;
+
+    private volatile boolean checksPassed;
+    private volatile long nextCheckNanos;
+    private final AtomicBoolean checking = new AtomicBoolean();
+
+    private volatile boolean shuttingDown;
+
+    /**
+     * @param requestLog log to write probes to, or null to not log them
+     */
+    HealthHandler(HealthCheckConfig config, @Nullable RequestLog requestLog) {
+        this.path = config.getPath();
+        this.readinessChecks = Lists.newArrayList(config.getReadinessChecks());
+        this.cacheNanos = TimeUnit.MILLISECONDS.toNanos(config.getCacheMillis());
+        this.failWhenLowOnThreads = config.isFailWhenLowOnThreads();
+        this.shutdownDelayMillis = config.getShutdownDelayMillis();
+        this.requestLog = requestLog;
+    }
+
+    @Override
+    protected void doStart() throws Exception {
+        shuttingDown = false;
+        runChecks();
+        super.doStart();
+    }
+
+    @Override
+    public void handle(String target, Request baseRequest, HttpServletRequest request, HttpServletResponse response)
+        throws IOException, ServletException {
+        if (baseRequest.getDispatcherType() != DispatcherType.REQUEST || !path.equals(target)) {
+            super.handle(target, baseRequest, request, response);
+            return;
+        }
+        String method = baseRequest.getMethod();
+        boolean head = HttpMethod.HEAD.is(method);
+        if (!head && !HttpMethod.GET.is(method)) {
+            super.handle(target, baseRequest, request, response);
+            return;
+        }
+
+        baseRequest.setHandled(true);
+        if (requestLog != null) {
+            // written once the response is complete, as RequestLogHandler does
+            baseRequest.getHttpChannel().addRequestLog(requestLog);
+        }
+
+        byte[] body;
+        if (isReady()) {
+            response.setStatus(HttpServletResponse.SC_OK);
+            body = READY_BODY;
+        } else {
+            response.setStatus(HttpServletResponse.SC_SERVICE_UNAVAILABLE);
+            body = NOT_READY_BODY;
+        }
+        response.setContentType("text/plain");
+        response.setHeader(HttpHeader.CACHE_CONTROL.asString(), "no-store");
+        response.setContentLength(body.length);
+        if (!head) {
+            response.getOutputStream().write(body);
+        }
+    }
+
+    /**
+     * Report not ready from now on, ahead of the server stopping.
+     */
+    void setShuttingDown() {
+        shuttingDown = true;
+    }
+
+    long getShutdownDelayMillis() {
+        return shutdownDelayMillis;
+    }
+
+    boolean isReady() {
+        if (shuttingDown) {
+            return false;
+        }
+        if (failWhenLowOnThreads && getServer().getThreadPool().isLowOnThreads()) {
+            return false;
+        }
+
+        // only one probe runs the checks; the others use the previous result meanwhile
+        if (System.nanoTime() - nextCheckNanos >= 0 && checking.compareAndSet(false, true)) {
+            try {
+                runChecks();
+            } finally {
+                checking.set(false);
+            }
+        }
+        return checksPassed;
+    }
+
+    private void runChecks() {
+        boolean passed = true;
+        for (ReadinessCheck check : readinessChecks) {
+            try {
+                if (!check.isReady()) {
+                    passed = false;
+                    break;
+                }
+            } catch (Exception e) {
+                logger.warn("Readiness check " + check + " failed", e);
+                passed = false;
+                break;
+            }
+        }
+        checksPassed = passed;
+        nextCheckNanos = System.nanoTime() + cacheNanos;
+    }
+}
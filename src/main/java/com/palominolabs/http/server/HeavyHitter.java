@@ -0,0 +1,47 @@
+package com.palominolabs.http.server;
+
+import javax.annotation.Nonnull;
+import javax.annotation.concurrent.Immutable;
+
+/**
+ * A path, client address or user agent and its estimated share of requests or latency. See {@link HeavyHitters}.
+ */
+@Immutable
+public final class HeavyHitter {
+
+    private final String key;
+    private final long value;
+    private final long error;
+
+    HeavyHitter(@Nonnull String key, long value, long error) {
+        this.key = key;
+        this.value = value;
+        this.error = error;
+    }
+
+    @Nonnull
+    public String getKey() {
+        return key;
+    }
+
+    /**
+     * @return requests, or total latency in nanoseconds, in the window. For a key that stayed in the summary for the
+     * whole window, this overestimates the true value by at most the error.
+     */
+    public long getValue() {
+        return value;
+    }
+
+    /**
+     * @return how much the value may overestimate the true value by. If it's small compared to the value, the key
+     * really is a heavy hitter.
+     */
+    public long getError() {
+        return error;
+    }
+
+    @Override
+    public String toString() {
+        return key + "=" + value + " (error " + error + ")";
+    }
+}
@@ -0,0 +1,234 @@
+package com.palominolabs.http.server;
+
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import javax.annotation.Nonnull;
+import javax.annotation.concurrent.GuardedBy;
+import javax.annotation.concurrent.Immutable;
+import javax.annotation.concurrent.ThreadSafe;
+import org.eclipse.jetty.util.component.AbstractLifeCycle;
+
+import static com.google.common.base.Preconditions.checkArgument;
+
+/**
+ * The request paths, client addresses and user agents with the most requests and the most total latency over a
+ * sliding window. See {@link HeavyHittersConfig}.
+ *
+ * Request threads add what they saw to a {@link SingleConsumerQueue}. Its thread takes requests off the queue and adds
+ * them to the current slice's summaries; queries merge the summaries of every slice in the window.
+ */
+@ThreadSafe
+public final class HeavyHitters extends AbstractLifeCycle {
+
+    /**
+     * What to group requests by
+     */
+    public enum Dimension {
+        /**
+         * The path template set in the {@link RequestEvent#PATH_TEMPLATE_ATTRIBUTE} request attribute, or else the
+         * request path
+         */
+        PATH,
+        /**
+         * The client's IP address, which is the one in the PROXY header on connectors with PROXY protocol
+         */
+        CLIENT,
+        /**
+         * The User-Agent header, or "-" if there isn't one
+         */
+        USER_AGENT
+    }
+
+    private static final Dimension[] DIMENSIONS = Dimension.values();
+
+    private static final Comparator<HeavyHitter> BY_VALUE = new Comparator<HeavyHitter>() {
+        @Override
+        public int compare(HeavyHitter a, HeavyHitter b) {
+            int result = Long.compare(b.getValue(), a.getValue());
+            return result != 0 ? result : a.getKey().compareTo(b.getKey());
+        }
+    };
+
+    private final HeavyHittersConfig config;
+    private final long sliceNanos;
+
+    private final SingleConsumerQueue<Sample> queue;
+
+    /**
+     * Per slice, then per dimension: counts and latencies
+     */
+    @GuardedBy("this")
+    private final SpaceSaving[][] counts;
+    @GuardedBy("this")
+    private final SpaceSaving[][] latencies;
+    @GuardedBy("this")
+    private int currentSlice;
+    @GuardedBy("this")
+    private long currentSliceStartNanos;
+
+    HeavyHitters(@Nonnull HeavyHittersConfig config) {
+        this.config = config;
+        this.sliceNanos = Math.max(1, TimeUnit.MILLISECONDS.toNanos(config.getWindowMillis()) / config.getSlices());
+        this.counts = new SpaceSaving[config.getSlices()][DIMENSIONS.length];
+        this.latencies = new SpaceSaving[config.getSlices()][DIMENSIONS.length];
+        for (int slice = 0; slice < config.getSlices(); slice++) {
+            for (int dimension = 0; dimension < DIMENSIONS.length; dimension++) {
+                counts[slice][dimension] = new SpaceSaving(config.getCapacity());
+                latencies[slice][dimension] = new SpaceSaving(config.getCapacity());
+            }
+        }
+        // counts are cleared on start, so there's no point in taking what's left after stopping
+        this.queue = new SingleConsumerQueue<>("heavy-hitters", config.getQueueCapacity(), false,
+            new SingleConsumerQueue.Sink<Sample>() {
+                @Override
+                public void accept(@Nonnull Sample sample) {
+                    update(sample);
+                }
+
+                @Override
+                public void idle() {
+                    synchronized (HeavyHitters.this) {
+                        advance(System.nanoTime());
+                    }
+                }
+
+                @Override
+                public void stopped() {
+                }
+            });
+    }
+
+    @Override
+    protected void doStart() throws Exception {
+        synchronized (this) {
+            for (int slice = 0; slice < counts.length; slice++) {
+                clearSlice(slice);
+            }
+            currentSlice = 0;
+            currentSliceStartNanos = System.nanoTime();
+        }
+
+        queue.start();
+    }
+
+    @Override
+    protected void doStop() throws Exception {
+        queue.stop();
+    }
+
+    /**
+     * @param dimension what to group requests by
+     * @param limit     max results
+     * @return the keys with the most requests in the window, most first
+     */
+    @Nonnull
+    public List<HeavyHitter> getTopByCount(@Nonnull Dimension dimension, int limit) {
+        return top(counts, dimension, limit);
+    }
+
+    /**
+     * @param dimension what to group requests by
+     * @param limit     max results
+     * @return the keys with the most total latency in the window, in nanoseconds, most first
+     */
+    @Nonnull
+    public List<HeavyHitter> getTopByLatency(@Nonnull Dimension dimension, int limit) {
+        return top(latencies, dimension, limit);
+    }
+
+    /**
+     * @return requests that weren't counted because the queue was full or the updater had failed
+     */
+    public long getDroppedRequests() {
+        return queue.getDropped();
+    }
+
+    void add(@Nonnull String path, @Nonnull String client, @Nonnull String userAgent, long latencyNanos) {
+        if (queue.isRunning()) {
+            queue.add(new Sample(new String[]{path, client, userAgent}, latencyNanos));
+        }
+    }
+
+    private synchronized List<HeavyHitter> top(SpaceSaving[][] summaries, Dimension dimension, int limit) {
+        checkArgument(limit >= 0, "Limit must not be negative");
+        advance(System.nanoTime());
+
+        // a key that was evicted from a slice's summary counts nothing for that slice, so keys near the cutoff can be
+        // underestimated too; heavy hitters are tracked in every slice and aren't affected
+        Map<String, long[]> merged = Maps.newHashMap();
+        for (SpaceSaving[] slice : summaries) {
+            for (SpaceSaving.Counter counter : slice[dimension.ordinal()].getCounters()) {
+                long[] valueAndError = merged.get(counter.getKey());
+                if (valueAndError == null) {
+                    valueAndError = new long[2];
+                    merged.put(counter.getKey(), valueAndError);
+                }
+                valueAndError[0] += counter.getTotal();
+                valueAndError[1] += counter.getError();
+            }
+        }
+
+        List<HeavyHitter> result = Lists.newArrayListWithCapacity(merged.size());
+        for (Map.Entry<String, long[]> entry : merged.entrySet()) {
+            result.add(new HeavyHitter(entry.getKey(), entry.getValue()[0], entry.getValue()[1]));
+        }
+        Collections.sort(result, BY_VALUE);
+        return result.size() > limit ? Lists.newArrayList(result.subList(0, limit)) : result;
+    }
+
+    private synchronized void update(Sample first) {
+        advance(System.nanoTime());
+        // take what's queued in one go, so that queries don't wait behind the lock for long
+        Sample sample = first;
+        int batch = 0;
+        do {
+            for (int dimension = 0; dimension < DIMENSIONS.length; dimension++) {
+                counts[currentSlice][dimension].add(sample.keys[dimension], 1);
+                latencies[currentSlice][dimension].add(sample.keys[dimension], sample.latencyNanos);
+            }
+        } while (++batch < 1024 && (sample = queue.poll()) != null);
+    }
+
+    /**
+     * Move the window forward to now, clearing the slices that fall out of it
+     */
+    @GuardedBy("this")
+    private void advance(long nowNanos) {
+        long elapsedSlices = (nowNanos - currentSliceStartNanos) / sliceNanos;
+        if (elapsedSlices <= 0) {
+            return;
+        }
+        for (long i = 0; i < Math.min(elapsedSlices, counts.length); i++) {
+            currentSlice = (currentSlice + 1) % counts.length;
+            clearSlice(currentSlice);
+        }
+        currentSliceStartNanos += elapsedSlices * sliceNanos;
+    }
+
+    @GuardedBy("this")
+    private void clearSlice(int slice) {
+        for (int dimension = 0; dimension < DIMENSIONS.length; dimension++) {
+            counts[slice][dimension].clear();
+            latencies[slice][dimension].clear();
+        }
+    }
+
+    /**
+     * A request's key in each dimension, and its latency
+     */
+    @Immutable
+    private static final class Sample {
+        private final String[] keys;
+        private final long latencyNanos;
+
+        Sample(String[] keys, long latencyNanos) {
+            this.keys = keys;
+            this.latencyNanos = latencyNanos;
+        }
+    }
+}
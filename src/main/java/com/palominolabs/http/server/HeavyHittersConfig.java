@@ -0,0 +1,124 @@
+package com.palominolabs.http.server;
+
+import javax.annotation.Nonnull;
+import javax.annotation.concurrent.NotThreadSafe;
+
+import static com.google.common.base.Preconditions.checkArgument;
+
+/**
+ * Config for tracking the request paths, client addresses and user agents with the most requests and the most total
+ * latency, to find what is driving load on a hot server. See {@link HttpServerWrapper#getHeavyHitters()}.
+ *
+ * Each is tracked with a bounded Space-Saving summary per slice of the window, so memory doesn't grow with the number
+ * of distinct paths or clients. Request threads only queue what they saw; a single thread updates the summaries.
+ */
+@NotThreadSafe
+public final class HeavyHittersConfig {
+
+    private int capacity = 256;
+
+    private long windowMillis = 60000;
+
+    private int slices = 6;
+
+    private int queueCapacity = 65536;
+
+    public int getCapacity() {
+        return capacity;
+    }
+
+    /**
+     * Any key with more than 1/capacity of the requests (or latency) in a slice is tracked, with a bounded error.
+     * Default is 256.
+     *
+     * @param capacity keys tracked per slice for each of path, client and user agent
+     */
+    public void setCapacity(int capacity) {
+        checkArgument(capacity > 0, "Capacity must be positive");
+        this.capacity = capacity;
+    }
+
+    public long getWindowMillis() {
+        return windowMillis;
+    }
+
+    /**
+     * Results cover between (slices - 1) / slices of the window and the whole window, ending now. Default is 60000.
+     *
+     * @param windowMillis how far back results go
+     */
+    public void setWindowMillis(long windowMillis) {
+        checkArgument(windowMillis > 0, "Window must be positive");
+        this.windowMillis = windowMillis;
+    }
+
+    public int getSlices() {
+        return slices;
+    }
+
+    /**
+     * The window moves forward a slice at a time, dropping the oldest slice. Default is 6.
+     *
+     * @param slices how many parts to divide the window into
+     */
+    public void setSlices(int slices) {
+        checkArgument(slices > 0, "Slices must be positive");
+        this.slices = slices;
+    }
+
+    public int getQueueCapacity() {
+        return queueCapacity;
+    }
+
+    /**
+     * @param queueCapacity max requests waiting to be counted; more are dropped. Default is 65536.
+     */
+    public void setQueueCapacity(int queueCapacity) {
+        checkArgument(queueCapacity > 0, "Queue capacity must be positive");
+        this.queueCapacity = queueCapacity;
+    }
+
+    /**
+     * @param capacity capacity
+     * @return this
+     * @see HeavyHittersConfig#setCapacity(int)
+     */
+    @Nonnull
+    public HeavyHittersConfig withCapacity(int capacity) {
+        setCapacity(capacity);
+        return this;
+    }
+
+    /**
+     * @param windowMillis window millis
+     * @return this
+     * @see HeavyHittersConfig#setWindowMillis(long)
+     */
+    @Nonnull
+    public HeavyHittersConfig withWindowMillis(long windowMillis) {
+        setWindowMillis(windowMillis);
+        return this;
+    }
+
+    /**
+     * @param slices slices
+     * @return this
+     * @see HeavyHittersConfig#setSlices(int)
+     */
+    @Nonnull
+    public HeavyHittersConfig withSlices(int slices) {
+        setSlices(slices);
+        return this;
+    }
+
+    /**
+     * @param queueCapacity queue capacity
+     * @return this
+     * @see HeavyHittersConfig#setQueueCapacity(int)
+     */
+    @Nonnull
+    public HeavyHittersConfig withQueueCapacity(int queueCapacity) {
+        setQueueCapacity(queueCapacity);
+        return this;
+    }
+}
@@ -0,0 +1,54 @@
+package com.palominolabs.http.server;
+
+import java.io.IOException;
+import javax.servlet.DispatcherType;
+import javax.servlet.ServletException;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import org.eclipse.jetty.http.HttpHeader;
+import org.eclipse.jetty.server.Request;
+import org.eclipse.jetty.server.handler.HandlerWrapper;
+
+/**
+ * Adds each request to the {@link HeavyHitters} once it completes.
+ */
+final class HeavyHittersHandler extends HandlerWrapper {
+
+    private final HeavyHitters heavyHitters;
+
+    HeavyHittersHandler(HeavyHitters heavyHitters) {
+        this.heavyHitters = heavyHitters;
+    }
+
+    @Override
+    public void handle(String target, final Request baseRequest, HttpServletRequest request,
+        HttpServletResponse response) throws IOException, ServletException {
+        if (baseRequest.getDispatcherType() != DispatcherType.REQUEST) {
+            super.handle(target, baseRequest, request, response);
+            return;
+        }
+
+        final long startNanos = System.nanoTime();
+        try {
+            super.handle(target, baseRequest, request, response);
+        } finally {
+            RequestCompletion.onComplete(request, new Runnable() {
+                @Override
+                public void run() {
+                    add(baseRequest, startNanos);
+                }
+            });
+        }
+    }
+
+    private void add(Request baseRequest, long startNanos) {
+        String path = (String) baseRequest.getAttribute(RequestEvent.PATH_TEMPLATE_ATTRIBUTE);
+        if (path == null) {
+            path = baseRequest.getRequestURI();
+        }
+        String userAgent = baseRequest.getHttpFields().get(HttpHeader.USER_AGENT);
+        String client = baseRequest.getRemoteAddr();
+        heavyHitters.add(path == null ? "-" : path, client == null ? "-" : client, userAgent == null ? "-" : userAgent,
+            System.nanoTime() - startNanos);
+    }
+}
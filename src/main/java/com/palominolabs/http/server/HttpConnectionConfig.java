@@ -0,0 +1,207 @@
+package com.palominolabs.http.server;
+
+import javax.annotation.Nonnull;
+import javax.annotation.concurrent.NotThreadSafe;
+import org.eclipse.jetty.server.HttpConfiguration;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkState;
+
+/**
+ * HTTP protocol settings for a connector. The defaults are Jetty's defaults.
+ *
+ * @see HttpConfiguration
+ */
+@NotThreadSafe
+public final class HttpConnectionConfig {
+
+    private int outputBufferSize = 32 * 1024;
+    private int outputAggregationSize = 8 * 1024;
+    private int requestHeaderSize = 8 * 1024;
+    private int responseHeaderSize = 8 * 1024;
+    private boolean sendDateHeader = true;
+    private boolean sendServerVersion = true;
+
+    /**
+     * Preset for servers that mostly send small to medium sized responses at high rates. Responses of up to 64k are
+     * buffered whole and writes of up to 32k are aggregated, which means fewer, larger writes to the socket. The
+     * Server header is not sent.
+     *
+     * @return a new config with the high throughput settings
+     */
+    @Nonnull
+    public static HttpConnectionConfig forHighThroughput() {
+        return new HttpConnectionConfig()
+            .withOutputBufferSize(64 * 1024)
+            .withOutputAggregationSize(32 * 1024)
+            .withSendServerVersion(false);
+    }
+
+    public int getOutputBufferSize() {
+        return outputBufferSize;
+    }
+
+    /**
+     * A response is committed once it outgrows this buffer. Default is 32k.
+     *
+     * @param outputBufferSize response buffer size in bytes
+     * @see HttpConfiguration#setOutputBufferSize(int)
+     */
+    public void setOutputBufferSize(int outputBufferSize) {
+        checkArgument(outputBufferSize > 0, "Output buffer size must be positive");
+        this.outputBufferSize = outputBufferSize;
+    }
+
+    public int getOutputAggregationSize() {
+        return outputAggregationSize;
+    }
+
+    /**
+     * Writes smaller than this are copied into the response buffer rather than written to the socket right away.
+     * Must not be larger than the output buffer size. Default is 8k.
+     *
+     * @param outputAggregationSize max size in bytes of writes to aggregate
+     * @see HttpConfiguration#setOutputAggregationSize(int)
+     */
+    public void setOutputAggregationSize(int outputAggregationSize) {
+        checkArgument(outputAggregationSize >= 0, "Output aggregation size must not be negative");
+        this.outputAggregationSize = outputAggregationSize;
+    }
+
+    public int getRequestHeaderSize() {
+        return requestHeaderSize;
+    }
+
+    /**
+     * Requests with larger headers are rejected. Default is 8k.
+     *
+     * @param requestHeaderSize max request header size in bytes
+     * @see HttpConfiguration#setRequestHeaderSize(int)
+     */
+    public void setRequestHeaderSize(int requestHeaderSize) {
+        checkArgument(requestHeaderSize > 0, "Request header size must be positive");
+        this.requestHeaderSize = requestHeaderSize;
+    }
+
+    public int getResponseHeaderSize() {
+        return responseHeaderSize;
+    }
+
+    /**
+     * Default is 8k.
+     *
+     * @param responseHeaderSize max response header size in bytes
+     * @see HttpConfiguration#setResponseHeaderSize(int)
+     */
+    public void setResponseHeaderSize(int responseHeaderSize) {
+        checkArgument(responseHeaderSize > 0, "Response header size must be positive");
+        this.responseHeaderSize = responseHeaderSize;
+    }
+
+    public boolean isSendDateHeader() {
+        return sendDateHeader;
+    }
+
+    /**
+     * @param sendDateHeader true to add a Date header to responses. Default is true.
+     */
+    public void setSendDateHeader(boolean sendDateHeader) {
+        this.sendDateHeader = sendDateHeader;
+    }
+
+    public boolean isSendServerVersion() {
+        return sendServerVersion;
+    }
+
+    /**
+     * @param sendServerVersion true to add a Server header with the Jetty version to responses. Default is true.
+     */
+    public void setSendServerVersion(boolean sendServerVersion) {
+        this.sendServerVersion = sendServerVersion;
+    }
+
+    /**
+     * @param outputBufferSize output buffer size
+     * @return this
+     * @see HttpConnectionConfig#setOutputBufferSize(int)
+     */
+    @Nonnull
+    public HttpConnectionConfig withOutputBufferSize(int outputBufferSize) {
+        setOutputBufferSize(outputBufferSize);
+        return this;
+    }
+
+    /**
+     * @param outputAggregationSize output aggregation size
+     * @return this
+     * @see HttpConnectionConfig#setOutputAggregationSize(int)
+     */
+    @Nonnull
+    public HttpConnectionConfig withOutputAggregationSize(int outputAggregationSize) {
+        setOutputAggregationSize(outputAggregationSize);
+        return this;
+    }
+
+    /**
+     * @param requestHeaderSize request header size
+     * @return this
+     * @see HttpConnectionConfig#setRequestHeaderSize(int)
+     */
+    @Nonnull
+    public HttpConnectionConfig withRequestHeaderSize(int requestHeaderSize) {
+        setRequestHeaderSize(requestHeaderSize);
+        return this;
+    }
+
+    /**
+     * @param responseHeaderSize response header size
+     * @return this
+     * @see HttpConnectionConfig#setResponseHeaderSize(int)
+     */
+    @Nonnull
+    public HttpConnectionConfig withResponseHeaderSize(int responseHeaderSize) {
+        setResponseHeaderSize(responseHeaderSize);
+        return this;
+    }
+
+    /**
+     * @param sendDateHeader send date header
+     * @return this
+     * @see HttpConnectionConfig#setSendDateHeader(boolean)
+     */
+    @Nonnull
+    public HttpConnectionConfig withSendDateHeader(boolean sendDateHeader) {
+        setSendDateHeader(sendDateHeader);
+        return this;
+    }
+
+    /**
+     * @param sendServerVersion send server version
+     * @return this
+     * @see HttpConnectionConfig#setSendServerVersion(boolean)
+     */
+    @Nonnull
+    public HttpConnectionConfig withSendServerVersion(boolean sendServerVersion) {
+        setSendServerVersion(sendServerVersion);
+        return this;
+    }
+
+    /**
+     * @throws IllegalStateException if the output aggregation size is larger than the output buffer size
+     */
+    @Nonnull
+    HttpConfiguration buildHttpConfiguration() {
+        checkState(outputAggregationSize <= outputBufferSize,
+            "Output aggregation size (%s) must not be larger than output buffer size (%s)", outputAggregationSize,
+            outputBufferSize);
+
+        HttpConfiguration httpConfiguration = new HttpConfiguration();
+        httpConfiguration.setOutputBufferSize(outputBufferSize);
+        httpConfiguration.setOutputAggregationSize(outputAggregationSize);
+        httpConfiguration.setRequestHeaderSize(requestHeaderSize);
+        httpConfiguration.setResponseHeaderSize(responseHeaderSize);
+        httpConfiguration.setSendDateHeader(sendDateHeader);
+        httpConfiguration.setSendServerVersion(sendServerVersion);
+        return httpConfiguration;
+    }
+}
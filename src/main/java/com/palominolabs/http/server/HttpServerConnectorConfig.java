@@ -1,12 +1,18 @@
 package com.palominolabs.http.server;
 
+import java.nio.channels.ServerSocketChannel;
 import java.security.KeyStore;
 import java.util.Arrays;
+import java.util.Collections;
 import java.util.List;
 import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
 import javax.annotation.concurrent.NotThreadSafe;
 import org.eclipse.jetty.util.ssl.SslContextFactory;
 
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.collect.Lists.newArrayList;
+
 /**
  * Config for an individual connector that will be used in a {@link HttpServerWrapper}. Defaults, where provided, are
  * sane.
@@ -17,10 +23,21 @@ public final class HttpServerConnectorConfig {
     private final boolean tls;
     private final int listenPort;
     private final String listenHost;
+    @Nullable
+    private final ServerSocketChannel listenChannel;
+
+    @Nonnull
+    private HttpConnectionConfig httpConnectionConfig = new HttpConnectionConfig();
+
+    private boolean proxyProtocol = false;
+
+    private int shards = 1;
 
     private KeyStore tlsKeystore;
     private String tlsKeystorePassphrase;
     @Nonnull
+    private final List<SniKeystore> tlsSniKeystores = newArrayList();
+    @Nonnull
     private List<String> tlsCipherSuites = Arrays.asList(
             "TLS_ECDHE_RSA_WITH_AES_256_GCM_SHA384",
             "TLS_ECDHE_RSA_WITH_AES_128_GCM_SHA256",
@@ -44,6 +61,21 @@ public final class HttpServerConnectorConfig {
         this.tls = tls;
         this.listenPort = listenPort;
         this.listenHost = notNull(listenHost);
+        this.listenChannel = null;
+    }
+
+    /**
+     * @param listenChannel an open, bound listening channel to accept connections on instead of binding a socket. The
+     *                      server doesn't close it, so it can be handed to another server. See {@link
+     *                      ListenChannels}.
+     * @param tls           true for https
+     */
+    public HttpServerConnectorConfig(@Nonnull ServerSocketChannel listenChannel, boolean tls) {
+        checkArgument(listenChannel.socket().isBound(), "The listen channel must be bound");
+        this.tls = tls;
+        this.listenPort = listenChannel.socket().getLocalPort();
+        this.listenHost = listenChannel.socket().getInetAddress().getHostAddress();
+        this.listenChannel = listenChannel;
     }
 
     public static HttpServerConnectorConfig forHttp(@Nonnull String host, int port) {
@@ -54,6 +86,14 @@ public final class HttpServerConnectorConfig {
         return new HttpServerConnectorConfig(host, port, true);
     }
 
+    public static HttpServerConnectorConfig forHttp(@Nonnull ServerSocketChannel listenChannel) {
+        return new HttpServerConnectorConfig(listenChannel, false);
+    }
+
+    public static HttpServerConnectorConfig forHttps(@Nonnull ServerSocketChannel listenChannel) {
+        return new HttpServerConnectorConfig(listenChannel, true);
+    }
+
     public boolean isTls() {
         return tls;
     }
@@ -67,6 +107,64 @@ public final class HttpServerConnectorConfig {
         return listenHost;
     }
 
+    /**
+     * @return the channel to accept connections on, or null to bind the listen host and port
+     */
+    @Nullable
+    public ServerSocketChannel getListenChannel() {
+        return listenChannel;
+    }
+
+    @Nonnull
+    public HttpConnectionConfig getHttpConnectionConfig() {
+        return httpConnectionConfig;
+    }
+
+    /**
+     * @param httpConnectionConfig HTTP protocol settings (buffer and header sizes, etc) for this connector
+     */
+    public void setHttpConnectionConfig(@Nonnull HttpConnectionConfig httpConnectionConfig) {
+        this.httpConnectionConfig = notNull(httpConnectionConfig);
+    }
+
+    public boolean isProxyProtocol() {
+        return proxyProtocol;
+    }
+
+    /**
+     * Expect every connection to start with a PROXY protocol (v1 or v2) header, as sent by L4 load balancers like AWS
+     * ELB in TCP mode or HAProxy. The client address from the header is then reported as the remote address to
+     * servlets and the access log. For TLS connectors, the header precedes the TLS handshake.
+     *
+     * Only enable this when all connections come through such a proxy, since connections without the header are
+     * rejected.
+     *
+     * @param proxyProtocol true to require the PROXY protocol header. Default is false.
+     */
+    public void setProxyProtocol(boolean proxyProtocol) {
+        this.proxyProtocol = proxyProtocol;
+    }
+
+    public int getShards() {
+        return shards;
+    }
+
+    /**
+     * Bind this many listening sockets to the host and port with SO_REUSEPORT, each with its own acceptor and
+     * selectors, so the kernel spreads new connections across them instead of queueing them all on one socket. This
+     * helps when accepting connections is the bottleneck on machines with many cores.
+     *
+     * More than one shard needs Java 9 or later on an OS that supports SO_REUSEPORT (e.g. Linux 3.9+), and a fixed
+     * port. Connectors with a listen channel can't have shards. See {@link HttpServerWrapper#getConnectorShardStats()}
+     * for how connections are spread.
+     *
+     * @param shards number of listening sockets. Default is 1, a single socket without SO_REUSEPORT.
+     */
+    public void setShards(int shards) {
+        checkArgument(shards > 0, "Shards must be positive");
+        this.shards = shards;
+    }
+
     @Nonnull
     public List<String> getTlsCipherSuites() {
         return tlsCipherSuites;
@@ -98,6 +196,9 @@ public final class HttpServerConnectorConfig {
     }
 
     /**
+     * Changing this after the server has started has no effect until {@link HttpServerWrapper#reloadTlsKeystores()}
+     * is called.
+     *
      * @param tlsKeystore Keystore to use for TLS private keys
      */
     public void setTlsKeystore(@Nonnull KeyStore tlsKeystore) {
@@ -114,6 +215,61 @@ public final class HttpServerConnectorConfig {
         this.tlsKeystorePassphrase = notNull(tlsKeystorePassphrase);
     }
 
+    @Nonnull
+    public List<SniKeystore> getTlsSniKeystores() {
+        return Collections.unmodifiableList(tlsSniKeystores);
+    }
+
+    /**
+     * Add another keystore to serve certificates from on this connector. During the handshake, the certificate is
+     * chosen by matching the client's SNI host name against the names (CN and DNS subject alternative names, including
+     * wildcards) of the certificates in the primary keystore and all SNI keystores. This lets one connector serve
+     * several domains. If the client sends no SNI host name, or one that no certificate matches, the JDK's key manager
+     * picks a certificate that suits the negotiated cipher suite.
+     *
+     * The primary keystore set with {@link HttpServerConnectorConfig#setTlsKeystore(KeyStore)} is still required.
+     *
+     * @param keystore   keystore with one or more private keys and their certificate chains
+     * @param passphrase passphrase for the keystore and its keys
+     */
+    public void addTlsSniKeystore(@Nonnull KeyStore keystore, @Nonnull String passphrase) {
+        assertTls();
+        tlsSniKeystores.add(new SniKeystore(keystore, passphrase));
+    }
+
+    /**
+     * @param httpConnectionConfig http connection config
+     * @return this
+     * @see HttpServerConnectorConfig#setHttpConnectionConfig(HttpConnectionConfig)
+     */
+    @Nonnull
+    public HttpServerConnectorConfig withHttpConnectionConfig(@Nonnull HttpConnectionConfig httpConnectionConfig) {
+        setHttpConnectionConfig(httpConnectionConfig);
+        return this;
+    }
+
+    /**
+     * @param proxyProtocol proxy protocol
+     * @return this
+     * @see HttpServerConnectorConfig#setProxyProtocol(boolean)
+     */
+    @Nonnull
+    public HttpServerConnectorConfig withProxyProtocol(boolean proxyProtocol) {
+        setProxyProtocol(proxyProtocol);
+        return this;
+    }
+
+    /**
+     * @param shards shards
+     * @return this
+     * @see HttpServerConnectorConfig#setShards(int)
+     */
+    @Nonnull
+    public HttpServerConnectorConfig withShards(int shards) {
+        setShards(shards);
+        return this;
+    }
+
     /**
      * @param tlsProtocols tls protocls
      * @return this
@@ -158,6 +314,18 @@ public final class HttpServerConnectorConfig {
         return this;
     }
 
+    /**
+     * @param keystore   keystore
+     * @param passphrase keystore passphrase
+     * @return this
+     * @see HttpServerConnectorConfig#addTlsSniKeystore(KeyStore, String)
+     */
+    @Nonnull
+    public HttpServerConnectorConfig withTlsSniKeystore(@Nonnull KeyStore keystore, @Nonnull String passphrase) {
+        addTlsSniKeystore(keystore, passphrase);
+        return this;
+    }
+
     /**
      * @throws IllegalStateException if tls is false
      */
@@ -174,4 +342,27 @@ public final class HttpServerConnectorConfig {
 
         return t;
     }
+
+    /**
+     * A keystore and its passphrase.
+     */
+    public static final class SniKeystore {
+        private final KeyStore keystore;
+        private final String passphrase;
+
+        private SniKeystore(@Nonnull KeyStore keystore, @Nonnull String passphrase) {
+            this.keystore = notNull(keystore);
+            this.passphrase = notNull(passphrase);
+        }
+
+        @Nonnull
+        public KeyStore getKeystore() {
+            return keystore;
+        }
+
+        @Nonnull
+        public String getPassphrase() {
+            return passphrase;
+        }
+    }
 }
@@ -6,26 +6,55 @@ package com.palominolabs.http.server;
 
 import ch.qos.logback.access.jetty.RequestLogImpl;
 import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
 import com.google.inject.Inject;
 import com.google.inject.assistedinject.Assisted;
 import com.google.inject.servlet.GuiceFilter;
+import java.security.KeyStore;
+import java.security.KeyStoreException;
 import java.util.EnumSet;
+import java.util.EventListener;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
 import javax.annotation.concurrent.ThreadSafe;
 import javax.servlet.DispatcherType;
+import org.eclipse.jetty.http.HttpVersion;
+import org.eclipse.jetty.server.ConnectionFactory;
 import org.eclipse.jetty.server.Handler;
+import org.eclipse.jetty.server.HttpConnectionFactory;
+import org.eclipse.jetty.server.LocalConnector;
+import org.eclipse.jetty.server.MultiPartCleanerListener;
+import org.eclipse.jetty.server.ProxyConnectionFactory;
 import org.eclipse.jetty.server.Server;
 import org.eclipse.jetty.server.ServerConnector;
+import org.eclipse.jetty.server.SslConnectionFactory;
 import org.eclipse.jetty.server.handler.ContextHandler;
 import org.eclipse.jetty.server.handler.ContextHandlerCollection;
 import org.eclipse.jetty.server.handler.HandlerCollection;
+import org.eclipse.jetty.server.handler.HandlerWrapper;
 import org.eclipse.jetty.server.handler.RequestLogHandler;
+import org.eclipse.jetty.server.handler.StatisticsHandler;
 import org.eclipse.jetty.servlet.FilterHolder;
 import org.eclipse.jetty.servlet.ServletContextHandler;
 import org.eclipse.jetty.util.ssl.SslContextFactory;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkState;
+
 /**
  * Runs an embedded jetty server. Sets up the guice servlet filter and request logging.
  */
@@ -34,103 +63,835 @@ public class HttpServerWrapper {
 
     private static final Logger logger = LoggerFactory.getLogger(HttpServerWrapper.class);
 
-    private final HttpServerWrapperConfig httpServerWrapperConfig;
+    /**
+     * Threads for building handlers and connectors in parallel during start()
+     */
+    private static final int STARTUP_THREADS = Math.min(4, Runtime.getRuntime().availableProcessors());
+
+    /**
+     * How long a failed start waits for startup tasks that are still running, so it can close what they bound
+     */
+    private static final int STARTUP_FAILURE_WAIT_SECONDS = 10;
+
+    private volatile HttpServerWrapperConfig httpServerWrapperConfig;
     private final GuiceFilter filter;
-    private final Server server = new Server();
+    private final Server server;
+    private final InstrumentedByteBufferPool byteBufferPool;
+    @Nullable
+    private final SharedServerResources sharedServerResources;
+    @Nullable
+    private final ThreadPoolShare threadPoolShare;
+    @Nullable
+    private final RequestBodyBudget requestBodyBudget;
+    @Nullable
+    private final ResponseCache responseCache;
+    @Nullable
+    private final RequestTimingStats requestTimingStats;
+    @Nullable
+    private final RequestWatchdog requestWatchdog;
+    @Nullable
+    private final RequestDecompressionStats requestDecompressionStats;
+
+    /**
+     * The SslContextFactory for each TLS connector, populated in start().
+     */
+    private final Map<HttpServerConnectorConfig, SslContextFactory> sslContextFactories = Maps.newConcurrentMap();
+
+    /**
+     * The connectors for each connector config, one per shard, populated in start() and changed by reconfigure().
+     */
+    private final Map<HttpServerConnectorConfig, List<ServerConnector>> serverConnectors = Maps.newConcurrentMap();
+
+    /**
+     * Resource handlers, which reconfigure() replaces as a set.
+     */
+    private final ContextHandlerCollection resourceHandlers = new ContextHandlerCollection();
+
+    /**
+     * Set in start()
+     */
+    private volatile ServletContextHandler servletHandler;
+
+    @Nullable
+    private volatile StartupReport startupReport;
+
+    /**
+     * Set in start() if configured
+     */
+    @Nullable
+    private volatile HealthHandler healthHandler;
+
+    /**
+     * Set in start() if configured
+     */
+    @Nullable
+    private volatile BinaryAccessLog binaryAccessLog;
+
+    /**
+     * Set in start() if configured
+     */
+    @Nullable
+    private volatile TrafficCapture trafficCapture;
+
+    /**
+     * Set in start() if configured
+     */
+    @Nullable
+    private volatile HeavyHitters heavyHitters;
+
+    /**
+     * Set by allocation benchmarks before start()
+     */
+    @Nullable
+    private volatile HandlerAllocationProfiler allocationProfiler;
 
     @Inject
-    HttpServerWrapper(@Assisted HttpServerWrapperConfig httpServerWrapperConfig, GuiceFilter filter) {
+    HttpServerWrapper(@Assisted HttpServerWrapperConfig httpServerWrapperConfig, GuiceFilter filter,
+            @Nullable SharedServerResources sharedServerResources) {
         this.httpServerWrapperConfig = httpServerWrapperConfig;
         this.filter = filter;
+        this.sharedServerResources = sharedServerResources;
+        ServerEventsConfig eventsConfig = httpServerWrapperConfig.getServerEventsConfig();
+        if (sharedServerResources != null) {
+            if (eventsConfig != null && eventsConfig.getThreadPoolQueueThreshold() != -1) {
+                this.threadPoolShare = sharedServerResources.newThreadPoolShare(eventsConfig.getListener(),
+                        eventsConfig.getThreadPoolQueueThreshold());
+            } else {
+                this.threadPoolShare = sharedServerResources.newThreadPoolShare(null, -1);
+            }
+            this.server = new Server(threadPoolShare);
+            // unmanaged so that stopping this server doesn't stop it for the others; connectors find it as a bean
+            server.addBean(sharedServerResources.getScheduler(), false);
+            this.byteBufferPool = sharedServerResources.getByteBufferPool();
+            if (!httpServerWrapperConfig.getByteBufferPoolConfig().isDefault()) {
+                logger.warn("Ignoring this server's buffer pool config; it uses the shared resources' buffer pool");
+            }
+        } else {
+            this.threadPoolShare = null;
+            if (eventsConfig != null && eventsConfig.getThreadPoolQueueThreshold() != -1) {
+                this.server = new Server(new EventReportingThreadPool(eventsConfig.getListener(),
+                        eventsConfig.getThreadPoolQueueThreshold()));
+            } else {
+                this.server = new Server();
+            }
+            this.byteBufferPool = new InstrumentedByteBufferPool(httpServerWrapperConfig.getByteBufferPoolConfig());
+        }
+        RequestBodyBudgetConfig budgetConfig = httpServerWrapperConfig.getRequestBodyBudgetConfig();
+        this.requestBodyBudget = budgetConfig == null ? null : new RequestBodyBudget(budgetConfig.getMaxBytes());
+        ResponseCacheConfig cacheConfig = httpServerWrapperConfig.getResponseCacheConfig();
+        this.responseCache = cacheConfig == null ? null
+                : new ResponseCache(cacheConfig.getMaxBytes(), cacheConfig.getMaxEntryBytes());
+        this.requestTimingStats =
+                httpServerWrapperConfig.getRequestTimingConfig() == null ? null : new RequestTimingStats();
+        RequestWatchdogConfig watchdogConfig = httpServerWrapperConfig.getRequestWatchdogConfig();
+        this.requestWatchdog = watchdogConfig == null ? null : new RequestWatchdog(watchdogConfig);
+        this.requestDecompressionStats = httpServerWrapperConfig.getRequestDecompressionConfig() == null ? null
+                : new RequestDecompressionStats();
     }
 
+    /**
+     * Build the handlers and connectors and start the server. Steps that don't depend on each other, such as loading
+     * the access log config, building resource handlers, resolving listeners and building and binding connectors, run
+     * in parallel. How long each step took is available from {@link HttpServerWrapper#getStartupReport()} afterwards.
+     *
+     * @throws Exception if the server could not be started
+     */
     public void start() throws Exception {
-        HandlerCollection handlerCollection = new HandlerCollection();
-
-        // add logback-access request log
-        RequestLogHandler logHandler = new RequestLogHandler();
-        RequestLogImpl logbackRequestLog = new RequestLogImpl();
-        logbackRequestLog.setQuiet(httpServerWrapperConfig.isLogbackAccessQuiet());
-        if (httpServerWrapperConfig.getAccessLogConfigFileInFilesystem() != null) {
-            logger.debug("Loading logback access config from fs path " +
-                    httpServerWrapperConfig.getAccessLogConfigFileInFilesystem());
-            logbackRequestLog.setFileName(httpServerWrapperConfig.getAccessLogConfigFileInFilesystem());
-            logHandler.setRequestLog(logbackRequestLog);
-            handlerCollection.addHandler(logHandler);
-        } else if (httpServerWrapperConfig.getAccessLogConfigFileInClasspath() != null) {
-            logger.debug("Loading logback access config from classpath path " + httpServerWrapperConfig
-                    .getAccessLogConfigFileInClasspath());
-            logbackRequestLog.setResource(httpServerWrapperConfig.getAccessLogConfigFileInClasspath());
-            logHandler.setRequestLog(logbackRequestLog);
-            handlerCollection.addHandler(logHandler);
-        } else {
-            logger.debug("No access logging configured; default logback-access config will apply.");
+        if (sharedServerResources != null) {
+            sharedServerResources.start();
         }
 
-        // apply log config
-        logbackRequestLog.start();
+        final StartupProfiler profiler = new StartupProfiler();
+        List<HttpServerConnectorConfig> connectorConfigs = httpServerWrapperConfig.getHttpServerConnectorConfigs();
+        final WarmupConfig warmupConfig = httpServerWrapperConfig.getWarmupConfig();
 
-        if (!httpServerWrapperConfig.getHttpResourceHandlerConfigs().isEmpty()) {
-            ContextHandlerCollection contextHandlerCollection = new ContextHandlerCollection();
+        ExecutorService executor = Executors.newFixedThreadPool(STARTUP_THREADS, new ThreadFactory() {
+            private final AtomicInteger count = new AtomicInteger();
 
-            List<ContextHandler> contextHandlers = Lists.newArrayList();
-            for (HttpResourceHandlerConfig httpResourceHandlerConfig : httpServerWrapperConfig
+            @Override
+            public Thread newThread(Runnable r) {
+                Thread thread = new Thread(r, "http-server-startup-" + count.incrementAndGet());
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+
+        // the connectors for each config, in config order
+        List<List<ServerConnector>> connectors = Lists.newArrayList();
+        List<Future<List<ServerConnector>>> connectorFutures = Lists.newArrayList();
+        try {
+            // connectors first, since binding can be the slowest step. With a warmup they must not be bound yet.
+            for (final HttpServerConnectorConfig connectorConfig : connectorConfigs) {
+                final String address = getAddress(connectorConfig);
+                connectorFutures.add(executor.submit(new Callable<List<ServerConnector>>() {
+                    @Override
+                    public List<ServerConnector> call() throws Exception {
+                        final List<ServerConnector> shards = profiler.time("build connector " + address,
+                                new Callable<List<ServerConnector>>() {
+                                    @Override
+                                    public List<ServerConnector> call() throws Exception {
+                                        return buildConnectors(connectorConfig);
+                                    }
+                                });
+                        if (warmupConfig == null) {
+                            profiler.time("bind connector " + address, new Callable<Void>() {
+                                @Override
+                                public Void call() throws Exception {
+                                    openConnectors(shards);
+                                    return null;
+                                }
+                            });
+                        }
+                        return shards;
+                    }
+                }));
+            }
+
+            HandlerCollection handlerCollection = new HandlerCollection();
+
+            // add logback-access request log
+            RequestLogHandler logHandler = new RequestLogHandler();
+            final RequestLogImpl logbackRequestLog = new RequestLogImpl();
+            logbackRequestLog.setQuiet(httpServerWrapperConfig.isLogbackAccessQuiet());
+            BinaryAccessLogConfig binaryAccessLogConfig = httpServerWrapperConfig.getBinaryAccessLogConfig();
+            if (binaryAccessLogConfig != null) {
+                logger.debug("Logging requests to binary segments in " + binaryAccessLogConfig.getDirectory());
+                // started by the log handler
+                binaryAccessLog = new BinaryAccessLog(binaryAccessLogConfig);
+                logHandler.setRequestLog(binaryAccessLog);
+                handlerCollection.addHandler(logHandler);
+            } else if (httpServerWrapperConfig.getAccessLogConfigFileInFilesystem() != null) {
+                logger.debug("Loading logback access config from fs path " +
+                        httpServerWrapperConfig.getAccessLogConfigFileInFilesystem());
+                logbackRequestLog.setFileName(httpServerWrapperConfig.getAccessLogConfigFileInFilesystem());
+                logHandler.setRequestLog(logbackRequestLog);
+                handlerCollection.addHandler(logHandler);
+            } else if (httpServerWrapperConfig.getAccessLogConfigFileInClasspath() != null) {
+                logger.debug("Loading logback access config from classpath path " + httpServerWrapperConfig
+                        .getAccessLogConfigFileInClasspath());
+                logbackRequestLog.setResource(httpServerWrapperConfig.getAccessLogConfigFileInClasspath());
+                logHandler.setRequestLog(logbackRequestLog);
+                handlerCollection.addHandler(logHandler);
+            } else {
+                logger.debug("No access logging configured; default logback-access config will apply.");
+            }
+
+            // apply log config, unless logback-access isn't used at all
+            final boolean logbackUsed = binaryAccessLogConfig == null;
+            Future<Void> logConfigFuture = executor.submit(profiler.timed("load access log config",
+                    new Callable<Void>() {
+                        @Override
+                        public Void call() {
+                            if (logbackUsed) {
+                                logbackRequestLog.start();
+                            }
+                            return null;
+                        }
+                    }));
+
+            List<Future<ContextHandler>> contextHandlerFutures = Lists.newArrayList();
+            for (final HttpResourceHandlerConfig httpResourceHandlerConfig : httpServerWrapperConfig
                     .getHttpResourceHandlerConfigs()) {
-                contextHandlers.add(httpResourceHandlerConfig.buildHandler());
+                contextHandlerFutures.add(executor.submit(profiler.timed(
+                        "build resource handler " + (contextHandlerFutures.size() + 1),
+                        new Callable<ContextHandler>() {
+                            @Override
+                            public ContextHandler call() {
+                                return httpResourceHandlerConfig.buildHandler();
+                            }
+                        })));
+            }
+
+            List<Future<EventListener>> listenerFutures = Lists.newArrayList();
+            for (final ListenerRegistration listener : httpServerWrapperConfig.getServletContextListeners()) {
+                listenerFutures.add(executor.submit(profiler.timed(
+                        "resolve listener " + (listenerFutures.size() + 1),
+                        new Callable<EventListener>() {
+                            @Override
+                            public EventListener call() {
+                                return listener.resolve();
+                            }
+                        })));
+            }
+
+            // added even if empty so that resource handlers can be added by reconfigure()
+            List<ContextHandler> contextHandlers = Lists.newArrayList();
+            for (Future<ContextHandler> future : contextHandlerFutures) {
+                contextHandlers.add(await(future));
+            }
+            resourceHandlers.setHandlers(contextHandlers.toArray(new Handler[contextHandlers.size()]));
+            handlerCollection.addHandler(resourceHandlers);
+
+            servletHandler = new ServletContextHandler();
+            // TODO configurable context path for servlets
+            servletHandler.setContextPath("/");
+
+            servletHandler.setMaxFormContentSize(httpServerWrapperConfig.getMaxFormContentSize());
+
+            if (requestTimingStats != null) {
+                // must come before the guice filter to time it
+                servletHandler.addFilter(new FilterHolder(new RequestTimingFilter()), "/*",
+                        EnumSet.of(DispatcherType.REQUEST));
+            }
+
+            // add guice servlet filter
+            FilterHolder filterHolder = new FilterHolder(filter);
+            servletHandler.addFilter(filterHolder, "/*", EnumSet.allOf(DispatcherType.class));
+
+            ServletDispatchConfig servletDispatchConfig = httpServerWrapperConfig.getServletDispatchConfig();
+            if (servletDispatchConfig != null) {
+                // after the guice filter, so that the servlets run in its request scope
+                servletHandler.addFilter(new FilterHolder(new ServletDispatchFilter(servletDispatchConfig)), "/*",
+                        EnumSet.allOf(DispatcherType.class));
+            }
+
+            // listeners are added in the order they were configured
+            for (Future<EventListener> future : listenerFutures) {
+                servletHandler.addEventListener(await(future));
+            }
+
+            if (requestBodyBudget != null) {
+                // delete multipart parts spilled to disk
+                servletHandler.addEventListener(MultiPartCleanerListener.INSTANCE);
+            }
+
+            if (responseCache != null) {
+                // cache hits are answered here, before the request reaches the guice filter
+                handlerCollection.addHandler(wrapHandler(
+                        new ResponseCacheHandler(responseCache, httpServerWrapperConfig.getResponseCacheConfig()),
+                        servletHandler));
+            } else {
+                handlerCollection.addHandler(servletHandler);
+            }
+
+            HealthCheckConfig healthCheckConfig = httpServerWrapperConfig.getHealthCheckConfig();
+            if (healthCheckConfig != null) {
+                // a request log is only set if access logging is configured
+                healthHandler = new HealthHandler(healthCheckConfig,
+                        healthCheckConfig.isLogRequests() ? logHandler.getRequestLog() : null);
+            }
+
+            TrafficCaptureConfig trafficCaptureConfig = httpServerWrapperConfig.getTrafficCaptureConfig();
+            if (trafficCaptureConfig != null) {
+                trafficCapture = new TrafficCapture(trafficCaptureConfig);
+                // started and stopped with the server
+                server.addBean(trafficCapture);
+            }
+
+            HeavyHittersConfig heavyHittersConfig = httpServerWrapperConfig.getHeavyHittersConfig();
+            if (heavyHittersConfig != null) {
+                heavyHitters = new HeavyHitters(heavyHittersConfig);
+                // started and stopped with the server
+                server.addBean(heavyHitters);
             }
 
-            contextHandlerCollection.setHandlers(contextHandlers.toArray(new Handler[contextHandlers.size()]));
+            Handler rootHandler = wrapRootHandlers(handlerCollection);
+            if (allocationProfiler != null) {
+                rootHandler = allocationProfiler.instrument(rootHandler);
+            }
+            server.setHandler(rootHandler);
+            if (httpServerWrapperConfig.getStopTimeoutMillis() > 0) {
+                server.setStopTimeout(httpServerWrapperConfig.getStopTimeoutMillis());
+            }
 
-            handlerCollection.addHandler(contextHandlerCollection);
+            await(logConfigFuture);
+            for (Future<List<ServerConnector>> future : connectorFutures) {
+                connectors.add(await(future));
+            }
+        } catch (Exception e) {
+            closeConnectors(executor, connectorFutures);
+            throw e;
+        } finally {
+            executor.shutdownNow();
         }
 
-        ServletContextHandler servletHandler = new ServletContextHandler();
-        // TODO configurable context path for servlets
-        servletHandler.setContextPath("/");
+        if (requestWatchdog != null) {
+            requestWatchdog.start();
+        }
 
-        servletHandler.setMaxFormContentSize(httpServerWrapperConfig.getMaxFormContentSize());
+        if (warmupConfig != null) {
+            profiler.time("warmup", new Callable<Void>() {
+                @Override
+                public Void call() throws Exception {
+                    warmUp(warmupConfig);
+                    return null;
+                }
+            });
 
-        // add guice servlet filter
-        FilterHolder filterHolder = new FilterHolder(filter);
-        servletHandler.addFilter(filterHolder, "/*", EnumSet.allOf(DispatcherType.class));
+            // the server is already running, so connectors have to be started as they're added
+            try {
+                for (int i = 0; i < connectors.size(); i++) {
+                    addConnectors(connectorConfigs.get(i), connectors.get(i));
+                    startConnectors(connectors.get(i));
+                }
+            } catch (Exception e) {
+                stop();
+                throw e;
+            }
+        } else {
+            for (int i = 0; i < connectors.size(); i++) {
+                addConnectors(connectorConfigs.get(i), connectors.get(i));
+            }
 
-        for (ListenerRegistration listener : httpServerWrapperConfig.getServletContextListeners()) {
-            listener.apply(servletHandler);
+            profiler.time("start server", new Callable<Void>() {
+                @Override
+                public Void call() throws Exception {
+                    server.start();
+                    return null;
+                }
+            });
         }
 
-        handlerCollection.addHandler(servletHandler);
+        startupReport = profiler.buildReport();
+        logger.debug(startupReport.toString());
+    }
 
-        server.setHandler(handlerCollection);
+    private void addConnectors(HttpServerConnectorConfig connectorConfig, List<ServerConnector> shards) {
+        serverConnectors.put(connectorConfig, shards);
+        for (ServerConnector connector : shards) {
+            server.addConnector(connector);
+        }
+    }
 
-        for (HttpServerConnectorConfig connectorConfig : httpServerWrapperConfig.getHttpServerConnectorConfigs()) {
-            if (connectorConfig.isTls()) {
-                SslContextFactory sslContextFactory = new SslContextFactory();
-                sslContextFactory.setKeyStore(connectorConfig.getTlsKeystore());
-                sslContextFactory.setKeyStorePassword(connectorConfig.getTlsKeystorePassphrase());
+    /**
+     * After a failed start, close the connectors that were built, including ones whose futures were never awaited, so
+     * that no port is left bound. Connectors that haven't been built yet never will be.
+     */
+    private static void closeConnectors(ExecutorService executor, List<Future<List<ServerConnector>>> futures) {
+        // queued tasks are dropped; running ones are waited for, since they may be about to bind
+        executor.shutdownNow();
+        try {
+            if (!executor.awaitTermination(STARTUP_FAILURE_WAIT_SECONDS, TimeUnit.SECONDS)) {
+                logger.warn("Startup tasks still running after a failed start; their connectors may stay open");
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
 
-                sslContextFactory.setIncludeCipherSuites(connectorConfig.getTlsCipherSuites()
-                        .toArray(new String[connectorConfig.getTlsCipherSuites().size()]));
-                sslContextFactory.setIncludeProtocols(
-                        connectorConfig.getTlsProtocols()
-                                .toArray(new String[connectorConfig.getTlsProtocols().size()]));
+        for (Future<List<ServerConnector>> future : futures) {
+            if (!future.isDone()) {
+                future.cancel(true);
+                continue;
+            }
+            List<ServerConnector> shards;
+            try {
+                shards = future.get();
+            } catch (CancellationException | ExecutionException | InterruptedException e) {
+                // nothing was left open
+                continue;
+            }
+            for (ServerConnector connector : shards) {
+                connector.close();
+            }
+        }
+    }
 
-                ServerConnector connector = new ServerConnector(server, sslContextFactory);
-                connector.setPort(connectorConfig.getListenPort());
-                connector.setHost(connectorConfig.getListenHost());
-                server.addConnector(connector);
-            } else {
-                ServerConnector connector = new ServerConnector(server);
-                connector.setPort(connectorConfig.getListenPort());
-                connector.setHost(connectorConfig.getListenHost());
-                server.addConnector(connector);
+    private static void openConnectors(List<ServerConnector> shards) throws Exception {
+        try {
+            for (ServerConnector connector : shards) {
+                connector.open();
             }
+        } catch (Exception e) {
+            for (ServerConnector connector : shards) {
+                connector.close();
+            }
+            throw e;
         }
+    }
 
+    private static void startConnectors(List<ServerConnector> shards) throws Exception {
+        for (ServerConnector connector : shards) {
+            connector.start();
+        }
+    }
+
+    /**
+     * Apply a new config to the running server, changing only what differs. Connectors are matched by listen host
+     * and port:
+     *
+     * - connectors that are no longer configured are stopped, which closes their connections
+     * - new connectors are opened
+     * - connectors whose TLS, PROXY protocol or shards setting changed are replaced
+     * - other connectors are kept, along with their connections, and their HTTP settings, TLS keystores, cipher
+     * suites and protocols are updated in place. New HTTP settings only apply to connections accepted afterwards;
+     * open connections keep the settings they were accepted with.
+     *
+     * The resource handlers are replaced as a set, in a single step as far as requests are concerned, and the max form
+     * content size is updated. All other settings keep the values they had when the server was started, and so does
+     * {@link #getHttpServerWrapperConfig()}, which afterwards has this config's connectors, resource handlers and max
+     * form content size and the started config's other settings.
+     *
+     * If this fails part way, e.g. because a new port is in use, the changes made until then are kept.
+     *
+     * @param newConfig the config to apply
+     * @throws Exception if a connector or resource handler could not be started
+     */
+    public synchronized void reconfigure(@Nonnull HttpServerWrapperConfig newConfig) throws Exception {
+        checkState(server.isStarted(), "Server must be started to be reconfigured");
+
+        Map<String, HttpServerConnectorConfig> newConfigsByAddress = Maps.newLinkedHashMap();
+        for (HttpServerConnectorConfig connectorConfig : newConfig.getHttpServerConnectorConfigs()) {
+            checkArgument(newConfigsByAddress.put(getAddress(connectorConfig), connectorConfig) == null,
+                    "Multiple connectors configured for %s", getAddress(connectorConfig));
+        }
+
+        // remove and update first so that ports are free for the connectors being added
+        List<HttpServerConnectorConfig> toAdd = Lists.newArrayList();
+        for (Map.Entry<HttpServerConnectorConfig, List<ServerConnector>> entry : Lists.newArrayList(
+                serverConnectors.entrySet())) {
+            HttpServerConnectorConfig oldConfig = entry.getKey();
+            HttpServerConnectorConfig newConnectorConfig = newConfigsByAddress.remove(getAddress(oldConfig));
+
+            if (newConnectorConfig != null && oldConfig.isTls() == newConnectorConfig.isTls()
+                    && oldConfig.isProxyProtocol() == newConnectorConfig.isProxyProtocol()
+                    && oldConfig.getShards() == newConnectorConfig.getShards()) {
+                updateConnectors(oldConfig, newConnectorConfig, entry.getValue());
+                continue;
+            }
+
+            logger.info("Removing connector for " + getAddress(oldConfig));
+            serverConnectors.remove(oldConfig);
+            sslContextFactories.remove(oldConfig);
+            for (ServerConnector connector : entry.getValue()) {
+                connector.stop();
+                server.removeConnector(connector);
+            }
+            if (newConnectorConfig != null) {
+                toAdd.add(newConnectorConfig);
+            }
+        }
+        toAdd.addAll(newConfigsByAddress.values());
+
+        for (HttpServerConnectorConfig connectorConfig : toAdd) {
+            logger.info("Adding connector for " + getAddress(connectorConfig));
+            List<ServerConnector> shards = buildConnectors(connectorConfig);
+            addConnectors(connectorConfig, shards);
+            startConnectors(shards);
+        }
+
+        replaceResourceHandlers(newConfig.getHttpResourceHandlerConfigs());
+
+        servletHandler.setMaxFormContentSize(newConfig.getMaxFormContentSize());
+
+        httpServerWrapperConfig = httpServerWrapperConfig.withReconfigurableSettingsOf(newConfig);
+    }
+
+    private void updateConnectors(HttpServerConnectorConfig oldConfig, HttpServerConnectorConfig newConfig,
+            List<ServerConnector> shards) throws Exception {
+        // open connections keep the settings they were accepted with; new ones get a fresh HttpConfiguration
+        for (ServerConnector connector : shards) {
+            connector.getConnectionFactory(ReconfigurableHttpConnectionFactory.class)
+                    .setHttpConfiguration(newConfig.getHttpConnectionConfig().buildHttpConfiguration());
+        }
+
+        serverConnectors.remove(oldConfig);
+        serverConnectors.put(newConfig, shards);
+
+        SslContextFactory sslContextFactory = sslContextFactories.get(oldConfig);
+        if (sslContextFactory != null) {
+            reloadTlsKeystore(sslContextFactory, newConfig);
+            sslContextFactories.remove(oldConfig);
+            sslContextFactories.put(newConfig, sslContextFactory);
+        }
+    }
+
+    private void replaceResourceHandlers(List<HttpResourceHandlerConfig> resourceHandlerConfigs) throws Exception {
+        Handler[] oldHandlers = resourceHandlers.getHandlers();
+
+        List<Handler> newHandlers = Lists.newArrayList();
+        for (HttpResourceHandlerConfig resourceHandlerConfig : resourceHandlerConfigs) {
+            newHandlers.add(resourceHandlerConfig.buildHandler());
+        }
+        // start the new handlers before they are visible to requests
+        for (Handler handler : newHandlers) {
+            handler.setServer(server);
+            handler.start();
+        }
+
+        resourceHandlers.setHandlers(newHandlers.toArray(new Handler[newHandlers.size()]));
+
+        if (oldHandlers != null) {
+            for (Handler handler : oldHandlers) {
+                handler.stop();
+            }
+        }
+    }
+
+    private static String getAddress(HttpServerConnectorConfig connectorConfig) {
+        return connectorConfig.getListenHost() + ":" + connectorConfig.getListenPort();
+    }
+
+    /**
+     * Wrap the handlers that apply to every request around the collection, innermost first.
+     */
+    private Handler wrapRootHandlers(HandlerCollection handlerCollection) {
+        Handler rootHandler = handlerCollection;
+        if (requestDecompressionStats != null) {
+            // inside traffic capture, so that captures keep bodies as they were sent
+            rootHandler = wrapHandler(new RequestDecompressionHandler(requestDecompressionStats,
+                    httpServerWrapperConfig.getRequestDecompressionConfig()), rootHandler);
+        }
+        if (requestBodyBudget != null) {
+            rootHandler = wrapHandler(new RequestBodyBudgetHandler(requestBodyBudget,
+                    httpServerWrapperConfig.getRequestBodyBudgetConfig()), rootHandler);
+        }
+        if (httpServerWrapperConfig.getRequestDeadlineConfig() != null) {
+            rootHandler = wrapHandler(new RequestDeadlineHandler(httpServerWrapperConfig.getRequestDeadlineConfig()),
+                    rootHandler);
+        }
+        ServerEventsConfig eventsConfig = httpServerWrapperConfig.getServerEventsConfig();
+        if (eventsConfig != null && eventsConfig.getRequestThresholdMillis() != -1) {
+            rootHandler = wrapHandler(new RequestEventHandler(eventsConfig.getListener(),
+                    eventsConfig.getRequestThresholdMillis()), rootHandler);
+        }
+        if (requestWatchdog != null) {
+            rootHandler = wrapHandler(new RequestWatchdogHandler(requestWatchdog), rootHandler);
+        }
+        if (requestTimingStats != null) {
+            rootHandler = wrapHandler(new RequestTimingHandler(requestTimingStats,
+                    httpServerWrapperConfig.getRequestTimingConfig()), rootHandler);
+        }
+        if (heavyHitters != null) {
+            rootHandler = wrapHandler(new HeavyHittersHandler(heavyHitters), rootHandler);
+        }
+        if (trafficCapture != null) {
+            rootHandler = wrapHandler(new TrafficCaptureHandler(trafficCapture), rootHandler);
+        }
+        if (healthHandler != null) {
+            // outermost so that probes skip everything else
+            rootHandler = wrapHandler(healthHandler, rootHandler);
+        }
+        if (httpServerWrapperConfig.getStopTimeoutMillis() > 0) {
+            // the server waits for its requests in progress to finish when it stops
+            rootHandler = wrapHandler(new StatisticsHandler(), rootHandler);
+        }
+        if (httpServerWrapperConfig.getWarmupConfig() != null) {
+            // outermost so that warmup requests skip logging and stats
+            rootHandler = wrapHandler(new WarmupBypassHandler(resourceHandlers, servletHandler), rootHandler);
+        }
+        return rootHandler;
+    }
+
+    /**
+     * @return the future's result
+     * @throws Exception whatever the future's task threw
+     */
+    private static <T> T await(Future<T> future) throws Exception {
+        try {
+            return future.get();
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof Exception) {
+                throw (Exception) cause;
+            }
+            if (cause instanceof Error) {
+                throw (Error) cause;
+            }
+            throw e;
+        }
+    }
+
+    /**
+     * Start the server with only a local connector and run the warmup through it.
+     */
+    private void warmUp(WarmupConfig warmupConfig) throws Exception {
+        // use the same HTTP settings as the real connectors so the same code paths get compiled
+        List<HttpServerConnectorConfig> connectorConfigs = httpServerWrapperConfig.getHttpServerConnectorConfigs();
+        HttpConnectionConfig httpConnectionConfig = connectorConfigs.isEmpty() ? new HttpConnectionConfig()
+                : connectorConfigs.get(0).getHttpConnectionConfig();
+
+        LocalConnector warmupConnector = new LocalConnector(server, null, null, byteBufferPool, -1,
+                new HttpConnectionFactory(httpConnectionConfig.buildHttpConfiguration()));
+        server.addConnector(warmupConnector);
         server.start();
+
+        try {
+            new Warmup(warmupConnector, warmupConfig).run();
+        } catch (Exception e) {
+            logger.warn("Warmup failed; opening connectors anyway", e);
+        } finally {
+            warmupConnector.stop();
+            server.removeConnector(warmupConnector);
+        }
+    }
+
+    private static Handler wrapHandler(HandlerWrapper wrapper, Handler handler) {
+        wrapper.setHandler(handler);
+        return wrapper;
     }
 
+    /**
+     * @return one connector, or one per shard if the config has more than one
+     */
+    private List<ServerConnector> buildConnectors(HttpServerConnectorConfig connectorConfig) throws Exception {
+        SslContextFactory sslContextFactory = null;
+        if (connectorConfig.isTls()) {
+            // shared by all shards so that reloading it applies to all of them
+            sslContextFactory = new SslContextFactory();
+            applyTlsKeystore(sslContextFactory, TlsKeystores.getCombinedKeystore(connectorConfig),
+                    connectorConfig.getTlsKeystorePassphrase());
+
+            applyTlsCiphersAndProtocols(sslContextFactory, connectorConfig);
+            sslContextFactories.put(connectorConfig, sslContextFactory);
+        }
+
+        if (connectorConfig.getShards() == 1) {
+            return Lists.newArrayList(buildConnector(connectorConfig, sslContextFactory, -1));
+        }
+
+        checkArgument(connectorConfig.getListenChannel() == null, "Connectors with a listen channel can't have shards");
+
+        checkArgument(connectorConfig.getListenPort() != 0, "Connectors with shards need a fixed port");
+        List<ServerConnector> shards = Lists.newArrayList();
+        for (int shard = 0; shard < connectorConfig.getShards(); shard++) {
+            shards.add(buildConnector(connectorConfig, sslContextFactory, shard));
+        }
+        return shards;
+    }
+
+    /**
+     * @param shard index of the shard, or -1 for a connector that isn't sharded
+     */
+    private ServerConnector buildConnector(HttpServerConnectorConfig connectorConfig,
+            @Nullable SslContextFactory sslContextFactory, int shard) throws Exception {
+        List<ConnectionFactory> connectionFactories = Lists.newArrayList();
+
+        if (sslContextFactory != null) {
+            connectionFactories.add(new SslConnectionFactory(sslContextFactory, HttpVersion.HTTP_1_1.asString()));
+        }
+
+        connectionFactories.add(new ReconfigurableHttpConnectionFactory(
+                connectorConfig.getHttpConnectionConfig().buildHttpConfiguration()));
+
+        if (connectorConfig.isProxyProtocol()) {
+            // the PROXY header arrives first, ahead of any TLS handshake
+            connectionFactories.add(0, new ProxyConnectionFactory(connectionFactories.get(0).getProtocol()));
+        }
+
+        ConnectionFactory[] factories = connectionFactories.toArray(new ConnectionFactory[connectionFactories.size()]);
+        ServerConnector connector;
+        if (connectorConfig.getListenChannel() != null) {
+            connector = new ListenChannelServerConnector(server, byteBufferPool, connectorConfig.getListenChannel(),
+                    factories);
+        } else if (shard == -1) {
+            // executor and scheduler are null so the server's are used
+            connector = new ArrivalServerConnector(server, null, null, byteBufferPool, -1, -1, factories);
+        } else {
+            connector = new ShardServerConnector(server, byteBufferPool, shard, factories);
+        }
+        connector.setPort(connectorConfig.getListenPort());
+        connector.setHost(connectorConfig.getListenHost());
+
+        ServerEventsConfig eventsConfig = httpServerWrapperConfig.getServerEventsConfig();
+        if (eventsConfig != null && (eventsConfig.getConnectionThresholdMillis() != -1
+                || (eventsConfig.isTlsHandshakeEvents() && connectorConfig.isTls()))) {
+            connector.addBean(new ConnectorEventListener(eventsConfig.getListener(),
+                    eventsConfig.getConnectionThresholdMillis(), eventsConfig.isTlsHandshakeEvents()));
+        }
+        return connector;
+    }
+
+    /**
+     * Stop the server. If a health endpoint is configured, it reports not ready from now on, and the server keeps
+     * serving for {@link HealthCheckConfig#getShutdownDelayMillis()} before it stops. With a {@link
+     * HttpServerWrapperConfig#setStopTimeoutMillis(long) stop timeout}, it then stops accepting connections and waits
+     * for requests in progress to finish.
+     *
+     * @throws Exception if the server failed to stop, or requests were still in progress after the stop timeout
+     */
     public void stop() throws Exception {
-        server.stop();
+        HealthHandler healthHandler = this.healthHandler;
+        if (healthHandler != null) {
+            healthHandler.setShuttingDown();
+            long delayMillis = healthHandler.getShutdownDelayMillis();
+            if (delayMillis > 0 && server.isStarted()) {
+                logger.info("Health endpoint reports not ready; stopping in " + delayMillis + " ms");
+                Thread.sleep(delayMillis);
+            }
+        }
+
+        try {
+            server.stop();
+        } finally {
+            if (requestWatchdog != null) {
+                requestWatchdog.stop();
+            }
+        }
+    }
+
+    /**
+     * Reload the keystore of every TLS connector from its {@link HttpServerConnectorConfig}. To rotate certificates,
+     * set the new keystore (and passphrase, if it changed) on the connector config and then call this.
+     *
+     * Each new keystore is first loaded into an SSL context of its own. Only if that works is the connector's SSL
+     * context switched to it: new handshakes use the new keystore, while established connections and the acceptors are
+     * left alone. If a keystore can't be loaded, that connector keeps using its old keystore and an exception is
+     * thrown.
+     *
+     * This waits for any {@link #reconfigure(HttpServerWrapperConfig)} in progress, and vice versa.
+     *
+     * @throws Exception if a keystore could not be loaded
+     */
+    public synchronized void reloadTlsKeystores() throws Exception {
+        Exception failure = null;
+        for (Map.Entry<HttpServerConnectorConfig, SslContextFactory> entry : sslContextFactories.entrySet()) {
+            HttpServerConnectorConfig connectorConfig = entry.getKey();
+            logger.debug("Reloading TLS keystore for " + getAddress(connectorConfig));
+            try {
+                reloadTlsKeystore(entry.getValue(), connectorConfig);
+            } catch (Exception e) {
+                logger.warn("Could not reload TLS keystore for " + getAddress(connectorConfig) +
+                        "; keeping the old one", e);
+                if (failure == null) {
+                    failure = e;
+                } else {
+                    failure.addSuppressed(e);
+                }
+            }
+        }
+        if (failure != null) {
+            throw failure;
+        }
+    }
+
+    /**
+     * Load the connector config's keystore into a new SslContextFactory, and only if that works apply it to the
+     * connector's, so that a bad keystore leaves the old one in use
+     */
+    private static void reloadTlsKeystore(SslContextFactory sslContextFactory,
+            final HttpServerConnectorConfig connectorConfig) throws Exception {
+        final KeyStore keystore = TlsKeystores.getCombinedKeystore(connectorConfig);
+        if (!TlsKeystores.hasKeyEntry(keystore)) {
+            throw new KeyStoreException("Keystore for " + getAddress(connectorConfig) + " has no private keys");
+        }
+
+        SslContextFactory candidate = new SslContextFactory();
+        applyTlsKeystore(candidate, keystore, connectorConfig.getTlsKeystorePassphrase());
+        applyTlsCiphersAndProtocols(candidate, connectorConfig);
+        candidate.start();
+        candidate.stop();
+
+        sslContextFactory.reload(new Consumer<SslContextFactory>() {
+            @Override
+            public void accept(SslContextFactory sslContextFactory) {
+                applyTlsKeystore(sslContextFactory, keystore, connectorConfig.getTlsKeystorePassphrase());
+                applyTlsCiphersAndProtocols(sslContextFactory, connectorConfig);
+            }
+        });
+    }
+
+    private static void applyTlsKeystore(SslContextFactory sslContextFactory, KeyStore keystore, String passphrase) {
+        sslContextFactory.setKeyStore(keystore);
+        sslContextFactory.setKeyStorePassword(passphrase);
+    }
+
+    private static void applyTlsCiphersAndProtocols(SslContextFactory sslContextFactory,
+            HttpServerConnectorConfig connectorConfig) {
+        sslContextFactory.setIncludeCipherSuites(connectorConfig.getTlsCipherSuites()
+                .toArray(new String[connectorConfig.getTlsCipherSuites().size()]));
+        sslContextFactory.setIncludeProtocols(
+                connectorConfig.getTlsProtocols()
+                        .toArray(new String[connectorConfig.getTlsProtocols().size()]));
     }
 
     /**
@@ -143,7 +904,130 @@ public class HttpServerWrapper {
     }
 
     /**
-     * @return the config for this wrapper
+     * @return the buffer pool shared by all connectors, for monitoring. With {@link SharedServerResources}, this is
+     * the pool shared by all servers.
+     */
+    public InstrumentedByteBufferPool getByteBufferPool() {
+        return byteBufferPool;
+    }
+
+    /**
+     * @return stats for each shard of the connectors that have more than one, or an empty list if none do
+     */
+    @Nonnull
+    public List<ConnectorShardStats> getConnectorShardStats() {
+        List<ConnectorShardStats> stats = Lists.newArrayList();
+        for (Map.Entry<HttpServerConnectorConfig, List<ServerConnector>> entry : serverConnectors.entrySet()) {
+            for (ServerConnector connector : entry.getValue()) {
+                if (connector instanceof ShardServerConnector) {
+                    ShardServerConnector shard = (ShardServerConnector) connector;
+                    stats.add(new ConnectorShardStats(entry.getKey().getListenHost(), entry.getKey().getListenPort(),
+                            shard.getShard(), shard.getAcceptedConnections(),
+                            shard.getConnectedEndPoints().size()));
+                }
+            }
+        }
+        return stats;
+    }
+
+    /**
+     * @return the binary access log, if one is configured and the server has been started, otherwise null
+     */
+    @Nullable
+    public BinaryAccessLog getBinaryAccessLog() {
+        return binaryAccessLog;
+    }
+
+    /**
+     * @return the traffic capture, if one is configured and the server has been started, otherwise null
+     */
+    @Nullable
+    public TrafficCapture getTrafficCapture() {
+        return trafficCapture;
+    }
+
+    /**
+     * @return the top paths, clients and user agents, if configured and the server has been started, otherwise null
+     */
+    @Nullable
+    public HeavyHitters getHeavyHitters() {
+        return heavyHitters;
+    }
+
+    /**
+     * Measure what each handler, filter and request log allocates. The handler tree is instrumented when the server
+     * starts, so this must be set before then.
+     */
+    void setAllocationProfiler(@Nullable HandlerAllocationProfiler allocationProfiler) {
+        checkState(!server.isStarted(), "The allocation profiler must be set before the server starts");
+        this.allocationProfiler = allocationProfiler;
+    }
+
+    /**
+     * @return this server's share of the thread pool in {@link SharedServerResources}, with stats for this server's
+     * jobs only, or null if the server has its own thread pool
+     */
+    @Nullable
+    public ThreadPoolShare getThreadPoolShare() {
+        return threadPoolShare;
+    }
+
+    /**
+     * @return the server-wide request body budget, or null if none is configured
+     * @see HttpServerWrapperConfig#setRequestBodyBudgetConfig(RequestBodyBudgetConfig)
+     */
+    @Nullable
+    public RequestBodyBudget getRequestBodyBudget() {
+        return requestBodyBudget;
+    }
+
+    /**
+     * @return the servlet response cache, or null if none is configured
+     * @see HttpServerWrapperConfig#setResponseCacheConfig(ResponseCacheConfig)
+     */
+    @Nullable
+    public ResponseCache getResponseCache() {
+        return responseCache;
+    }
+
+    /**
+     * @return request phase timings, or null if timing isn't configured
+     * @see HttpServerWrapperConfig#setRequestTimingConfig(RequestTimingConfig)
+     */
+    @Nullable
+    public RequestTimingStats getRequestTimingStats() {
+        return requestTimingStats;
+    }
+
+    /**
+     * @return the slow request watchdog, or null if none is configured
+     * @see HttpServerWrapperConfig#setRequestWatchdogConfig(RequestWatchdogConfig)
+     */
+    @Nullable
+    public RequestWatchdog getRequestWatchdog() {
+        return requestWatchdog;
+    }
+
+    /**
+     * @return counts of decoded gzip and deflate request bodies, or null if request decompression isn't configured
+     * @see HttpServerWrapperConfig#setRequestDecompressionConfig(RequestDecompressionConfig)
+     */
+    @Nullable
+    public RequestDecompressionStats getRequestDecompressionStats() {
+        return requestDecompressionStats;
+    }
+
+    /**
+     * @return how long each step of start() took, or null if the server hasn't been started
+     */
+    @Nullable
+    public StartupReport getStartupReport() {
+        return startupReport;
+    }
+
+    /**
+     * @return the config for this wrapper: the one it was created with, or after {@link
+     * #reconfigure(HttpServerWrapperConfig)}, a copy of it with the settings that reconfiguring applied
      */
     public HttpServerWrapperConfig getHttpServerWrapperConfig() {
         return httpServerWrapperConfig;
@@ -13,6 +13,7 @@ import javax.annotation.concurrent.NotThreadSafe;
 import javax.servlet.ServletContextListener;
 import java.util.List;
 
+import static com.google.common.base.Preconditions.checkArgument;
 import static com.google.common.base.Preconditions.checkNotNull;
 import static com.google.common.collect.Lists.newArrayList;
 
@@ -26,6 +27,8 @@ public final class HttpServerWrapperConfig {
 
     private int maxFormContentSize = -1;
 
+    private long stopTimeoutMillis = 0;
+
     @Nullable
     private String accessLogConfigFileInClasspath = "/" + this.getClass().getPackage()
         .getName().replace('.', '/') + "/pl-default-logback-access.xml";
@@ -38,6 +41,48 @@ public final class HttpServerWrapperConfig {
 
     private final List<ListenerRegistration> servletContextListeners = newArrayList();
 
+    @Nonnull
+    private ByteBufferPoolConfig byteBufferPoolConfig = new ByteBufferPoolConfig();
+
+    @Nullable
+    private RequestBodyBudgetConfig requestBodyBudgetConfig = null;
+
+    @Nullable
+    private RequestDeadlineConfig requestDeadlineConfig = null;
+
+    @Nullable
+    private ResponseCacheConfig responseCacheConfig = null;
+
+    @Nullable
+    private RequestTimingConfig requestTimingConfig = null;
+
+    @Nullable
+    private ServerEventsConfig serverEventsConfig = null;
+
+    @Nullable
+    private RequestWatchdogConfig requestWatchdogConfig = null;
+
+    @Nullable
+    private WarmupConfig warmupConfig = null;
+
+    @Nullable
+    private HealthCheckConfig healthCheckConfig = null;
+
+    @Nullable
+    private BinaryAccessLogConfig binaryAccessLogConfig = null;
+
+    @Nullable
+    private TrafficCaptureConfig trafficCaptureConfig = null;
+
+    @Nullable
+    private ServletDispatchConfig servletDispatchConfig = null;
+
+    @Nullable
+    private HeavyHittersConfig heavyHittersConfig = null;
+
+    @Nullable
+    private RequestDecompressionConfig requestDecompressionConfig = null;
+
     @Nullable
     public String getAccessLogConfigFileInClasspath() {
         return accessLogConfigFileInClasspath;
@@ -88,6 +133,22 @@ public final class HttpServerWrapperConfig {
         this.maxFormContentSize = maxFormContentSize;
     }
 
+    public long getStopTimeoutMillis() {
+        return stopTimeoutMillis;
+    }
+
+    /**
+     * When this is more than 0, {@link HttpServerWrapper#stop()} stops accepting connections and then waits up to this
+     * long for requests in progress to finish before closing connections. Along with a listen channel (see {@link
+     * ListenChannels}), this lets a new server take over a port while the old one drains.
+     *
+     * @param stopTimeoutMillis max time to wait for requests in progress, or 0 not to wait for them. Default is 0.
+     */
+    public void setStopTimeoutMillis(long stopTimeoutMillis) {
+        checkArgument(stopTimeoutMillis >= 0, "Stop timeout must not be negative");
+        this.stopTimeoutMillis = stopTimeoutMillis;
+    }
+
     /**
      * Add config for a connector.
      *
@@ -143,6 +204,202 @@ public final class HttpServerWrapperConfig {
         this.logbackAccessQuiet = logbackAccessQuiet;
     }
 
+    @Nonnull
+    public ByteBufferPoolConfig getByteBufferPoolConfig() {
+        return byteBufferPoolConfig;
+    }
+
+    /**
+     * All connectors share one buffer pool built from this config. See {@link HttpServerWrapper#getByteBufferPool()}
+     * for its stats.
+     *
+     * With {@link SharedServerResources}, the server uses the shared pool from {@link
+     * SharedServerResourcesConfig#setByteBufferPoolConfig(ByteBufferPoolConfig)} instead, and a warning is logged if
+     * this config was changed from the defaults.
+     *
+     * @param byteBufferPoolConfig buffer pool config
+     */
+    public void setByteBufferPoolConfig(@Nonnull ByteBufferPoolConfig byteBufferPoolConfig) {
+        this.byteBufferPoolConfig = checkNotNull(byteBufferPoolConfig);
+    }
+
+    @Nullable
+    public RequestBodyBudgetConfig getRequestBodyBudgetConfig() {
+        return requestBodyBudgetConfig;
+    }
+
+    /**
+     * Unlike {@link HttpServerWrapperConfig#setMaxFormContentSize(int)}, which applies to each request, this caps the
+     * request body bytes in flight across all requests. See {@link HttpServerWrapper#getRequestBodyBudget()} for
+     * current usage.
+     *
+     * @param requestBodyBudgetConfig request body budget config, or null for no server-wide budget. Default is null.
+     */
+    public void setRequestBodyBudgetConfig(@Nullable RequestBodyBudgetConfig requestBodyBudgetConfig) {
+        this.requestBodyBudgetConfig = requestBodyBudgetConfig;
+    }
+
+    @Nullable
+    public RequestDeadlineConfig getRequestDeadlineConfig() {
+        return requestDeadlineConfig;
+    }
+
+    /**
+     * @param requestDeadlineConfig request deadline config, or null to not track deadlines. Default is null.
+     */
+    public void setRequestDeadlineConfig(@Nullable RequestDeadlineConfig requestDeadlineConfig) {
+        this.requestDeadlineConfig = requestDeadlineConfig;
+    }
+
+    @Nullable
+    public ResponseCacheConfig getResponseCacheConfig() {
+        return responseCacheConfig;
+    }
+
+    /**
+     * @param responseCacheConfig response cache config, or null to not cache servlet responses. Default is null.
+     */
+    public void setResponseCacheConfig(@Nullable ResponseCacheConfig responseCacheConfig) {
+        this.responseCacheConfig = responseCacheConfig;
+    }
+
+    @Nullable
+    public RequestTimingConfig getRequestTimingConfig() {
+        return requestTimingConfig;
+    }
+
+    /**
+     * @param requestTimingConfig request timing config, or null to not time requests. Default is null.
+     */
+    public void setRequestTimingConfig(@Nullable RequestTimingConfig requestTimingConfig) {
+        this.requestTimingConfig = requestTimingConfig;
+    }
+
+    @Nullable
+    public ServerEventsConfig getServerEventsConfig() {
+        return serverEventsConfig;
+    }
+
+    /**
+     * @param serverEventsConfig server events config, or null to not report events. Default is null.
+     */
+    public void setServerEventsConfig(@Nullable ServerEventsConfig serverEventsConfig) {
+        this.serverEventsConfig = serverEventsConfig;
+    }
+
+    @Nullable
+    public RequestWatchdogConfig getRequestWatchdogConfig() {
+        return requestWatchdogConfig;
+    }
+
+    /**
+     * @param requestWatchdogConfig request watchdog config, or null to not watch for slow requests. Default is null.
+     */
+    public void setRequestWatchdogConfig(@Nullable RequestWatchdogConfig requestWatchdogConfig) {
+        this.requestWatchdogConfig = requestWatchdogConfig;
+    }
+
+    @Nullable
+    public WarmupConfig getWarmupConfig() {
+        return warmupConfig;
+    }
+
+    /**
+     * @param warmupConfig warmup to run before opening connectors, or null to open them right away. Default is null.
+     */
+    public void setWarmupConfig(@Nullable WarmupConfig warmupConfig) {
+        this.warmupConfig = warmupConfig;
+    }
+
+    @Nullable
+    public HealthCheckConfig getHealthCheckConfig() {
+        return healthCheckConfig;
+    }
+
+    /**
+     * @param healthCheckConfig health endpoint to answer ahead of all other handlers, or null for none. Default is
+     *                          null.
+     */
+    public void setHealthCheckConfig(@Nullable HealthCheckConfig healthCheckConfig) {
+        this.healthCheckConfig = healthCheckConfig;
+    }
+
+    @Nullable
+    public BinaryAccessLogConfig getBinaryAccessLogConfig() {
+        return binaryAccessLogConfig;
+    }
+
+    /**
+     * If set, requests are logged to binary segment files instead of logback-access, and the access log config file
+     * settings are ignored. See {@link HttpServerWrapper#getBinaryAccessLog()} for its stats.
+     *
+     * @param binaryAccessLogConfig binary access log config, or null to use logback-access. Default is null.
+     */
+    public void setBinaryAccessLogConfig(@Nullable BinaryAccessLogConfig binaryAccessLogConfig) {
+        this.binaryAccessLogConfig = binaryAccessLogConfig;
+    }
+
+    @Nullable
+    public TrafficCaptureConfig getTrafficCaptureConfig() {
+        return trafficCaptureConfig;
+    }
+
+    /**
+     * If set, a sample of requests is captured to a file for replaying later. See {@link
+     * HttpServerWrapper#getTrafficCapture()} for its stats.
+     *
+     * @param trafficCaptureConfig traffic capture config, or null to not capture requests. Default is null.
+     */
+    public void setTrafficCaptureConfig(@Nullable TrafficCaptureConfig trafficCaptureConfig) {
+        this.trafficCaptureConfig = trafficCaptureConfig;
+    }
+
+    @Nullable
+    public ServletDispatchConfig getServletDispatchConfig() {
+        return servletDispatchConfig;
+    }
+
+    /**
+     * If set, its servlets are dispatched from an index built at startup, after GuiceFilter has run the Guice filters
+     * and servlets.
+     *
+     * @param servletDispatchConfig servlets to dispatch from an index, or null for none. Default is null.
+     */
+    public void setServletDispatchConfig(@Nullable ServletDispatchConfig servletDispatchConfig) {
+        this.servletDispatchConfig = servletDispatchConfig;
+    }
+
+    @Nullable
+    public HeavyHittersConfig getHeavyHittersConfig() {
+        return heavyHittersConfig;
+    }
+
+    /**
+     * If set, the paths, clients and user agents with the most requests and latency are tracked. See {@link
+     * HttpServerWrapper#getHeavyHitters()}.
+     *
+     * @param heavyHittersConfig heavy hitters config, or null to not track them. Default is null.
+     */
+    public void setHeavyHittersConfig(@Nullable HeavyHittersConfig heavyHittersConfig) {
+        this.heavyHittersConfig = heavyHittersConfig;
+    }
+
+    @Nullable
+    public RequestDecompressionConfig getRequestDecompressionConfig() {
+        return requestDecompressionConfig;
+    }
+
+    /**
+     * If set, gzip and deflate request bodies are decoded as servlets read them. See {@link
+     * HttpServerWrapper#getRequestDecompressionStats()}.
+     *
+     * @param requestDecompressionConfig request decompression config, or null to leave request bodies as they are sent.
+     *                                   Default is null.
+     */
+    public void setRequestDecompressionConfig(@Nullable RequestDecompressionConfig requestDecompressionConfig) {
+        this.requestDecompressionConfig = requestDecompressionConfig;
+    }
+
     /**
      * @param config connector config
      * @return this
@@ -188,6 +445,17 @@ public final class HttpServerWrapperConfig {
         return this;
     }
 
+    /**
+     * @param stopTimeoutMillis stop timeout
+     * @return this
+     * @see HttpServerWrapperConfig#setStopTimeoutMillis(long)
+     */
+    @Nonnull
+    public HttpServerWrapperConfig withStopTimeoutMillis(long stopTimeoutMillis) {
+        setStopTimeoutMillis(stopTimeoutMillis);
+        return this;
+    }
+
     /**
      * @param logbackAccessQuiet logback access 'quiet' mode setting
      * @return this
@@ -199,6 +467,162 @@ public final class HttpServerWrapperConfig {
         return this;
     }
 
+    /**
+     * @param byteBufferPoolConfig buffer pool config
+     * @return this
+     * @see HttpServerWrapperConfig#setByteBufferPoolConfig(ByteBufferPoolConfig)
+     */
+    @Nonnull
+    public HttpServerWrapperConfig withByteBufferPoolConfig(@Nonnull ByteBufferPoolConfig byteBufferPoolConfig) {
+        setByteBufferPoolConfig(byteBufferPoolConfig);
+        return this;
+    }
+
+    /**
+     * @param requestBodyBudgetConfig request body budget config
+     * @return this
+     * @see HttpServerWrapperConfig#setRequestBodyBudgetConfig(RequestBodyBudgetConfig)
+     */
+    @Nonnull
+    public HttpServerWrapperConfig withRequestBodyBudgetConfig(
+        @Nullable RequestBodyBudgetConfig requestBodyBudgetConfig) {
+        setRequestBodyBudgetConfig(requestBodyBudgetConfig);
+        return this;
+    }
+
+    /**
+     * @param requestDeadlineConfig request deadline config
+     * @return this
+     * @see HttpServerWrapperConfig#setRequestDeadlineConfig(RequestDeadlineConfig)
+     */
+    @Nonnull
+    public HttpServerWrapperConfig withRequestDeadlineConfig(@Nullable RequestDeadlineConfig requestDeadlineConfig) {
+        setRequestDeadlineConfig(requestDeadlineConfig);
+        return this;
+    }
+
+    /**
+     * @param responseCacheConfig response cache config
+     * @return this
+     * @see HttpServerWrapperConfig#setResponseCacheConfig(ResponseCacheConfig)
+     */
+    @Nonnull
+    public HttpServerWrapperConfig withResponseCacheConfig(@Nullable ResponseCacheConfig responseCacheConfig) {
+        setResponseCacheConfig(responseCacheConfig);
+        return this;
+    }
+
+    /**
+     * @param requestTimingConfig request timing config
+     * @return this
+     * @see HttpServerWrapperConfig#setRequestTimingConfig(RequestTimingConfig)
+     */
+    @Nonnull
+    public HttpServerWrapperConfig withRequestTimingConfig(@Nullable RequestTimingConfig requestTimingConfig) {
+        setRequestTimingConfig(requestTimingConfig);
+        return this;
+    }
+
+    /**
+     * @param serverEventsConfig server events config
+     * @return this
+     * @see HttpServerWrapperConfig#setServerEventsConfig(ServerEventsConfig)
+     */
+    @Nonnull
+    public HttpServerWrapperConfig withServerEventsConfig(@Nullable ServerEventsConfig serverEventsConfig) {
+        setServerEventsConfig(serverEventsConfig);
+        return this;
+    }
+
+    /**
+     * @param requestWatchdogConfig request watchdog config
+     * @return this
+     * @see HttpServerWrapperConfig#setRequestWatchdogConfig(RequestWatchdogConfig)
+     */
+    @Nonnull
+    public HttpServerWrapperConfig withRequestWatchdogConfig(@Nullable RequestWatchdogConfig requestWatchdogConfig) {
+        setRequestWatchdogConfig(requestWatchdogConfig);
+        return this;
+    }
+
+    /**
+     * @param warmupConfig warmup config
+     * @return this
+     * @see HttpServerWrapperConfig#setWarmupConfig(WarmupConfig)
+     */
+    @Nonnull
+    public HttpServerWrapperConfig withWarmupConfig(@Nullable WarmupConfig warmupConfig) {
+        setWarmupConfig(warmupConfig);
+        return this;
+    }
+
+    /**
+     * @param healthCheckConfig health check config
+     * @return this
+     * @see HttpServerWrapperConfig#setHealthCheckConfig(HealthCheckConfig)
+     */
+    @Nonnull
+    public HttpServerWrapperConfig withHealthCheckConfig(@Nullable HealthCheckConfig healthCheckConfig) {
+        setHealthCheckConfig(healthCheckConfig);
+        return this;
+    }
+
+    /**
+     * @param binaryAccessLogConfig binary access log config
+     * @return this
+     * @see HttpServerWrapperConfig#setBinaryAccessLogConfig(BinaryAccessLogConfig)
+     */
+    @Nonnull
+    public HttpServerWrapperConfig withBinaryAccessLogConfig(@Nullable BinaryAccessLogConfig binaryAccessLogConfig) {
+        setBinaryAccessLogConfig(binaryAccessLogConfig);
+        return this;
+    }
+
+    /**
+     * @param trafficCaptureConfig traffic capture config
+     * @return this
+     * @see HttpServerWrapperConfig#setTrafficCaptureConfig(TrafficCaptureConfig)
+     */
+    @Nonnull
+    public HttpServerWrapperConfig withTrafficCaptureConfig(@Nullable TrafficCaptureConfig trafficCaptureConfig) {
+        setTrafficCaptureConfig(trafficCaptureConfig);
+        return this;
+    }
+
+    /**
+     * @param servletDispatchConfig servlet dispatch config
+     * @return this
+     * @see HttpServerWrapperConfig#setServletDispatchConfig(ServletDispatchConfig)
+     */
+    @Nonnull
+    public HttpServerWrapperConfig withServletDispatchConfig(@Nullable ServletDispatchConfig servletDispatchConfig) {
+        setServletDispatchConfig(servletDispatchConfig);
+        return this;
+    }
+
+    /**
+     * @param heavyHittersConfig heavy hitters config
+     * @return this
+     * @see HttpServerWrapperConfig#setHeavyHittersConfig(HeavyHittersConfig)
+     */
+    @Nonnull
+    public HttpServerWrapperConfig withHeavyHittersConfig(@Nullable HeavyHittersConfig heavyHittersConfig) {
+        setHeavyHittersConfig(heavyHittersConfig);
+        return this;
+    }
+
+    /**
+     * @param requestDecompressionConfig request decompression config
+     * @return this
+     * @see HttpServerWrapperConfig#setRequestDecompressionConfig(RequestDecompressionConfig)
+     */
+    @Nonnull
+    public HttpServerWrapperConfig withRequestDecompressionConfig(
+        @Nullable RequestDecompressionConfig requestDecompressionConfig) {
+        setRequestDecompressionConfig(requestDecompressionConfig);
+        return this;
+    }
+
     /**
      * @param httpResourceHandlerConfig resource handler config
      * @return this
@@ -219,4 +643,38 @@ public final class HttpServerWrapperConfig {
     List<ListenerRegistration> getServletContextListeners() {
         return servletContextListeners;
     }
+
+    /**
+     * @param reconfigured a config that {@link HttpServerWrapper#reconfigure(HttpServerWrapperConfig)} applied
+     * @return a copy of this config with the connectors, resource handlers and max form content size of the
+     * reconfigured one, which are the only settings reconfiguring changes
+     */
+    @Nonnull
+    HttpServerWrapperConfig withReconfigurableSettingsOf(@Nonnull HttpServerWrapperConfig reconfigured) {
+        HttpServerWrapperConfig copy = new HttpServerWrapperConfig();
+        copy.connectorConfigs.addAll(reconfigured.connectorConfigs);
+        copy.maxFormContentSize = reconfigured.maxFormContentSize;
+        copy.httpResourceHandlerConfigs.addAll(reconfigured.httpResourceHandlerConfigs);
+
+        copy.stopTimeoutMillis = stopTimeoutMillis;
+        copy.accessLogConfigFileInClasspath = accessLogConfigFileInClasspath;
+        copy.accessLogConfigFileInFilesystem = accessLogConfigFileInFilesystem;
+        copy.logbackAccessQuiet = logbackAccessQuiet;
+        copy.servletContextListeners.addAll(servletContextListeners);
+        copy.byteBufferPoolConfig = byteBufferPoolConfig;
+        copy.requestBodyBudgetConfig = requestBodyBudgetConfig;
+        copy.requestDeadlineConfig = requestDeadlineConfig;
+        copy.responseCacheConfig = responseCacheConfig;
+        copy.requestTimingConfig = requestTimingConfig;
+        copy.serverEventsConfig = serverEventsConfig;
+        copy.requestWatchdogConfig = requestWatchdogConfig;
+        copy.warmupConfig = warmupConfig;
+        copy.healthCheckConfig = healthCheckConfig;
+        copy.binaryAccessLogConfig = binaryAccessLogConfig;
+        copy.trafficCaptureConfig = trafficCaptureConfig;
+        copy.servletDispatchConfig = servletDispatchConfig;
+        copy.heavyHittersConfig = heavyHittersConfig;
+        copy.requestDecompressionConfig = requestDecompressionConfig;
+        return copy;
+    }
 }
@@ -7,14 +7,40 @@ package com.palominolabs.http.server;
 import com.google.inject.AbstractModule;
 import com.google.inject.assistedinject.FactoryModuleBuilder;
 import com.google.inject.servlet.GuiceFilter;
+import com.google.inject.util.Providers;
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
 
 /**
  * Binds an HTTP server with Guice servlet, Jackson and authentication support.
  */
 public class HttpServerWrapperModule extends AbstractModule {
+
+    @Nullable
+    private final SharedServerResources sharedServerResources;
+
+    /**
+     * Each server gets its own thread pool, scheduler and buffer pool.
+     */
+    public HttpServerWrapperModule() {
+        this.sharedServerResources = null;
+    }
+
+    /**
+     * Every server created by the bound {@link HttpServerWrapperFactory} uses one thread pool, scheduler and buffer
+     * pool. Inject {@link SharedServerResources} to read their stats and to stop them after the servers.
+     *
+     * @param sharedServerResourcesConfig config for the shared thread pool, scheduler and buffer pool
+     */
+    public HttpServerWrapperModule(@Nonnull SharedServerResourcesConfig sharedServerResourcesConfig) {
+        this.sharedServerResources = new SharedServerResources(sharedServerResourcesConfig);
+    }
+
     @Override
     protected void configure() {
         bind(GuiceFilter.class);
+        // null unless shared, so HttpServerWrapper can tell which it is
+        bind(SharedServerResources.class).toProvider(Providers.of(sharedServerResources));
         install(new FactoryModuleBuilder()
             .implement(HttpServerWrapper.class, HttpServerWrapper.class)
             .build(HttpServerWrapperFactory.class));
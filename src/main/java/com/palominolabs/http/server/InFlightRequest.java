@@ -0,0 +1,50 @@
+package com.palominolabs.http.server;
+
+import javax.annotation.Nonnull;
+import javax.annotation.concurrent.Immutable;
+
+/**
+ * A request that was running on a thread when {@link RequestWatchdog#getInFlightRequests()} was called.
+ */
+@Immutable
+public final class InFlightRequest {
+
+    private final String method;
+    private final String uri;
+    private final String threadName;
+    private final long elapsedMillis;
+
+    InFlightRequest(String method, String uri, String threadName, long elapsedMillis) {
+        this.method = method;
+        this.uri = uri;
+        this.threadName = threadName;
+        this.elapsedMillis = elapsedMillis;
+    }
+
+    @Nonnull
+    public String getMethod() {
+        return method;
+    }
+
+    @Nonnull
+    public String getUri() {
+        return uri;
+    }
+
+    @Nonnull
+    public String getThreadName() {
+        return threadName;
+    }
+
+    /**
+     * @return time since the request was dispatched to its thread
+     */
+    public long getElapsedMillis() {
+        return elapsedMillis;
+    }
+
+    @Override
+    public String toString() {
+        return method + " " + uri + " on " + threadName + " for " + elapsedMillis + " ms";
+    }
+}
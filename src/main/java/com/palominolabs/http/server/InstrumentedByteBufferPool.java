@@ -0,0 +1,289 @@
+package com.palominolabs.http.server;
+
+import com.google.common.collect.Lists;
+import java.nio.ByteBuffer;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicLong;
+import javax.annotation.Nonnull;
+import javax.annotation.concurrent.ThreadSafe;
+import org.eclipse.jetty.io.ByteBufferPool;
+import org.eclipse.jetty.util.BufferUtil;
+
+/**
+ * A bucketed ByteBufferPool that caps how many bytes of idle buffers it retains and keeps counters for monitoring.
+ *
+ * Buffers are grouped by capacity into buckets that are multiples of {@link
+ * ByteBufferPoolConfig#getBucketSizeIncrement()} with separate buckets for heap and direct buffers. An acquisition that
+ * finds its bucket empty is a miss and allocates a new buffer. A release that would push retained bytes past the
+ * configured cap drops the buffer instead.
+ */
+@ThreadSafe
+public final class InstrumentedByteBufferPool implements ByteBufferPool {
+
+    private final int bucketSizeIncrement;
+    private final int maxPooledBufferSize;
+    private final long maxRetainedHeapBytes;
+    private final long maxRetainedDirectBytes;
+    private final Boolean direct;
+
+    private final Bucket[] heapBuckets;
+    private final Bucket[] directBuckets;
+
+    private final AtomicLong retainedHeapBytes = new AtomicLong();
+    private final AtomicLong retainedDirectBytes = new AtomicLong();
+
+    /**
+     * Acquisitions and misses for buffers too big to pool
+     */
+    private final AtomicLong unpooledAcquisitions = new AtomicLong();
+
+    InstrumentedByteBufferPool(@Nonnull ByteBufferPoolConfig config) {
+        bucketSizeIncrement = config.getBucketSizeIncrement();
+        maxPooledBufferSize = config.getMaxPooledBufferSize();
+        maxRetainedHeapBytes = config.getMaxRetainedHeapBytes();
+        maxRetainedDirectBytes = config.getMaxRetainedDirectBytes();
+        direct = config.getDirect();
+
+        int numBuckets = (maxPooledBufferSize + bucketSizeIncrement - 1) / bucketSizeIncrement;
+        heapBuckets = new Bucket[numBuckets];
+        directBuckets = new Bucket[numBuckets];
+        for (int i = 0; i < numBuckets; i++) {
+            heapBuckets[i] = new Bucket((i + 1) * bucketSizeIncrement, false);
+            directBuckets[i] = new Bucket((i + 1) * bucketSizeIncrement, true);
+        }
+    }
+
+    @Override
+    public ByteBuffer acquire(int size, boolean direct) {
+        boolean useDirect = this.direct == null ? direct : this.direct;
+
+        Bucket bucket = bucketFor(size, useDirect);
+        if (bucket == null) {
+            unpooledAcquisitions.incrementAndGet();
+            return newByteBuffer(size, useDirect);
+        }
+
+        bucket.acquisitions.incrementAndGet();
+        ByteBuffer buffer = bucket.queue.poll();
+        if (buffer == null) {
+            bucket.misses.incrementAndGet();
+            return newByteBuffer(bucket.capacity, useDirect);
+        }
+
+        retainedBytes(useDirect).addAndGet(-buffer.capacity());
+        BufferUtil.clear(buffer);
+        return buffer;
+    }
+
+    @Override
+    public void release(ByteBuffer buffer) {
+        if (buffer == null) {
+            return;
+        }
+
+        int capacity = buffer.capacity();
+        // only keep buffers that fit a bucket exactly, i.e. ones we allocated
+        if (capacity % bucketSizeIncrement != 0) {
+            return;
+        }
+        Bucket bucket = bucketFor(capacity, buffer.isDirect());
+        if (bucket == null) {
+            return;
+        }
+
+        AtomicLong retained = retainedBytes(buffer.isDirect());
+        long max = buffer.isDirect() ? maxRetainedDirectBytes : maxRetainedHeapBytes;
+        if (retained.addAndGet(capacity) > max && max != -1) {
+            retained.addAndGet(-capacity);
+            bucket.discards.incrementAndGet();
+            return;
+        }
+
+        bucket.queue.offer(buffer);
+    }
+
+    /**
+     * Drop all idle buffers.
+     */
+    public void clear() {
+        for (Bucket bucket : heapBuckets) {
+            drain(bucket);
+        }
+        for (Bucket bucket : directBuckets) {
+            drain(bucket);
+        }
+    }
+
+    /**
+     * @return bytes of idle heap buffers currently held by the pool
+     */
+    public long getRetainedHeapBytes() {
+        return retainedHeapBytes.get();
+    }
+
+    /**
+     * @return bytes of idle direct buffers currently held by the pool
+     */
+    public long getRetainedDirectBytes() {
+        return retainedDirectBytes.get();
+    }
+
+    /**
+     * @return total number of buffers acquired, including buffers too big to pool
+     */
+    public long getAcquisitions() {
+        long total = unpooledAcquisitions.get();
+        for (Bucket bucket : heapBuckets) {
+            total += bucket.acquisitions.get();
+        }
+        for (Bucket bucket : directBuckets) {
+            total += bucket.acquisitions.get();
+        }
+        return total;
+    }
+
+    /**
+     * @return number of acquisitions that had to allocate a new buffer, including buffers too big to pool
+     */
+    public long getMisses() {
+        long total = unpooledAcquisitions.get();
+        for (Bucket bucket : heapBuckets) {
+            total += bucket.misses.get();
+        }
+        for (Bucket bucket : directBuckets) {
+            total += bucket.misses.get();
+        }
+        return total;
+    }
+
+    /**
+     * @return number of acquisitions of buffers bigger than {@link ByteBufferPoolConfig#getMaxPooledBufferSize()}
+     */
+    public long getUnpooledAcquisitions() {
+        return unpooledAcquisitions.get();
+    }
+
+    /**
+     * @return a snapshot of the stats of each bucket that has been used, heap buckets first
+     */
+    @Nonnull
+    public List<BucketStats> getBucketStats() {
+        List<BucketStats> stats = Lists.newArrayList();
+        for (Bucket bucket : heapBuckets) {
+            addStats(stats, bucket);
+        }
+        for (Bucket bucket : directBuckets) {
+            addStats(stats, bucket);
+        }
+        return stats;
+    }
+
+    private static void addStats(List<BucketStats> stats, Bucket bucket) {
+        long acquisitions = bucket.acquisitions.get();
+        long discards = bucket.discards.get();
+        if (acquisitions == 0 && discards == 0) {
+            return;
+        }
+        stats.add(new BucketStats(bucket.capacity, bucket.direct, bucket.queue.size(), acquisitions,
+            bucket.misses.get(), discards));
+    }
+
+    private Bucket bucketFor(int size, boolean direct) {
+        if (size <= 0 || size > maxPooledBufferSize) {
+            return null;
+        }
+        int index = (size - 1) / bucketSizeIncrement;
+        return direct ? directBuckets[index] : heapBuckets[index];
+    }
+
+    private AtomicLong retainedBytes(boolean direct) {
+        return direct ? retainedDirectBytes : retainedHeapBytes;
+    }
+
+    private void drain(Bucket bucket) {
+        ByteBuffer buffer;
+        while ((buffer = bucket.queue.poll()) != null) {
+            retainedBytes(bucket.direct).addAndGet(-buffer.capacity());
+        }
+    }
+
+    private static final class Bucket {
+        private final int capacity;
+        private final boolean direct;
+        private final Queue<ByteBuffer> queue = new ConcurrentLinkedQueue<>();
+        private final AtomicLong acquisitions = new AtomicLong();
+        private final AtomicLong misses = new AtomicLong();
+        private final AtomicLong discards = new AtomicLong();
+
+        private Bucket(int capacity, boolean direct) {
+            this.capacity = capacity;
+            this.direct = direct;
+        }
+    }
+
+    /**
+     * Counters for one bucket, as of when the snapshot was taken.
+     */
+    public static final class BucketStats {
+        private final int capacity;
+        private final boolean direct;
+        private final int retainedBuffers;
+        private final long acquisitions;
+        private final long misses;
+        private final long discards;
+
+        private BucketStats(int capacity, boolean direct, int retainedBuffers, long acquisitions, long misses,
+            long discards) {
+            this.capacity = capacity;
+            this.direct = direct;
+            this.retainedBuffers = retainedBuffers;
+            this.acquisitions = acquisitions;
+            this.misses = misses;
+            this.discards = discards;
+        }
+
+        /**
+         * @return capacity of the buffers in this bucket
+         */
+        public int getCapacity() {
+            return capacity;
+        }
+
+        public boolean isDirect() {
+            return direct;
+        }
+
+        /**
+         * @return number of idle buffers in the bucket
+         */
+        public int getRetainedBuffers() {
+            return retainedBuffers;
+        }
+
+        public long getAcquisitions() {
+            return acquisitions;
+        }
+
+        /**
+         * @return acquisitions that found the bucket empty and allocated a new buffer
+         */
+        public long getMisses() {
+            return misses;
+        }
+
+        /**
+         * @return releases that were dropped because the pool was at its retained bytes cap
+         */
+        public long getDiscards() {
+            return discards;
+        }
+
+        @Override
+        public String toString() {
+            return (direct ? "direct" : "heap") + "[" + capacity + "]{retained=" + retainedBuffers + ", acquisitions="
+                + acquisitions + ", misses=" + misses + ", discards=" + discards + "}";
+        }
+    }
+}
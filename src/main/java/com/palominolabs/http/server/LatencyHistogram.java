@@ -0,0 +1,112 @@
+package com.palominolabs.http.server;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import javax.annotation.concurrent.ThreadSafe;
+
+import static com.google.common.base.Preconditions.checkArgument;
+
+/**
+ * A fixed-size histogram of durations with microsecond resolution. Recording doesn't allocate or lock.
+ *
+ * Buckets are log-linear: each power of two is split into 8 buckets, so percentiles are accurate to within 12.5%.
+ * Durations of more than 2^41 microseconds are counted in the top bucket.
+ */
+@ThreadSafe
+public final class LatencyHistogram {
+
+    private static final int SUB_BUCKET_BITS = 3;
+    private static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+    private static final int MAX_MAGNITUDE = 40;
+
+    private final AtomicLongArray counts = new AtomicLongArray((MAX_MAGNITUDE - SUB_BUCKET_BITS + 2) * SUB_BUCKETS);
+    private final AtomicLong count = new AtomicLong();
+    private final AtomicLong sumMicros = new AtomicLong();
+    private final AtomicLong maxMicros = new AtomicLong();
+
+    public LatencyHistogram() {
+    }
+
+    public void recordNanos(long nanos) {
+        long micros = Math.max(0, TimeUnit.NANOSECONDS.toMicros(nanos));
+        counts.incrementAndGet(indexFor(micros));
+        count.incrementAndGet();
+        sumMicros.addAndGet(micros);
+
+        long max;
+        while (micros > (max = maxMicros.get())) {
+            if (maxMicros.compareAndSet(max, micros)) {
+                break;
+            }
+        }
+    }
+
+    public long getCount() {
+        return count.get();
+    }
+
+    public long getMeanNanos() {
+        long c = count.get();
+        return c == 0 ? 0 : TimeUnit.MICROSECONDS.toNanos(sumMicros.get() / c);
+    }
+
+    public long getMaxNanos() {
+        return TimeUnit.MICROSECONDS.toNanos(maxMicros.get());
+    }
+
+    /**
+     * @param percentile a percentile, e.g. 99.9
+     * @return the upper bound of the bucket that holds the percentile, or 0 if nothing has been recorded
+     */
+    public long getPercentileNanos(double percentile) {
+        checkArgument(percentile >= 0 && percentile <= 100, "Percentile must be between 0 and 100");
+
+        long total = 0;
+        long[] snapshot = new long[counts.length()];
+        for (int i = 0; i < snapshot.length; i++) {
+            snapshot[i] = counts.get(i);
+            total += snapshot[i];
+        }
+        if (total == 0) {
+            return 0;
+        }
+
+        long target = Math.max(1, (long) Math.ceil(percentile / 100 * total));
+        long seen = 0;
+        for (int i = 0; i < snapshot.length; i++) {
+            seen += snapshot[i];
+            if (seen >= target) {
+                return TimeUnit.MICROSECONDS.toNanos(Math.min(upperBoundFor(i), maxMicros.get()));
+            }
+        }
+        return getMaxNanos();
+    }
+
+    static int indexFor(long micros) {
+        if (micros < SUB_BUCKETS) {
+            return (int) micros;
+        }
+        int magnitude = 63 - Long.numberOfLeadingZeros(micros);
+        if (magnitude > MAX_MAGNITUDE) {
+            return (MAX_MAGNITUDE - SUB_BUCKET_BITS + 2) * SUB_BUCKETS - 1;
+        }
+        int shift = magnitude - SUB_BUCKET_BITS;
+        return (shift + 1) * SUB_BUCKETS + (int) ((micros >>> shift) & (SUB_BUCKETS - 1));
+    }
+
+    static long upperBoundFor(int index) {
+        if (index < SUB_BUCKETS) {
+            return index;
+        }
+        int shift = index / SUB_BUCKETS - 1;
+        long subBucket = SUB_BUCKETS + index % SUB_BUCKETS;
+        return ((subBucket + 1) << shift) - 1;
+    }
+
+    @Override
+    public String toString() {
+        return "{count=" + getCount() + ", meanNanos=" + getMeanNanos() + ", p99Nanos=" + getPercentileNanos(99)
+            + ", maxNanos=" + getMaxNanos() + "}";
+    }
+}
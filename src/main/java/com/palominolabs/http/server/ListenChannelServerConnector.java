@@ -0,0 +1,116 @@
+package com.palominolabs.http.server;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import javax.annotation.Nullable;
+import org.eclipse.jetty.io.ByteBufferPool;
+import org.eclipse.jetty.server.ConnectionFactory;
+import org.eclipse.jetty.server.Server;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * A connector that accepts on a listening channel it was given, and leaves the channel open when it closes so that
+ * another server can keep accepting on it. See {@link ListenChannels}.
+ *
+ * Jetty interrupts acceptor threads when a connector stops, and interrupting a thread blocked in accept() closes the
+ * channel. So the channel is put in non-blocking mode and the acceptor waits on a selector of its own instead: closing
+ * the selector only deregisters the channel. Several connectors, in this server or others, can accept on the same
+ * channel at once.
+ */
+final class ListenChannelServerConnector extends ArrivalServerConnector {
+
+    private static final Logger logger = LoggerFactory.getLogger(ListenChannelServerConnector.class);
+
+    private final ServerSocketChannel channel;
+
+    @Nullable
+    private volatile Selector acceptSelector;
+    private volatile int localPort = -1;
+
+    ListenChannelServerConnector(Server server, ByteBufferPool byteBufferPool, ServerSocketChannel channel,
+        ConnectionFactory... connectionFactories) {
+        // executor and scheduler are null so the server's are used, and there is always an acceptor thread
+        super(server, null, null, byteBufferPool, 1, -1, connectionFactories);
+        this.channel = channel;
+    }
+
+    @Override
+    public void open() throws IOException {
+        if (acceptSelector != null) {
+            return;
+        }
+        if (!channel.isOpen() || channel.getLocalAddress() == null) {
+            throw new IOException("The listen channel must be open and bound: " + channel);
+        }
+
+        Selector selector = Selector.open();
+        try {
+            channel.configureBlocking(false);
+            channel.register(selector, SelectionKey.OP_ACCEPT);
+        } catch (IOException e) {
+            selector.close();
+            throw e;
+        }
+
+        localPort = ((InetSocketAddress) channel.getLocalAddress()).getPort();
+        acceptSelector = selector;
+    }
+
+    @Override
+    public void close() {
+        Selector selector = acceptSelector;
+        acceptSelector = null;
+        if (selector != null) {
+            try {
+                selector.close();
+            } catch (IOException e) {
+                logger.warn("Could not stop accepting on " + channel, e);
+            }
+        }
+        super.close();
+        localPort = -2;
+    }
+
+    @Override
+    public boolean isOpen() {
+        return acceptSelector != null && channel.isOpen();
+    }
+
+    @Override
+    public void accept(int acceptorID) throws IOException {
+        Selector selector = acceptSelector;
+        if (selector == null || !selector.isOpen()) {
+            return;
+        }
+
+        selector.select();
+        selector.selectedKeys().clear();
+        // stopping interrupts this thread, and on Java 8 an interrupt during accept() closes the channel even when it
+        // doesn't block, so don't start one once stopping has begun
+        while (isRunning() && !Thread.currentThread().isInterrupted()) {
+            // null when there is nothing to accept, including when another connector took the connection
+            SocketChannel socket = channel.accept();
+            if (socket == null) {
+                return;
+            }
+            socket.configureBlocking(false);
+            configure(socket.socket());
+            getSelectorManager().accept(socket);
+        }
+    }
+
+    @Override
+    public Object getTransport() {
+        return channel;
+    }
+
+    @Override
+    public int getLocalPort() {
+        return localPort;
+    }
+}
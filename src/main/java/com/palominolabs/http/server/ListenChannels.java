@@ -0,0 +1,97 @@
+package com.palominolabs.http.server;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.SocketOption;
+import java.net.StandardSocketOptions;
+import java.nio.channels.Channel;
+import java.nio.channels.ServerSocketChannel;
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+
+/**
+ * Ways to get a listening channel for {@link HttpServerConnectorConfig#forHttp(ServerSocketChannel)} and {@link
+ * HttpServerConnectorConfig#forHttps(ServerSocketChannel)}, so that a server can take over a port without it ever
+ * refusing connections:
+ *
+ * <ul>
+ * <li>Within one JVM, give the channel of the running server's connector config to the new server, start the new
+ * server, then stop the old one. Both accept from the same socket until the old one stops, and the channel stays open
+ * because the servers don't close channels they were given.</li>
+ * <li>From a supervisor that holds the socket open across restarts, such as systemd with {@code StandardInput=socket}
+ * or inetd, use {@link #inherited()}.</li>
+ * <li>Between two processes, have both open their channel with {@link #openReusePort(String, int, int)}. The new
+ * process binds the same port while the old one is still listening, and the kernel spreads new connections across
+ * both until the old one stops.</li>
+ * </ul>
+ */
+public final class ListenChannels {
+
+    /**
+     * SO_REUSEPORT is only in StandardSocketOptions since Java 9
+     */
+    @Nullable
+    static final SocketOption<Boolean> SO_REUSEPORT = findReusePortOption();
+
+    private ListenChannels() {
+    }
+
+    /**
+     * @return the listening socket this process inherited as its standard input, e.g. from systemd with {@code
+     * StandardInput=socket} or from inetd
+     * @throws IOException if the process didn't inherit a listening socket
+     */
+    @Nonnull
+    public static ServerSocketChannel inherited() throws IOException {
+        Channel channel = System.inheritedChannel();
+        if (!(channel instanceof ServerSocketChannel)) {
+            throw new IOException("No listening socket was inherited; found " + channel);
+        }
+        return (ServerSocketChannel) channel;
+    }
+
+    /**
+     * Bind a listening socket with SO_REUSEPORT, so that another process can bind the same host and port the same way
+     * before this one lets go of it. Every socket on the port has to be opened like this.
+     *
+     * On Linux, connections still waiting in a socket's accept queue when it closes are reset, so the old process
+     * should keep its socket open for as long as it is draining.
+     *
+     * @param host            host or address to bind to
+     * @param port            port to bind to
+     * @param acceptQueueSize accept queue length, or 0 for the platform default
+     * @throws IOException if the socket couldn't be bound, or SO_REUSEPORT isn't supported (it needs Java 9 or later
+     *                     and e.g. Linux 3.9+)
+     */
+    @Nonnull
+    public static ServerSocketChannel openReusePort(@Nonnull String host, int port, int acceptQueueSize)
+        throws IOException {
+        if (SO_REUSEPORT == null) {
+            throw new IOException("SO_REUSEPORT needs Java 9 or later");
+        }
+
+        ServerSocketChannel channel = ServerSocketChannel.open();
+        try {
+            if (!channel.supportedOptions().contains(SO_REUSEPORT)) {
+                throw new IOException("This platform doesn't support SO_REUSEPORT");
+            }
+            channel.setOption(SO_REUSEPORT, true);
+            channel.setOption(StandardSocketOptions.SO_REUSEADDR, true);
+            channel.bind(new InetSocketAddress(host, port), acceptQueueSize);
+        } catch (IOException e) {
+            channel.close();
+            throw e;
+        }
+        return channel;
+    }
+
+    @Nullable
+    @SuppressWarnings("unchecked")
+    private static SocketOption<Boolean> findReusePortOption() {
+        try {
+            return (SocketOption<Boolean>) StandardSocketOptions.class.getField("SO_REUSEPORT").get(null);
+        } catch (NoSuchFieldException | IllegalAccessException e) {
+            return null;
+        }
+    }
+}
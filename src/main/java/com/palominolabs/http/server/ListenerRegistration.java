@@ -2,7 +2,6 @@ package com.palominolabs.http.server;
 
 import com.google.common.base.Preconditions;
 import com.google.inject.Provider;
-import org.eclipse.jetty.server.handler.ContextHandler;
 
 import javax.annotation.Nonnull;
 import javax.annotation.Nullable;
@@ -42,12 +41,15 @@ final class ListenerRegistration {
         this.listenerProvider = listenerProvider;
     }
 
-    void apply(ContextHandler handler) {
+    /**
+     * @return the listener, getting it from the provider if necessary
+     */
+    @Nonnull
+    EventListener resolve() {
         if (listener != null) {
-            handler.addEventListener(listener);
-            return;
+            return listener;
         }
 
-        handler.addEventListener(listenerProvider.get());
+        return listenerProvider.get();
     }
 }
@@ -0,0 +1,17 @@
+package com.palominolabs.http.server;
+
+/**
+ * A check that the health endpoint runs to decide whether the server is ready for traffic. See {@link
+ * HealthCheckConfig}.
+ *
+ * Results are cached for {@link HealthCheckConfig#getCacheMillis()}, so checks may do some work, but they run on a
+ * request thread and shouldn't block for long.
+ */
+public interface ReadinessCheck {
+
+    /**
+     * @return true if ready. Throwing counts as not ready.
+     * @throws Exception if the check failed
+     */
+    boolean isReady() throws Exception;
+}
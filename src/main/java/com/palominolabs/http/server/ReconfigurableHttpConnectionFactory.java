@@ -0,0 +1,47 @@
+package com.palominolabs.http.server;
+
+import javax.annotation.Nonnull;
+import org.eclipse.jetty.io.Connection;
+import org.eclipse.jetty.io.EndPoint;
+import org.eclipse.jetty.server.Connector;
+import org.eclipse.jetty.server.HttpConfiguration;
+import org.eclipse.jetty.server.HttpConnection;
+import org.eclipse.jetty.server.HttpConnectionFactory;
+
+/**
+ * HttpConnectionFactory whose HttpConfiguration can be swapped while its connector is running.
+ *
+ * Each connection keeps the HttpConfiguration it was created with, and HttpConfiguration isn't safe to change while
+ * connections read it, so a new config only applies to connections accepted after it is set. Open connections keep
+ * their old settings until they close.
+ *
+ * Its connections are {@link ArrivalHttpConnection}s.
+ */
+final class ReconfigurableHttpConnectionFactory extends HttpConnectionFactory {
+
+    private volatile HttpConfiguration httpConfiguration;
+
+    ReconfigurableHttpConnectionFactory(@Nonnull HttpConfiguration httpConfiguration) {
+        super(httpConfiguration);
+        this.httpConfiguration = httpConfiguration;
+    }
+
+    @Override
+    public HttpConfiguration getHttpConfiguration() {
+        return httpConfiguration;
+    }
+
+    /**
+     * @param httpConfiguration config for connections accepted from now on. Must not be changed once set.
+     */
+    void setHttpConfiguration(@Nonnull HttpConfiguration httpConfiguration) {
+        this.httpConfiguration = httpConfiguration;
+    }
+
+    @Override
+    public Connection newConnection(Connector connector, EndPoint endPoint) {
+        HttpConnection connection = new ArrivalHttpConnection(httpConfiguration, connector, endPoint,
+            getHttpCompliance(), isRecordHttpComplianceViolations());
+        return configure(connection, connector, endPoint);
+    }
+}
@@ -0,0 +1,121 @@
+package com.palominolabs.http.server;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import javax.annotation.concurrent.ThreadSafe;
+
+/**
+ * Tracks how many bytes of request bodies are in flight against a fixed budget.
+ *
+ * @see RequestBodyBudgetConfig
+ */
+@ThreadSafe
+public final class RequestBodyBudget {
+
+    private final long maxBytes;
+
+    private final AtomicLong bytesInUse = new AtomicLong();
+
+    private final AtomicLong rejectedRequests = new AtomicLong();
+
+    /**
+     * Number of threads waiting in reserve(). Lets release() skip the lock when nobody is waiting.
+     */
+    private final AtomicInteger waiters = new AtomicInteger();
+
+    private final Object lock = new Object();
+
+    RequestBodyBudget(long maxBytes) {
+        this.maxBytes = maxBytes;
+    }
+
+    /**
+     * @param bytes      bytes to reserve, must not be more than the max
+     * @param waitMillis max time to wait for room
+     * @return true if the bytes were reserved and must later be released, false if the wait timed out
+     * @throws InterruptedException if interrupted while waiting
+     */
+    boolean reserve(long bytes, long waitMillis) throws InterruptedException {
+        if (tryReserve(bytes)) {
+            return true;
+        }
+
+        if (waitMillis > 0) {
+            long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(waitMillis);
+            synchronized (lock) {
+                waiters.incrementAndGet();
+                try {
+                    while (true) {
+                        if (tryReserve(bytes)) {
+                            return true;
+                        }
+                        long remainingMillis = TimeUnit.NANOSECONDS.toMillis(deadline - System.nanoTime());
+                        if (remainingMillis <= 0) {
+                            break;
+                        }
+                        lock.wait(remainingMillis);
+                    }
+                } finally {
+                    waiters.decrementAndGet();
+                }
+            }
+        }
+
+        rejectedRequests.incrementAndGet();
+        return false;
+    }
+
+    void release(long bytes) {
+        bytesInUse.addAndGet(-bytes);
+        if (waiters.get() > 0) {
+            synchronized (lock) {
+                lock.notifyAll();
+            }
+        }
+    }
+
+    /**
+     * Count a request that was rejected without trying to reserve, e.g. because it was larger than the whole budget.
+     */
+    void countRejected() {
+        rejectedRequests.incrementAndGet();
+    }
+
+    private boolean tryReserve(long bytes) {
+        while (true) {
+            long current = bytesInUse.get();
+            if (current + bytes > maxBytes) {
+                return false;
+            }
+            if (bytesInUse.compareAndSet(current, current + bytes)) {
+                return true;
+            }
+        }
+    }
+
+    public long getMaxBytes() {
+        return maxBytes;
+    }
+
+    /**
+     * @return bytes currently reserved by requests in flight
+     */
+    public long getBytesInUse() {
+        return bytesInUse.get();
+    }
+
+    /**
+     * @return number of requests rejected because they didn't fit in the budget
+     */
+    public long getRejectedRequests() {
+        return rejectedRequests.get();
+    }
+
+    /**
+     * @return number of requests currently waiting for room in the budget
+     */
+    public int getWaitingRequests() {
+        return waiters.get();
+    }
+}
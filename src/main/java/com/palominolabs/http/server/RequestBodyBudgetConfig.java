@@ -0,0 +1,148 @@
+package com.palominolabs.http.server;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import javax.annotation.concurrent.NotThreadSafe;
+import javax.servlet.http.HttpServletRequest;
+
+import static com.google.common.base.Preconditions.checkArgument;
+
+/**
+ * Config for a server-wide cap on the memory used by request bodies that are being received.
+ *
+ * Each request with a body reserves bytes from the budget before it is handled and gives them back when it completes.
+ * A request that doesn't fit waits up to {@link RequestBodyBudgetConfig#getMaxWaitMillis()} for room and is then
+ * rejected with a 503. A request whose body could never fit is rejected with a 413 right away.
+ *
+ * Chunked requests, whose size isn't known up front, reserve {@link
+ * RequestBodyBudgetConfig#getUnknownLengthReservation()} to start with. Multipart requests spill parts larger than
+ * {@link RequestBodyBudgetConfig#getSpillThresholdBytes()} to disk, so they start by reserving at most that many bytes.
+ * This also makes {@link HttpServletRequest#getParts()} work for servlets served through Guice servlet, which otherwise
+ * have no multipart config. Either way, body bytes are counted as they are read, and once a body outgrows its
+ * reservation it reserves more without waiting. A body that can't get more room fails with a 413 if it is larger than
+ * the whole budget, and with a 503 otherwise.
+ *
+ * @see RequestBodyBudget
+ */
+@NotThreadSafe
+public final class RequestBodyBudgetConfig {
+
+    private final long maxBytes;
+
+    private long maxWaitMillis = 0;
+
+    private long unknownLengthReservation = 64 * 1024;
+
+    private int spillThresholdBytes = 64 * 1024;
+
+    @Nullable
+    private String spillDirectory = null;
+
+    /**
+     * @param maxBytes total bytes of request bodies allowed in flight at once
+     */
+    public RequestBodyBudgetConfig(long maxBytes) {
+        checkArgument(maxBytes > 0, "Max bytes must be positive");
+        this.maxBytes = maxBytes;
+    }
+
+    public long getMaxBytes() {
+        return maxBytes;
+    }
+
+    public long getMaxWaitMillis() {
+        return maxWaitMillis;
+    }
+
+    /**
+     * @param maxWaitMillis how long a request may wait for room in the budget before being rejected. Default is 0
+     *                      (reject immediately).
+     */
+    public void setMaxWaitMillis(long maxWaitMillis) {
+        checkArgument(maxWaitMillis >= 0, "Max wait must not be negative");
+        this.maxWaitMillis = maxWaitMillis;
+    }
+
+    public long getUnknownLengthReservation() {
+        return unknownLengthReservation;
+    }
+
+    /**
+     * @param unknownLengthReservation bytes to reserve for chunked requests, whose size isn't known up front, and to
+     *                                 add to a reservation each time a body outgrows it. Default is 64k.
+     */
+    public void setUnknownLengthReservation(long unknownLengthReservation) {
+        checkArgument(unknownLengthReservation >= 0, "Unknown length reservation must not be negative");
+        this.unknownLengthReservation = unknownLengthReservation;
+    }
+
+    public int getSpillThresholdBytes() {
+        return spillThresholdBytes;
+    }
+
+    /**
+     * @param spillThresholdBytes multipart parts larger than this are written to disk instead of held in memory.
+     *                            Default is 64k.
+     */
+    public void setSpillThresholdBytes(int spillThresholdBytes) {
+        checkArgument(spillThresholdBytes >= 0, "Spill threshold must not be negative");
+        this.spillThresholdBytes = spillThresholdBytes;
+    }
+
+    @Nullable
+    public String getSpillDirectory() {
+        return spillDirectory;
+    }
+
+    /**
+     * @param spillDirectory directory for multipart parts spilled to disk, null for the JVM's temp directory. Default
+     *                       is null.
+     */
+    public void setSpillDirectory(@Nullable String spillDirectory) {
+        this.spillDirectory = spillDirectory;
+    }
+
+    /**
+     * @param maxWaitMillis max wait
+     * @return this
+     * @see RequestBodyBudgetConfig#setMaxWaitMillis(long)
+     */
+    @Nonnull
+    public RequestBodyBudgetConfig withMaxWaitMillis(long maxWaitMillis) {
+        setMaxWaitMillis(maxWaitMillis);
+        return this;
+    }
+
+    /**
+     * @param unknownLengthReservation unknown length reservation
+     * @return this
+     * @see RequestBodyBudgetConfig#setUnknownLengthReservation(long)
+     */
+    @Nonnull
+    public RequestBodyBudgetConfig withUnknownLengthReservation(long unknownLengthReservation) {
+        setUnknownLengthReservation(unknownLengthReservation);
+        return this;
+    }
+
+    /**
+     * @param spillThresholdBytes spill threshold
+     * @return this
+     * @see RequestBodyBudgetConfig#setSpillThresholdBytes(int)
+     */
+    @Nonnull
+    public RequestBodyBudgetConfig withSpillThresholdBytes(int spillThresholdBytes) {
+        setSpillThresholdBytes(spillThresholdBytes);
+        return this;
+    }
+
+    /**
+     * @param spillDirectory spill directory
+     * @return this
+     * @see RequestBodyBudgetConfig#setSpillDirectory(String)
+     */
+    @Nonnull
+    public RequestBodyBudgetConfig withSpillDirectory(@Nullable String spillDirectory) {
+        setSpillDirectory(spillDirectory);
+        return this;
+    }
+}
@@ -0,0 +1,184 @@
+package com.palominolabs.http.server;
+
+import java.io.IOException;
+import java.util.Locale;
+import javax.annotation.Nullable;
+import javax.servlet.DispatcherType;
+import javax.servlet.MultipartConfigElement;
+import javax.servlet.ServletException;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import org.eclipse.jetty.http.BadMessageException;
+import org.eclipse.jetty.http.HttpHeader;
+import org.eclipse.jetty.server.HttpInput;
+import org.eclipse.jetty.server.Request;
+import org.eclipse.jetty.server.handler.HandlerWrapper;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Reserves each request's body size from a {@link RequestBodyBudget} before handing the request on, and releases it
+ * once the request completes.
+ */
+final class RequestBodyBudgetHandler extends HandlerWrapper {
+
+    private static final Logger logger = LoggerFactory.getLogger(RequestBodyBudgetHandler.class);
+
+    private final RequestBodyBudget budget;
+    private final long maxWaitMillis;
+    private final long unknownLengthReservation;
+    private final int spillThresholdBytes;
+    private final MultipartConfigElement multipartConfig;
+
+    RequestBodyBudgetHandler(RequestBodyBudget budget, RequestBodyBudgetConfig config) {
+        this.budget = budget;
+        this.maxWaitMillis = config.getMaxWaitMillis();
+        this.unknownLengthReservation = config.getUnknownLengthReservation();
+        this.spillThresholdBytes = config.getSpillThresholdBytes();
+        String spillDirectory = config.getSpillDirectory() == null ? System.getProperty("java.io.tmpdir")
+            : config.getSpillDirectory();
+        this.multipartConfig = new MultipartConfigElement(spillDirectory, -1, -1, spillThresholdBytes);
+    }
+
+    @Override
+    public void handle(String target, Request baseRequest, HttpServletRequest request, HttpServletResponse response)
+        throws IOException, ServletException {
+        if (baseRequest.getDispatcherType() != DispatcherType.REQUEST) {
+            // already reserved when the request was first dispatched
+            super.handle(target, baseRequest, request, response);
+            return;
+        }
+
+        boolean multipart = isMultipart(request);
+        if (multipart && request.getAttribute(Request.__MULTIPART_CONFIG_ELEMENT) == null) {
+            request.setAttribute(Request.__MULTIPART_CONFIG_ELEMENT, multipartConfig);
+        }
+
+        long contentLength = request.getContentLengthLong();
+        boolean chunked = contentLength == -1 && request.getHeader(HttpHeader.TRANSFER_ENCODING.asString()) != null;
+        if (contentLength <= 0 && !chunked) {
+            super.handle(target, baseRequest, request, response);
+            return;
+        }
+
+        long bytes = getReservation(contentLength, multipart);
+        if (bytes > budget.getMaxBytes()) {
+            logger.debug("Rejecting request for " + request.getRequestURI() + " with body of " + bytes +
+                " bytes, which is larger than the whole budget");
+            budget.countRejected();
+            baseRequest.setHandled(true);
+            response.sendError(HttpServletResponse.SC_REQUEST_ENTITY_TOO_LARGE);
+            return;
+        }
+
+        boolean reserved;
+        try {
+            reserved = budget.reserve(bytes, maxWaitMillis);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            reserved = false;
+        }
+        if (!reserved) {
+            logger.debug("Rejecting request for " + request.getRequestURI() + " with body of " + bytes +
+                " bytes; budget exhausted");
+            baseRequest.setHandled(true);
+            response.sendError(HttpServletResponse.SC_SERVICE_UNAVAILABLE);
+            return;
+        }
+
+        // chunked and multipart bodies can be larger than what was reserved up front
+        final BodyCounter counter = new BodyCounter(bytes);
+        baseRequest.getHttpInput().addInterceptor(counter);
+
+        try {
+            super.handle(target, baseRequest, request, response);
+        } finally {
+            RequestCompletion.onComplete(request, new Runnable() {
+                @Override
+                public void run() {
+                    budget.release(counter.close());
+                }
+            });
+        }
+    }
+
+    private long getReservation(long contentLength, boolean multipart) {
+        long bytes = contentLength > 0 ? contentLength : unknownLengthReservation;
+        return multipart ? Math.min(bytes, spillThresholdBytes) : bytes;
+    }
+
+    private static boolean isMultipart(HttpServletRequest request) {
+        String contentType = request.getContentType();
+        return contentType != null && contentType.toLowerCase(Locale.ROOT).startsWith("multipart/form-data");
+    }
+
+    /**
+     * Counts the body bytes as they are read, and reserves more from the budget when the body turns out to be larger
+     * than the reservation. A body that can't get more room fails the request.
+     */
+    private final class BodyCounter implements HttpInput.Interceptor {
+        private long reservedBytes;
+        private long readBytes;
+        private boolean closed;
+        @Nullable
+        private BadMessageException failure;
+        /**
+         * Jetty asks again about content that was only partly read, and it has already been counted
+         */
+        private HttpInput.Content last;
+
+        BodyCounter(long reservedBytes) {
+            this.reservedBytes = reservedBytes;
+        }
+
+        @Override
+        public synchronized HttpInput.Content readFrom(HttpInput.Content content) {
+            if (closed) {
+                return content;
+            }
+            if (failure != null) {
+                throw failure;
+            }
+            if (content == last) {
+                return content;
+            }
+            last = content;
+            readBytes += content.remaining();
+            if (readBytes <= reservedBytes) {
+                return content;
+            }
+
+            // grow in steps, so that a large body doesn't reserve once per read
+            long needed = Math.max(readBytes - reservedBytes, Math.min(unknownLengthReservation,
+                budget.getMaxBytes() - reservedBytes));
+            if (reservedBytes + needed > budget.getMaxBytes()) {
+                budget.countRejected();
+                failure = new BadMessageException(HttpServletResponse.SC_REQUEST_ENTITY_TOO_LARGE,
+                    "Request body is larger than the whole budget");
+                throw failure;
+            }
+            boolean reserved;
+            try {
+                reserved = budget.reserve(needed, 0);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                reserved = false;
+            }
+            if (!reserved) {
+                failure = new BadMessageException(HttpServletResponse.SC_SERVICE_UNAVAILABLE,
+                    "Request body budget exhausted");
+                throw failure;
+            }
+            reservedBytes += needed;
+            return content;
+        }
+
+        /**
+         * @return the bytes reserved for the request, to release
+         */
+        synchronized long close() {
+            closed = true;
+            return reservedBytes;
+        }
+    }
+}
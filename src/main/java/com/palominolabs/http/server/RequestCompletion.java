@@ -0,0 +1,51 @@
+package com.palominolabs.http.server;
+
+import javax.annotation.Nonnull;
+import javax.servlet.AsyncEvent;
+import javax.servlet.AsyncListener;
+import javax.servlet.http.HttpServletRequest;
+
+/**
+ * For handlers that need to do something once a request is done, whether or not it went async.
+ */
+final class RequestCompletion {
+
+    private RequestCompletion() {
+    }
+
+    /**
+     * Call once the rest of the handler chain has returned, typically from a finally block. If the request went async,
+     * the callback runs when the async cycle completes, however many times the request is dispatched and goes async
+     * again on the way; otherwise it runs now.
+     *
+     * @param request  request that has been handled
+     * @param callback what to run once the request is complete
+     */
+    static void onComplete(@Nonnull HttpServletRequest request, @Nonnull final Runnable callback) {
+        if (!request.isAsyncStarted()) {
+            callback.run();
+            return;
+        }
+
+        request.getAsyncContext().addListener(new AsyncListener() {
+            @Override
+            public void onComplete(AsyncEvent event) {
+                callback.run();
+            }
+
+            @Override
+            public void onTimeout(AsyncEvent event) {
+            }
+
+            @Override
+            public void onError(AsyncEvent event) {
+            }
+
+            @Override
+            public void onStartAsync(AsyncEvent event) {
+                // listeners are cleared when async is started again
+                event.getAsyncContext().addListener(this);
+            }
+        });
+    }
+}
@@ -0,0 +1,72 @@
+package com.palominolabs.http.server;
+
+import javax.annotation.CheckForNull;
+import javax.annotation.Nonnull;
+import javax.annotation.concurrent.ThreadSafe;
+import javax.servlet.ServletRequest;
+import org.eclipse.jetty.io.EndPoint;
+
+/**
+ * The deadline for a request, as set up by {@link RequestDeadlineConfig}. Long-running servlets should check this
+ * periodically and give up once the deadline has passed.
+ */
+@ThreadSafe
+public final class RequestDeadline {
+
+    static final String ATTRIBUTE = RequestDeadline.class.getName();
+
+    private final long deadlineMillis;
+
+    private final EndPoint endPoint;
+
+    RequestDeadline(long deadlineMillis, @Nonnull EndPoint endPoint) {
+        this.deadlineMillis = deadlineMillis;
+        this.endPoint = endPoint;
+    }
+
+    /**
+     * @param request a request
+     * @return the request's deadline, or null if it has none
+     */
+    @CheckForNull
+    public static RequestDeadline get(@Nonnull ServletRequest request) {
+        return (RequestDeadline) request.getAttribute(ATTRIBUTE);
+    }
+
+    /**
+     * @return the deadline, in milliseconds since the epoch
+     */
+    public long getDeadlineMillis() {
+        return deadlineMillis;
+    }
+
+    /**
+     * @return milliseconds until the deadline; zero or negative once it has passed
+     */
+    public long getRemainingMillis() {
+        return deadlineMillis - System.currentTimeMillis();
+    }
+
+    public boolean isExpired() {
+        return getRemainingMillis() <= 0;
+    }
+
+    /**
+     * This doesn't watch the connection. While a servlet is running Jetty isn't reading from the connection, so it only
+     * finds out that the client went away when the servlet reads more of the request body or writes (and flushes) some
+     * of the response. A servlet that does neither will not see this become true until it is done; use the deadline to
+     * bound its work instead.
+     *
+     * @return true if Jetty has seen the client connection close
+     */
+    public boolean isCancelled() {
+        return !endPoint.isOpen();
+    }
+
+    /**
+     * @return true if the deadline has passed or the client connection is known to be closed
+     */
+    public boolean isDone() {
+        return isExpired() || isCancelled();
+    }
+}
@@ -0,0 +1,94 @@
+package com.palominolabs.http.server;
+
+import javax.annotation.Nonnull;
+import javax.annotation.concurrent.NotThreadSafe;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkNotNull;
+
+/**
+ * Config for per-request deadlines read from a request header.
+ *
+ * The header holds the number of milliseconds the client is willing to wait, counted from when the server saw the
+ * request arrive on its connection. Requests whose deadline has passed by the time they are dispatched (e.g. because they waited
+ * for a thread) get a 504 without being handled. Servlets can check the deadline with {@link RequestDeadline#get}.
+ */
+@NotThreadSafe
+public final class RequestDeadlineConfig {
+
+    @Nonnull
+    private String headerName = "X-Request-Timeout";
+
+    private long defaultTimeoutMillis = -1;
+
+    private long maxTimeoutMillis = -1;
+
+    @Nonnull
+    public String getHeaderName() {
+        return headerName;
+    }
+
+    /**
+     * @param headerName name of the header with the timeout in milliseconds. Default is X-Request-Timeout.
+     */
+    public void setHeaderName(@Nonnull String headerName) {
+        this.headerName = checkNotNull(headerName);
+    }
+
+    public long getDefaultTimeoutMillis() {
+        return defaultTimeoutMillis;
+    }
+
+    /**
+     * @param defaultTimeoutMillis timeout for requests without a valid header, or -1 for no deadline. Default is -1.
+     */
+    public void setDefaultTimeoutMillis(long defaultTimeoutMillis) {
+        checkArgument(defaultTimeoutMillis >= -1, "Default timeout must be -1 or non-negative");
+        this.defaultTimeoutMillis = defaultTimeoutMillis;
+    }
+
+    public long getMaxTimeoutMillis() {
+        return maxTimeoutMillis;
+    }
+
+    /**
+     * @param maxTimeoutMillis upper bound for timeouts sent by clients, or -1 for no bound. Default is -1.
+     */
+    public void setMaxTimeoutMillis(long maxTimeoutMillis) {
+        checkArgument(maxTimeoutMillis >= -1, "Max timeout must be -1 or non-negative");
+        this.maxTimeoutMillis = maxTimeoutMillis;
+    }
+
+    /**
+     * @param headerName header name
+     * @return this
+     * @see RequestDeadlineConfig#setHeaderName(String)
+     */
+    @Nonnull
+    public RequestDeadlineConfig withHeaderName(@Nonnull String headerName) {
+        setHeaderName(headerName);
+        return this;
+    }
+
+    /**
+     * @param defaultTimeoutMillis default timeout
+     * @return this
+     * @see RequestDeadlineConfig#setDefaultTimeoutMillis(long)
+     */
+    @Nonnull
+    public RequestDeadlineConfig withDefaultTimeoutMillis(long defaultTimeoutMillis) {
+        setDefaultTimeoutMillis(defaultTimeoutMillis);
+        return this;
+    }
+
+    /**
+     * @param maxTimeoutMillis max timeout
+     * @return this
+     * @see RequestDeadlineConfig#setMaxTimeoutMillis(long)
+     */
+    @Nonnull
+    public RequestDeadlineConfig withMaxTimeoutMillis(long maxTimeoutMillis) {
+        setMaxTimeoutMillis(maxTimeoutMillis);
+        return this;
+    }
+}
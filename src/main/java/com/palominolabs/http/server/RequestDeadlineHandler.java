@@ -0,0 +1,93 @@
+package com.palominolabs.http.server;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+import javax.servlet.DispatcherType;
+import javax.servlet.ServletException;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import org.eclipse.jetty.server.Request;
+import org.eclipse.jetty.server.handler.HandlerWrapper;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Sets a {@link RequestDeadline} on each request, and answers requests that are already past it with a 504. The
+ * deadline counts from when the request arrived, so a request that waited for a thread past its deadline is never
+ * dispatched.
+ */
+final class RequestDeadlineHandler extends HandlerWrapper {
+
+    private static final Logger logger = LoggerFactory.getLogger(RequestDeadlineHandler.class);
+
+    private final String headerName;
+    private final long defaultTimeoutMillis;
+    private final long maxTimeoutMillis;
+
+    RequestDeadlineHandler(RequestDeadlineConfig config) {
+        this.headerName = config.getHeaderName();
+        this.defaultTimeoutMillis = config.getDefaultTimeoutMillis();
+        this.maxTimeoutMillis = config.getMaxTimeoutMillis();
+    }
+
+    @Override
+    public void handle(String target, Request baseRequest, HttpServletRequest request, HttpServletResponse response)
+        throws IOException, ServletException {
+        if (baseRequest.getDispatcherType() != DispatcherType.REQUEST) {
+            super.handle(target, baseRequest, request, response);
+            return;
+        }
+
+        long timeoutMillis = getTimeoutMillis(request);
+        if (timeoutMillis == -1) {
+            super.handle(target, baseRequest, request, response);
+            return;
+        }
+
+        RequestDeadline deadline = new RequestDeadline(getArrivalMillis(baseRequest) + timeoutMillis,
+            baseRequest.getHttpChannel().getEndPoint());
+        if (deadline.isExpired()) {
+            logger.debug("Request for " + request.getRequestURI() + " expired before dispatch");
+            baseRequest.setHandled(true);
+            response.sendError(HttpServletResponse.SC_GATEWAY_TIMEOUT);
+            return;
+        }
+
+        request.setAttribute(RequestDeadline.ATTRIBUTE, deadline);
+        super.handle(target, baseRequest, request, response);
+    }
+
+    /**
+     * Jetty's time stamp is taken after a thread has picked up the request, so it would leave out time spent queued for
+     * a thread. Use when the selector saw the request instead.
+     *
+     * @return when the request arrived, in milliseconds since the epoch
+     */
+    private static long getArrivalMillis(Request baseRequest) {
+        ArrivalHttpConnection connection = ArrivalHttpConnection.of(baseRequest);
+        if (connection == null) {
+            return baseRequest.getTimeStamp();
+        }
+        long waitedNanos = Math.max(0, System.nanoTime() - connection.getArrivalNanos());
+        return System.currentTimeMillis() - TimeUnit.NANOSECONDS.toMillis(waitedNanos);
+    }
+
+    private long getTimeoutMillis(HttpServletRequest request) {
+        String header = request.getHeader(headerName);
+        if (header == null) {
+            return defaultTimeoutMillis;
+        }
+
+        long timeoutMillis;
+        try {
+            timeoutMillis = Long.parseLong(header.trim());
+        } catch (NumberFormatException e) {
+            return defaultTimeoutMillis;
+        }
+        if (timeoutMillis < 0) {
+            return defaultTimeoutMillis;
+        }
+
+        return maxTimeoutMillis == -1 ? timeoutMillis : Math.min(timeoutMillis, maxTimeoutMillis);
+    }
+}
@@ -0,0 +1,97 @@
+package com.palominolabs.http.server;
+
+import javax.annotation.Nonnull;
+import javax.annotation.concurrent.NotThreadSafe;
+
+import static com.google.common.base.Preconditions.checkArgument;
+
+/**
+ * Config for decoding request bodies sent with {@code Content-Encoding: gzip} or {@code deflate}.
+ *
+ * Bodies are inflated as they are read, a buffer at a time, so servlets (and form parameter parsing) read the plain
+ * body with bounded memory. The Content-Encoding header is moved to X-Content-Encoding and the Content-Length is
+ * dropped. Reading more than {@link RequestDecompressionConfig#getMaxDecompressedBytes()} fails the request with a 413,
+ * and a body that isn't valid gzip or deflate fails it with a 400. Other encodings are passed through as they are.
+ *
+ * @see RequestDecompressionStats
+ */
+@NotThreadSafe
+public final class RequestDecompressionConfig {
+
+    private long maxDecompressedBytes = 16 * 1024 * 1024;
+
+    private int maxPooledInflaters = 64;
+
+    private int bufferSize = 8 * 1024;
+
+    public long getMaxDecompressedBytes() {
+        return maxDecompressedBytes;
+    }
+
+    /**
+     * @param maxDecompressedBytes max size of a request body once decoded. Default is 16MiB.
+     */
+    public void setMaxDecompressedBytes(long maxDecompressedBytes) {
+        checkArgument(maxDecompressedBytes > 0, "Max decompressed bytes must be positive");
+        this.maxDecompressedBytes = maxDecompressedBytes;
+    }
+
+    public int getMaxPooledInflaters() {
+        return maxPooledInflaters;
+    }
+
+    /**
+     * @param maxPooledInflaters max number of idle inflaters of each kind kept for reuse; beyond that they are freed
+     *                           when their request completes. Default is 64.
+     */
+    public void setMaxPooledInflaters(int maxPooledInflaters) {
+        checkArgument(maxPooledInflaters > 0, "Max pooled inflaters must be positive");
+        this.maxPooledInflaters = maxPooledInflaters;
+    }
+
+    public int getBufferSize() {
+        return bufferSize;
+    }
+
+    /**
+     * @param bufferSize size of the buffer each request decodes into, which is also the most decoded bytes held per
+     *                   request. Default is 8k.
+     */
+    public void setBufferSize(int bufferSize) {
+        checkArgument(bufferSize > 0, "Buffer size must be positive");
+        this.bufferSize = bufferSize;
+    }
+
+    /**
+     * @param maxDecompressedBytes max decompressed bytes
+     * @return this
+     * @see RequestDecompressionConfig#setMaxDecompressedBytes(long)
+     */
+    @Nonnull
+    public RequestDecompressionConfig withMaxDecompressedBytes(long maxDecompressedBytes) {
+        setMaxDecompressedBytes(maxDecompressedBytes);
+        return this;
+    }
+
+    /**
+     * @param maxPooledInflaters max pooled inflaters
+     * @return this
+     * @see RequestDecompressionConfig#setMaxPooledInflaters(int)
+     */
+    @Nonnull
+    public RequestDecompressionConfig withMaxPooledInflaters(int maxPooledInflaters) {
+        setMaxPooledInflaters(maxPooledInflaters);
+        return this;
+    }
+
+    /**
+     * @param bufferSize buffer size
+     * @return this
+     * @see RequestDecompressionConfig#setBufferSize(int)
+     */
+    @Nonnull
+    public RequestDecompressionConfig withBufferSize(int bufferSize) {
+        setBufferSize(bufferSize);
+        return this;
+    }
+}
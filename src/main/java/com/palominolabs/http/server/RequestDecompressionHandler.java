@@ -0,0 +1,494 @@
+package com.palominolabs.http.server;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.zip.CRC32;
+import java.util.zip.DataFormatException;
+import java.util.zip.Inflater;
+import javax.annotation.Nullable;
+import javax.servlet.DispatcherType;
+import javax.servlet.ServletException;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletRequestWrapper;
+import javax.servlet.http.HttpServletResponse;
+import org.eclipse.jetty.http.BadMessageException;
+import org.eclipse.jetty.http.HttpField;
+import org.eclipse.jetty.http.HttpFields;
+import org.eclipse.jetty.http.HttpHeader;
+import org.eclipse.jetty.server.HttpInput;
+import org.eclipse.jetty.server.Request;
+import org.eclipse.jetty.server.handler.HandlerWrapper;
+import org.eclipse.jetty.util.BufferUtil;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Inflates gzip and deflate request bodies as they are read, with inflaters reused between requests.
+ *
+ * @see RequestDecompressionConfig
+ */
+final class RequestDecompressionHandler extends HandlerWrapper {
+
+    private static final Logger logger = LoggerFactory.getLogger(RequestDecompressionHandler.class);
+
+    private static final String X_CONTENT_ENCODING = "X-Content-Encoding";
+
+    private static final int GZIP_FIXED_HEADER_BYTES = 10;
+    private static final int GZIP_FHCRC = 0x02;
+    private static final int GZIP_FEXTRA = 0x04;
+    private static final int GZIP_FNAME = 0x08;
+    private static final int GZIP_FCOMMENT = 0x10;
+    private static final int GZIP_OPTIONAL_FIELDS = GZIP_FHCRC | GZIP_FEXTRA | GZIP_FNAME | GZIP_FCOMMENT;
+    private static final int GZIP_RESERVED = 0xe0;
+
+    private final RequestDecompressionStats stats;
+    private final long maxDecompressedBytes;
+    private final int bufferSize;
+
+    /**
+     * Inflaters without a zlib wrapper, for gzip and raw deflate
+     */
+    private final BlockingQueue<Inflater> rawInflaters;
+    /**
+     * Inflaters for zlib deflate
+     */
+    private final BlockingQueue<Inflater> zlibInflaters;
+
+    RequestDecompressionHandler(RequestDecompressionStats stats, RequestDecompressionConfig config) {
+        this.stats = stats;
+        this.maxDecompressedBytes = config.getMaxDecompressedBytes();
+        this.bufferSize = config.getBufferSize();
+        this.rawInflaters = new ArrayBlockingQueue<>(config.getMaxPooledInflaters());
+        this.zlibInflaters = new ArrayBlockingQueue<>(config.getMaxPooledInflaters());
+    }
+
+    @Override
+    public void handle(String target, Request baseRequest, HttpServletRequest request, HttpServletResponse response)
+        throws IOException, ServletException {
+        if (baseRequest.getDispatcherType() != DispatcherType.REQUEST) {
+            // already set up when the request was first dispatched
+            super.handle(target, baseRequest, request, response);
+            return;
+        }
+
+        HttpFields fields = baseRequest.getHttpFields();
+        HttpField encoding = fields.getField(HttpHeader.CONTENT_ENCODING);
+        if (encoding == null || request.getContentLengthLong() == 0) {
+            super.handle(target, baseRequest, request, response);
+            return;
+        }
+
+        String coding = encoding.getValue().trim();
+        boolean gzip;
+        if (coding.equalsIgnoreCase("gzip") || coding.equalsIgnoreCase("x-gzip")) {
+            gzip = true;
+        } else if (coding.equalsIgnoreCase("deflate")) {
+            gzip = false;
+        } else {
+            super.handle(target, baseRequest, request, response);
+            return;
+        }
+
+        // the same as Jetty's GzipHandler, so servlets can still tell how the body was sent
+        fields.remove(HttpHeader.CONTENT_ENCODING);
+        fields.add(X_CONTENT_ENCODING, coding);
+        fields.remove(HttpHeader.CONTENT_LENGTH);
+
+        final Decoder decoder = new Decoder(gzip);
+        baseRequest.getHttpInput().addInterceptor(decoder);
+
+        try {
+            super.handle(target, baseRequest, new DecodedRequest(request), response);
+        } finally {
+            RequestCompletion.onComplete(request, new Runnable() {
+                @Override
+                public void run() {
+                    decoder.close();
+                }
+            });
+        }
+    }
+
+    @Override
+    protected void doStop() throws Exception {
+        super.doStop();
+        endAll(rawInflaters);
+        endAll(zlibInflaters);
+    }
+
+    private Inflater acquireInflater(boolean raw) {
+        Inflater inflater = (raw ? rawInflaters : zlibInflaters).poll();
+        if (inflater == null) {
+            stats.countInflaterCreated();
+            inflater = new Inflater(raw);
+        }
+        return inflater;
+    }
+
+    private void releaseInflater(Inflater inflater, boolean raw) {
+        inflater.reset();
+        if (!(raw ? rawInflaters : zlibInflaters).offer(inflater)) {
+            inflater.end();
+        }
+    }
+
+    private static void endAll(BlockingQueue<Inflater> inflaters) {
+        Inflater inflater;
+        while ((inflater = inflaters.poll()) != null) {
+            inflater.end();
+        }
+    }
+
+    /**
+     * The body's length once decoded isn't known, and Jetty may already have read the Content-Length header
+     */
+    private static final class DecodedRequest extends HttpServletRequestWrapper {
+        DecodedRequest(HttpServletRequest request) {
+            super(request);
+        }
+
+        @Override
+        public int getContentLength() {
+            return -1;
+        }
+
+        @Override
+        public long getContentLengthLong() {
+            return -1;
+        }
+    }
+
+    private enum State {
+        GZIP_HEADER, DEFLATE_START, DATA, GZIP_TRAILER, DONE
+    }
+
+    /**
+     * Decodes one request's body, a buffer at a time. Jetty calls readFrom() again with the same content while the
+     * content has bytes left, and a last time with an empty EOF content, which is when any output still held in the
+     * inflater comes out.
+     */
+    private final class Decoder implements HttpInput.Interceptor {
+        private final boolean gzip;
+        @Nullable
+        private final CRC32 crc;
+
+        private State state;
+
+        private int headerStep;
+        private int headerFlags;
+        private int extraLengthBytes;
+        private int skipBytes;
+        private int headerCrcBytes;
+        private long trailer;
+        private int trailerBytes;
+        /**
+         * Decoded bytes in the current gzip member, to check against its trailer
+         */
+        private long memberBytes;
+        private boolean sawMember;
+
+        @Nullable
+        private Inflater inflater;
+        private boolean rawInflater;
+        /**
+         * Holds the decoded bytes handed to Jetty, so it is only refilled once Jetty has read all of it
+         */
+        @Nullable
+        private ByteBuffer buffer;
+        @Nullable
+        private HttpInput.Content decoded;
+        /**
+         * For copying out of direct buffers, which the inflater can't read from
+         */
+        @Nullable
+        private byte[] scratch;
+
+        private long compressedBytes;
+        private long decompressedBytes;
+        @Nullable
+        private BadMessageException failure;
+        private boolean closed;
+
+        Decoder(boolean gzip) {
+            this.gzip = gzip;
+            this.crc = gzip ? new CRC32() : null;
+            this.state = gzip ? State.GZIP_HEADER : State.DEFLATE_START;
+        }
+
+        @Override
+        public synchronized HttpInput.Content readFrom(HttpInput.Content content) {
+            if (closed) {
+                // the request is over and Jetty is throwing away the rest of the body
+                return content;
+            }
+            if (failure != null) {
+                throw failure;
+            }
+
+            ByteBuffer in = content.getByteBuffer();
+            if (buffer == null) {
+                buffer = ByteBuffer.allocate(bufferSize);
+                decoded = new HttpInput.Content(buffer);
+            }
+
+            int start = in.position();
+            try {
+                decode(in);
+            } catch (DataFormatException e) {
+                throw fail(HttpServletResponse.SC_BAD_REQUEST, "Invalid " + (gzip ? "gzip" : "deflate") +
+                    " request body: " + e.getMessage(), e);
+            } finally {
+                compressedBytes += in.position() - start;
+            }
+
+            if (buffer.hasRemaining()) {
+                return decoded;
+            }
+            if (content instanceof HttpInput.SentinelContent && !isComplete()) {
+                throw fail(HttpServletResponse.SC_BAD_REQUEST, "Truncated " + (gzip ? "gzip" : "deflate") +
+                    " request body", null);
+            }
+            return content;
+        }
+
+        /**
+         * Decode as much of the input as fits in the buffer.
+         */
+        private void decode(ByteBuffer in) throws DataFormatException {
+            buffer.clear();
+            try {
+                while (buffer.hasRemaining() && step(in)) {
+                    if (decompressedBytes > maxDecompressedBytes) {
+                        throw fail(HttpServletResponse.SC_REQUEST_ENTITY_TOO_LARGE,
+                            "Decoded request body is larger than " + maxDecompressedBytes + " bytes", null);
+                    }
+                }
+            } finally {
+                buffer.flip();
+            }
+        }
+
+        /**
+         * @return true if progress was made, false if more input is needed
+         */
+        private boolean step(ByteBuffer in) throws DataFormatException {
+            switch (state) {
+                case GZIP_HEADER:
+                    if (!readGzipHeader(in)) {
+                        return false;
+                    }
+                    if (state != State.DONE) {
+                        startData(true);
+                    }
+                    return true;
+                case DEFLATE_START:
+                    if (!in.hasRemaining()) {
+                        return false;
+                    }
+                    // a zlib header: deflate with a window of at most 32k. Some clients send raw deflate instead.
+                    int cmf = in.get(in.position()) & 0xff;
+                    startData((cmf & 0x0f) != 8 || (cmf >> 4) > 7);
+                    return true;
+                case DATA:
+                    return inflate(in);
+                case GZIP_TRAILER:
+                    if (!readGzipTrailer(in)) {
+                        return false;
+                    }
+                    // another member may follow
+                    sawMember = true;
+                    resetMember();
+                    state = State.GZIP_HEADER;
+                    return true;
+                case DONE:
+                default:
+                    // ignore anything after the end of the body, like GZIPInputStream does
+                    in.position(in.limit());
+                    return false;
+            }
+        }
+
+        private void startData(boolean raw) {
+            if (inflater == null) {
+                inflater = acquireInflater(raw);
+                rawInflater = raw;
+            }
+            state = State.DATA;
+        }
+
+        private boolean inflate(ByteBuffer in) throws DataFormatException {
+            int given = in.hasRemaining() ? setInput(in) : 0;
+            int count = inflater.inflate(buffer.array(), buffer.arrayOffset() + buffer.position(), buffer.remaining());
+            in.position(in.position() + given - inflater.getRemaining());
+
+            if (count > 0) {
+                if (crc != null) {
+                    crc.update(buffer.array(), buffer.arrayOffset() + buffer.position(), count);
+                }
+                buffer.position(buffer.position() + count);
+                memberBytes += count;
+                decompressedBytes += count;
+            }
+
+            if (inflater.finished()) {
+                state = gzip ? State.GZIP_TRAILER : State.DONE;
+                return true;
+            }
+            if (count == 0) {
+                if (inflater.needsDictionary()) {
+                    throw new DataFormatException("Preset dictionaries aren't supported");
+                }
+                return in.hasRemaining();
+            }
+            return true;
+        }
+
+        /**
+         * The inflater only keeps a reference to its input, so it's given the content's bytes again each time
+         *
+         * @return number of bytes given to the inflater
+         */
+        private int setInput(ByteBuffer in) {
+            if (in.hasArray()) {
+                inflater.setInput(in.array(), in.arrayOffset() + in.position(), in.remaining());
+                return in.remaining();
+            }
+
+            if (scratch == null) {
+                scratch = new byte[bufferSize];
+            }
+            int length = Math.min(in.remaining(), scratch.length);
+            int position = in.position();
+            in.get(scratch, 0, length);
+            in.position(position);
+            inflater.setInput(scratch, 0, length);
+            return length;
+        }
+
+        /**
+         * @return true once a member's header has been read, or if what follows the last member isn't a gzip header
+         */
+        private boolean readGzipHeader(ByteBuffer in) throws DataFormatException {
+            while (in.hasRemaining()) {
+                int b = in.get() & 0xff;
+                if (headerStep < GZIP_FIXED_HEADER_BYTES) {
+                    if ((headerStep == 0 && b != 0x1f) || (headerStep == 1 && b != 0x8b)) {
+                        if (sawMember) {
+                            state = State.DONE;
+                            return true;
+                        }
+                        throw new DataFormatException("Not in gzip format");
+                    }
+                    if (headerStep == 2 && b != 8) {
+                        throw new DataFormatException("Unsupported compression method " + b);
+                    }
+                    if (headerStep == 3) {
+                        if ((b & GZIP_RESERVED) != 0) {
+                            throw new DataFormatException("Reserved flags are set");
+                        }
+                        headerFlags = b;
+                    }
+                    // the rest of the fixed header is the mtime, extra flags and OS, which don't matter
+                    headerStep++;
+                } else if ((headerFlags & GZIP_FEXTRA) != 0) {
+                    // a two byte length, then that many bytes
+                    if (extraLengthBytes < 2) {
+                        skipBytes |= b << (8 * extraLengthBytes++);
+                    } else {
+                        skipBytes--;
+                    }
+                    if (extraLengthBytes == 2 && skipBytes == 0) {
+                        headerFlags &= ~GZIP_FEXTRA;
+                    }
+                } else if ((headerFlags & GZIP_FNAME) != 0) {
+                    if (b == 0) {
+                        headerFlags &= ~GZIP_FNAME;
+                    }
+                } else if ((headerFlags & GZIP_FCOMMENT) != 0) {
+                    if (b == 0) {
+                        headerFlags &= ~GZIP_FCOMMENT;
+                    }
+                } else if (++headerCrcBytes == 2) {
+                    headerFlags &= ~GZIP_FHCRC;
+                }
+
+                if (headerStep == GZIP_FIXED_HEADER_BYTES && (headerFlags & GZIP_OPTIONAL_FIELDS) == 0) {
+                    return true;
+                }
+            }
+            return false;
+        }
+
+        /**
+         * @return true once the CRC and size after a member have been read and checked
+         */
+        private boolean readGzipTrailer(ByteBuffer in) throws DataFormatException {
+            while (in.hasRemaining() && trailerBytes < 8) {
+                trailer |= (long) (in.get() & 0xff) << (8 * trailerBytes++);
+            }
+            if (trailerBytes < 8) {
+                return false;
+            }
+            if ((trailer & 0xffffffffL) != crc.getValue()) {
+                throw new DataFormatException("Corrupt gzip trailer: CRC doesn't match");
+            }
+            if (trailer >>> 32 != (memberBytes & 0xffffffffL)) {
+                throw new DataFormatException("Corrupt gzip trailer: size doesn't match");
+            }
+            return true;
+        }
+
+        private void resetMember() {
+            headerStep = 0;
+            headerFlags = 0;
+            extraLengthBytes = 0;
+            skipBytes = 0;
+            headerCrcBytes = 0;
+            trailer = 0;
+            trailerBytes = 0;
+            memberBytes = 0;
+            crc.reset();
+            inflater.reset();
+        }
+
+        /**
+         * @return true if the body so far is a whole gzip or deflate stream
+         */
+        private boolean isComplete() {
+            return state == State.DONE || (state == State.GZIP_HEADER && sawMember && headerStep == 0);
+        }
+
+        private BadMessageException fail(int code, String reason, @Nullable Throwable cause) {
+            logger.debug("Failing request: " + reason);
+            if (code == HttpServletResponse.SC_REQUEST_ENTITY_TOO_LARGE) {
+                stats.countRejected();
+            } else {
+                stats.countFailed();
+            }
+            failure = new BadMessageException(code, reason, cause);
+            return failure;
+        }
+
+        /**
+         * Give back the inflater and count the request, once the request is complete
+         */
+        synchronized void close() {
+            if (closed) {
+                return;
+            }
+            closed = true;
+
+            if (inflater != null) {
+                releaseInflater(inflater, rawInflater);
+                inflater = null;
+            }
+            if (buffer != null) {
+                // so that Jetty doesn't read anything more from it
+                BufferUtil.clear(buffer);
+            }
+            stats.countRequest(compressedBytes, decompressedBytes);
+        }
+    }
+}
@@ -0,0 +1,88 @@
+package com.palominolabs.http.server;
+
+import java.util.concurrent.atomic.AtomicLong;
+import javax.annotation.concurrent.ThreadSafe;
+
+/**
+ * Counts of request bodies decoded by request decompression. Counts are added when each request completes.
+ *
+ * @see RequestDecompressionConfig
+ */
+@ThreadSafe
+public final class RequestDecompressionStats {
+
+    private final AtomicLong requests = new AtomicLong();
+
+    private final AtomicLong compressedBytes = new AtomicLong();
+
+    private final AtomicLong decompressedBytes = new AtomicLong();
+
+    private final AtomicLong rejectedRequests = new AtomicLong();
+
+    private final AtomicLong failedRequests = new AtomicLong();
+
+    private final AtomicLong inflatersCreated = new AtomicLong();
+
+    RequestDecompressionStats() {
+    }
+
+    void countRequest(long compressed, long decompressed) {
+        requests.incrementAndGet();
+        compressedBytes.addAndGet(compressed);
+        decompressedBytes.addAndGet(decompressed);
+    }
+
+    void countRejected() {
+        rejectedRequests.incrementAndGet();
+    }
+
+    void countFailed() {
+        failedRequests.incrementAndGet();
+    }
+
+    void countInflaterCreated() {
+        inflatersCreated.incrementAndGet();
+    }
+
+    /**
+     * @return number of requests with a gzip or deflate body
+     */
+    public long getRequests() {
+        return requests.get();
+    }
+
+    /**
+     * @return bytes of encoded body read from those requests
+     */
+    public long getCompressedBytes() {
+        return compressedBytes.get();
+    }
+
+    /**
+     * @return bytes of decoded body handed to servlets for those requests
+     */
+    public long getDecompressedBytes() {
+        return decompressedBytes.get();
+    }
+
+    /**
+     * @return number of requests failed because their decoded body was larger than the max
+     */
+    public long getRejectedRequests() {
+        return rejectedRequests.get();
+    }
+
+    /**
+     * @return number of requests failed because their body wasn't valid gzip or deflate
+     */
+    public long getFailedRequests() {
+        return failedRequests.get();
+    }
+
+    /**
+     * @return number of inflaters created because none were free in the pool
+     */
+    public long getInflatersCreated() {
+        return inflatersCreated.get();
+    }
+}
@@ -0,0 +1,87 @@
+package com.palominolabs.http.server;
+
+import javax.annotation.CheckForNull;
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import javax.annotation.concurrent.Immutable;
+import javax.servlet.ServletRequest;
+
+/**
+ * A request, reported when it completes.
+ */
+@Immutable
+public final class RequestEvent {
+
+    static final String PATH_TEMPLATE_ATTRIBUTE = RequestEvent.class.getName() + ".pathTemplate";
+
+    private final String method;
+    private final String uri;
+    @Nullable
+    private final String pathTemplate;
+    private final int status;
+    private final long startMillis;
+    private final long durationNanos;
+
+    RequestEvent(String method, String uri, @Nullable String pathTemplate, int status, long startMillis,
+        long durationNanos) {
+        this.method = method;
+        this.uri = uri;
+        this.pathTemplate = pathTemplate;
+        this.status = status;
+        this.startMillis = startMillis;
+        this.durationNanos = durationNanos;
+    }
+
+    /**
+     * Set the path template reported for the current request, e.g. "/users/*" rather than "/users/123", so that
+     * events can be grouped by endpoint. Call this from the servlet.
+     *
+     * @param request      the request being handled
+     * @param pathTemplate the pattern the servlet is bound to
+     */
+    public static void setPathTemplate(@Nonnull ServletRequest request, @Nonnull String pathTemplate) {
+        request.setAttribute(PATH_TEMPLATE_ATTRIBUTE, pathTemplate);
+    }
+
+    @Nonnull
+    public String getMethod() {
+        return method;
+    }
+
+    @Nonnull
+    public String getUri() {
+        return uri;
+    }
+
+    /**
+     * @return the template set with {@link RequestEvent#setPathTemplate}, or null if none was set
+     */
+    @CheckForNull
+    public String getPathTemplate() {
+        return pathTemplate;
+    }
+
+    public int getStatus() {
+        return status;
+    }
+
+    /**
+     * @return when the request was read, in milliseconds since the epoch
+     */
+    public long getStartMillis() {
+        return startMillis;
+    }
+
+    /**
+     * @return time from dispatch until the request completed
+     */
+    public long getDurationNanos() {
+        return durationNanos;
+    }
+
+    @Override
+    public String toString() {
+        return "RequestEvent{" + method + " " + uri + (pathTemplate == null ? "" : " (" + pathTemplate + ")")
+            + ", status=" + status + ", durationNanos=" + durationNanos + "}";
+    }
+}
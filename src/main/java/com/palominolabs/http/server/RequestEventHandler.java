@@ -0,0 +1,63 @@
+package com.palominolabs.http.server;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+import javax.servlet.DispatcherType;
+import javax.servlet.ServletException;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import org.eclipse.jetty.server.Request;
+import org.eclipse.jetty.server.handler.HandlerWrapper;
+
+/**
+ * Reports requests that take longer than the threshold to the {@link ServerEventListener}.
+ */
+final class RequestEventHandler extends HandlerWrapper {
+
+    private final ServerEventListener listener;
+    private final long thresholdNanos;
+
+    RequestEventHandler(ServerEventListener listener, long thresholdMillis) {
+        this.listener = listener;
+        this.thresholdNanos = TimeUnit.MILLISECONDS.toNanos(thresholdMillis);
+    }
+
+    @Override
+    public void handle(String target, final Request baseRequest, HttpServletRequest request,
+        HttpServletResponse response) throws IOException, ServletException {
+        if (baseRequest.getDispatcherType() != DispatcherType.REQUEST) {
+            super.handle(target, baseRequest, request, response);
+            return;
+        }
+
+        final long startNanos = System.nanoTime();
+        boolean failed = true;
+        try {
+            super.handle(target, baseRequest, request, response);
+            failed = false;
+        } finally {
+            if (failed) {
+                // Jetty will send a 500
+                report(baseRequest, HttpServletResponse.SC_INTERNAL_SERVER_ERROR, startNanos);
+            } else {
+                RequestCompletion.onComplete(request, new Runnable() {
+                    @Override
+                    public void run() {
+                        report(baseRequest, baseRequest.getResponse().getStatus(), startNanos);
+                    }
+                });
+            }
+        }
+    }
+
+    private void report(Request baseRequest, int status, long startNanos) {
+        long durationNanos = System.nanoTime() - startNanos;
+        if (durationNanos < thresholdNanos) {
+            return;
+        }
+
+        listener.onRequest(new RequestEvent(baseRequest.getMethod(), baseRequest.getRequestURI(),
+            (String) baseRequest.getAttribute(RequestEvent.PATH_TEMPLATE_ATTRIBUTE), status,
+            baseRequest.getTimeStamp(), durationNanos));
+    }
+}
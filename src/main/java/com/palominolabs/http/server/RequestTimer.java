@@ -0,0 +1,169 @@
+package com.palominolabs.http.server;
+
+import java.nio.ByteBuffer;
+import java.util.concurrent.TimeUnit;
+import javax.annotation.concurrent.NotThreadSafe;
+import org.eclipse.jetty.server.HttpOutput;
+import org.eclipse.jetty.server.Request;
+import org.eclipse.jetty.server.Response;
+import org.eclipse.jetty.util.Callback;
+
+/**
+ * Timestamps for the request being handled by the current thread. There is one per thread and it is reused for each
+ * request, so timing doesn't allocate.
+ *
+ * It is installed as the response's output interceptor to see when the response is committed. Jetty resets the
+ * interceptor when the response is recycled, and requests that go async are unhooked when the dispatching thread
+ * returns, so a timer never sees another thread's writes for a request it is still timing.
+ */
+@NotThreadSafe
+final class RequestTimer implements HttpOutput.Interceptor {
+
+    private static final ThreadLocal<RequestTimer> TIMERS = new ThreadLocal<RequestTimer>() {
+        @Override
+        protected RequestTimer initialValue() {
+            return new RequestTimer(Thread.currentThread());
+        }
+    };
+
+    private final Thread owner;
+
+    private RequestTimingStats stats;
+    private Response response;
+    private HttpOutput.Interceptor next;
+    private boolean dispatched;
+    private boolean sampled;
+
+    /**
+     * -1 unless this is the first request on its connection
+     */
+    private long acceptNanos;
+    private long queueNanos;
+    private long dispatchNanos;
+    private long filterEntryNanos;
+    private long filterExitNanos;
+    private long commitNanos;
+
+    private RequestTimer(Thread owner) {
+        this.owner = owner;
+    }
+
+    static RequestTimer forCurrentThread() {
+        return TIMERS.get();
+    }
+
+    void start(RequestTimingStats stats, Request baseRequest, boolean sampled) {
+        dispatchNanos = System.nanoTime();
+        ArrivalHttpConnection connection = ArrivalHttpConnection.of(baseRequest);
+        if (connection == null) {
+            acceptNanos = -1;
+            queueNanos = 0;
+        } else {
+            acceptNanos = connection.getAcceptNanos();
+            queueNanos = Math.max(0, dispatchNanos - connection.getArrivalNanos());
+        }
+        filterEntryNanos = 0;
+        filterExitNanos = 0;
+        commitNanos = 0;
+        this.stats = stats;
+        this.sampled = sampled;
+        dispatched = true;
+
+        if (acceptNanos != -1) {
+            stats.getAccept().recordNanos(acceptNanos);
+        }
+        stats.getQueue().recordNanos(queueNanos);
+
+        response = baseRequest.getResponse();
+        HttpOutput output = response.getHttpOutput();
+        next = output.getInterceptor();
+        output.setInterceptor(this);
+    }
+
+    void filterEntered() {
+        if (dispatched && filterEntryNanos == 0) {
+            filterEntryNanos = System.nanoTime();
+            stats.getHandlers().recordNanos(filterEntryNanos - dispatchNanos);
+        }
+    }
+
+    void filterExited() {
+        if (dispatched && filterEntryNanos != 0 && filterExitNanos == 0) {
+            filterExitNanos = System.nanoTime();
+            stats.getServlet().recordNanos(filterExitNanos - filterEntryNanos);
+        }
+    }
+
+    /**
+     * Called when the dispatching thread leaves the handler chain.
+     *
+     * @param async true if the request went async
+     */
+    void dispatchReturned(boolean async) {
+        dispatched = false;
+        if (async) {
+            HttpOutput output = response.getHttpOutput();
+            if (output.getInterceptor() == this) {
+                output.setInterceptor(next);
+            }
+        }
+    }
+
+    @Override
+    public void write(ByteBuffer content, boolean complete, Callback callback) {
+        if (commitNanos == 0 && Thread.currentThread() == owner) {
+            commitNanos = System.nanoTime();
+            if (filterExitNanos != 0) {
+                stats.getWrite().recordNanos(commitNanos - filterExitNanos);
+            }
+            stats.getTotal().recordNanos(queueNanos + commitNanos - dispatchNanos);
+            if (sampled) {
+                response.setHeader("Server-Timing", buildServerTiming());
+            }
+        }
+        next.write(content, complete, callback);
+    }
+
+    @Override
+    public HttpOutput.Interceptor getNextInterceptor() {
+        return next;
+    }
+
+    @Override
+    public boolean isOptimizedForDirectBuffers() {
+        return next.isOptimizedForDirectBuffers();
+    }
+
+    private String buildServerTiming() {
+        StringBuilder header = new StringBuilder(144);
+        if (acceptNanos != -1) {
+            appendMetric(header, "accept", acceptNanos).append(", ");
+        }
+        appendMetric(header, "queue", queueNanos);
+        if (filterEntryNanos != 0) {
+            appendMetric(header.append(", "), "handlers", filterEntryNanos - dispatchNanos);
+        }
+        if (filterExitNanos != 0) {
+            appendMetric(header.append(", "), "servlet", filterExitNanos - filterEntryNanos);
+            appendMetric(header.append(", "), "write", commitNanos - filterExitNanos);
+        }
+        appendMetric(header.append(", "), "total", queueNanos + commitNanos - dispatchNanos);
+        return header.toString();
+    }
+
+    /**
+     * Append a metric with its duration in milliseconds to 3 decimal places
+     */
+    private static StringBuilder appendMetric(StringBuilder header, String name, long nanos) {
+        long micros = TimeUnit.NANOSECONDS.toMicros(nanos);
+        long fraction = micros % 1000;
+        header.append(name).append(";dur=").append(micros / 1000).append('.');
+        if (fraction < 100) {
+            header.append('0');
+        }
+        if (fraction < 10) {
+            header.append('0');
+        }
+        return header.append(fraction);
+    }
+}
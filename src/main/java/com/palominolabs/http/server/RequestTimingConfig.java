@@ -0,0 +1,50 @@
+package com.palominolabs.http.server;
+
+import javax.annotation.Nonnull;
+import javax.annotation.concurrent.NotThreadSafe;
+
+import static com.google.common.base.Preconditions.checkArgument;
+
+/**
+ * Config for timing the phases of each request. Times are recorded into the histograms in {@link RequestTimingStats}:
+ *
+ * - accept: for the first request on a connection, from accepting the connection until the request arrived
+ * - queue: from when the request arrived, i.e. the selector saw its bytes, until a thread dispatched it
+ * - handlers: from dispatch until the servlet filter chain was entered (request log, resource handlers, etc.)
+ * - servlet: the servlet filter chain, including GuiceFilter
+ * - write: from the end of the filter chain until the response was committed
+ * - total: from when the request arrived until the response was committed
+ *
+ * Responses that are committed while the servlet is still writing record no write time. Requests that go async record
+ * only the phases that completed before the dispatching thread returned. Optionally, the times can be sent to sampled
+ * clients in a Server-Timing header.
+ */
+@NotThreadSafe
+public final class RequestTimingConfig {
+
+    private int serverTimingSampleInterval = 0;
+
+    public int getServerTimingSampleInterval() {
+        return serverTimingSampleInterval;
+    }
+
+    /**
+     * @param serverTimingSampleInterval add a Server-Timing header to every nth response, or 0 to never add it.
+     *                                   Default is 0.
+     */
+    public void setServerTimingSampleInterval(int serverTimingSampleInterval) {
+        checkArgument(serverTimingSampleInterval >= 0, "Sample interval must not be negative");
+        this.serverTimingSampleInterval = serverTimingSampleInterval;
+    }
+
+    /**
+     * @param serverTimingSampleInterval server timing sample interval
+     * @return this
+     * @see RequestTimingConfig#setServerTimingSampleInterval(int)
+     */
+    @Nonnull
+    public RequestTimingConfig withServerTimingSampleInterval(int serverTimingSampleInterval) {
+        setServerTimingSampleInterval(serverTimingSampleInterval);
+        return this;
+    }
+}
@@ -0,0 +1,36 @@
+package com.palominolabs.http.server;
+
+import java.io.IOException;
+import javax.servlet.Filter;
+import javax.servlet.FilterChain;
+import javax.servlet.FilterConfig;
+import javax.servlet.ServletException;
+import javax.servlet.ServletRequest;
+import javax.servlet.ServletResponse;
+
+/**
+ * Marks entry to and exit from the rest of the filter chain for the {@link RequestTimer}. Installed ahead of
+ * GuiceFilter.
+ */
+final class RequestTimingFilter implements Filter {
+
+    @Override
+    public void init(FilterConfig filterConfig) {
+    }
+
+    @Override
+    public void doFilter(ServletRequest request, ServletResponse response, FilterChain chain)
+        throws IOException, ServletException {
+        RequestTimer timer = RequestTimer.forCurrentThread();
+        timer.filterEntered();
+        try {
+            chain.doFilter(request, response);
+        } finally {
+            timer.filterExited();
+        }
+    }
+
+    @Override
+    public void destroy() {
+    }
+}
@@ -0,0 +1,47 @@
+package com.palominolabs.http.server;
+
+import java.io.IOException;
+import java.util.concurrent.atomic.AtomicLong;
+import javax.servlet.DispatcherType;
+import javax.servlet.ServletException;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import org.eclipse.jetty.server.Request;
+import org.eclipse.jetty.server.handler.HandlerWrapper;
+
+/**
+ * Starts the {@link RequestTimer} for each request. It wraps the watchdog, request event, deadline, body budget and
+ * decompression handlers, so their time counts towards the handlers phase. Heavy hitters, traffic capture, health
+ * checks and the statistics handler wrap it in turn, so the time they take before dispatch reaches it isn't timed.
+ */
+final class RequestTimingHandler extends HandlerWrapper {
+
+    private final RequestTimingStats stats;
+    private final int serverTimingSampleInterval;
+    private final AtomicLong requests = new AtomicLong();
+
+    RequestTimingHandler(RequestTimingStats stats, RequestTimingConfig config) {
+        this.stats = stats;
+        this.serverTimingSampleInterval = config.getServerTimingSampleInterval();
+    }
+
+    @Override
+    public void handle(String target, Request baseRequest, HttpServletRequest request, HttpServletResponse response)
+        throws IOException, ServletException {
+        if (baseRequest.getDispatcherType() != DispatcherType.REQUEST) {
+            super.handle(target, baseRequest, request, response);
+            return;
+        }
+
+        boolean sampled = serverTimingSampleInterval > 0
+            && requests.incrementAndGet() % serverTimingSampleInterval == 0;
+
+        RequestTimer timer = RequestTimer.forCurrentThread();
+        timer.start(stats, baseRequest, sampled);
+        try {
+            super.handle(target, baseRequest, request, response);
+        } finally {
+            timer.dispatchReturned(request.isAsyncStarted());
+        }
+    }
+}
@@ -0,0 +1,79 @@
+package com.palominolabs.http.server;
+
+import javax.annotation.Nonnull;
+import javax.annotation.concurrent.ThreadSafe;
+
+/**
+ * Histograms of the time spent in each phase of a request.
+ *
+ * @see RequestTimingConfig
+ */
+@ThreadSafe
+public final class RequestTimingStats {
+
+    private final LatencyHistogram accept = new LatencyHistogram();
+    private final LatencyHistogram queue = new LatencyHistogram();
+    private final LatencyHistogram handlers = new LatencyHistogram();
+    private final LatencyHistogram servlet = new LatencyHistogram();
+    private final LatencyHistogram write = new LatencyHistogram();
+    private final LatencyHistogram total = new LatencyHistogram();
+
+    RequestTimingStats() {
+    }
+
+    /**
+     * @return for the first request on each connection, time from accepting the connection to the request arriving,
+     * which includes any PROXY header and TLS handshake
+     */
+    @Nonnull
+    public LatencyHistogram getAccept() {
+        return accept;
+    }
+
+    /**
+     * @return time from the request arriving, i.e. the selector seeing its bytes, to dispatching it, which is mostly
+     * time spent waiting for a thread
+     */
+    @Nonnull
+    public LatencyHistogram getQueue() {
+        return queue;
+    }
+
+    /**
+     * @return time from dispatch to entering the servlet filter chain
+     */
+    @Nonnull
+    public LatencyHistogram getHandlers() {
+        return handlers;
+    }
+
+    /**
+     * @return time spent in the servlet filter chain
+     */
+    @Nonnull
+    public LatencyHistogram getServlet() {
+        return servlet;
+    }
+
+    /**
+     * @return time from leaving the servlet filter chain to committing the response
+     */
+    @Nonnull
+    public LatencyHistogram getWrite() {
+        return write;
+    }
+
+    /**
+     * @return time from the request arriving to committing the response
+     */
+    @Nonnull
+    public LatencyHistogram getTotal() {
+        return total;
+    }
+
+    @Override
+    public String toString() {
+        return "RequestTimingStats{accept=" + accept + ", queue=" + queue + ", handlers=" + handlers + ", servlet="
+            + servlet + ", write=" + write + ", total=" + total + "}";
+    }
+}
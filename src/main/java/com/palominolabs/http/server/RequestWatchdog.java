@@ -0,0 +1,193 @@
+package com.palominolabs.http.server;
+
+import com.google.common.collect.Lists;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import javax.annotation.Nonnull;
+import javax.annotation.concurrent.ThreadSafe;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Tracks the requests running on server threads and logs the stacks of slow ones.
+ *
+ * Each server thread gets a slot the first time it handles a request, and reuses it for every later request, so
+ * tracking a request is a few field writes with no allocation or locking. The background check reads the slots.
+ *
+ * @see RequestWatchdogConfig
+ */
+@ThreadSafe
+public final class RequestWatchdog {
+
+    private static final Logger logger = LoggerFactory.getLogger(RequestWatchdog.class);
+
+    private final long thresholdNanos;
+    private final long checkIntervalMillis;
+    private final int maxStackSamples;
+
+    private final Queue<Slot> slots = new ConcurrentLinkedQueue<>();
+
+    private final ThreadLocal<Slot> threadSlot = new ThreadLocal<Slot>() {
+        @Override
+        protected Slot initialValue() {
+            Slot slot = new Slot(Thread.currentThread());
+            slots.add(slot);
+            return slot;
+        }
+    };
+
+    private ScheduledExecutorService executor;
+
+    RequestWatchdog(RequestWatchdogConfig config) {
+        this.thresholdNanos = TimeUnit.MILLISECONDS.toNanos(config.getThresholdMillis());
+        this.checkIntervalMillis = config.getCheckIntervalMillis();
+        this.maxStackSamples = config.getMaxStackSamples();
+    }
+
+    synchronized void start() {
+        executor = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+            @Override
+            public Thread newThread(Runnable r) {
+                Thread thread = new Thread(r, "request-watchdog");
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+        executor.scheduleWithFixedDelay(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    check();
+                } catch (RuntimeException e) {
+                    logger.warn("Request watchdog check failed", e);
+                }
+            }
+        }, checkIntervalMillis, checkIntervalMillis, TimeUnit.MILLISECONDS);
+    }
+
+    synchronized void stop() {
+        if (executor != null) {
+            executor.shutdownNow();
+            executor = null;
+        }
+    }
+
+    /**
+     * @return the slot to record the current thread's requests in
+     */
+    Slot slotForCurrentThread() {
+        return threadSlot.get();
+    }
+
+    /**
+     * @return a snapshot of the requests currently running on a thread, in no particular order
+     */
+    @Nonnull
+    public List<InFlightRequest> getInFlightRequests() {
+        List<InFlightRequest> requests = Lists.newArrayList();
+        long now = System.nanoTime();
+        for (Slot slot : slots) {
+            long sequence = slot.sequence;
+            long startNanos = slot.startNanos;
+            String method = slot.method;
+            String uri = slot.uri;
+            // skip idle slots and ones that moved on to another request while we read them
+            if (startNanos == 0 || sequence != slot.sequence) {
+                continue;
+            }
+            requests.add(new InFlightRequest(method, uri, slot.thread.getName(),
+                TimeUnit.NANOSECONDS.toMillis(now - startNanos)));
+        }
+        return requests;
+    }
+
+    private void check() {
+        long now = System.nanoTime();
+        Iterator<Slot> iterator = slots.iterator();
+        while (iterator.hasNext()) {
+            Slot slot = iterator.next();
+            if (!slot.thread.isAlive()) {
+                iterator.remove();
+                continue;
+            }
+
+            long sequence = slot.sequence;
+            long startNanos = slot.startNanos;
+            if (startNanos == 0 || now - startNanos < thresholdNanos) {
+                continue;
+            }
+
+            if (slot.sampledSequence != sequence) {
+                slot.sampledSequence = sequence;
+                slot.samplesTaken = 0;
+            }
+            if (slot.samplesTaken >= maxStackSamples) {
+                continue;
+            }
+
+            String method = slot.method;
+            String uri = slot.uri;
+            StackTraceElement[] stack = slot.thread.getStackTrace();
+            // the request may have finished while we took the stack
+            if (slot.sequence != sequence || slot.startNanos == 0) {
+                continue;
+            }
+            slot.samplesTaken++;
+
+            StringBuilder message = new StringBuilder()
+                .append("Request ").append(method).append(' ').append(uri)
+                .append(" has been running for ").append(TimeUnit.NANOSECONDS.toMillis(now - startNanos))
+                .append(" ms on ").append(slot.thread.getName())
+                .append(" (sample ").append(slot.samplesTaken).append(" of ").append(maxStackSamples).append(')');
+            for (StackTraceElement element : stack) {
+                message.append("\n\tat ").append(element);
+            }
+            logger.warn(message.toString());
+        }
+    }
+
+    /**
+     * What one thread is doing. Written only by its thread, and read by the watchdog.
+     */
+    static final class Slot {
+        private final Thread thread;
+
+        /**
+         * Incremented at the start and end of each request, so a reader can tell when it has seen a mix of two
+         * requests
+         */
+        private volatile long sequence;
+        /**
+         * 0 when idle
+         */
+        private volatile long startNanos;
+        private volatile String method;
+        private volatile String uri;
+
+        // only used by the watchdog thread
+        private long sampledSequence = -1;
+        private int samplesTaken;
+
+        private Slot(Thread thread) {
+            this.thread = thread;
+        }
+
+        void requestStarted(String method, String uri) {
+            sequence++;
+            this.method = method;
+            this.uri = uri;
+            startNanos = System.nanoTime();
+        }
+
+        void requestFinished() {
+            startNanos = 0;
+            sequence++;
+        }
+    }
+}
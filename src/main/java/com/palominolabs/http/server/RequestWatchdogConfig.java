@@ -0,0 +1,95 @@
+package com.palominolabs.http.server;
+
+import javax.annotation.Nonnull;
+import javax.annotation.concurrent.NotThreadSafe;
+
+import static com.google.common.base.Preconditions.checkArgument;
+
+/**
+ * Config for a watchdog that logs the stack traces of requests that hold a thread for too long.
+ *
+ * A background thread checks the in-flight requests every {@link RequestWatchdogConfig#getCheckIntervalMillis()}.
+ * Once a request has run past the threshold, its thread's stack is logged at each check, up to {@link
+ * RequestWatchdogConfig#getMaxStackSamples()} times, so a series of samples shows whether it is stuck or making
+ * progress. Only time spent on a thread is watched: a request that has gone async isn't in flight until it is
+ * dispatched again.
+ */
+@NotThreadSafe
+public final class RequestWatchdogConfig {
+
+    private long thresholdMillis = 10000;
+
+    private long checkIntervalMillis = 1000;
+
+    private int maxStackSamples = 3;
+
+    public long getThresholdMillis() {
+        return thresholdMillis;
+    }
+
+    /**
+     * @param thresholdMillis requests running for longer are logged. Default is 10000.
+     */
+    public void setThresholdMillis(long thresholdMillis) {
+        checkArgument(thresholdMillis > 0, "Threshold must be positive");
+        this.thresholdMillis = thresholdMillis;
+    }
+
+    public long getCheckIntervalMillis() {
+        return checkIntervalMillis;
+    }
+
+    /**
+     * @param checkIntervalMillis how often to check in-flight requests, and so the time between stack samples.
+     *                            Default is 1000.
+     */
+    public void setCheckIntervalMillis(long checkIntervalMillis) {
+        checkArgument(checkIntervalMillis > 0, "Check interval must be positive");
+        this.checkIntervalMillis = checkIntervalMillis;
+    }
+
+    public int getMaxStackSamples() {
+        return maxStackSamples;
+    }
+
+    /**
+     * @param maxStackSamples number of times to log the stack of a slow request. Default is 3.
+     */
+    public void setMaxStackSamples(int maxStackSamples) {
+        checkArgument(maxStackSamples > 0, "Max stack samples must be positive");
+        this.maxStackSamples = maxStackSamples;
+    }
+
+    /**
+     * @param thresholdMillis threshold
+     * @return this
+     * @see RequestWatchdogConfig#setThresholdMillis(long)
+     */
+    @Nonnull
+    public RequestWatchdogConfig withThresholdMillis(long thresholdMillis) {
+        setThresholdMillis(thresholdMillis);
+        return this;
+    }
+
+    /**
+     * @param checkIntervalMillis check interval
+     * @return this
+     * @see RequestWatchdogConfig#setCheckIntervalMillis(long)
+     */
+    @Nonnull
+    public RequestWatchdogConfig withCheckIntervalMillis(long checkIntervalMillis) {
+        setCheckIntervalMillis(checkIntervalMillis);
+        return this;
+    }
+
+    /**
+     * @param maxStackSamples max stack samples
+     * @return this
+     * @see RequestWatchdogConfig#setMaxStackSamples(int)
+     */
+    @Nonnull
+    public RequestWatchdogConfig withMaxStackSamples(int maxStackSamples) {
+        setMaxStackSamples(maxStackSamples);
+        return this;
+    }
+}
@@ -0,0 +1,40 @@
+package com.palominolabs.http.server;
+
+import java.io.IOException;
+import javax.servlet.DispatcherType;
+import javax.servlet.ServletException;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import org.eclipse.jetty.server.Request;
+import org.eclipse.jetty.server.handler.HandlerWrapper;
+
+/**
+ * Records each request's time on a thread with the {@link RequestWatchdog}.
+ */
+final class RequestWatchdogHandler extends HandlerWrapper {
+
+    private final RequestWatchdog watchdog;
+
+    RequestWatchdogHandler(RequestWatchdog watchdog) {
+        this.watchdog = watchdog;
+    }
+
+    @Override
+    public void handle(String target, Request baseRequest, HttpServletRequest request, HttpServletResponse response)
+        throws IOException, ServletException {
+        // forwards and includes happen on a thread that is already being watched
+        DispatcherType dispatcherType = baseRequest.getDispatcherType();
+        if (dispatcherType != DispatcherType.REQUEST && dispatcherType != DispatcherType.ASYNC) {
+            super.handle(target, baseRequest, request, response);
+            return;
+        }
+
+        RequestWatchdog.Slot slot = watchdog.slotForCurrentThread();
+        slot.requestStarted(baseRequest.getMethod(), baseRequest.getRequestURI());
+        try {
+            super.handle(target, baseRequest, request, response);
+        } finally {
+            slot.requestFinished();
+        }
+    }
+}
@@ -0,0 +1,215 @@
+package com.palominolabs.http.server;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.RemovalCause;
+import com.google.common.cache.RemovalListener;
+import com.google.common.cache.RemovalNotification;
+import com.google.common.cache.Weigher;
+import java.nio.ByteBuffer;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import javax.annotation.CheckForNull;
+import javax.annotation.Nonnull;
+import javax.annotation.concurrent.ThreadSafe;
+import javax.servlet.ServletRequest;
+
+import static com.google.common.base.Preconditions.checkArgument;
+
+/**
+ * Cached servlet responses and cache statistics.
+ *
+ * Entries are held in a Guava cache weighed by body size, so lookups don't contend on a single lock. The cache is
+ * split into segments that each evict their least recently used entries to stay under their share of the max bytes,
+ * so there are only as many segments as leave room for an entry of the max entry size in each.
+ *
+ * @see ResponseCacheConfig
+ */
+@ThreadSafe
+public final class ResponseCache {
+
+    static final String TTL_ATTRIBUTE = ResponseCache.class.getName() + ".ttlMillis";
+
+    /**
+     * Most segments to split the cache into
+     */
+    private static final int MAX_CONCURRENCY_LEVEL = 16;
+
+    private final Cache<String, Entry> entries;
+
+    private final AtomicLong bytes = new AtomicLong();
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+    private final AtomicLong stores = new AtomicLong();
+    private final AtomicLong evictions = new AtomicLong();
+
+    /**
+     * @param maxBytes      max total bytes of cached bodies
+     * @param maxEntryBytes max bytes of one cached body
+     */
+    ResponseCache(long maxBytes, int maxEntryBytes) {
+        this.entries = CacheBuilder.newBuilder()
+            .concurrencyLevel(getConcurrencyLevel(maxBytes, maxEntryBytes))
+            .maximumWeight(maxBytes)
+            .weigher(new Weigher<String, Entry>() {
+                @Override
+                public int weigh(String key, Entry entry) {
+                    return entry.getSize();
+                }
+            })
+            .removalListener(new RemovalListener<String, Entry>() {
+                @Override
+                public void onRemoval(RemovalNotification<String, Entry> notification) {
+                    bytes.addAndGet(-notification.getValue().getSize());
+                    if (notification.getCause() == RemovalCause.SIZE) {
+                        evictions.incrementAndGet();
+                    }
+                }
+            })
+            .build();
+    }
+
+    /**
+     * Mark the response to the current request as cacheable for the given time, regardless of its Cache-Control
+     * header. Call this from a servlet before the response is complete.
+     *
+     * @param request   the request being handled
+     * @param ttlMillis how long to cache the response for, or 0 to not cache it
+     */
+    public static void setTtlMillis(@Nonnull ServletRequest request, long ttlMillis) {
+        checkArgument(ttlMillis >= 0, "TTL must not be negative");
+        request.setAttribute(TTL_ATTRIBUTE, ttlMillis);
+    }
+
+    /**
+     * @return the most segments, up to the max, that each have room for an entry of the max size. Guava rounds the
+     * level up to a power of two, so this is one already.
+     */
+    private static int getConcurrencyLevel(long maxBytes, int maxEntryBytes) {
+        long entriesThatFit = Math.max(1, Math.min(MAX_CONCURRENCY_LEVEL, maxBytes / maxEntryBytes));
+        return Integer.highestOneBit((int) entriesThatFit);
+    }
+
+    @CheckForNull
+    Entry get(String key) {
+        Entry entry = entries.getIfPresent(key);
+        if (entry != null && entry.isExpired()) {
+            // only if it hasn't already been replaced with a fresh one
+            entries.asMap().remove(key, entry);
+            return null;
+        }
+        return entry;
+    }
+
+    void put(String key, Entry entry) {
+        // counted before it is added, since adding it may evict it again straight away
+        bytes.addAndGet(entry.getSize());
+        entries.put(key, entry);
+        stores.incrementAndGet();
+    }
+
+    void countHit() {
+        hits.incrementAndGet();
+    }
+
+    void countMiss() {
+        misses.incrementAndGet();
+    }
+
+    /**
+     * Remove all entries.
+     */
+    public void clear() {
+        entries.invalidateAll();
+    }
+
+    public long getHits() {
+        return hits.get();
+    }
+
+    public long getMisses() {
+        return misses.get();
+    }
+
+    /**
+     * @return hits / (hits + misses), or 0 if there have been no lookups
+     */
+    public double getHitRate() {
+        long h = hits.get();
+        long total = h + misses.get();
+        return total == 0 ? 0 : (double) h / total;
+    }
+
+    /**
+     * @return number of responses added to the cache
+     */
+    public long getStores() {
+        return stores.get();
+    }
+
+    /**
+     * @return number of entries evicted to make room for others
+     */
+    public long getEvictions() {
+        return evictions.get();
+    }
+
+    /**
+     * @return bytes of cached bodies, including entries that have expired but not yet been removed
+     */
+    public long getBytes() {
+        return bytes.get();
+    }
+
+    public int getEntryCount() {
+        return (int) entries.size();
+    }
+
+    /**
+     * A cached response.
+     */
+    static final class Entry {
+        private final int status;
+        private final String[] headerNames;
+        private final String[] headerValues;
+        /**
+         * Direct buffer, never modified; use duplicates to read it
+         */
+        private final ByteBuffer body;
+        private final long expiresAtNanos;
+
+        Entry(int status, String[] headerNames, String[] headerValues, byte[] body, long ttlMillis) {
+            this.status = status;
+            this.headerNames = headerNames;
+            this.headerValues = headerValues;
+            ByteBuffer buffer = ByteBuffer.allocateDirect(body.length);
+            buffer.put(body).flip();
+            this.body = buffer.asReadOnlyBuffer();
+            this.expiresAtNanos = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(ttlMillis);
+        }
+
+        int getStatus() {
+            return status;
+        }
+
+        String[] getHeaderNames() {
+            return headerNames;
+        }
+
+        String[] getHeaderValues() {
+            return headerValues;
+        }
+
+        ByteBuffer getBody() {
+            return body.duplicate();
+        }
+
+        int getSize() {
+            return body.capacity();
+        }
+
+        boolean isExpired() {
+            return System.nanoTime() - expiresAtNanos >= 0;
+        }
+    }
+}
@@ -0,0 +1,93 @@
+package com.palominolabs.http.server;
+
+import java.util.Arrays;
+import java.util.List;
+import javax.annotation.Nonnull;
+import javax.annotation.concurrent.NotThreadSafe;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkNotNull;
+
+/**
+ * Config for a short-lived cache of GET responses from servlets.
+ *
+ * Caching is opt-in per response: a 200 response is cached if the servlet sets a TTL with {@link
+ * ResponseCache#setTtlMillis} or sends a Cache-Control header with max-age (and without no-store, no-cache or private).
+ * Responses that set cookies, responses that vary on a header that isn't one of {@link
+ * ResponseCacheConfig#getKeyHeaders()} (including Vary: *) and responses to requests with an Authorization header are
+ * never cached. Cache hits are written straight from the cache without invoking the servlet filter chain.
+ *
+ * Entries are keyed on the host name, request URI, query string and the values of {@link
+ * ResponseCacheConfig#getKeyHeaders()}.
+ * Bodies are held in direct buffers, and roughly the least recently used entries are evicted to stay under {@link
+ * ResponseCacheConfig#getMaxBytes()}.
+ */
+@NotThreadSafe
+public final class ResponseCacheConfig {
+
+    private final long maxBytes;
+
+    private int maxEntryBytes = 1024 * 1024;
+
+    @Nonnull
+    private List<String> keyHeaders = Arrays.asList("Accept", "Accept-Encoding");
+
+    /**
+     * @param maxBytes max total bytes of cached bodies
+     */
+    public ResponseCacheConfig(long maxBytes) {
+        checkArgument(maxBytes > 0, "Max bytes must be positive");
+        this.maxBytes = maxBytes;
+    }
+
+    public long getMaxBytes() {
+        return maxBytes;
+    }
+
+    public int getMaxEntryBytes() {
+        return maxEntryBytes;
+    }
+
+    /**
+     * @param maxEntryBytes responses with bigger bodies are not cached. Default is 1M.
+     */
+    public void setMaxEntryBytes(int maxEntryBytes) {
+        checkArgument(maxEntryBytes > 0, "Max entry bytes must be positive");
+        this.maxEntryBytes = maxEntryBytes;
+    }
+
+    @Nonnull
+    public List<String> getKeyHeaders() {
+        return keyHeaders;
+    }
+
+    /**
+     * @param keyHeaders request headers whose values are part of the cache key. Default is Accept and
+     *                   Accept-Encoding.
+     */
+    public void setKeyHeaders(@Nonnull List<String> keyHeaders) {
+        this.keyHeaders = checkNotNull(keyHeaders);
+    }
+
+    /**
+     * @param maxEntryBytes max entry bytes
+     * @return this
+     * @see ResponseCacheConfig#setMaxEntryBytes(int)
+     */
+    @Nonnull
+    public ResponseCacheConfig withMaxEntryBytes(int maxEntryBytes) {
+        setMaxEntryBytes(maxEntryBytes);
+        return this;
+    }
+
+    /**
+     * @param keyHeaders key headers
+     * @return this
+     * @see ResponseCacheConfig#setKeyHeaders(List)
+     */
+    @Nonnull
+    public ResponseCacheConfig withKeyHeaders(@Nonnull List<String> keyHeaders) {
+        setKeyHeaders(keyHeaders);
+        return this;
+    }
+}
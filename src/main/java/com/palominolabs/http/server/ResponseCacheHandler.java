@@ -0,0 +1,192 @@
+package com.palominolabs.http.server;
+
+import com.google.common.collect.ImmutableSet;
+import com.google.common.collect.Lists;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.util.List;
+import java.util.Locale;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import javax.servlet.DispatcherType;
+import javax.servlet.ServletException;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import org.eclipse.jetty.server.HttpOutput;
+import org.eclipse.jetty.server.Request;
+import org.eclipse.jetty.server.handler.HandlerWrapper;
+
+/**
+ * Serves GET requests from a {@link ResponseCache}, and adds cacheable responses from the wrapped handler to it.
+ */
+final class ResponseCacheHandler extends HandlerWrapper {
+
+    /**
+     * Headers that are per-connection or regenerated for each response
+     */
+    private static final Set<String> UNCACHED_HEADERS =
+        ImmutableSet.of("date", "content-length", "transfer-encoding", "connection", "server", "set-cookie");
+
+    private final ResponseCache cache;
+    private final int maxEntryBytes;
+    private final List<String> keyHeaders;
+    /**
+     * Lower case, to check Vary against
+     */
+    private final Set<String> lowerCaseKeyHeaders;
+
+    ResponseCacheHandler(ResponseCache cache, ResponseCacheConfig config) {
+        this.cache = cache;
+        this.maxEntryBytes = config.getMaxEntryBytes();
+        this.keyHeaders = Lists.newArrayList(config.getKeyHeaders());
+        ImmutableSet.Builder<String> lowerCase = ImmutableSet.builder();
+        for (String header : keyHeaders) {
+            lowerCase.add(header.toLowerCase(Locale.US));
+        }
+        this.lowerCaseKeyHeaders = lowerCase.build();
+    }
+
+    @Override
+    public void handle(String target, Request baseRequest, HttpServletRequest request, HttpServletResponse response)
+        throws IOException, ServletException {
+        // an earlier handler in the collection may already have served the request
+        // responses to authenticated requests may be specific to the caller
+        if (baseRequest.isHandled() || baseRequest.getDispatcherType() != DispatcherType.REQUEST
+            || !"GET".equals(request.getMethod()) || request.getHeader("Authorization") != null) {
+            super.handle(target, baseRequest, request, response);
+            return;
+        }
+
+        String key = buildKey(request);
+        ResponseCache.Entry entry = cache.get(key);
+        if (entry != null) {
+            cache.countHit();
+            baseRequest.setHandled(true);
+            writeEntry(entry, response);
+            return;
+        }
+        cache.countMiss();
+
+        CapturingResponse capturingResponse = new CapturingResponse(response, maxEntryBytes);
+        super.handle(target, baseRequest, request, capturingResponse);
+        capturingResponse.finish();
+
+        if (!baseRequest.isHandled() || request.isAsyncStarted() || capturingResponse.isOverflowed()
+            || response.getStatus() != HttpServletResponse.SC_OK || response.containsHeader("Set-Cookie")
+            || !isVaryCovered(response)) {
+            return;
+        }
+
+        long ttlMillis = getTtlMillis(request, response);
+        if (ttlMillis <= 0) {
+            return;
+        }
+
+        List<String> headerNames = Lists.newArrayList();
+        List<String> headerValues = Lists.newArrayList();
+        for (String name : response.getHeaderNames()) {
+            if (UNCACHED_HEADERS.contains(name.toLowerCase(Locale.US))) {
+                continue;
+            }
+            for (String value : response.getHeaders(name)) {
+                headerNames.add(name);
+                headerValues.add(value);
+            }
+        }
+
+        cache.put(key, new ResponseCache.Entry(response.getStatus(),
+            headerNames.toArray(new String[headerNames.size()]), headerValues.toArray(new String[headerValues.size()]),
+            capturingResponse.getCapturedBody(), ttlMillis));
+    }
+
+    private String buildKey(HttpServletRequest request) {
+        // the host, so that virtual hosts don't share entries
+        StringBuilder key = new StringBuilder(request.getServerName()).append('\0').append(request.getRequestURI());
+        if (request.getQueryString() != null) {
+            key.append('?').append(request.getQueryString());
+        }
+        for (String header : keyHeaders) {
+            String value = request.getHeader(header);
+            // NUL can't appear in a header or URI, so it can't make two different requests look alike
+            key.append('\0');
+            if (value != null) {
+                key.append(value);
+            }
+        }
+        return key.toString();
+    }
+
+    /**
+     * @return true if every header the response varies on is part of the key, so that a cached copy is only served to
+     * requests it applies to
+     */
+    private boolean isVaryCovered(HttpServletResponse response) {
+        for (String header : response.getHeaders("Vary")) {
+            for (String name : header.split(",")) {
+                String lowerCaseName = name.trim().toLowerCase(Locale.US);
+                if (!lowerCaseName.isEmpty() && !lowerCaseKeyHeaders.contains(lowerCaseName)) {
+                    return false;
+                }
+            }
+        }
+        return true;
+    }
+
+    private static void writeEntry(ResponseCache.Entry entry, HttpServletResponse response) throws IOException {
+        response.setStatus(entry.getStatus());
+        String[] names = entry.getHeaderNames();
+        String[] values = entry.getHeaderValues();
+        for (int i = 0; i < names.length; i++) {
+            response.addHeader(names[i], values[i]);
+        }
+
+        ByteBuffer body = entry.getBody();
+        response.setContentLength(body.remaining());
+        OutputStream out = response.getOutputStream();
+        if (out instanceof HttpOutput) {
+            // written straight from the direct buffer without copying to the heap
+            ((HttpOutput) out).write(body);
+        } else {
+            byte[] bytes = new byte[body.remaining()];
+            body.get(bytes);
+            out.write(bytes);
+        }
+    }
+
+    /**
+     * @return the TTL set with {@link ResponseCache#setTtlMillis}, else from Cache-Control, else 0
+     */
+    private static long getTtlMillis(HttpServletRequest request, HttpServletResponse response) {
+        Object ttl = request.getAttribute(ResponseCache.TTL_ATTRIBUTE);
+        if (ttl instanceof Long) {
+            return (Long) ttl;
+        }
+
+        long maxAge = -1;
+        long sharedMaxAge = -1;
+        for (String header : response.getHeaders("Cache-Control")) {
+            for (String directive : header.split(",")) {
+                String d = directive.trim().toLowerCase(Locale.US);
+                if (d.equals("no-store") || d.equals("no-cache") || d.equals("private")) {
+                    return 0;
+                } else if (d.startsWith("max-age=")) {
+                    maxAge = parseSeconds(d.substring("max-age=".length()));
+                } else if (d.startsWith("s-maxage=")) {
+                    sharedMaxAge = parseSeconds(d.substring("s-maxage=".length()));
+                }
+            }
+        }
+
+        long seconds = sharedMaxAge != -1 ? sharedMaxAge : maxAge;
+        return seconds <= 0 ? 0 : TimeUnit.SECONDS.toMillis(seconds);
+    }
+
+    private static long parseSeconds(String value) {
+        try {
+            return Long.parseLong(value.trim());
+        } catch (NumberFormatException e) {
+            return -1;
+        }
+    }
+}
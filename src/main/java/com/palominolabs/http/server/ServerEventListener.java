@@ -0,0 +1,37 @@
+package com.palominolabs.http.server;
+
+import javax.annotation.Nonnull;
+
+/**
+ * Receives the events enabled in {@link ServerEventsConfig}. Override the methods for the events you want; the
+ * defaults do nothing.
+ *
+ * Methods are called on Jetty's threads, often while a request or connection is being processed, so they should be
+ * quick and must not block.
+ */
+public abstract class ServerEventListener {
+
+    /**
+     * @param event a request that took at least the configured threshold
+     */
+    public void onRequest(@Nonnull RequestEvent event) {
+    }
+
+    /**
+     * @param event a closed connection that was open at least the configured threshold
+     */
+    public void onConnection(@Nonnull ConnectionEvent event) {
+    }
+
+    /**
+     * @param event a completed or failed TLS handshake
+     */
+    public void onTlsHandshake(@Nonnull TlsHandshakeEvent event) {
+    }
+
+    /**
+     * @param event the thread pool queue reached the configured threshold, or the pool rejected a job
+     */
+    public void onThreadPool(@Nonnull ThreadPoolEvent event) {
+    }
+}
@@ -0,0 +1,138 @@
+package com.palominolabs.http.server;
+
+import javax.annotation.Nonnull;
+import javax.annotation.concurrent.NotThreadSafe;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkNotNull;
+
+/**
+ * Config for reporting requests, connections, TLS handshakes and thread pool saturation to a {@link
+ * ServerEventListener}, e.g. to record them as Flight Recorder events alongside GC and lock profiles.
+ *
+ * Every event type is off by default. Request and connection events cover the whole request or connection and are
+ * only reported once it has lasted at least the configured threshold. Event types that are off add no handlers or
+ * listeners, so they cost nothing.
+ */
+@NotThreadSafe
+public final class ServerEventsConfig {
+
+    @Nonnull
+    private final ServerEventListener listener;
+
+    private long requestThresholdMillis = -1;
+
+    private long connectionThresholdMillis = -1;
+
+    private boolean tlsHandshakeEvents = false;
+
+    private int threadPoolQueueThreshold = -1;
+
+    /**
+     * @param listener the listener to report events to. It is called on Jetty's threads, so it must be thread safe and
+     *                 must not block.
+     */
+    public ServerEventsConfig(@Nonnull ServerEventListener listener) {
+        this.listener = checkNotNull(listener);
+    }
+
+    @Nonnull
+    public ServerEventListener getListener() {
+        return listener;
+    }
+
+    public long getRequestThresholdMillis() {
+        return requestThresholdMillis;
+    }
+
+    /**
+     * @param requestThresholdMillis report requests that take at least this long, or -1 to not report requests.
+     *                               Default is -1.
+     */
+    public void setRequestThresholdMillis(long requestThresholdMillis) {
+        checkArgument(requestThresholdMillis >= -1, "Request threshold must be -1 or non-negative");
+        this.requestThresholdMillis = requestThresholdMillis;
+    }
+
+    public long getConnectionThresholdMillis() {
+        return connectionThresholdMillis;
+    }
+
+    /**
+     * @param connectionThresholdMillis report connections that stay open at least this long, or -1 to not report
+     *                                  connections. Default is -1.
+     */
+    public void setConnectionThresholdMillis(long connectionThresholdMillis) {
+        checkArgument(connectionThresholdMillis >= -1, "Connection threshold must be -1 or non-negative");
+        this.connectionThresholdMillis = connectionThresholdMillis;
+    }
+
+    public boolean isTlsHandshakeEvents() {
+        return tlsHandshakeEvents;
+    }
+
+    /**
+     * @param tlsHandshakeEvents true to report successful and failed TLS handshakes. Default is false.
+     */
+    public void setTlsHandshakeEvents(boolean tlsHandshakeEvents) {
+        this.tlsHandshakeEvents = tlsHandshakeEvents;
+    }
+
+    public int getThreadPoolQueueThreshold() {
+        return threadPoolQueueThreshold;
+    }
+
+    /**
+     * @param threadPoolQueueThreshold report when this many jobs are queued waiting for a thread, and report jobs the
+     *                                 pool rejects. -1 reports neither. Default is -1.
+     */
+    public void setThreadPoolQueueThreshold(int threadPoolQueueThreshold) {
+        checkArgument(threadPoolQueueThreshold == -1 || threadPoolQueueThreshold > 0,
+            "Queue threshold must be -1 or positive");
+        this.threadPoolQueueThreshold = threadPoolQueueThreshold;
+    }
+
+    /**
+     * @param requestThresholdMillis request threshold
+     * @return this
+     * @see ServerEventsConfig#setRequestThresholdMillis(long)
+     */
+    @Nonnull
+    public ServerEventsConfig withRequestThresholdMillis(long requestThresholdMillis) {
+        setRequestThresholdMillis(requestThresholdMillis);
+        return this;
+    }
+
+    /**
+     * @param connectionThresholdMillis connection threshold
+     * @return this
+     * @see ServerEventsConfig#setConnectionThresholdMillis(long)
+     */
+    @Nonnull
+    public ServerEventsConfig withConnectionThresholdMillis(long connectionThresholdMillis) {
+        setConnectionThresholdMillis(connectionThresholdMillis);
+        return this;
+    }
+
+    /**
+     * @param tlsHandshakeEvents tls handshake events
+     * @return this
+     * @see ServerEventsConfig#setTlsHandshakeEvents(boolean)
+     */
+    @Nonnull
+    public ServerEventsConfig withTlsHandshakeEvents(boolean tlsHandshakeEvents) {
+        setTlsHandshakeEvents(tlsHandshakeEvents);
+        return this;
+    }
+
+    /**
+     * @param threadPoolQueueThreshold thread pool queue threshold
+     * @return this
+     * @see ServerEventsConfig#setThreadPoolQueueThreshold(int)
+     */
+    @Nonnull
+    public ServerEventsConfig withThreadPoolQueueThreshold(int threadPoolQueueThreshold) {
+        setThreadPoolQueueThreshold(threadPoolQueueThreshold);
+        return this;
+    }
+}
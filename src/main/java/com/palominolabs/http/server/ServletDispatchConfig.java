@@ -0,0 +1,133 @@
+package com.palominolabs.http.server;
+
+import com.google.common.collect.Lists;
+import com.google.inject.Provider;
+import java.util.List;
+import java.util.regex.Pattern;
+import javax.annotation.Nonnull;
+import javax.annotation.concurrent.NotThreadSafe;
+import javax.servlet.http.HttpServlet;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkNotNull;
+
+/**
+ * Servlets dispatched by the wrapper from an index built at startup, instead of by Guice servlet.
+ *
+ * GuiceFilter checks each {@code serve()} pattern in turn for every request, so dispatch slows down as bindings are
+ * added. Servlets added here are compiled into hash tables keyed by exact path, path prefix and extension, so finding
+ * one takes a lookup per path segment however many there are. Regex mappings are only tried, in the order they were
+ * added, when no other mapping matches.
+ *
+ * Matching follows the servlet spec rather than Guice's first-match order: an exact mapping, then the longest prefix
+ * mapping, then an extension mapping, then the regex mappings. Servlets run inside GuiceFilter, after the filters
+ * and any servlets bound with a ServletModule, so request scoping and injected requests work as they do for Guice
+ * servlets. Requests that no mapping matches continue to the resource handlers as before.
+ *
+ * Servlets are initialized when the server starts and destroyed when it stops. As with Guice servlet, they must be
+ * singletons; a provider is called once.
+ */
+@NotThreadSafe
+public final class ServletDispatchConfig {
+
+    private final List<ServletMapping> mappings = Lists.newArrayList();
+
+    @Nonnull
+    List<ServletMapping> getMappings() {
+        return mappings;
+    }
+
+    /**
+     * @param pattern an exact path like {@code /foo}, a prefix like {@code /foo/*} (which also matches {@code /foo}),
+     *                {@code /*} for every path, or an extension like {@code *.json}
+     * @param servlet the servlet to serve matching requests
+     */
+    public void addServlet(@Nonnull String pattern, @Nonnull HttpServlet servlet) {
+        add(ServletMapping.forPattern(pattern, checkNotNull(servlet), null));
+    }
+
+    /**
+     * If you want Guice to construct the servlet, {@link BinderProviderCapture} makes it easy to get a provider.
+     *
+     * @param pattern         see {@link ServletDispatchConfig#addServlet(String, HttpServlet)}
+     * @param servletProvider provides the servlet to serve matching requests when the server starts
+     */
+    public void addServletProvider(@Nonnull String pattern, @Nonnull Provider<? extends HttpServlet> servletProvider) {
+        add(ServletMapping.forPattern(pattern, null, checkNotNull(servletProvider)));
+    }
+
+    /**
+     * @param regex   a regex that must match the whole path
+     * @param servlet the servlet to serve matching requests
+     */
+    public void addRegexServlet(@Nonnull String regex, @Nonnull HttpServlet servlet) {
+        add(ServletMapping.forRegex(Pattern.compile(regex), checkNotNull(servlet), null));
+    }
+
+    /**
+     * @param regex           a regex that must match the whole path
+     * @param servletProvider provides the servlet to serve matching requests when the server starts
+     */
+    public void addRegexServletProvider(@Nonnull String regex,
+        @Nonnull Provider<? extends HttpServlet> servletProvider) {
+        add(ServletMapping.forRegex(Pattern.compile(regex), null, checkNotNull(servletProvider)));
+    }
+
+    private void add(ServletMapping mapping) {
+        for (ServletMapping existing : mappings) {
+            checkArgument(!existing.getPattern().equals(mapping.getPattern()), "Pattern %s is already mapped",
+                mapping.getPattern());
+        }
+        mappings.add(mapping);
+    }
+
+    /**
+     * @param pattern pattern
+     * @param servlet servlet
+     * @return this
+     * @see ServletDispatchConfig#addServlet(String, HttpServlet)
+     */
+    @Nonnull
+    public ServletDispatchConfig withServlet(@Nonnull String pattern, @Nonnull HttpServlet servlet) {
+        addServlet(pattern, servlet);
+        return this;
+    }
+
+    /**
+     * @param pattern         pattern
+     * @param servletProvider servlet provider
+     * @return this
+     * @see ServletDispatchConfig#addServletProvider(String, Provider)
+     */
+    @Nonnull
+    public ServletDispatchConfig withServletProvider(@Nonnull String pattern,
+        @Nonnull Provider<? extends HttpServlet> servletProvider) {
+        addServletProvider(pattern, servletProvider);
+        return this;
+    }
+
+    /**
+     * @param regex   regex
+     * @param servlet servlet
+     * @return this
+     * @see ServletDispatchConfig#addRegexServlet(String, HttpServlet)
+     */
+    @Nonnull
+    public ServletDispatchConfig withRegexServlet(@Nonnull String regex, @Nonnull HttpServlet servlet) {
+        addRegexServlet(regex, servlet);
+        return this;
+    }
+
+    /**
+     * @param regex           regex
+     * @param servletProvider servlet provider
+     * @return this
+     * @see ServletDispatchConfig#addRegexServletProvider(String, Provider)
+     */
+    @Nonnull
+    public ServletDispatchConfig withRegexServletProvider(@Nonnull String regex,
+        @Nonnull Provider<? extends HttpServlet> servletProvider) {
+        addRegexServletProvider(regex, servletProvider);
+        return this;
+    }
+}
@@ -0,0 +1,182 @@
+package com.palominolabs.http.server;
+
+import com.google.common.collect.Lists;
+import java.io.IOException;
+import java.util.Collections;
+import java.util.Enumeration;
+import java.util.List;
+import javax.servlet.DispatcherType;
+import javax.servlet.Filter;
+import javax.servlet.FilterChain;
+import javax.servlet.FilterConfig;
+import javax.servlet.RequestDispatcher;
+import javax.servlet.ServletConfig;
+import javax.servlet.ServletContext;
+import javax.servlet.ServletException;
+import javax.servlet.ServletRequest;
+import javax.servlet.ServletResponse;
+import javax.servlet.http.HttpServlet;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletRequestWrapper;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Serves the servlets of a {@link ServletDispatchConfig}. Installed after GuiceFilter, so it runs inside Guice's
+ * request scope, once the request has passed through the Guice filters and wasn't served by a Guice servlet.
+ */
+final class ServletDispatchFilter implements Filter {
+
+    private static final Logger logger = LoggerFactory.getLogger(ServletDispatchFilter.class);
+
+    private final List<ServletMapping> mappings;
+
+    /**
+     * Set in init()
+     */
+    private volatile ServletDispatchIndex index;
+
+    /**
+     * Initialized servlets, to destroy
+     */
+    private final List<HttpServlet> servlets = Lists.newArrayList();
+
+    ServletDispatchFilter(ServletDispatchConfig config) {
+        this.mappings = Lists.newArrayList(config.getMappings());
+    }
+
+    @Override
+    public synchronized void init(FilterConfig filterConfig) throws ServletException {
+        ServletContext servletContext = filterConfig.getServletContext();
+        List<HttpServlet> mappedServlets = Lists.newArrayList();
+        try {
+            for (ServletMapping mapping : mappings) {
+                HttpServlet servlet = mapping.resolve();
+                // the same servlet may serve several patterns, but is only initialized once
+                if (!containsInstance(servlets, servlet)) {
+                    servlet.init(new MappedServletConfig(servlet, servletContext));
+                    servlets.add(servlet);
+                }
+                mappedServlets.add(servlet);
+            }
+        } catch (ServletException | RuntimeException e) {
+            destroy();
+            throw e;
+        }
+        index = new ServletDispatchIndex(mappings, mappedServlets);
+    }
+
+    @Override
+    public void doFilter(ServletRequest request, ServletResponse response, FilterChain chain)
+        throws IOException, ServletException {
+        HttpServletRequest httpRequest = (HttpServletRequest) request;
+        String path = getPath(httpRequest);
+        ServletDispatchIndex.Entry entry = index.find(path);
+        if (entry == null) {
+            chain.doFilter(request, response);
+            return;
+        }
+
+        entry.getServlet().service(
+            new MappedRequest(httpRequest, entry.getServletPath(path), entry.getPathInfo(path)), response);
+    }
+
+    @Override
+    public synchronized void destroy() {
+        for (HttpServlet servlet : Lists.reverse(servlets)) {
+            try {
+                servlet.destroy();
+            } catch (RuntimeException e) {
+                logger.warn("Could not destroy servlet " + servlet.getClass().getName(), e);
+            }
+        }
+        servlets.clear();
+    }
+
+    /**
+     * @return the path the request is for, relative to the context, as decoded and normalized by jetty
+     */
+    private static String getPath(HttpServletRequest request) {
+        String servletPath;
+        String pathInfo;
+        if (request.getDispatcherType() == DispatcherType.INCLUDE) {
+            servletPath = (String) request.getAttribute(RequestDispatcher.INCLUDE_SERVLET_PATH);
+            pathInfo = (String) request.getAttribute(RequestDispatcher.INCLUDE_PATH_INFO);
+        } else {
+            servletPath = request.getServletPath();
+            pathInfo = request.getPathInfo();
+        }
+        if (pathInfo == null) {
+            return servletPath == null || servletPath.isEmpty() ? "/" : servletPath;
+        }
+        return servletPath == null ? pathInfo : servletPath + pathInfo;
+    }
+
+    private static boolean containsInstance(List<HttpServlet> servlets, HttpServlet servlet) {
+        for (HttpServlet existing : servlets) {
+            if (existing == servlet) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Reports the servlet path and path info of the mapping that matched
+     */
+    private static final class MappedRequest extends HttpServletRequestWrapper {
+        private final String servletPath;
+        private final String pathInfo;
+
+        MappedRequest(HttpServletRequest request, String servletPath, String pathInfo) {
+            super(request);
+            this.servletPath = servletPath;
+            this.pathInfo = pathInfo;
+        }
+
+        @Override
+        public String getServletPath() {
+            return servletPath;
+        }
+
+        @Override
+        public String getPathInfo() {
+            return pathInfo;
+        }
+
+        @Override
+        public String getPathTranslated() {
+            return pathInfo == null ? null : getServletContext().getRealPath(pathInfo);
+        }
+    }
+
+    private static final class MappedServletConfig implements ServletConfig {
+        private final HttpServlet servlet;
+        private final ServletContext servletContext;
+
+        MappedServletConfig(HttpServlet servlet, ServletContext servletContext) {
+            this.servlet = servlet;
+            this.servletContext = servletContext;
+        }
+
+        @Override
+        public String getServletName() {
+            return servlet.getClass().getName();
+        }
+
+        @Override
+        public ServletContext getServletContext() {
+            return servletContext;
+        }
+
+        @Override
+        public String getInitParameter(String name) {
+            return null;
+        }
+
+        @Override
+        public Enumeration<String> getInitParameterNames() {
+            return Collections.emptyEnumeration();
+        }
+    }
+}
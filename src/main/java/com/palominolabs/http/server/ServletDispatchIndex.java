@@ -0,0 +1,128 @@
+package com.palominolabs.http.server;
+
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+import java.util.List;
+import java.util.Map;
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import javax.annotation.concurrent.Immutable;
+import javax.servlet.http.HttpServlet;
+
+/**
+ * Finds the servlet for a path among the mappings of a {@link ServletDispatchConfig}. Exact, prefix and extension
+ * mappings are looked up in hash maps; prefixes are tried from the whole path down to the root, one path segment at
+ * a time. Regex mappings are only tried when none of those match.
+ */
+@Immutable
+final class ServletDispatchIndex {
+
+    private final Map<String, Entry> exact = Maps.newHashMap();
+    private final Map<String, Entry> prefixes = Maps.newHashMap();
+    private final Map<String, Entry> extensions = Maps.newHashMap();
+    private final List<Entry> regexes = Lists.newArrayList();
+
+    /**
+     * @param mappings mappings in the order they were added
+     * @param servlets the servlet for each mapping
+     */
+    ServletDispatchIndex(@Nonnull List<ServletMapping> mappings, @Nonnull List<HttpServlet> servlets) {
+        for (int i = 0; i < mappings.size(); i++) {
+            ServletMapping mapping = mappings.get(i);
+            Entry entry = new Entry(mapping, servlets.get(i));
+            switch (mapping.getKind()) {
+                case EXACT:
+                    exact.put(mapping.getKey(), entry);
+                    break;
+                case PREFIX:
+                    prefixes.put(mapping.getKey(), entry);
+                    break;
+                case EXTENSION:
+                    extensions.put(mapping.getKey(), entry);
+                    break;
+                default:
+                    regexes.add(entry);
+            }
+        }
+    }
+
+    /**
+     * @param path context relative path, starting with /
+     * @return the matching mapping, or null if there isn't one
+     */
+    @Nullable
+    Entry find(@Nonnull String path) {
+        Entry entry = exact.get(path);
+        if (entry != null) {
+            return entry;
+        }
+
+        if (!prefixes.isEmpty()) {
+            // "/a/b" is checked against prefixes "/a/b", "/a" and ""
+            entry = prefixes.get(path);
+            for (int end = path.lastIndexOf('/'); entry == null && end >= 0; end = path.lastIndexOf('/', end - 1)) {
+                entry = prefixes.get(path.substring(0, end));
+            }
+            if (entry != null) {
+                return entry;
+            }
+        }
+
+        if (!extensions.isEmpty()) {
+            int dot = path.lastIndexOf('.');
+            if (dot > path.lastIndexOf('/')) {
+                entry = extensions.get(path.substring(dot + 1));
+                if (entry != null) {
+                    return entry;
+                }
+            }
+        }
+
+        for (Entry regexEntry : regexes) {
+            if (regexEntry.mapping.getRegex().matcher(path).matches()) {
+                return regexEntry;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * A mapping and its servlet
+     */
+    @Immutable
+    static final class Entry {
+        private final ServletMapping mapping;
+        private final HttpServlet servlet;
+
+        private Entry(ServletMapping mapping, HttpServlet servlet) {
+            this.mapping = mapping;
+            this.servlet = servlet;
+        }
+
+        @Nonnull
+        HttpServlet getServlet() {
+            return servlet;
+        }
+
+        /**
+         * @param path a path this entry matches
+         * @return the servlet path for the request, as the servlet spec defines it for this kind of mapping
+         */
+        @Nonnull
+        String getServletPath(@Nonnull String path) {
+            return mapping.getKind() == ServletMapping.Kind.PREFIX ? mapping.getKey() : path;
+        }
+
+        /**
+         * @param path a path this entry matches
+         * @return the rest of the path after the servlet path, or null if there isn't any
+         */
+        @Nullable
+        String getPathInfo(@Nonnull String path) {
+            if (mapping.getKind() != ServletMapping.Kind.PREFIX || path.length() == mapping.getKey().length()) {
+                return null;
+            }
+            return path.substring(mapping.getKey().length());
+        }
+    }
+}
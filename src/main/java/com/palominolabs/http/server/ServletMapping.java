@@ -0,0 +1,116 @@
+package com.palominolabs.http.server;
+
+import com.google.inject.Provider;
+import java.util.regex.Pattern;
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import javax.annotation.concurrent.Immutable;
+import javax.servlet.http.HttpServlet;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkNotNull;
+
+/**
+ * A servlet added to a {@link ServletDispatchConfig} and the paths it serves
+ */
+@Immutable
+final class ServletMapping {
+
+    enum Kind {
+        EXACT,
+        PREFIX,
+        EXTENSION,
+        REGEX
+    }
+
+    private final Kind kind;
+    /**
+     * As configured
+     */
+    private final String pattern;
+    /**
+     * The path for exact mappings, the path without "/*" for prefix mappings (empty for "/*"), or the extension
+     * without "*." for extension mappings
+     */
+    @Nullable
+    private final String key;
+    @Nullable
+    private final Pattern regex;
+    /**
+     * Null iff servletProvider is non-null.
+     */
+    @Nullable
+    private final HttpServlet servlet;
+    /**
+     * Null iff servlet is non-null.
+     */
+    @Nullable
+    private final Provider<? extends HttpServlet> servletProvider;
+
+    private ServletMapping(Kind kind, String pattern, @Nullable String key, @Nullable Pattern regex,
+        @Nullable HttpServlet servlet, @Nullable Provider<? extends HttpServlet> servletProvider) {
+        this.kind = kind;
+        this.pattern = pattern;
+        this.key = key;
+        this.regex = regex;
+        this.servlet = servlet;
+        this.servletProvider = servletProvider;
+    }
+
+    static ServletMapping forPattern(@Nonnull String pattern, @Nullable HttpServlet servlet,
+        @Nullable Provider<? extends HttpServlet> servletProvider) {
+        checkNotNull(pattern);
+        if (pattern.startsWith("*.")) {
+            String extension = pattern.substring(2);
+            checkArgument(!extension.isEmpty() && extension.indexOf('/') == -1 && extension.indexOf('*') == -1,
+                "Invalid extension pattern %s", pattern);
+            return new ServletMapping(Kind.EXTENSION, pattern, extension, null, servlet, servletProvider);
+        }
+
+        checkArgument(pattern.startsWith("/"), "Pattern %s must start with / or *.", pattern);
+        if (pattern.endsWith("/*")) {
+            String prefix = pattern.substring(0, pattern.length() - 2);
+            checkArgument(prefix.indexOf('*') == -1, "Invalid prefix pattern %s", pattern);
+            return new ServletMapping(Kind.PREFIX, pattern, prefix, null, servlet, servletProvider);
+        }
+        checkArgument(pattern.indexOf('*') == -1, "Wildcards are only allowed in /prefix/* and *.extension patterns");
+        return new ServletMapping(Kind.EXACT, pattern, pattern, null, servlet, servletProvider);
+    }
+
+    static ServletMapping forRegex(@Nonnull Pattern regex, @Nullable HttpServlet servlet,
+        @Nullable Provider<? extends HttpServlet> servletProvider) {
+        return new ServletMapping(Kind.REGEX, regex.pattern(), null, regex, servlet, servletProvider);
+    }
+
+    @Nonnull
+    Kind getKind() {
+        return kind;
+    }
+
+    @Nonnull
+    String getPattern() {
+        return pattern;
+    }
+
+    @Nullable
+    String getKey() {
+        return key;
+    }
+
+    @Nullable
+    Pattern getRegex() {
+        return regex;
+    }
+
+    /**
+     * @return the servlet, getting it from the provider if necessary
+     */
+    @Nonnull
+    HttpServlet resolve() {
+        if (servlet != null) {
+            return servlet;
+        }
+
+        return checkNotNull(servletProvider.get(), "Provider for %s returned null", pattern);
+    }
+}
@@ -0,0 +1,124 @@
+package com.palominolabs.http.server;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.StandardSocketOptions;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.util.concurrent.atomic.AtomicLong;
+import javax.annotation.Nullable;
+import org.eclipse.jetty.io.ByteBufferPool;
+import org.eclipse.jetty.server.ConnectionFactory;
+import org.eclipse.jetty.server.Server;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import static com.palominolabs.http.server.ListenChannels.SO_REUSEPORT;
+
+/**
+ * One of several connectors listening on the same host and port, each with its own socket bound with SO_REUSEPORT.
+ *
+ * ServerConnector keeps its socket to itself, so this binds and accepts on its own socket instead, the same way
+ * ServerConnector would with its acceptor threads.
+ */
+final class ShardServerConnector extends ArrivalServerConnector {
+
+    private static final Logger logger = LoggerFactory.getLogger(ShardServerConnector.class);
+
+    private final int shard;
+    private final AtomicLong acceptedConnections = new AtomicLong();
+
+    @Nullable
+    private volatile ServerSocketChannel acceptChannel;
+    private volatile int localPort = -1;
+
+    ShardServerConnector(Server server, ByteBufferPool byteBufferPool, int shard,
+        ConnectionFactory... connectionFactories) {
+        // executor and scheduler are null so the server's are used, and there is always an acceptor thread
+        super(server, null, null, byteBufferPool, 1, -1, connectionFactories);
+        this.shard = shard;
+    }
+
+    @Override
+    public void open() throws IOException {
+        if (acceptChannel != null) {
+            return;
+        }
+        if (SO_REUSEPORT == null) {
+            throw new IOException("Connector shards need SO_REUSEPORT, which needs Java 9 or later");
+        }
+
+        ServerSocketChannel channel = ServerSocketChannel.open();
+        try {
+            if (!channel.supportedOptions().contains(SO_REUSEPORT)) {
+                throw new IOException("Connector shards need SO_REUSEPORT, which this platform doesn't support");
+            }
+            channel.setOption(SO_REUSEPORT, true);
+            channel.setOption(StandardSocketOptions.SO_REUSEADDR, getReuseAddress());
+            InetSocketAddress bindAddress = getHost() == null ? new InetSocketAddress(getPort())
+                : new InetSocketAddress(getHost(), getPort());
+            channel.bind(bindAddress, getAcceptQueueSize());
+        } catch (IOException e) {
+            channel.close();
+            throw e;
+        }
+
+        localPort = channel.socket().getLocalPort();
+        addBean(channel);
+        acceptChannel = channel;
+    }
+
+    @Override
+    public void close() {
+        ServerSocketChannel channel = acceptChannel;
+        acceptChannel = null;
+        if (channel != null) {
+            removeBean(channel);
+            try {
+                channel.close();
+            } catch (IOException e) {
+                logger.warn("Could not close shard " + shard + " of " + getHost() + ":" + getPort(), e);
+            }
+        }
+        super.close();
+        localPort = -2;
+    }
+
+    @Override
+    public boolean isOpen() {
+        ServerSocketChannel channel = acceptChannel;
+        return channel != null && channel.isOpen();
+    }
+
+    @Override
+    public void accept(int acceptorID) throws IOException {
+        ServerSocketChannel serverChannel = acceptChannel;
+        if (serverChannel == null || !serverChannel.isOpen()) {
+            return;
+        }
+
+        SocketChannel channel = serverChannel.accept();
+        acceptedConnections.incrementAndGet();
+        channel.configureBlocking(false);
+        configure(channel.socket());
+        getSelectorManager().accept(channel);
+    }
+
+    @Override
+    public Object getTransport() {
+        return acceptChannel;
+    }
+
+    @Override
+    public int getLocalPort() {
+        return localPort;
+    }
+
+    int getShard() {
+        return shard;
+    }
+
+    long getAcceptedConnections() {
+        return acceptedConnections.get();
+    }
+}
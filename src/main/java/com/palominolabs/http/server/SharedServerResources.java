@@ -0,0 +1,99 @@
+package com.palominolabs.http.server;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import javax.annotation.concurrent.ThreadSafe;
+import org.eclipse.jetty.util.thread.QueuedThreadPool;
+import org.eclipse.jetty.util.thread.ScheduledExecutorScheduler;
+import org.eclipse.jetty.util.thread.Scheduler;
+
+import static com.google.common.base.Preconditions.checkArgument;
+
+/**
+ * A thread pool, scheduler and buffer pool shared by several {@link HttpServerWrapper}s in one JVM, so that e.g. a
+ * public API server, an admin server and an internal RPC server don't each start their own threads.
+ *
+ * Each server runs its jobs through its own {@link ThreadPoolShare}, which caps how many of the shared threads it can
+ * use and keeps that server's thread pool stats. Other metrics, such as request timings, stay per server as well.
+ *
+ * The pool and scheduler are started when the first server starts. Stopping a server leaves them running; call {@link
+ * SharedServerResources#stop()} once every server using them has stopped.
+ */
+@ThreadSafe
+public final class SharedServerResources {
+
+    private final QueuedThreadPool threadPool;
+    private final Scheduler scheduler;
+    private final InstrumentedByteBufferPool byteBufferPool;
+    private final int maxThreadsPerServer;
+
+    SharedServerResources(@Nonnull SharedServerResourcesConfig config) {
+        checkArgument(config.getMaxThreadsPerServer() <= config.getMaxThreads(),
+            "Max threads per server (%s) must not be larger than max threads (%s)", config.getMaxThreadsPerServer(),
+            config.getMaxThreads());
+        checkArgument(config.getMinThreads() <= config.getMaxThreads(),
+            "Min threads (%s) must not be larger than max threads (%s)", config.getMinThreads(),
+            config.getMaxThreads());
+
+        threadPool = new QueuedThreadPool(config.getMaxThreads(), config.getMinThreads(),
+            config.getThreadIdleTimeoutMillis());
+        threadPool.setName("http-server-shared");
+        scheduler = new ScheduledExecutorScheduler("http-server-shared-scheduler", false);
+        byteBufferPool = new InstrumentedByteBufferPool(config.getByteBufferPoolConfig());
+        maxThreadsPerServer = config.getMaxThreadsPerServer();
+    }
+
+    /**
+     * @param listener listener for the share's thread pool events, or null
+     * @param queueThreshold queue size at which to report saturation, or -1
+     * @return a new share of the thread pool for one server
+     */
+    @Nonnull
+    ThreadPoolShare newThreadPoolShare(@Nullable ServerEventListener listener, int queueThreshold) {
+        return new ThreadPoolShare(threadPool, maxThreadsPerServer, listener, queueThreshold);
+    }
+
+    /**
+     * Start the thread pool and scheduler if they aren't running yet.
+     */
+    synchronized void start() throws Exception {
+        if (!threadPool.isStarted()) {
+            threadPool.start();
+            scheduler.start();
+        }
+    }
+
+    /**
+     * Stop the thread pool and scheduler. Servers using them must be stopped first.
+     *
+     * @throws Exception if the thread pool or scheduler failed to stop
+     */
+    public synchronized void stop() throws Exception {
+        try {
+            scheduler.stop();
+        } finally {
+            threadPool.stop();
+        }
+    }
+
+    /**
+     * @return the shared thread pool, for its overall stats
+     */
+    @Nonnull
+    public QueuedThreadPool getThreadPool() {
+        return threadPool;
+    }
+
+    @Nonnull
+    Scheduler getScheduler() {
+        return scheduler;
+    }
+
+    /**
+     * @return the buffer pool used by every connector of every server
+     */
+    @Nonnull
+    public InstrumentedByteBufferPool getByteBufferPool() {
+        return byteBufferPool;
+    }
+}
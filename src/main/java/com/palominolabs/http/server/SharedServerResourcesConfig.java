@@ -0,0 +1,158 @@
+package com.palominolabs.http.server;
+
+import javax.annotation.Nonnull;
+import javax.annotation.concurrent.NotThreadSafe;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkNotNull;
+
+/**
+ * Config for the thread pool, scheduler and buffer pool shared by every {@link HttpServerWrapper} created through a
+ * {@link HttpServerWrapperModule} built with this config.
+ *
+ * @see SharedServerResources
+ */
+@NotThreadSafe
+public final class SharedServerResourcesConfig {
+
+    private int maxThreads = 200;
+
+    private int minThreads = 8;
+
+    private int threadIdleTimeoutMillis = 60000;
+
+    private int maxThreadsPerServer = 100;
+
+    @Nonnull
+    private ByteBufferPoolConfig byteBufferPoolConfig = new ByteBufferPoolConfig();
+
+    public int getMaxThreads() {
+        return maxThreads;
+    }
+
+    /**
+     * Default is 200, the same as a Jetty server's own thread pool.
+     *
+     * @param maxThreads max threads in the shared pool
+     */
+    public void setMaxThreads(int maxThreads) {
+        checkArgument(maxThreads > 0, "Max threads must be positive");
+        this.maxThreads = maxThreads;
+    }
+
+    public int getMinThreads() {
+        return minThreads;
+    }
+
+    /**
+     * Default is 8.
+     *
+     * @param minThreads threads to keep even when idle
+     */
+    public void setMinThreads(int minThreads) {
+        checkArgument(minThreads >= 0, "Min threads must not be negative");
+        this.minThreads = minThreads;
+    }
+
+    public int getThreadIdleTimeoutMillis() {
+        return threadIdleTimeoutMillis;
+    }
+
+    /**
+     * Default is 60000.
+     *
+     * @param threadIdleTimeoutMillis how long a thread above the minimum may be idle before it exits
+     */
+    public void setThreadIdleTimeoutMillis(int threadIdleTimeoutMillis) {
+        checkArgument(threadIdleTimeoutMillis > 0, "Thread idle timeout must be positive");
+        this.threadIdleTimeoutMillis = threadIdleTimeoutMillis;
+    }
+
+    public int getMaxThreadsPerServer() {
+        return maxThreadsPerServer;
+    }
+
+    /**
+     * The most threads of the shared pool that one server may use at once, including the threads its acceptors and
+     * selectors occupy. Once a server is at its share, further jobs wait in a queue of that server's own, so one busy
+     * server can't starve the others. Must not be larger than the max threads. Default is 100, half of the default max
+     * threads.
+     *
+     * @param maxThreadsPerServer max threads one server may use
+     * @see ThreadPoolShare
+     */
+    public void setMaxThreadsPerServer(int maxThreadsPerServer) {
+        checkArgument(maxThreadsPerServer > 0, "Max threads per server must be positive");
+        this.maxThreadsPerServer = maxThreadsPerServer;
+    }
+
+    @Nonnull
+    public ByteBufferPoolConfig getByteBufferPoolConfig() {
+        return byteBufferPoolConfig;
+    }
+
+    /**
+     * Every connector of every server uses one buffer pool built from this config. The {@link
+     * HttpServerWrapperConfig#getByteBufferPoolConfig()} of each server is ignored.
+     *
+     * @param byteBufferPoolConfig buffer pool config
+     */
+    public void setByteBufferPoolConfig(@Nonnull ByteBufferPoolConfig byteBufferPoolConfig) {
+        this.byteBufferPoolConfig = checkNotNull(byteBufferPoolConfig);
+    }
+
+    /**
+     * @param maxThreads max threads
+     * @return this
+     * @see SharedServerResourcesConfig#setMaxThreads(int)
+     */
+    @Nonnull
+    public SharedServerResourcesConfig withMaxThreads(int maxThreads) {
+        setMaxThreads(maxThreads);
+        return this;
+    }
+
+    /**
+     * @param minThreads min threads
+     * @return this
+     * @see SharedServerResourcesConfig#setMinThreads(int)
+     */
+    @Nonnull
+    public SharedServerResourcesConfig withMinThreads(int minThreads) {
+        setMinThreads(minThreads);
+        return this;
+    }
+
+    /**
+     * @param threadIdleTimeoutMillis thread idle timeout
+     * @return this
+     * @see SharedServerResourcesConfig#setThreadIdleTimeoutMillis(int)
+     */
+    @Nonnull
+    public SharedServerResourcesConfig withThreadIdleTimeoutMillis(int threadIdleTimeoutMillis) {
+        setThreadIdleTimeoutMillis(threadIdleTimeoutMillis);
+        return this;
+    }
+
+    /**
+     * @param maxThreadsPerServer max threads per server
+     * @return this
+     * @see SharedServerResourcesConfig#setMaxThreadsPerServer(int)
+     */
+    @Nonnull
+    public SharedServerResourcesConfig withMaxThreadsPerServer(int maxThreadsPerServer) {
+        setMaxThreadsPerServer(maxThreadsPerServer);
+        return this;
+    }
+
+    /**
+     * @param byteBufferPoolConfig buffer pool config
+     * @return this
+     * @see SharedServerResourcesConfig#setByteBufferPoolConfig(ByteBufferPoolConfig)
+     */
+    @Nonnull
+    public SharedServerResourcesConfig withByteBufferPoolConfig(@Nonnull ByteBufferPoolConfig byteBufferPoolConfig) {
+        setByteBufferPoolConfig(byteBufferPoolConfig);
+        return this;
+    }
+}
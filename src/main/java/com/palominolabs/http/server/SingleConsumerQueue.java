@@ -0,0 +1,196 @@
+package com.palominolabs.http.server;
+
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import javax.annotation.concurrent.ThreadSafe;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * A bounded lock-free queue that request threads add to and a single daemon thread takes from, for work that must stay
+ * off request threads, e.g. writing logs.
+ *
+ * Adding never blocks: items added while the queue is full are dropped and counted. The consumer thread polls the
+ * queue and sleeps briefly when it is empty, so producers never have to wake it. If the sink throws a
+ * RuntimeException the item is dropped and the thread carries on; if it throws an Error the queue is marked failed and
+ * drops everything from then on.
+ *
+ * @param <T> item type
+ */
+@ThreadSafe
+final class SingleConsumerQueue<T> {
+
+    private static final Logger logger = LoggerFactory.getLogger(SingleConsumerQueue.class);
+
+    /**
+     * How long the consumer sleeps when the queue is empty
+     */
+    private static final long IDLE_PARK_NANOS = TimeUnit.MILLISECONDS.toNanos(5);
+
+    /**
+     * What the consumer thread does. Only ever called from that thread.
+     *
+     * @param <T> item type
+     */
+    interface Sink<T> {
+        /**
+         * @param item the next item in the queue
+         */
+        void accept(@Nonnull T item);
+
+        /**
+         * Called when the queue is empty, before the consumer sleeps.
+         */
+        void idle();
+
+        /**
+         * Called once the consumer is done, after the last item.
+         */
+        void stopped();
+    }
+
+    private final String threadName;
+    private final int capacity;
+    private final boolean drainOnStop;
+    private final Sink<T> sink;
+
+    private final Queue<T> queue = new ConcurrentLinkedQueue<>();
+    private final AtomicInteger size = new AtomicInteger();
+    private final AtomicLong dropped = new AtomicLong();
+
+    private volatile boolean running;
+    private volatile boolean failed;
+    @Nullable
+    private volatile Thread consumer;
+
+    /**
+     * @param threadName  name of the consumer thread
+     * @param capacity    max items queued
+     * @param drainOnStop true to hand items still queued at stop() to the sink, false to discard them
+     * @param sink        what to do with each item
+     */
+    SingleConsumerQueue(@Nonnull String threadName, int capacity, boolean drainOnStop, @Nonnull Sink<T> sink) {
+        this.threadName = threadName;
+        this.capacity = capacity;
+        this.drainOnStop = drainOnStop;
+        this.sink = sink;
+    }
+
+    void start() {
+        failed = false;
+        running = true;
+        Thread thread = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                consume();
+            }
+        }, threadName);
+        thread.setDaemon(true);
+        consumer = thread;
+        thread.start();
+    }
+
+    /**
+     * Stop taking items and wait for the consumer thread to finish.
+     */
+    void stop() throws InterruptedException {
+        running = false;
+        Thread thread = consumer;
+        if (thread != null) {
+            LockSupport.unpark(thread);
+            thread.join();
+            consumer = null;
+        }
+        queue.clear();
+        size.set(0);
+    }
+
+    /**
+     * @return true if items are being taken
+     */
+    boolean isRunning() {
+        return running;
+    }
+
+    /**
+     * @param item item to hand to the consumer thread
+     * @return true if it was queued; false if the queue isn't running or the item was dropped
+     */
+    boolean add(@Nonnull T item) {
+        if (!running) {
+            if (failed) {
+                dropped.incrementAndGet();
+            }
+            return false;
+        }
+        if (size.incrementAndGet() > capacity) {
+            size.decrementAndGet();
+            dropped.incrementAndGet();
+            return false;
+        }
+        queue.offer(item);
+        return true;
+    }
+
+    /**
+     * For sinks that want to take several items at once. Only call this from the consumer thread.
+     *
+     * @return the next item, or null if the queue is empty
+     */
+    @Nullable
+    T poll() {
+        T item = queue.poll();
+        if (item != null) {
+            size.decrementAndGet();
+        }
+        return item;
+    }
+
+    /**
+     * @return items dropped because the queue was full, the sink threw, or the queue had failed
+     */
+    long getDropped() {
+        return dropped.get();
+    }
+
+    private void consume() {
+        try {
+            while (running || (drainOnStop && !queue.isEmpty())) {
+                T item = poll();
+                try {
+                    if (item == null) {
+                        sink.idle();
+                        LockSupport.parkNanos(IDLE_PARK_NANOS);
+                    } else {
+                        sink.accept(item);
+                    }
+                } catch (RuntimeException e) {
+                    logger.warn("Unexpected failure on " + threadName, e);
+                    if (item != null) {
+                        dropped.incrementAndGet();
+                    }
+                } catch (Error e) {
+                    if (item != null) {
+                        dropped.incrementAndGet();
+                    }
+                    throw e;
+                }
+            }
+        } catch (Error e) {
+            logger.error(threadName + " failed; everything added from now on will be dropped", e);
+            failed = true;
+            running = false;
+            dropped.addAndGet(size.getAndSet(0));
+            queue.clear();
+            throw e;
+        } finally {
+            sink.stopped();
+        }
+    }
+}
@@ -0,0 +1,100 @@
+package com.palominolabs.http.server;
+
+import com.google.common.collect.Maps;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.Map;
+import java.util.TreeSet;
+import javax.annotation.Nonnull;
+import javax.annotation.concurrent.NotThreadSafe;
+
+/**
+ * The Space-Saving summary (Metwally, Agrawal and El Abbadi) of a weighted stream: at most {@code capacity} keys are
+ * tracked, and a key that isn't tracked replaces the one with the smallest total, inheriting that total as its error.
+ * Every key whose true total is more than 1/capacity of the stream's total is tracked, and each tracked total
+ * overestimates the true one by at most its error.
+ */
+@NotThreadSafe
+final class SpaceSaving {
+
+    private static final Comparator<Counter> BY_TOTAL = new Comparator<Counter>() {
+        @Override
+        public int compare(Counter a, Counter b) {
+            int result = Long.compare(a.total, b.total);
+            return result != 0 ? result : Long.compare(a.id, b.id);
+        }
+    };
+
+    private final int capacity;
+    private final Map<String, Counter> counters = Maps.newHashMap();
+    private final TreeSet<Counter> byTotal = new TreeSet<>(BY_TOTAL);
+    /**
+     * Breaks ties between counters with the same total
+     */
+    private long nextId;
+
+    SpaceSaving(int capacity) {
+        this.capacity = capacity;
+    }
+
+    void add(@Nonnull String key, long weight) {
+        Counter counter = counters.get(key);
+        if (counter == null) {
+            if (counters.size() < capacity) {
+                counter = new Counter(key, 0, nextId++);
+            } else {
+                Counter min = byTotal.pollFirst();
+                counters.remove(min.key);
+                counter = new Counter(key, min.total, nextId++);
+            }
+            counters.put(key, counter);
+        } else {
+            byTotal.remove(counter);
+        }
+        counter.total += weight;
+        byTotal.add(counter);
+    }
+
+    @Nonnull
+    Collection<Counter> getCounters() {
+        return counters.values();
+    }
+
+    void clear() {
+        counters.clear();
+        byTotal.clear();
+    }
+
+    static final class Counter {
+        private final String key;
+        private final long error;
+        private final long id;
+        private long total;
+
+        private Counter(String key, long error, long id) {
+            this.key = key;
+            this.error = error;
+            this.id = id;
+            this.total = error;
+        }
+
+        @Nonnull
+        String getKey() {
+            return key;
+        }
+
+        /**
+         * @return an upper bound of the key's total
+         */
+        long getTotal() {
+            return total;
+        }
+
+        /**
+         * @return how much the total may overestimate the key's true total by
+         */
+        long getError() {
+            return error;
+        }
+    }
+}
@@ -0,0 +1,52 @@
+package com.palominolabs.http.server;
+
+import com.google.common.collect.Lists;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.TimeUnit;
+import javax.annotation.concurrent.GuardedBy;
+import javax.annotation.concurrent.ThreadSafe;
+
+/**
+ * Times startup phases, which may run on several threads, to build a {@link StartupReport}.
+ */
+@ThreadSafe
+final class StartupProfiler {
+
+    private final long startNanos = System.nanoTime();
+
+    @GuardedBy("this")
+    private final List<StartupReport.Phase> phases = Lists.newArrayList();
+
+    <T> T time(String name, Callable<T> callable) throws Exception {
+        long phaseStartNanos = System.nanoTime();
+        try {
+            return callable.call();
+        } finally {
+            long endNanos = System.nanoTime();
+            StartupReport.Phase phase = new StartupReport.Phase(name, Thread.currentThread().getName(),
+                TimeUnit.NANOSECONDS.toMillis(phaseStartNanos - startNanos),
+                TimeUnit.NANOSECONDS.toMillis(endNanos - phaseStartNanos));
+            synchronized (this) {
+                phases.add(phase);
+            }
+        }
+    }
+
+    /**
+     * @return a callable that times the given one
+     */
+    <T> Callable<T> timed(final String name, final Callable<T> callable) {
+        return new Callable<T>() {
+            @Override
+            public T call() throws Exception {
+                return time(name, callable);
+            }
+        };
+    }
+
+    synchronized StartupReport buildReport() {
+        return new StartupReport(Lists.newArrayList(phases),
+            TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startNanos));
+    }
+}
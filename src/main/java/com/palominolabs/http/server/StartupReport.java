@@ -0,0 +1,90 @@
+package com.palominolabs.http.server;
+
+import java.util.Collections;
+import java.util.List;
+import javax.annotation.Nonnull;
+import javax.annotation.concurrent.Immutable;
+
+/**
+ * How long each phase of {@link HttpServerWrapper#start()} took. Phases that ran in parallel overlap, so their
+ * durations add up to more than the total.
+ */
+@Immutable
+public final class StartupReport {
+
+    private final List<Phase> phases;
+    private final long totalMillis;
+
+    StartupReport(List<Phase> phases, long totalMillis) {
+        this.phases = Collections.unmodifiableList(phases);
+        this.totalMillis = totalMillis;
+    }
+
+    /**
+     * @return phases in the order they finished
+     */
+    @Nonnull
+    public List<Phase> getPhases() {
+        return phases;
+    }
+
+    public long getTotalMillis() {
+        return totalMillis;
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder sb = new StringBuilder("Started in ").append(totalMillis).append(" ms");
+        for (Phase phase : phases) {
+            sb.append("\n\t").append(phase);
+        }
+        return sb.toString();
+    }
+
+    /**
+     * One step of startup.
+     */
+    @Immutable
+    public static final class Phase {
+        private final String name;
+        private final String threadName;
+        private final long startOffsetMillis;
+        private final long durationMillis;
+
+        Phase(String name, String threadName, long startOffsetMillis, long durationMillis) {
+            this.name = name;
+            this.threadName = threadName;
+            this.startOffsetMillis = startOffsetMillis;
+            this.durationMillis = durationMillis;
+        }
+
+        @Nonnull
+        public String getName() {
+            return name;
+        }
+
+        /**
+         * @return the thread the phase ran on
+         */
+        @Nonnull
+        public String getThreadName() {
+            return threadName;
+        }
+
+        /**
+         * @return when the phase started, relative to the start of startup
+         */
+        public long getStartOffsetMillis() {
+            return startOffsetMillis;
+        }
+
+        public long getDurationMillis() {
+            return durationMillis;
+        }
+
+        @Override
+        public String toString() {
+            return name + ": " + durationMillis + " ms (at +" + startOffsetMillis + " ms on " + threadName + ")";
+        }
+    }
+}
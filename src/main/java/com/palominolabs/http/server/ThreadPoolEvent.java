@@ -0,0 +1,64 @@
+package com.palominolabs.http.server;
+
+import javax.annotation.Nonnull;
+import javax.annotation.concurrent.Immutable;
+
+/**
+ * The server thread pool became saturated or rejected a job.
+ */
+@Immutable
+public final class ThreadPoolEvent {
+
+    public enum Type {
+        /**
+         * The number of queued jobs reached the configured threshold. Reported again only after the queue has dropped
+         * below the threshold.
+         */
+        SATURATED,
+        /**
+         * A job was rejected, e.g. because the queue was full
+         */
+        REJECTED
+    }
+
+    private final Type type;
+    private final int threads;
+    private final int idleThreads;
+    private final int maxThreads;
+    private final int queuedJobs;
+
+    ThreadPoolEvent(Type type, int threads, int idleThreads, int maxThreads, int queuedJobs) {
+        this.type = type;
+        this.threads = threads;
+        this.idleThreads = idleThreads;
+        this.maxThreads = maxThreads;
+        this.queuedJobs = queuedJobs;
+    }
+
+    @Nonnull
+    public Type getType() {
+        return type;
+    }
+
+    public int getThreads() {
+        return threads;
+    }
+
+    public int getIdleThreads() {
+        return idleThreads;
+    }
+
+    public int getMaxThreads() {
+        return maxThreads;
+    }
+
+    public int getQueuedJobs() {
+        return queuedJobs;
+    }
+
+    @Override
+    public String toString() {
+        return "ThreadPoolEvent{" + type + ", threads=" + threads + ", idleThreads=" + idleThreads + ", maxThreads="
+            + maxThreads + ", queuedJobs=" + queuedJobs + "}";
+    }
+}
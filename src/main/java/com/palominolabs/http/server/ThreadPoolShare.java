@@ -0,0 +1,239 @@
+package com.palominolabs.http.server;
+
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import javax.annotation.Nullable;
+import javax.annotation.concurrent.ThreadSafe;
+import org.eclipse.jetty.util.thread.QueuedThreadPool;
+import org.eclipse.jetty.util.thread.ThreadPool;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import static com.google.common.base.Preconditions.checkArgument;
+
+/**
+ * One server's view of the thread pool in {@link SharedServerResources}. At most {@link
+ * ThreadPoolShare#getMaxThreads()} of the server's jobs run at once; further jobs wait in this share's queue rather
+ * than the shared pool's, so they don't hold up other servers. The counters here only cover this server's jobs.
+ *
+ * Like a Jetty thread pool's max threads, the limit includes the long running acceptor and selector jobs of the
+ * server's connectors, which Jetty checks on start. It starts at the max threads per server set in {@link
+ * SharedServerResourcesConfig} and can be changed with {@link ThreadPoolShare#setMaxThreads(int)}.
+ */
+@ThreadSafe
+public final class ThreadPoolShare implements ThreadPool.SizedThreadPool {
+
+    private static final Logger logger = LoggerFactory.getLogger(ThreadPoolShare.class);
+
+    private final QueuedThreadPool threadPool;
+    private volatile int minThreads;
+    private volatile int maxThreads;
+
+    @Nullable
+    private final ServerEventListener listener;
+    private final int queueThreshold;
+
+    private final Queue<Runnable> queue = new ConcurrentLinkedQueue<>();
+    /**
+     * Size of the queue, since ConcurrentLinkedQueue.size() is O(n)
+     */
+    private final AtomicInteger queueSize = new AtomicInteger();
+    private final AtomicInteger running = new AtomicInteger();
+    private final AtomicLong completedJobs = new AtomicLong();
+    private final AtomicLong queuedJobs = new AtomicLong();
+
+    /**
+     * True from when the queue reaches the threshold until it drops below it, so each episode is reported once
+     */
+    private final AtomicBoolean saturated = new AtomicBoolean();
+
+    ThreadPoolShare(QueuedThreadPool threadPool, int maxThreads, @Nullable ServerEventListener listener,
+        int queueThreshold) {
+        this.threadPool = threadPool;
+        this.maxThreads = maxThreads;
+        this.listener = listener;
+        this.queueThreshold = queueThreshold;
+    }
+
+    @Override
+    public void execute(Runnable job) {
+        // run right away if under the limit and nothing is waiting ahead of this job
+        int current = running.get();
+        if (queueSize.get() == 0 && current < maxThreads && running.compareAndSet(current, current + 1)) {
+            try {
+                threadPool.execute(new ShareJob(job));
+            } catch (RejectedExecutionException e) {
+                running.decrementAndGet();
+                reportEvent(ThreadPoolEvent.Type.REJECTED);
+                throw e;
+            }
+            return;
+        }
+
+        queue.offer(job);
+        queuedJobs.incrementAndGet();
+        int size = queueSize.incrementAndGet();
+        if (queueThreshold != -1 && size >= queueThreshold && saturated.compareAndSet(false, true)) {
+            reportEvent(ThreadPoolEvent.Type.SATURATED);
+        }
+        drain();
+    }
+
+    /**
+     * Hand queued jobs to the shared pool while under the limit. Called after a job is queued and after one finishes,
+     * so a queued job is never left waiting while a slot is free.
+     */
+    private void drain() {
+        while (queueSize.get() > 0) {
+            int current = running.get();
+            if (current >= maxThreads) {
+                return;
+            }
+            if (!running.compareAndSet(current, current + 1)) {
+                continue;
+            }
+
+            Runnable job = queue.poll();
+            if (job == null) {
+                // another thread took it
+                running.decrementAndGet();
+                continue;
+            }
+            if (queueSize.decrementAndGet() < queueThreshold) {
+                saturated.set(false);
+            }
+
+            try {
+                threadPool.execute(new ShareJob(job));
+            } catch (RejectedExecutionException e) {
+                // the shared pool only rejects jobs once it is stopping, and there is no caller to tell
+                running.decrementAndGet();
+                reportEvent(ThreadPoolEvent.Type.REJECTED);
+                logger.warn("Shared thread pool rejected a queued job", e);
+            }
+        }
+    }
+
+    @Override
+    public void join() throws InterruptedException {
+        threadPool.join();
+    }
+
+    /**
+     * @return number of this server's jobs currently running
+     */
+    @Override
+    public int getThreads() {
+        return running.get();
+    }
+
+    /**
+     * @return how many more of this server's jobs could start right now
+     */
+    @Override
+    public int getIdleThreads() {
+        return Math.max(0, Math.min(maxThreads - running.get(), threadPool.getIdleThreads()));
+    }
+
+    @Override
+    public boolean isLowOnThreads() {
+        return running.get() >= maxThreads || threadPool.isLowOnThreads();
+    }
+
+    /**
+     * @return the min threads last set, 0 by default
+     */
+    @Override
+    public int getMinThreads() {
+        return minThreads;
+    }
+
+    /**
+     * @return max number of this server's jobs that run at once
+     */
+    @Override
+    public int getMaxThreads() {
+        return maxThreads;
+    }
+
+    /**
+     * A share has no threads of its own to keep around, so this is only recorded; the shared pool's min threads are
+     * set in {@link SharedServerResourcesConfig}.
+     *
+     * @param threads min threads
+     */
+    @Override
+    public void setMinThreads(int threads) {
+        checkArgument(threads >= 0, "Min threads must not be negative");
+        minThreads = threads;
+    }
+
+    /**
+     * Change how many of this server's jobs run at once. Raising it starts queued jobs right away; lowering it lets
+     * running jobs finish, and new ones wait until the count is under the new limit.
+     *
+     * @param threads max number of this server's jobs that run at once
+     */
+    @Override
+    public void setMaxThreads(int threads) {
+        checkArgument(threads > 0, "Max threads must be positive");
+        maxThreads = threads;
+        drain();
+    }
+
+    /**
+     * @return number of this server's jobs waiting for a slot in its share
+     */
+    public int getQueueSize() {
+        return queueSize.get();
+    }
+
+    /**
+     * @return total number of this server's jobs that have finished
+     */
+    public long getCompletedJobs() {
+        return completedJobs.get();
+    }
+
+    /**
+     * @return total number of this server's jobs that had to wait because the share was in full use
+     */
+    public long getQueuedJobs() {
+        return queuedJobs.get();
+    }
+
+    private void reportEvent(ThreadPoolEvent.Type type) {
+        if (listener != null) {
+            listener.onThreadPool(new ThreadPoolEvent(type, running.get(), getIdleThreads(), maxThreads,
+                queueSize.get()));
+        }
+    }
+
+    @Override
+    public String toString() {
+        return "ThreadPoolShare{running=" + running.get() + ", max=" + maxThreads + ", queued=" + queueSize.get() + "}";
+    }
+
+    private final class ShareJob implements Runnable {
+        private final Runnable job;
+
+        private ShareJob(Runnable job) {
+            this.job = job;
+        }
+
+        @Override
+        public void run() {
+            try {
+                job.run();
+            } finally {
+                running.decrementAndGet();
+                completedJobs.incrementAndGet();
+                drain();
+            }
+        }
+    }
+}
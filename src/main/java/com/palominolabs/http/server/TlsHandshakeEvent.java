@@ -0,0 +1,77 @@
+package com.palominolabs.http.server;
+
+import javax.annotation.CheckForNull;
+import javax.annotation.Nullable;
+import javax.annotation.concurrent.Immutable;
+
+/**
+ * A TLS handshake, reported when it completes or fails.
+ */
+@Immutable
+public final class TlsHandshakeEvent {
+
+    @Nullable
+    private final String peerHost;
+    private final int peerPort;
+    @Nullable
+    private final String protocol;
+    @Nullable
+    private final String cipherSuite;
+    @Nullable
+    private final Throwable failure;
+
+    TlsHandshakeEvent(@Nullable String peerHost, int peerPort, @Nullable String protocol, @Nullable String cipherSuite,
+        @Nullable Throwable failure) {
+        this.peerHost = peerHost;
+        this.peerPort = peerPort;
+        this.protocol = protocol;
+        this.cipherSuite = cipherSuite;
+        this.failure = failure;
+    }
+
+    @CheckForNull
+    public String getPeerHost() {
+        return peerHost;
+    }
+
+    /**
+     * @return the peer's port, or -1 if unknown
+     */
+    public int getPeerPort() {
+        return peerPort;
+    }
+
+    /**
+     * @return the negotiated protocol, or null if the handshake failed
+     */
+    @CheckForNull
+    public String getProtocol() {
+        return protocol;
+    }
+
+    /**
+     * @return the negotiated cipher suite, or null if the handshake failed
+     */
+    @CheckForNull
+    public String getCipherSuite() {
+        return cipherSuite;
+    }
+
+    public boolean isSucceeded() {
+        return failure == null;
+    }
+
+    /**
+     * @return why the handshake failed, or null if it succeeded
+     */
+    @CheckForNull
+    public Throwable getFailure() {
+        return failure;
+    }
+
+    @Override
+    public String toString() {
+        return "TlsHandshakeEvent{peer=" + peerHost + ":" + peerPort + ", protocol=" + protocol + ", cipherSuite="
+            + cipherSuite + (failure == null ? "" : ", failure=" + failure) + "}";
+    }
+}
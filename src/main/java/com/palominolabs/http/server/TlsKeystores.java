@@ -0,0 +1,81 @@
+package com.palominolabs.http.server;
+
+import java.io.IOException;
+import java.security.GeneralSecurityException;
+import java.security.KeyStore;
+import java.security.KeyStoreException;
+import java.util.Collections;
+import java.util.List;
+import javax.annotation.Nonnull;
+
+/**
+ * Combines a connector's keystores into the single keystore that Jetty's SslContextFactory works with.
+ */
+final class TlsKeystores {
+
+    private TlsKeystores() {
+    }
+
+    /**
+     * If there are no SNI keystores, the primary keystore is used as is. Otherwise, every entry from every keystore is
+     * copied into a new in-memory keystore protected by the primary passphrase. Jetty then picks a certificate per
+     * handshake by looking up the requested SNI host name among the certificates' names (exact match first, then
+     * wildcard).
+     *
+     * @param connectorConfig TLS connector config
+     * @return keystore to hand to Jetty, protected by the connector's primary passphrase
+     * @throws GeneralSecurityException if an entry can't be read or written
+     */
+    @Nonnull
+    static KeyStore getCombinedKeystore(@Nonnull HttpServerConnectorConfig connectorConfig)
+            throws GeneralSecurityException {
+        List<HttpServerConnectorConfig.SniKeystore> sniKeystores = connectorConfig.getTlsSniKeystores();
+        if (sniKeystores.isEmpty()) {
+            return connectorConfig.getTlsKeystore();
+        }
+
+        char[] passphrase = connectorConfig.getTlsKeystorePassphrase().toCharArray();
+
+        KeyStore combined = KeyStore.getInstance(KeyStore.getDefaultType());
+        try {
+            combined.load(null, passphrase);
+        } catch (IOException e) {
+            throw new IllegalStateException("Could not initialize empty keystore", e);
+        }
+
+        copyEntries(connectorConfig.getTlsKeystore(), passphrase, combined, passphrase, "");
+        for (int i = 0; i < sniKeystores.size(); i++) {
+            HttpServerConnectorConfig.SniKeystore sniKeystore = sniKeystores.get(i);
+            copyEntries(sniKeystore.getKeystore(), sniKeystore.getPassphrase().toCharArray(), combined, passphrase,
+                    "sni-" + i + "-");
+        }
+
+        return combined;
+    }
+
+    /**
+     * @param keystore a loaded keystore
+     * @return true if the keystore has at least one private key, which a TLS connector needs
+     * @throws KeyStoreException if the keystore isn't loaded
+     */
+    static boolean hasKeyEntry(@Nonnull KeyStore keystore) throws KeyStoreException {
+        for (String alias : Collections.list(keystore.aliases())) {
+            if (keystore.isKeyEntry(alias)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static void copyEntries(KeyStore source, char[] sourcePassphrase, KeyStore dest, char[] destPassphrase,
+            String aliasPrefix) throws GeneralSecurityException {
+        for (String alias : Collections.list(source.aliases())) {
+            if (source.isKeyEntry(alias)) {
+                KeyStore.Entry entry = source.getEntry(alias, new KeyStore.PasswordProtection(sourcePassphrase));
+                dest.setEntry(aliasPrefix + alias, entry, new KeyStore.PasswordProtection(destPassphrase));
+            } else {
+                dest.setCertificateEntry(aliasPrefix + alias, source.getCertificate(alias));
+            }
+        }
+    }
+}
@@ -0,0 +1,233 @@
+package com.palominolabs.http.server;
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.Map;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicLong;
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import javax.annotation.concurrent.ThreadSafe;
+import org.eclipse.jetty.util.component.AbstractLifeCycle;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Writes sampled requests to a capture file. See {@link TrafficCaptureConfig}.
+ *
+ * Request threads only add captured requests to a {@link SingleConsumerQueue}. Its writer thread encodes them and
+ * writes them to the file, flushing whenever the queue is empty.
+ *
+ * File layout, all big endian:
+ *
+ * - header: int magic ("JHTC"), short version, short reserved, long capture start in epoch millis
+ * - records, each: int length of the rest of the record, long nanos since capture start, method, URI, short header
+ * count, then each header's name and value, then int body length (-1 for none) and the body. Text is a short byte
+ * count followed by that many bytes of UTF-8.
+ * - a record cut off by the end of the file is ignored
+ */
+@ThreadSafe
+public final class TrafficCapture extends AbstractLifeCycle {
+
+    private static final Logger logger = LoggerFactory.getLogger(TrafficCapture.class);
+
+    static final int MAGIC = 0x4A485443;
+    static final short VERSION = 1;
+    static final String FILE_SUFFIX = ".cap";
+
+    private final TrafficCaptureConfig config;
+
+    private final SingleConsumerQueue<CapturedRequest> queue;
+    private final AtomicLong capturedRequests = new AtomicLong();
+    private final AtomicLong droppedRequests = new AtomicLong();
+
+    private volatile boolean full;
+    private volatile long startNanos;
+    @Nullable
+    private volatile File file;
+
+    // only used by the writer thread
+
+    private final ByteArrayOutputStream scratchBytes = new ByteArrayOutputStream();
+    private final DataOutputStream scratch = new DataOutputStream(scratchBytes);
+    @Nullable
+    private DataOutputStream out;
+    private long fileBytes;
+
+    TrafficCapture(@Nonnull TrafficCaptureConfig config) {
+        this.config = config;
+        // drain what's left after stopping
+        this.queue = new SingleConsumerQueue<>("traffic-capture-writer", config.getQueueCapacity(), true,
+            new SingleConsumerQueue.Sink<CapturedRequest>() {
+                @Override
+                public void accept(@Nonnull CapturedRequest request) {
+                    write(request);
+                }
+
+                @Override
+                public void idle() {
+                    flush();
+                }
+
+                @Override
+                public void stopped() {
+                    close();
+                }
+            });
+    }
+
+    @Override
+    protected void doStart() throws Exception {
+        File directory = config.getDirectory();
+        if (!directory.isDirectory() && !directory.mkdirs()) {
+            throw new IOException("Could not create traffic capture directory " + directory);
+        }
+
+        long now = System.currentTimeMillis();
+        // zero padded so that names sort in the order captures were started
+        File captureFile = new File(directory, String.format("capture-%013d%s", now, FILE_SUFFIX));
+        out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(captureFile), 64 * 1024));
+        out.writeInt(MAGIC);
+        out.writeShort(VERSION);
+        out.writeShort(0);
+        out.writeLong(now);
+        fileBytes = out.size();
+        file = captureFile;
+        full = false;
+        startNanos = System.nanoTime();
+
+        queue.start();
+    }
+
+    @Override
+    protected void doStop() throws Exception {
+        queue.stop();
+    }
+
+    /**
+     * @return the file being written, or null if capture hasn't started
+     */
+    @Nullable
+    public File getFile() {
+        return file;
+    }
+
+    /**
+     * @return requests written to the capture file
+     */
+    public long getCapturedRequests() {
+        return capturedRequests.get();
+    }
+
+    /**
+     * @return sampled requests that weren't written because the queue or the file was full, or a write failed
+     */
+    public long getDroppedRequests() {
+        return droppedRequests.get() + queue.getDropped();
+    }
+
+    /**
+     * @return true if the current request should be captured
+     */
+    boolean sample() {
+        return queue.isRunning() && !full && ThreadLocalRandom.current().nextDouble() < config.getSampleRate();
+    }
+
+    /**
+     * @return nanos since capture started
+     */
+    long offsetNanos(long nanoTime) {
+        return nanoTime - startNanos;
+    }
+
+    TrafficCaptureConfig getConfig() {
+        return config;
+    }
+
+    void add(@Nonnull CapturedRequest request) {
+        queue.add(request);
+    }
+
+    private void write(CapturedRequest request) {
+        if (out == null || full) {
+            droppedRequests.incrementAndGet();
+            return;
+        }
+
+        try {
+            encode(request);
+            if (fileBytes + 4 + scratchBytes.size() > config.getMaxFileBytes()) {
+                logger.info("Traffic capture file " + file + " is full; no more requests will be captured");
+                full = true;
+                droppedRequests.incrementAndGet();
+                return;
+            }
+            out.writeInt(scratchBytes.size());
+            scratchBytes.writeTo(out);
+            fileBytes += 4 + scratchBytes.size();
+            capturedRequests.incrementAndGet();
+        } catch (IOException e) {
+            logger.warn("Could not write to traffic capture file " + file, e);
+            droppedRequests.incrementAndGet();
+        }
+    }
+
+    private void encode(CapturedRequest request) throws IOException {
+        scratchBytes.reset();
+        scratch.writeLong(request.getOffsetNanos());
+        putText(request.getMethod());
+        putText(request.getUri());
+        scratch.writeShort(Math.min(request.getHeaders().size(), Short.MAX_VALUE));
+        int headers = 0;
+        for (Map.Entry<String, String> header : request.getHeaders().entries()) {
+            if (headers++ == Short.MAX_VALUE) {
+                break;
+            }
+            putText(header.getKey());
+            putText(header.getValue());
+        }
+        byte[] body = request.bodyBytes();
+        if (body == null) {
+            scratch.writeInt(-1);
+        } else {
+            scratch.writeInt(body.length);
+            scratch.write(body);
+        }
+    }
+
+    private void putText(String text) throws IOException {
+        byte[] bytes = text.getBytes(StandardCharsets.UTF_8);
+        int length = Math.min(bytes.length, Short.MAX_VALUE);
+        scratch.writeShort(length);
+        scratch.write(bytes, 0, length);
+    }
+
+    private void flush() {
+        if (out == null) {
+            return;
+        }
+        try {
+            out.flush();
+        } catch (IOException e) {
+            logger.debug("Could not flush traffic capture file", e);
+        }
+    }
+
+    private void close() {
+        if (out == null) {
+            return;
+        }
+        try {
+            out.close();
+        } catch (IOException e) {
+            logger.warn("Could not close traffic capture file " + file, e);
+        } finally {
+            out = null;
+        }
+    }
+}
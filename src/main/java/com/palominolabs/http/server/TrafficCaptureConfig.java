@@ -0,0 +1,201 @@
+package com.palominolabs.http.server;
+
+import com.google.common.collect.Lists;
+import java.io.File;
+import java.util.List;
+import javax.annotation.Nonnull;
+import javax.annotation.concurrent.NotThreadSafe;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkNotNull;
+
+/**
+ * Config for capturing a sample of requests to a file, to be replayed later against a test server. Set it on {@link
+ * HttpServerWrapperConfig} to turn capture on.
+ *
+ * Each sampled request's arrival time, method, URI, headers and optionally body are written by a background thread to
+ * a new capture file in the directory each time the server starts. Use {@link TrafficCaptureReader} to read captures.
+ */
+@NotThreadSafe
+public final class TrafficCaptureConfig {
+
+    @Nonnull
+    private final File directory;
+
+    private double sampleRate = 0.01;
+
+    private boolean captureBodies = false;
+
+    private int maxBodyBytes = 64 * 1024;
+
+    private long maxFileBytes = 1024L * 1024 * 1024;
+
+    private int queueCapacity = 16 * 1024;
+
+    @Nonnull
+    private List<String> excludedHeaders = Lists.newArrayList("Authorization", "Proxy-Authorization", "Cookie");
+
+    /**
+     * @param directory directory to write capture files to. It is created if it doesn't exist.
+     */
+    public TrafficCaptureConfig(@Nonnull File directory) {
+        this.directory = checkNotNull(directory);
+    }
+
+    @Nonnull
+    public File getDirectory() {
+        return directory;
+    }
+
+    public double getSampleRate() {
+        return sampleRate;
+    }
+
+    /**
+     * Default is 0.01.
+     *
+     * @param sampleRate fraction of requests to capture, from 0 to 1
+     */
+    public void setSampleRate(double sampleRate) {
+        checkArgument(sampleRate >= 0 && sampleRate <= 1, "Sample rate must be between 0 and 1");
+        this.sampleRate = sampleRate;
+    }
+
+    public boolean isCaptureBodies() {
+        return captureBodies;
+    }
+
+    /**
+     * Only the part of the body that the application reads is captured, up to {@link #getMaxBodyBytes()}. Default is
+     * false.
+     *
+     * @param captureBodies true to capture request bodies as well as headers
+     */
+    public void setCaptureBodies(boolean captureBodies) {
+        this.captureBodies = captureBodies;
+    }
+
+    public int getMaxBodyBytes() {
+        return maxBodyBytes;
+    }
+
+    /**
+     * Requests whose body is longer are captured without it. Default is 64 KiB.
+     *
+     * @param maxBodyBytes max bytes of body to capture
+     */
+    public void setMaxBodyBytes(int maxBodyBytes) {
+        checkArgument(maxBodyBytes > 0, "Max body bytes must be positive");
+        this.maxBodyBytes = maxBodyBytes;
+    }
+
+    public long getMaxFileBytes() {
+        return maxFileBytes;
+    }
+
+    /**
+     * Once the capture file is this big, capture stops until the server is restarted. Default is 1 GiB.
+     *
+     * @param maxFileBytes max size of a capture file
+     */
+    public void setMaxFileBytes(long maxFileBytes) {
+        checkArgument(maxFileBytes > 0, "Max file bytes must be positive");
+        this.maxFileBytes = maxFileBytes;
+    }
+
+    public int getQueueCapacity() {
+        return queueCapacity;
+    }
+
+    /**
+     * Captured requests wait in a queue for the writer thread. If the writer falls this far behind, further requests
+     * are dropped and counted rather than slowing down requests. Default is 16384.
+     *
+     * @param queueCapacity max requests waiting to be written
+     */
+    public void setQueueCapacity(int queueCapacity) {
+        checkArgument(queueCapacity > 0, "Queue capacity must be positive");
+        this.queueCapacity = queueCapacity;
+    }
+
+    @Nonnull
+    public List<String> getExcludedHeaders() {
+        return excludedHeaders;
+    }
+
+    /**
+     * Headers that are never written to the capture, matched case-insensitively. Default is Authorization,
+     * Proxy-Authorization and Cookie.
+     *
+     * @param excludedHeaders header names
+     */
+    public void setExcludedHeaders(@Nonnull List<String> excludedHeaders) {
+        this.excludedHeaders = checkNotNull(excludedHeaders);
+    }
+
+    /**
+     * @param sampleRate sample rate
+     * @return this
+     * @see TrafficCaptureConfig#setSampleRate(double)
+     */
+    @Nonnull
+    public TrafficCaptureConfig withSampleRate(double sampleRate) {
+        setSampleRate(sampleRate);
+        return this;
+    }
+
+    /**
+     * @param captureBodies true to capture bodies
+     * @return this
+     * @see TrafficCaptureConfig#setCaptureBodies(boolean)
+     */
+    @Nonnull
+    public TrafficCaptureConfig withCaptureBodies(boolean captureBodies) {
+        setCaptureBodies(captureBodies);
+        return this;
+    }
+
+    /**
+     * @param maxBodyBytes max body bytes
+     * @return this
+     * @see TrafficCaptureConfig#setMaxBodyBytes(int)
+     */
+    @Nonnull
+    public TrafficCaptureConfig withMaxBodyBytes(int maxBodyBytes) {
+        setMaxBodyBytes(maxBodyBytes);
+        return this;
+    }
+
+    /**
+     * @param maxFileBytes max file bytes
+     * @return this
+     * @see TrafficCaptureConfig#setMaxFileBytes(long)
+     */
+    @Nonnull
+    public TrafficCaptureConfig withMaxFileBytes(long maxFileBytes) {
+        setMaxFileBytes(maxFileBytes);
+        return this;
+    }
+
+    /**
+     * @param queueCapacity queue capacity
+     * @return this
+     * @see TrafficCaptureConfig#setQueueCapacity(int)
+     */
+    @Nonnull
+    public TrafficCaptureConfig withQueueCapacity(int queueCapacity) {
+        setQueueCapacity(queueCapacity);
+        return this;
+    }
+
+    /**
+     * @param excludedHeaders excluded headers
+     * @return this
+     * @see TrafficCaptureConfig#setExcludedHeaders(List)
+     */
+    @Nonnull
+    public TrafficCaptureConfig withExcludedHeaders(@Nonnull List<String> excludedHeaders) {
+        setExcludedHeaders(excludedHeaders);
+        return this;
+    }
+}
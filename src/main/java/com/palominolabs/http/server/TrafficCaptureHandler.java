@@ -0,0 +1,128 @@
+package com.palominolabs.http.server;
+
+import com.google.common.collect.ImmutableListMultimap;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.Set;
+import java.util.TreeSet;
+import javax.servlet.DispatcherType;
+import javax.servlet.ServletException;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import org.eclipse.jetty.http.HttpField;
+import org.eclipse.jetty.server.HttpInput;
+import org.eclipse.jetty.server.Request;
+import org.eclipse.jetty.server.handler.HandlerWrapper;
+
+/**
+ * Hands a sample of requests to a {@link TrafficCapture} once they complete.
+ *
+ * Bodies are copied as the application reads them, by an interceptor on the request's input, so that bodies read
+ * through {@code getParameter()} or multipart parsing are captured too.
+ */
+final class TrafficCaptureHandler extends HandlerWrapper {
+
+    private final TrafficCapture capture;
+    private final boolean captureBodies;
+    private final int maxBodyBytes;
+    private final Set<String> excludedHeaders = new TreeSet<>(String.CASE_INSENSITIVE_ORDER);
+
+    TrafficCaptureHandler(TrafficCapture capture) {
+        this.capture = capture;
+        TrafficCaptureConfig config = capture.getConfig();
+        this.captureBodies = config.isCaptureBodies();
+        this.maxBodyBytes = config.getMaxBodyBytes();
+        this.excludedHeaders.addAll(config.getExcludedHeaders());
+    }
+
+    @Override
+    public void handle(String target, Request baseRequest, HttpServletRequest request, HttpServletResponse response)
+        throws IOException, ServletException {
+        if (baseRequest.getDispatcherType() != DispatcherType.REQUEST || !capture.sample()) {
+            super.handle(target, baseRequest, request, response);
+            return;
+        }
+
+        final long offset = capture.offsetNanos(System.nanoTime());
+        ImmutableListMultimap.Builder<String, String> headers = ImmutableListMultimap.builder();
+        for (HttpField field : baseRequest.getHttpFields()) {
+            if (!excludedHeaders.contains(field.getName())) {
+                headers.put(field.getName(), field.getValue());
+            }
+        }
+        // copied now since Jetty recycles the request once it completes
+        final String method = baseRequest.getMethod();
+        final String uri = baseRequest.getOriginalURI();
+        final ImmutableListMultimap<String, String> headerMap = headers.build();
+
+        final BodyCapture body;
+        if (captureBodies && request.getContentLengthLong() <= maxBodyBytes) {
+            body = new BodyCapture(maxBodyBytes);
+            baseRequest.getHttpInput().addInterceptor(body);
+        } else {
+            body = null;
+        }
+
+        try {
+            super.handle(target, baseRequest, request, response);
+        } finally {
+            RequestCompletion.onComplete(request, new Runnable() {
+                @Override
+                public void run() {
+                    capture.add(new CapturedRequest(offset, method, uri, headerMap, getBody(body)));
+                }
+            });
+        }
+    }
+
+    private static byte[] getBody(BodyCapture body) {
+        return body == null ? null : body.getBytes();
+    }
+
+    /**
+     * Copies content as it is read, and gives up if there is more than the max.
+     */
+    private static final class BodyCapture implements HttpInput.Interceptor {
+        private final int maxBytes;
+        private byte[] bytes = new byte[0];
+        private int length;
+        private boolean tooLong;
+        /**
+         * Jetty asks again about content that was only partly read, and it has already been copied
+         */
+        private HttpInput.Content last;
+
+        BodyCapture(int maxBytes) {
+            this.maxBytes = maxBytes;
+        }
+
+        @Override
+        public synchronized HttpInput.Content readFrom(HttpInput.Content content) {
+            ByteBuffer buffer = content.getByteBuffer();
+            if (tooLong || content == last || buffer == null || !buffer.hasRemaining()) {
+                return content;
+            }
+            last = content;
+            int remaining = buffer.remaining();
+            if (length + remaining > maxBytes) {
+                tooLong = true;
+                bytes = null;
+                return content;
+            }
+            if (length + remaining > bytes.length) {
+                bytes = Arrays.copyOf(bytes, Math.min(maxBytes, Math.max(length + remaining, bytes.length * 2)));
+            }
+            buffer.duplicate().get(bytes, length, remaining);
+            length += remaining;
+            return content;
+        }
+
+        /**
+         * @return the bytes read so far, or null if the body was too long
+         */
+        synchronized byte[] getBytes() {
+            return tooLong ? null : Arrays.copyOf(bytes, length);
+        }
+    }
+}
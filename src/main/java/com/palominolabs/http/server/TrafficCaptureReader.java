@@ -0,0 +1,116 @@
+package com.palominolabs.http.server;
+
+import com.google.common.collect.ImmutableListMultimap;
+import com.google.common.collect.Lists;
+import java.io.BufferedInputStream;
+import java.io.ByteArrayInputStream;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FilenameFilter;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import javax.annotation.Nonnull;
+
+/**
+ * Reads files written by {@link TrafficCaptureConfig traffic capture}.
+ */
+public final class TrafficCaptureReader {
+
+    private TrafficCaptureReader() {
+    }
+
+    /**
+     * @param directory a directory of capture files
+     * @return the capture files in the directory, in the order they were started
+     */
+    @Nonnull
+    public static List<File> listCaptures(@Nonnull File directory) throws IOException {
+        File[] files = directory.listFiles(new FilenameFilter() {
+            @Override
+            public boolean accept(File dir, String name) {
+                return name.endsWith(TrafficCapture.FILE_SUFFIX);
+            }
+        });
+        if (files == null) {
+            throw new IOException("Could not list " + directory);
+        }
+        Arrays.sort(files);
+        return Lists.newArrayList(files);
+    }
+
+    /**
+     * @param capture a capture file, which may still be being written
+     * @return the complete requests in the file, in the order they arrived
+     * @throws IOException if the file couldn't be read or isn't a capture
+     */
+    @Nonnull
+    public static List<CapturedRequest> read(@Nonnull File capture) throws IOException {
+        List<CapturedRequest> requests = Lists.newArrayList();
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(capture)))) {
+            try {
+                if (in.readInt() != TrafficCapture.MAGIC) {
+                    throw new IOException(capture + " is not a traffic capture");
+                }
+                short version = in.readShort();
+                if (version != TrafficCapture.VERSION) {
+                    throw new IOException(capture + " has unsupported version " + version);
+                }
+                in.readShort();
+                in.readLong();
+            } catch (EOFException e) {
+                throw new IOException(capture + " is not a traffic capture", e);
+            }
+
+            while (true) {
+                byte[] record;
+                try {
+                    record = new byte[in.readInt()];
+                    in.readFully(record);
+                } catch (EOFException e) {
+                    // end of the file, or a record that was still being written
+                    break;
+                }
+                requests.add(readRequest(new DataInputStream(new ByteArrayInputStream(record))));
+            }
+        }
+
+        // written in the order they completed
+        Collections.sort(requests, new Comparator<CapturedRequest>() {
+            @Override
+            public int compare(CapturedRequest a, CapturedRequest b) {
+                return Long.compare(a.getOffsetNanos(), b.getOffsetNanos());
+            }
+        });
+        return requests;
+    }
+
+    private static CapturedRequest readRequest(DataInputStream in) throws IOException {
+        long offsetNanos = in.readLong();
+        String method = readText(in);
+        String uri = readText(in);
+        ImmutableListMultimap.Builder<String, String> headers = ImmutableListMultimap.builder();
+        int headerCount = in.readShort();
+        for (int i = 0; i < headerCount; i++) {
+            headers.put(readText(in), readText(in));
+        }
+        byte[] body = null;
+        int bodyLength = in.readInt();
+        if (bodyLength != -1) {
+            body = new byte[bodyLength];
+            in.readFully(body);
+        }
+        return new CapturedRequest(offsetNanos, method, uri, headers.build(), body);
+    }
+
+    private static String readText(DataInputStream in) throws IOException {
+        byte[] bytes = new byte[in.readShort()];
+        in.readFully(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+}
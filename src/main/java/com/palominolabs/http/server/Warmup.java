@@ -0,0 +1,75 @@
+package com.palominolabs.http.server;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import javax.annotation.concurrent.NotThreadSafe;
+import org.eclipse.jetty.server.LocalConnector;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Sends the requests in a {@link WarmupConfig} through a LocalConnector.
+ */
+@NotThreadSafe
+final class Warmup {
+
+    private static final Logger logger = LoggerFactory.getLogger(Warmup.class);
+
+    /**
+     * How long to wait for each response
+     */
+    private static final long RESPONSE_TIMEOUT_SECONDS = 10;
+
+    private final LocalConnector connector;
+    private final WarmupConfig config;
+
+    Warmup(LocalConnector connector, WarmupConfig config) {
+        this.connector = connector;
+        this.config = config;
+    }
+
+    void run() throws Exception {
+        List<String> requests = config.getRequests();
+        if (requests.isEmpty()) {
+            logger.warn("Warmup is configured without any requests; skipping it");
+            return;
+        }
+
+        ByteBuffer[] buffers = new ByteBuffer[requests.size()];
+        for (int i = 0; i < buffers.length; i++) {
+            buffers[i] = ByteBuffer.wrap(requests.get(i).getBytes(StandardCharsets.ISO_8859_1));
+        }
+
+        long startNanos = System.nanoTime();
+        long deadlineNanos = startNanos + TimeUnit.MILLISECONDS.toNanos(config.getMaxDurationMillis());
+        long sent = 0;
+        long errors = 0;
+        int iteration = 0;
+        while (iteration < config.getIterations() && System.nanoTime() - deadlineNanos < 0) {
+            for (ByteBuffer buffer : buffers) {
+                ByteBuffer response = connector.getResponse(buffer.duplicate(), RESPONSE_TIMEOUT_SECONDS,
+                    TimeUnit.SECONDS);
+                sent++;
+                if (response == null || isServerError(response)) {
+                    errors++;
+                }
+            }
+            iteration++;
+        }
+
+        long elapsedMillis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startNanos);
+        logger.info("Warmup sent " + sent + " requests in " + iteration + " iterations in " + elapsedMillis + " ms ("
+            + (elapsedMillis == 0 ? sent : sent * 1000 / elapsedMillis) + " requests/s, " + errors
+            + " timeouts or 5xx responses)");
+    }
+
+    /**
+     * @param response a response starting with a status line, e.g. "HTTP/1.1 200 OK"
+     */
+    private static boolean isServerError(ByteBuffer response) {
+        int statusStart = response.position() + "HTTP/1.1 ".length();
+        return response.limit() <= statusStart || response.get(statusStart) == '5';
+    }
+}
@@ -0,0 +1,45 @@
+package com.palominolabs.http.server;
+
+import java.io.IOException;
+import javax.servlet.ServletException;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import org.eclipse.jetty.server.Handler;
+import org.eclipse.jetty.server.LocalConnector;
+import org.eclipse.jetty.server.Request;
+import org.eclipse.jetty.server.handler.HandlerWrapper;
+
+/**
+ * Sends {@link Warmup} requests, which arrive on a LocalConnector, straight to the application's handlers. Otherwise
+ * they would show up in the access logs, statistics, request events, response cache and request timing as if they
+ * were real traffic.
+ *
+ * The application handlers are also part of the wrapped chain, which starts and stops them.
+ */
+final class WarmupBypassHandler extends HandlerWrapper {
+
+    private final Handler[] applicationHandlers;
+
+    /**
+     * @param applicationHandlers handlers to try in order until one handles a warmup request
+     */
+    WarmupBypassHandler(Handler... applicationHandlers) {
+        this.applicationHandlers = applicationHandlers.clone();
+    }
+
+    @Override
+    public void handle(String target, Request baseRequest, HttpServletRequest request, HttpServletResponse response)
+        throws IOException, ServletException {
+        if (!(baseRequest.getHttpChannel().getConnector() instanceof LocalConnector)) {
+            super.handle(target, baseRequest, request, response);
+            return;
+        }
+
+        for (Handler handler : applicationHandlers) {
+            handler.handle(target, baseRequest, request, response);
+            if (baseRequest.isHandled()) {
+                return;
+            }
+        }
+    }
+}
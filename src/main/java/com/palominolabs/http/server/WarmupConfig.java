@@ -0,0 +1,122 @@
+package com.palominolabs.http.server;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Collections;
+import java.util.List;
+import javax.annotation.Nonnull;
+import javax.annotation.concurrent.NotThreadSafe;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkNotNull;
+import static com.google.common.collect.Lists.newArrayList;
+
+/**
+ * Config for warming up the JIT before the server accepts connections.
+ *
+ * During {@link HttpServerWrapper#start()}, the server is started with only an in-memory connector and the
+ * configured requests are sent through it, one after another, until the iterations are done or the time is up. Only
+ * then are the configured connectors opened. Warmup requests go straight to the resource contexts and servlets,
+ * skipping access logging, stats, request events, the response cache and request timing, and their responses are
+ * discarded.
+ */
+@NotThreadSafe
+public final class WarmupConfig {
+
+    private final List<String> requests = newArrayList();
+
+    private int iterations = 1000;
+
+    private long maxDurationMillis = 30000;
+
+    /**
+     * @param rawRequest a complete HTTP/1.1 request, e.g. one taken from a capture. The connector's parser is used,
+     *                   so it needs a Host header.
+     */
+    public void addRequest(@Nonnull String rawRequest) {
+        checkNotNull(rawRequest);
+        // the bytes are what matter, so make sure they can be sent as-is
+        checkArgument(StandardCharsets.ISO_8859_1.newEncoder().canEncode(rawRequest),
+            "Raw request must be ISO-8859-1");
+        requests.add(rawRequest);
+    }
+
+    /**
+     * @param pathAndQuery path and optional query string to GET
+     */
+    public void addGetRequest(@Nonnull String pathAndQuery) {
+        addRequest("GET " + checkNotNull(pathAndQuery) + " HTTP/1.1\r\nHost: localhost\r\n\r\n");
+    }
+
+    @Nonnull
+    public List<String> getRequests() {
+        return Collections.unmodifiableList(requests);
+    }
+
+    public int getIterations() {
+        return iterations;
+    }
+
+    /**
+     * @param iterations number of times to send every request. Default is 1000.
+     */
+    public void setIterations(int iterations) {
+        checkArgument(iterations > 0, "Iterations must be positive");
+        this.iterations = iterations;
+    }
+
+    public long getMaxDurationMillis() {
+        return maxDurationMillis;
+    }
+
+    /**
+     * @param maxDurationMillis stop warming up after this long even if not all iterations are done. Default is 30000.
+     */
+    public void setMaxDurationMillis(long maxDurationMillis) {
+        checkArgument(maxDurationMillis > 0, "Max duration must be positive");
+        this.maxDurationMillis = maxDurationMillis;
+    }
+
+    /**
+     * @param rawRequest raw request
+     * @return this
+     * @see WarmupConfig#addRequest(String)
+     */
+    @Nonnull
+    public WarmupConfig withRequest(@Nonnull String rawRequest) {
+        addRequest(rawRequest);
+        return this;
+    }
+
+    /**
+     * @param pathAndQuery path and query
+     * @return this
+     * @see WarmupConfig#addGetRequest(String)
+     */
+    @Nonnull
+    public WarmupConfig withGetRequest(@Nonnull String pathAndQuery) {
+        addGetRequest(pathAndQuery);
+        return this;
+    }
+
+    /**
+     * @param iterations iterations
+     * @return this
+     * @see WarmupConfig#setIterations(int)
+     */
+    @Nonnull
+    public WarmupConfig withIterations(int iterations) {
+        setIterations(iterations);
+        return this;
+    }
+
+    /**
+     * @param maxDurationMillis max duration
+     * @return this
+     * @see WarmupConfig#setMaxDurationMillis(long)
+     */
+    @Nonnull
+    public WarmupConfig withMaxDurationMillis(long maxDurationMillis) {
+        setMaxDurationMillis(maxDurationMillis);
+        return this;
+    }
+}
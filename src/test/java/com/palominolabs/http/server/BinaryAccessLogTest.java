@@ -0,0 +1,206 @@
+package com.palominolabs.http.server;
+
+import com.google.common.base.Strings;
+import com.google.inject.AbstractModule;
+import com.google.inject.Guice;
+import com.google.inject.Injector;
+import com.google.inject.servlet.ServletModule;
+import org.apache.http.HttpResponse;
+import org.apache.http.client.methods.HttpGet;
+import org.apache.http.impl.client.CloseableHttpClient;
+import org.apache.http.impl.client.HttpClients;
+import org.apache.http.util.EntityUtils;
+import org.junit.After;
+import org.junit.BeforeClass;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.slf4j.bridge.SLF4JBridgeHandler;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.logging.LogManager;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public final class BinaryAccessLogTest {
+
+    private static final int HTTP_PORT = 28080;
+
+    @Rule
+    public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+    private HttpServerWrapper server;
+    private CloseableHttpClient client;
+
+    @BeforeClass
+    public static void setUpClass() throws Exception {
+        LogManager.getLogManager().reset();
+        SLF4JBridgeHandler.install();
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        if (server != null) {
+            client.close();
+            server.stop();
+        }
+    }
+
+    @Test
+    public void testRecordsWrittenAndExported() throws Exception {
+        File directory = new File(temporaryFolder.getRoot(), "access");
+        startServer(new BinaryAccessLogConfig(directory));
+
+        HttpGet get = new HttpGet("http://localhost:" + HTTP_PORT + "/test?a=%22b%22");
+        get.setHeader("Referer", "http://example.com/");
+        get.setHeader("User-Agent", "test-agent");
+        assertEquals(200, execute(get));
+        assertEquals(404, execute(new HttpGet("http://localhost:" + HTTP_PORT + "/nowhere")));
+
+        // stopping drains the queue
+        awaitLogged(2);
+        server.stop();
+        assertEquals(2, server.getBinaryAccessLog().getWrittenRecords());
+
+        List<File> segments = BinaryAccessLogReader.listSegments(directory);
+        assertEquals(1, segments.size());
+        List<AccessLogRecord> records = BinaryAccessLogReader.read(segments.get(0));
+        assertEquals(2, records.size());
+
+        AccessLogRecord record = records.get(0);
+        assertEquals("GET", record.getMethod());
+        assertEquals("/test?a=%22b%22", record.getUri());
+        assertEquals("HTTP/1.1", record.getProtocol());
+        assertEquals(200, record.getStatus());
+        assertTrue(record.getResponseBytes() > 0);
+        assertArrayEquals(new byte[]{127, 0, 0, 1}, record.getRemoteAddress());
+        assertNull(record.getRemoteUser());
+        assertEquals("http://example.com/", record.getReferer());
+        assertEquals("test-agent", record.getUserAgent());
+        assertEquals(404, records.get(1).getStatus());
+
+        StringBuilder out = new StringBuilder();
+        BinaryAccessLogReader.exportCombined(segments.get(0), out);
+        String[] lines = out.toString().split("\n");
+        assertEquals(2, lines.length);
+        assertTrue(lines[0], lines[0].matches(
+            "127\\.0\\.0\\.1 - - \\[\\d{2}/\\w{3}/\\d{4}:\\d{2}:\\d{2}:\\d{2} \\+0000] "
+            + "\"GET /test\\?a=%22b%22 HTTP/1\\.1\" 200 \\d+ \"http://example\\.com/\" \"test-agent\""));
+        assertTrue(lines[1], lines[1].contains("\"GET /nowhere HTTP/1.1\" 404 "));
+    }
+
+    @Test
+    public void testSegmentsRotateAndOldOnesAreDeleted() throws Exception {
+        File directory = temporaryFolder.getRoot();
+        startServer(new BinaryAccessLogConfig(directory)
+            .withSegmentSizeBytes(64 * 1024)
+            .withMaxSegments(2));
+
+        // about 2k per record, so 30 or so fit in a segment
+        String path = "/test?" + Strings.repeat("x", 2000);
+        for (int i = 0; i < 70; i++) {
+            assertEquals(200, execute(new HttpGet("http://localhost:" + HTTP_PORT + path)));
+        }
+        awaitLogged(70);
+        server.stop();
+
+        BinaryAccessLog log = server.getBinaryAccessLog();
+        assertEquals(70, log.getWrittenRecords());
+        assertEquals(3, log.getSegments());
+
+        List<File> segments = BinaryAccessLogReader.listSegments(directory);
+        assertEquals(2, segments.size());
+        int records = 0;
+        for (File segment : segments) {
+            assertTrue(segment.length() <= 64 * 1024);
+            records += BinaryAccessLogReader.read(segment).size();
+        }
+        // the first segment was deleted
+        assertTrue(records < 70);
+        assertEquals(0, log.getDroppedRecords());
+    }
+
+    @Test
+    public void testSegmentsFromEarlierRunsAreDeleted() throws Exception {
+        File directory = temporaryFolder.getRoot();
+        BinaryAccessLogConfig config = new BinaryAccessLogConfig(directory)
+            .withSegmentSizeBytes(64 * 1024)
+            .withMaxSegments(2);
+
+        // each run writes one segment
+        for (int i = 0; i < 3; i++) {
+            startServer(config);
+            assertEquals(200, execute(new HttpGet("http://localhost:" + HTTP_PORT + "/test")));
+            awaitLogged(1);
+            server.stop();
+            client.close();
+        }
+
+        List<File> segments = BinaryAccessLogReader.listSegments(directory);
+        assertEquals(2, segments.size());
+        for (File segment : segments) {
+            assertEquals(1, BinaryAccessLogReader.read(segment).size());
+        }
+    }
+
+    @Test
+    public void testLongTextIsTruncatedOnCodePointBoundary() {
+        // e-acute is 2 bytes and the snowman is 3 in UTF-8
+        byte[] utf8 = "a\u00e9\u2603".getBytes(StandardCharsets.UTF_8);
+
+        assertEquals(6, BinaryAccessLog.truncatedLength(utf8, 10));
+        assertEquals(6, BinaryAccessLog.truncatedLength(utf8, 6));
+        assertEquals(3, BinaryAccessLog.truncatedLength(utf8, 5));
+        assertEquals(3, BinaryAccessLog.truncatedLength(utf8, 4));
+        assertEquals(1, BinaryAccessLog.truncatedLength(utf8, 2));
+        assertEquals(0, BinaryAccessLog.truncatedLength(utf8, 0));
+    }
+
+    private void startServer(BinaryAccessLogConfig binaryAccessLogConfig) throws Exception {
+        Injector injector = Guice.createInjector(new AbstractModule() {
+            @Override
+            protected void configure() {
+                binder().requireExplicitBindings();
+                install(new HttpServerWrapperModule());
+                install(new ServletModule() {
+                    @Override
+                    protected void configureServlets() {
+                        bind(TestServlet.class);
+                        serve("/test").with(TestServlet.class);
+                    }
+                });
+            }
+        });
+
+        server = injector.getInstance(HttpServerWrapperFactory.class).getHttpServerWrapper(
+            new HttpServerWrapperConfig()
+                .withBinaryAccessLogConfig(binaryAccessLogConfig)
+                .withHttpServerConnectorConfig(HttpServerConnectorConfig.forHttp("localhost", HTTP_PORT)));
+        server.start();
+
+        client = HttpClients.createDefault();
+    }
+
+    private int execute(HttpGet get) throws IOException {
+        HttpResponse response = client.execute(get);
+        EntityUtils.consume(response.getEntity());
+        return response.getStatusLine().getStatusCode();
+    }
+
+    /**
+     * The request log is called after the response has been sent, so the last request may not have been logged yet
+     * when its response arrives
+     */
+    private void awaitLogged(long records) throws InterruptedException {
+        BinaryAccessLog log = server.getBinaryAccessLog();
+        for (int i = 0; i < 1000 && log.getWrittenRecords() + log.getDroppedRecords() < records; i++) {
+            Thread.sleep(10);
+        }
+    }
+}
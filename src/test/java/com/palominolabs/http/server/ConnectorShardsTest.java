@@ -0,0 +1,122 @@
+package com.palominolabs.http.server;
+
+import com.google.inject.AbstractModule;
+import com.google.inject.Guice;
+import com.google.inject.Injector;
+import com.google.inject.servlet.ServletModule;
+import org.apache.http.HttpResponse;
+import org.apache.http.client.methods.HttpGet;
+import org.apache.http.impl.client.CloseableHttpClient;
+import org.apache.http.impl.client.HttpClients;
+import org.apache.http.util.EntityUtils;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.BeforeClass;
+import org.junit.Test;
+import org.slf4j.bridge.SLF4JBridgeHandler;
+
+import java.util.List;
+import java.util.logging.LogManager;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+import static org.junit.Assume.assumeTrue;
+
+public final class ConnectorShardsTest {
+
+    private static final int HTTP_PORT = 28080;
+
+    private HttpServerWrapperFactory factory;
+    private HttpServerWrapper server;
+
+    @BeforeClass
+    public static void setUpClass() throws Exception {
+        LogManager.getLogManager().reset();
+        SLF4JBridgeHandler.install();
+    }
+
+    @Before
+    public void setUp() {
+        Injector injector = Guice.createInjector(new AbstractModule() {
+            @Override
+            protected void configure() {
+                binder().requireExplicitBindings();
+                install(new HttpServerWrapperModule());
+                install(new ServletModule() {
+                    @Override
+                    protected void configureServlets() {
+                        bind(TestServlet.class);
+                        serve("/test").with(TestServlet.class);
+                    }
+                });
+            }
+        });
+        factory = injector.getInstance(HttpServerWrapperFactory.class);
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        if (server != null) {
+            server.stop();
+        }
+    }
+
+    @Test
+    public void testShardsShareThePort() throws Exception {
+        assumeTrue(isReusePortAvailable());
+
+        server = factory.getHttpServerWrapper(new HttpServerWrapperConfig()
+            .withHttpServerConnectorConfig(HttpServerConnectorConfig.forHttp("localhost", HTTP_PORT).withShards(3)));
+        server.start();
+
+        // a new client for each request so that each one is a new connection
+        for (int i = 0; i < 30; i++) {
+            try (CloseableHttpClient client = HttpClients.createDefault()) {
+                HttpResponse response = client.execute(new HttpGet("http://localhost:" + HTTP_PORT + "/test"));
+                EntityUtils.consume(response.getEntity());
+                assertEquals(200, response.getStatusLine().getStatusCode());
+            }
+        }
+
+        List<ConnectorShardStats> stats = server.getConnectorShardStats();
+        assertEquals(3, stats.size());
+        long accepted = 0;
+        for (int i = 0; i < stats.size(); i++) {
+            assertEquals(i, stats.get(i).getShard());
+            assertEquals(HTTP_PORT, stats.get(i).getListenPort());
+            accepted += stats.get(i).getAcceptedConnections();
+        }
+        assertEquals(30, accepted);
+    }
+
+    @Test
+    public void testUnshardedConnectorHasNoShardStats() throws Exception {
+        server = factory.getHttpServerWrapper(new HttpServerWrapperConfig()
+            .withHttpServerConnectorConfig(HttpServerConnectorConfig.forHttp("localhost", HTTP_PORT)));
+        server.start();
+
+        assertTrue(server.getConnectorShardStats().isEmpty());
+    }
+
+    @Test
+    public void testShardsNeedAFixedPort() throws Exception {
+        HttpServerWrapper wrapper = factory.getHttpServerWrapper(new HttpServerWrapperConfig()
+            .withHttpServerConnectorConfig(HttpServerConnectorConfig.forHttp("localhost", 0).withShards(2)));
+        try {
+            wrapper.start();
+            fail();
+        } catch (IllegalArgumentException e) {
+            assertEquals("Connectors with shards need a fixed port", e.getMessage());
+        }
+    }
+
+    private static boolean isReusePortAvailable() {
+        try {
+            Class.forName("java.net.StandardSocketOptions").getField("SO_REUSEPORT");
+            return true;
+        } catch (ReflectiveOperationException e) {
+            return false;
+        }
+    }
+}
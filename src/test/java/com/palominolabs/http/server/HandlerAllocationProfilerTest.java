@@ -0,0 +1,114 @@
+package com.palominolabs.http.server;
+
+import com.google.inject.AbstractModule;
+import com.google.inject.Guice;
+import com.google.inject.Injector;
+import com.google.inject.servlet.ServletModule;
+import org.apache.http.HttpResponse;
+import org.apache.http.client.methods.HttpGet;
+import org.apache.http.impl.client.CloseableHttpClient;
+import org.apache.http.impl.client.HttpClients;
+import org.apache.http.util.EntityUtils;
+import org.junit.After;
+import org.junit.BeforeClass;
+import org.junit.Test;
+import org.slf4j.bridge.SLF4JBridgeHandler;
+
+import javax.servlet.http.HttpServlet;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.logging.LogManager;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public final class HandlerAllocationProfilerTest {
+
+    private static final int HTTP_PORT = 28080;
+
+    private HttpServerWrapper server;
+
+    @BeforeClass
+    public static void setUpClass() throws Exception {
+        LogManager.getLogManager().reset();
+        SLF4JBridgeHandler.install();
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        if (server != null) {
+            server.stop();
+        }
+    }
+
+    @Test
+    public void testStagesCountTheirOwnAllocations() throws Exception {
+        Injector injector = Guice.createInjector(new AbstractModule() {
+            @Override
+            protected void configure() {
+                binder().requireExplicitBindings();
+                install(new HttpServerWrapperModule());
+                install(new ServletModule() {
+                    @Override
+                    protected void configureServlets() {
+                        serve("/*").with(new AllocatingServlet());
+                    }
+                });
+            }
+        });
+
+        HandlerAllocationProfiler profiler = new HandlerAllocationProfiler();
+        server = injector.getInstance(HttpServerWrapperFactory.class).getHttpServerWrapper(
+            new HttpServerWrapperConfig()
+                .withAccessLogConfigFileInClasspath(null)
+                .withRequestTimingConfig(new RequestTimingConfig())
+                .withHttpServerConnectorConfig(HttpServerConnectorConfig.forHttp("localhost", HTTP_PORT)));
+        server.setAllocationProfiler(profiler);
+        server.start();
+
+        try (CloseableHttpClient client = HttpClients.createDefault()) {
+            for (int i = 0; i < 10; i++) {
+                HttpResponse response = client.execute(new HttpGet("http://localhost:" + HTTP_PORT + "/"));
+                assertEquals(200, response.getStatusLine().getStatusCode());
+                EntityUtils.consume(response.getEntity());
+            }
+        }
+        // the last request may still be on its way out of the handlers
+        Thread.sleep(100);
+
+        Map<String, HandlerAllocationProfiler.StageAllocation> stages = new HashMap<>();
+        long sum = 0;
+        for (HandlerAllocationProfiler.StageAllocation stage : profiler.getStages()) {
+            stages.put(stage.getName(), stage);
+            sum += stage.getBytes();
+        }
+        assertEquals(10, profiler.getRequests());
+        assertEquals(10, stages.get("HandlerCollection").getCalls());
+        assertEquals(10, stages.get("RequestTimingHandler").getCalls());
+        assertEquals(10, stages.get("GuiceFilter").getCalls());
+        // the servlet isn't a stage, so it's counted in the filter that called it
+        assertTrue(String.valueOf(stages.get("GuiceFilter").getBytes()),
+            stages.get("GuiceFilter").getBytes() >= 10 * AllocatingServlet.BYTES);
+        assertEquals(profiler.getTotalBytes(), sum);
+
+        profiler.reset();
+        assertEquals(0, profiler.getRequests());
+        assertEquals(0, profiler.getTotalBytes());
+        for (HandlerAllocationProfiler.StageAllocation stage : profiler.getStages()) {
+            assertEquals(0, stage.getBytes());
+        }
+    }
+
+    private static final class AllocatingServlet extends HttpServlet {
+        static final int BYTES = 1 << 20;
+
+        @Override
+        protected void doGet(HttpServletRequest req, HttpServletResponse resp) throws IOException {
+            byte[] buffer = new byte[BYTES];
+            resp.getWriter().print(buffer.length);
+        }
+    }
+}
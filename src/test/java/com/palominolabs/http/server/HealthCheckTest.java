@@ -0,0 +1,183 @@
+package com.palominolabs.http.server;
+
+import com.google.inject.AbstractModule;
+import com.google.inject.Guice;
+import com.google.inject.Injector;
+import com.google.inject.servlet.ServletModule;
+import org.apache.http.HttpResponse;
+import org.apache.http.client.methods.HttpGet;
+import org.apache.http.client.methods.HttpHead;
+import org.apache.http.impl.client.CloseableHttpClient;
+import org.apache.http.impl.client.HttpClients;
+import org.apache.http.util.EntityUtils;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.BeforeClass;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.slf4j.bridge.SLF4JBridgeHandler;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.logging.LogManager;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+
+public final class HealthCheckTest {
+
+    private static final int HTTP_PORT = 28080;
+
+    @Rule
+    public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+    private volatile boolean ready;
+
+    private HttpServerWrapper server;
+    private CloseableHttpClient client;
+
+    @BeforeClass
+    public static void setUpClass() throws Exception {
+        LogManager.getLogManager().reset();
+        SLF4JBridgeHandler.install();
+    }
+
+    @Before
+    public void setUp() throws Exception {
+        ready = true;
+
+        startServer(new HttpServerWrapperConfig()
+            .withAccessLogConfigFileInClasspath("/logback-access-test.xml")
+            .withHealthCheckConfig(newHealthCheckConfig()));
+
+        client = HttpClients.createDefault();
+    }
+
+    private void startServer(HttpServerWrapperConfig config) throws Exception {
+        Injector injector = Guice.createInjector(new AbstractModule() {
+            @Override
+            protected void configure() {
+                binder().requireExplicitBindings();
+                install(new HttpServerWrapperModule());
+                install(new ServletModule() {
+                    @Override
+                    protected void configureServlets() {
+                        bind(TestServlet.class);
+                        // never reached, since the health handler answers first
+                        serve("/health").with(TestServlet.class);
+                    }
+                });
+            }
+        });
+
+        server = injector.getInstance(HttpServerWrapperFactory.class).getHttpServerWrapper(
+            config.withHttpServerConnectorConfig(HttpServerConnectorConfig.forHttp("localhost", HTTP_PORT)));
+        server.start();
+    }
+
+    private HealthCheckConfig newHealthCheckConfig() {
+        return new HealthCheckConfig()
+            .withCacheMillis(0)
+            .withShutdownDelayMillis(500)
+            .withReadinessCheck(new ReadinessCheck() {
+                @Override
+                public boolean isReady() {
+                    return ready;
+                }
+            });
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        client.close();
+        server.stop();
+    }
+
+    @Test
+    public void testReady() throws IOException {
+        HttpResponse response = client.execute(new HttpGet("http://localhost:" + HTTP_PORT + "/health"));
+        assertEquals(200, response.getStatusLine().getStatusCode());
+        assertEquals("no-store", response.getFirstHeader("Cache-Control").getValue());
+        assertEquals("OK\n", EntityUtils.toString(response.getEntity()));
+    }
+
+    @Test
+    public void testHead() throws IOException {
+        HttpResponse response = client.execute(new HttpHead("http://localhost:" + HTTP_PORT + "/health"));
+        assertEquals(200, response.getStatusLine().getStatusCode());
+        assertNull(response.getEntity());
+    }
+
+    @Test
+    public void testCheckFails() throws IOException {
+        ready = false;
+
+        HttpResponse response = client.execute(new HttpGet("http://localhost:" + HTTP_PORT + "/health"));
+        assertEquals(503, response.getStatusLine().getStatusCode());
+        assertEquals("UNAVAILABLE\n", EntityUtils.toString(response.getEntity()));
+    }
+
+    @Test
+    public void testOtherPathsUnaffected() throws IOException {
+        HttpResponse response = client.execute(new HttpGet("http://localhost:" + HTTP_PORT + "/health/more"));
+        assertEquals(404, response.getStatusLine().getStatusCode());
+        EntityUtils.consume(response.getEntity());
+    }
+
+    @Test
+    public void testProbesLoggedOnceWhenComplete() throws Exception {
+        server.stop();
+        File directory = temporaryFolder.newFolder();
+        startServer(new HttpServerWrapperConfig()
+            .withBinaryAccessLogConfig(new BinaryAccessLogConfig(directory))
+            .withHealthCheckConfig(newHealthCheckConfig().withLogRequests(true)));
+
+        HttpResponse response = client.execute(new HttpGet("http://localhost:" + HTTP_PORT + "/health"));
+        assertEquals(200, response.getStatusLine().getStatusCode());
+        EntityUtils.consume(response.getEntity());
+        BinaryAccessLog log = server.getBinaryAccessLog();
+        for (int i = 0; i < 1000 && log.getWrittenRecords() == 0; i++) {
+            Thread.sleep(10);
+        }
+        server.stop();
+
+        List<File> segments = BinaryAccessLogReader.listSegments(directory);
+        List<AccessLogRecord> records = BinaryAccessLogReader.read(segments.get(0));
+        assertEquals(1, records.size());
+        assertEquals("/health", records.get(0).getUri());
+        assertEquals(200, records.get(0).getStatus());
+        assertEquals("OK\n".length(), records.get(0).getResponseBytes());
+    }
+
+    @Test
+    public void testNotReadyDuringShutdownDelay() throws Exception {
+        ExecutorService executor = Executors.newSingleThreadExecutor();
+        try {
+            Future<Void> stopped = executor.submit(new Callable<Void>() {
+                @Override
+                public Void call() throws Exception {
+                    server.stop();
+                    return null;
+                }
+            });
+            // let stop() start waiting
+            Thread.sleep(200);
+            assertFalse(stopped.isDone());
+
+            HttpResponse response = client.execute(new HttpGet("http://localhost:" + HTTP_PORT + "/health"));
+            assertEquals(503, response.getStatusLine().getStatusCode());
+            EntityUtils.consume(response.getEntity());
+
+            stopped.get();
+        } finally {
+            executor.shutdown();
+        }
+    }
+}
@@ -0,0 +1,191 @@
+package com.palominolabs.http.server;
+
+import com.google.inject.AbstractModule;
+import com.google.inject.Guice;
+import com.google.inject.Injector;
+import com.google.inject.servlet.ServletModule;
+import org.apache.http.HttpResponse;
+import org.apache.http.client.methods.HttpGet;
+import org.apache.http.impl.client.CloseableHttpClient;
+import org.apache.http.impl.client.HttpClients;
+import org.apache.http.util.EntityUtils;
+import org.junit.After;
+import org.junit.BeforeClass;
+import org.junit.Test;
+import org.slf4j.bridge.SLF4JBridgeHandler;
+
+import javax.servlet.http.HttpServlet;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.logging.LogManager;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public final class HeavyHittersTest {
+
+    private static final int HTTP_PORT = 28080;
+
+    private HttpServerWrapper server;
+    private CloseableHttpClient client;
+
+    @BeforeClass
+    public static void setUpClass() throws Exception {
+        LogManager.getLogManager().reset();
+        SLF4JBridgeHandler.install();
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        if (client != null) {
+            client.close();
+        }
+        if (server != null) {
+            server.stop();
+        }
+    }
+
+    @Test
+    public void testSpaceSavingTracksFrequentKeys() {
+        SpaceSaving summary = new SpaceSaving(20);
+        int[] every = {2, 3, 5};
+        Map<String, Integer> trueCounts = new HashMap<>();
+        // heavy keys interleaved with 1000 keys seen once each; any key with more than 1/20 of the stream is tracked
+        for (int i = 0; i < 1000; i++) {
+            for (int key = 0; key < every.length; key++) {
+                if (i % every[key] == 0) {
+                    summary.add("heavy-" + key, 1);
+                    Integer count = trueCounts.get("heavy-" + key);
+                    trueCounts.put("heavy-" + key, count == null ? 1 : count + 1);
+                }
+            }
+            summary.add("once-" + i, 1);
+        }
+
+        Map<String, SpaceSaving.Counter> counters = new HashMap<>();
+        for (SpaceSaving.Counter counter : summary.getCounters()) {
+            counters.put(counter.getKey(), counter);
+        }
+        assertEquals(20, counters.size());
+        for (Map.Entry<String, Integer> entry : trueCounts.entrySet()) {
+            SpaceSaving.Counter counter = counters.get(entry.getKey());
+            assertTrue(entry.getKey(), counter != null);
+            assertTrue(counter.getTotal() >= entry.getValue());
+            assertTrue(counter.getTotal() - counter.getError() <= entry.getValue());
+        }
+    }
+
+    @Test
+    public void testTopPathsAndUserAgents() throws Exception {
+        startServer(new HeavyHittersConfig());
+
+        for (int i = 0; i < 30; i++) {
+            get("/hot", "hot-agent");
+        }
+        for (int i = 0; i < 5; i++) {
+            get("/warm", "other-agent");
+            get("/slow", "other-agent");
+        }
+        HeavyHitters heavyHitters = server.getHeavyHitters();
+        List<HeavyHitter> paths = awaitTopByCount(heavyHitters, HeavyHitters.Dimension.PATH, 40);
+
+        assertEquals("/hot", paths.get(0).getKey());
+        assertEquals(30, paths.get(0).getValue());
+        assertEquals(0, paths.get(0).getError());
+        assertEquals(3, paths.size());
+
+        assertEquals("/slow", heavyHitters.getTopByLatency(HeavyHitters.Dimension.PATH, 1).get(0).getKey());
+
+        List<HeavyHitter> agents = heavyHitters.getTopByCount(HeavyHitters.Dimension.USER_AGENT, 10);
+        assertEquals("hot-agent", agents.get(0).getKey());
+        assertEquals("other-agent", agents.get(1).getKey());
+        assertEquals(10, agents.get(1).getValue());
+
+        List<HeavyHitter> clients = heavyHitters.getTopByCount(HeavyHitters.Dimension.CLIENT, 10);
+        assertEquals(1, clients.size());
+        assertEquals(40, clients.get(0).getValue());
+        assertEquals(0, heavyHitters.getDroppedRequests());
+    }
+
+    @Test
+    public void testOldRequestsLeaveWindow() throws Exception {
+        startServer(new HeavyHittersConfig().withWindowMillis(300).withSlices(3));
+
+        for (int i = 0; i < 5; i++) {
+            get("/old", "agent");
+        }
+        HeavyHitters heavyHitters = server.getHeavyHitters();
+        awaitTopByCount(heavyHitters, HeavyHitters.Dimension.PATH, 5);
+
+        Thread.sleep(400);
+        assertTrue(heavyHitters.getTopByCount(HeavyHitters.Dimension.PATH, 10).isEmpty());
+    }
+
+    private static List<HeavyHitter> awaitTopByCount(HeavyHitters heavyHitters, HeavyHitters.Dimension dimension,
+        long total) throws InterruptedException {
+        // counted by a background thread
+        for (int i = 0; i < 200; i++) {
+            List<HeavyHitter> top = heavyHitters.getTopByCount(dimension, 10);
+            long sum = 0;
+            for (HeavyHitter hitter : top) {
+                sum += hitter.getValue();
+            }
+            if (sum == total) {
+                return top;
+            }
+            Thread.sleep(10);
+        }
+        throw new AssertionError("Requests weren't counted: " + heavyHitters.getTopByCount(dimension, 10));
+    }
+
+    private void startServer(HeavyHittersConfig heavyHittersConfig) throws Exception {
+        Injector injector = Guice.createInjector(new AbstractModule() {
+            @Override
+            protected void configure() {
+                binder().requireExplicitBindings();
+                install(new HttpServerWrapperModule());
+                install(new ServletModule() {
+                    @Override
+                    protected void configureServlets() {
+                        serve("/*").with(new SleepingServlet());
+                    }
+                });
+            }
+        });
+
+        server = injector.getInstance(HttpServerWrapperFactory.class).getHttpServerWrapper(
+            new HttpServerWrapperConfig()
+                .withAccessLogConfigFileInClasspath("/logback-access-test.xml")
+                .withHeavyHittersConfig(heavyHittersConfig)
+                .withHttpServerConnectorConfig(HttpServerConnectorConfig.forHttp("localhost", HTTP_PORT)));
+        server.start();
+
+        client = HttpClients.createDefault();
+    }
+
+    private void get(String path, String userAgent) throws IOException {
+        HttpGet get = new HttpGet("http://localhost:" + HTTP_PORT + path);
+        get.setHeader("User-Agent", userAgent);
+        HttpResponse response = client.execute(get);
+        assertEquals(200, response.getStatusLine().getStatusCode());
+        EntityUtils.consume(response.getEntity());
+    }
+
+    private static final class SleepingServlet extends HttpServlet {
+        @Override
+        protected void doGet(HttpServletRequest req, HttpServletResponse resp) throws IOException {
+            if (req.getRequestURI().equals("/slow")) {
+                try {
+                    Thread.sleep(50);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+            resp.getWriter().print("ok");
+        }
+    }
+}
@@ -0,0 +1,216 @@
+package com.palominolabs.http.server;
+
+import com.google.common.io.CharStreams;
+import com.google.inject.AbstractModule;
+import com.google.inject.Guice;
+import com.google.inject.Injector;
+import com.google.inject.Singleton;
+import com.google.inject.servlet.ServletModule;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.BeforeClass;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.slf4j.bridge.SLF4JBridgeHandler;
+
+import javax.net.ssl.SSLContext;
+import javax.net.ssl.SSLSocket;
+import javax.net.ssl.TrustManager;
+import javax.net.ssl.X509TrustManager;
+import javax.servlet.http.HttpServlet;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.security.KeyStore;
+import java.security.cert.X509Certificate;
+import java.util.List;
+import java.util.logging.LogManager;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public final class HttpServerWrapperProxyProtocolTest {
+
+    private static final int HTTP_PORT = 28080;
+    private static final int TLS_PORT = 28443;
+
+    private static final String PROXY_V1_HEADER = "PROXY TCP4 192.0.2.1 192.0.2.2 56324 80\r\n";
+    /**
+     * The same addresses and ports as {@link #PROXY_V1_HEADER}
+     */
+    private static final byte[] PROXY_V2_HEADER = {
+        // signature
+        0x0D, 0x0A, 0x0D, 0x0A, 0x00, 0x0D, 0x0A, 0x51, 0x55, 0x49, 0x54, 0x0A,
+        // version 2, PROXY command; TCP over IPv4; 12 bytes of addresses
+        0x21, 0x11, 0x00, 0x0C,
+        (byte) 192, 0, 2, 1,
+        (byte) 192, 0, 2, 2,
+        (byte) 0xDC, 0x04,
+        0x00, 0x50};
+
+    private static final String REQUEST = "GET /remote-addr HTTP/1.1\r\nHost: localhost\r\nConnection: close\r\n\r\n";
+
+    @Rule
+    public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+    private HttpServerWrapper server;
+
+    @BeforeClass
+    public static void setUpClass() throws Exception {
+        LogManager.getLogManager().reset();
+        SLF4JBridgeHandler.install();
+    }
+
+    @Before
+    public void setUp() throws Exception {
+        Injector injector = Guice.createInjector(new AbstractModule() {
+            @Override
+            protected void configure() {
+                binder().requireExplicitBindings();
+                install(new HttpServerWrapperModule());
+                install(new ServletModule() {
+                    @Override
+                    protected void configureServlets() {
+                        bind(RemoteAddrServlet.class);
+                        serve("/remote-addr").with(RemoteAddrServlet.class);
+                    }
+                });
+            }
+        });
+
+        KeyStore keyStore = KeyStore.getInstance("PKCS12");
+        try (InputStream stream = getClass().getResourceAsStream("/cert-and-key.p12")) {
+            keyStore.load(stream, "password".toCharArray());
+        }
+
+        server = injector.getInstance(HttpServerWrapperFactory.class).getHttpServerWrapper(
+            new HttpServerWrapperConfig()
+                .withBinaryAccessLogConfig(new BinaryAccessLogConfig(temporaryFolder.getRoot()))
+                .withHttpServerConnectorConfig(HttpServerConnectorConfig.forHttp("localhost", HTTP_PORT)
+                    .withProxyProtocol(true))
+                .withHttpServerConnectorConfig(HttpServerConnectorConfig.forHttps("localhost", TLS_PORT)
+                    .withTlsKeystore(keyStore)
+                    .withTlsKeystorePassphrase("password")
+                    .withProxyProtocol(true)));
+        server.start();
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        server.stop();
+    }
+
+    @Test
+    public void testProxyV1ClientAddressIsRemoteAddr() throws Exception {
+        String response = sendRaw(PROXY_V1_HEADER.getBytes(StandardCharsets.US_ASCII), REQUEST);
+
+        assertTrue(response, response.startsWith("HTTP/1.1 200"));
+        assertTrue(response, response.endsWith("192.0.2.1"));
+        assertLoggedClientAddress();
+    }
+
+    @Test
+    public void testProxyV2ClientAddressIsRemoteAddr() throws Exception {
+        String response = sendRaw(PROXY_V2_HEADER, REQUEST);
+
+        assertTrue(response, response.startsWith("HTTP/1.1 200"));
+        assertTrue(response, response.endsWith("192.0.2.1"));
+        assertLoggedClientAddress();
+    }
+
+    @Test
+    public void testProxyHeaderAheadOfTls() throws Exception {
+        String response = sendTls(PROXY_V1_HEADER.getBytes(StandardCharsets.US_ASCII), REQUEST);
+
+        assertTrue(response, response.startsWith("HTTP/1.1 200"));
+        assertTrue(response, response.endsWith("192.0.2.1"));
+        assertLoggedClientAddress();
+    }
+
+    @Test
+    public void testConnectionWithoutProxyHeaderIsRejected() throws IOException {
+        String response = sendRaw(new byte[0], REQUEST);
+
+        assertTrue(response, response.isEmpty());
+    }
+
+    /**
+     * Check that the access log has one request, from the address in the PROXY header
+     */
+    private void assertLoggedClientAddress() throws Exception {
+        // the request log is called after the response has been sent
+        BinaryAccessLog log = server.getBinaryAccessLog();
+        for (int i = 0; i < 1000 && log.getWrittenRecords() == 0; i++) {
+            Thread.sleep(10);
+        }
+        List<File> segments = BinaryAccessLogReader.listSegments(temporaryFolder.getRoot());
+        assertEquals(1, segments.size());
+        List<AccessLogRecord> records = BinaryAccessLogReader.read(segments.get(0));
+        assertEquals(1, records.size());
+        assertArrayEquals(new byte[]{(byte) 192, 0, 2, 1}, records.get(0).getRemoteAddress());
+    }
+
+    private static String sendRaw(byte[] proxyHeader, String request) throws IOException {
+        try (Socket socket = new Socket("localhost", HTTP_PORT)) {
+            OutputStream out = socket.getOutputStream();
+            out.write(proxyHeader);
+            out.write(request.getBytes(StandardCharsets.US_ASCII));
+            out.flush();
+            return CharStreams.toString(new InputStreamReader(socket.getInputStream(), StandardCharsets.US_ASCII));
+        }
+    }
+
+    /**
+     * Send the PROXY header in the clear, as a load balancer does, and then the request over TLS
+     */
+    private static String sendTls(byte[] proxyHeader, String request) throws Exception {
+        SSLContext sslContext = SSLContext.getInstance("TLS");
+        sslContext.init(null, new TrustManager[]{new X509TrustManager() {
+            @Override
+            public void checkClientTrusted(X509Certificate[] x509Certificates, String s) {
+                throw new UnsupportedOperationException();
+            }
+
+            @Override
+            public void checkServerTrusted(X509Certificate[] x509Certificates, String s) {
+            }
+
+            @Override
+            public X509Certificate[] getAcceptedIssuers() {
+                return null;
+            }
+        }}, null);
+
+        try (Socket socket = new Socket("localhost", TLS_PORT)) {
+            OutputStream rawOut = socket.getOutputStream();
+            rawOut.write(proxyHeader);
+            rawOut.flush();
+
+            try (SSLSocket tlsSocket = (SSLSocket) sslContext.getSocketFactory()
+                .createSocket(socket, "localhost", TLS_PORT, true)) {
+                OutputStream out = tlsSocket.getOutputStream();
+                out.write(request.getBytes(StandardCharsets.US_ASCII));
+                out.flush();
+                return CharStreams.toString(
+                    new InputStreamReader(tlsSocket.getInputStream(), StandardCharsets.US_ASCII));
+            }
+        }
+    }
+
+    @Singleton
+    public static class RemoteAddrServlet extends HttpServlet {
+        @Override
+        protected void doGet(HttpServletRequest req, HttpServletResponse resp) throws IOException {
+            resp.setContentType("text/plain");
+            resp.getWriter().append(req.getRemoteAddr());
+        }
+    }
+}
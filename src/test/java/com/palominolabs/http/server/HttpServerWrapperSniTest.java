@@ -0,0 +1,117 @@
+package com.palominolabs.http.server;
+
+import com.google.inject.AbstractModule;
+import com.google.inject.Guice;
+import com.google.inject.Injector;
+import com.google.inject.servlet.ServletModule;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.BeforeClass;
+import org.junit.Test;
+import org.slf4j.bridge.SLF4JBridgeHandler;
+
+import javax.net.ssl.SNIHostName;
+import javax.net.ssl.SNIServerName;
+import javax.net.ssl.SSLContext;
+import javax.net.ssl.SSLParameters;
+import javax.net.ssl.SSLSocket;
+import javax.net.ssl.TrustManager;
+import javax.net.ssl.X509TrustManager;
+import javax.security.auth.x500.X500Principal;
+import java.io.InputStream;
+import java.security.KeyStore;
+import java.security.cert.X509Certificate;
+import java.util.Collections;
+import java.util.logging.LogManager;
+
+import static org.junit.Assert.assertEquals;
+
+public final class HttpServerWrapperSniTest {
+
+    private static final int TLS_PORT = 28443;
+
+    private HttpServerWrapper server;
+
+    @BeforeClass
+    public static void setUpClass() throws Exception {
+        LogManager.getLogManager().reset();
+        SLF4JBridgeHandler.install();
+    }
+
+    @Before
+    public void setUp() throws Exception {
+        HttpServerConnectorConfig httpsConfig = HttpServerConnectorConfig.forHttps("localhost", TLS_PORT)
+            .withTlsKeystore(getKeyStore("/cert-and-key.p12"))
+            .withTlsKeystorePassphrase("password")
+            .withTlsSniKeystore(getKeyStore("/sni-cert-and-key.p12"), "password");
+
+        Injector injector = Guice.createInjector(new AbstractModule() {
+            @Override
+            protected void configure() {
+                binder().requireExplicitBindings();
+                install(new HttpServerWrapperModule());
+                install(new ServletModule());
+            }
+        });
+
+        server = injector.getInstance(HttpServerWrapperFactory.class).getHttpServerWrapper(
+            new HttpServerWrapperConfig()
+                .withAccessLogConfigFileInClasspath("/logback-access-test.xml")
+                .withHttpServerConnectorConfig(httpsConfig));
+        server.start();
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        server.stop();
+    }
+
+    @Test
+    public void testSniCertForExactHostName() throws Exception {
+        assertEquals("CN=sni.example.com, O=Palomino Labs",
+            getServerCert("sni.example.com").getSubjectX500Principal().getName(X500Principal.RFC1779));
+    }
+
+    @Test
+    public void testSniCertForWildcardHostName() throws Exception {
+        assertEquals("CN=sni.example.com, O=Palomino Labs",
+            getServerCert("foo.sni.example.com").getSubjectX500Principal().getName(X500Principal.RFC1779));
+    }
+
+    private static X509Certificate getServerCert(String sniHostName) throws Exception {
+        SSLContext sslContext = SSLContext.getInstance("TLS");
+        sslContext.init(null, new TrustManager[]{new X509TrustManager() {
+            @Override
+            public void checkClientTrusted(X509Certificate[] x509Certificates, String s) {
+                throw new UnsupportedOperationException();
+            }
+
+            @Override
+            public void checkServerTrusted(X509Certificate[] x509Certificates, String s) {
+            }
+
+            @Override
+            public X509Certificate[] getAcceptedIssuers() {
+                return null;
+            }
+        }}, null);
+
+        SSLSocket socket = (SSLSocket) sslContext.getSocketFactory().createSocket("localhost", TLS_PORT);
+        try {
+            SSLParameters sslParameters = socket.getSSLParameters();
+            sslParameters.setServerNames(Collections.<SNIServerName>singletonList(new SNIHostName(sniHostName)));
+            socket.setSSLParameters(sslParameters);
+            socket.startHandshake();
+            return (X509Certificate) socket.getSession().getPeerCertificates()[0];
+        } finally {
+            socket.close();
+        }
+    }
+
+    private static KeyStore getKeyStore(String path) throws Exception {
+        InputStream stream = HttpServerWrapperSniTest.class.getResourceAsStream(path);
+        KeyStore keyStore = KeyStore.getInstance("PKCS12");
+        keyStore.load(stream, "password".toCharArray());
+        return keyStore;
+    }
+}
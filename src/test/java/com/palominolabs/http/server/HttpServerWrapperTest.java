@@ -8,6 +8,7 @@ import com.google.common.collect.Lists;
 import com.google.inject.AbstractModule;
 import com.google.inject.Guice;
 import com.google.inject.Injector;
+import com.google.inject.Provider;
 import com.google.inject.servlet.ServletModule;
 import org.apache.http.HttpResponse;
 import org.apache.http.client.methods.HttpGet;
@@ -15,6 +16,9 @@ import org.apache.http.conn.ssl.SSLConnectionSocketFactory;
 import org.apache.http.impl.client.CloseableHttpClient;
 import org.apache.http.impl.client.HttpClients;
 import org.apache.http.util.EntityUtils;
+import org.eclipse.jetty.server.HttpConfiguration;
+import org.eclipse.jetty.server.HttpConnectionFactory;
+import org.eclipse.jetty.server.ServerConnector;
 import org.eclipse.jetty.util.resource.Resource;
 import org.junit.After;
 import org.junit.Before;
@@ -23,20 +27,30 @@ import org.junit.Test;
 import org.slf4j.bridge.SLF4JBridgeHandler;
 
 import javax.net.ssl.SSLContext;
+import javax.net.ssl.SSLSocket;
 import javax.net.ssl.TrustManager;
 import javax.net.ssl.X509TrustManager;
+import javax.security.auth.x500.X500Principal;
+import javax.servlet.ServletContextListener;
 import java.io.IOException;
 import java.io.InputStream;
 import java.math.BigInteger;
+import java.net.InetAddress;
+import java.net.ServerSocket;
 import java.security.KeyStore;
 import java.security.KeyStoreException;
 import java.security.NoSuchAlgorithmException;
 import java.security.cert.CertificateException;
 import java.security.cert.X509Certificate;
+import java.util.List;
 import java.util.logging.LogManager;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
 import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
 
 public final class HttpServerWrapperTest {
 
@@ -105,6 +119,58 @@ public final class HttpServerWrapperTest {
         assertEquals("test", EntityUtils.toString(response.getEntity()));
     }
 
+    @Test
+    public void testServletHttpsAfterTlsKeystoreReload() throws Exception {
+        HttpServerConnectorConfig httpsConfig = server.getHttpServerWrapperConfig().getHttpServerConnectorConfigs()
+            .get(0);
+        httpsConfig.setTlsKeystore(getKeyStore());
+
+        server.reloadTlsKeystores();
+
+        HttpResponse response = client.execute(new HttpGet("https://localhost:" + TLS_PORT + "/test"));
+        assertEquals(200, response.getStatusLine().getStatusCode());
+        assertEquals("test", EntityUtils.toString(response.getEntity()));
+    }
+
+    @Test
+    public void testTlsKeystoreReloadServesNewCertificate() throws Exception {
+        assertTrue(getServerCertSubject().contains("CN=localhost"));
+
+        HttpServerConnectorConfig httpsConfig = server.getHttpServerWrapperConfig().getHttpServerConnectorConfigs()
+            .get(0);
+        httpsConfig.setTlsKeystore(getKeyStore("/sni-cert-and-key.p12"));
+        server.reloadTlsKeystores();
+
+        assertEquals("CN=sni.example.com, O=Palomino Labs", getServerCertSubject());
+    }
+
+    @Test
+    public void testBadTlsKeystoreReloadKeepsOldKeystore() throws Exception {
+        HttpServerConnectorConfig httpsConfig = server.getHttpServerWrapperConfig().getHttpServerConnectorConfigs()
+            .get(0);
+        httpsConfig.setTlsKeystorePassphrase("wrong");
+        try {
+            server.reloadTlsKeystores();
+            fail("Expected the keystore not to load with the wrong passphrase");
+        } catch (Exception e) {
+            // expected
+        }
+
+        httpsConfig.setTlsKeystorePassphrase("password");
+        httpsConfig.setTlsKeystore(KeyStore.getInstance("PKCS12"));
+        try {
+            server.reloadTlsKeystores();
+            fail("Expected an unloaded keystore not to load");
+        } catch (Exception e) {
+            // expected
+        }
+
+        assertTrue(getServerCertSubject().contains("CN=localhost"));
+        HttpResponse response = client.execute(new HttpGet("https://localhost:" + TLS_PORT + "/test"));
+        assertEquals(200, response.getStatusLine().getStatusCode());
+        assertEquals("test", EntityUtils.toString(response.getEntity()));
+    }
+
     @Test
     public void testServletHttp() throws Exception {
         HttpResponse response = client.execute(new HttpGet("http://localhost:" + HTTP_PORT + "/test"));
@@ -112,6 +178,84 @@ public final class HttpServerWrapperTest {
         assertEquals("test", EntityUtils.toString(response.getEntity()));
     }
 
+    @Test
+    public void testHighThroughputHttpConnectionConfig() throws Exception {
+        int port = HTTP_PORT + 1;
+        HttpServerWrapper highThroughputServer = getServer(new HttpServerWrapperConfig()
+            .withAccessLogConfigFileInClasspath("/logback-access-test.xml")
+            .withHttpServerConnectorConfig(HttpServerConnectorConfig.forHttp("localhost", port)
+                .withHttpConnectionConfig(HttpConnectionConfig.forHighThroughput())));
+        highThroughputServer.start();
+        try {
+            ServerConnector connector = (ServerConnector) highThroughputServer.getServer().getConnectors()[0];
+            HttpConfiguration httpConfiguration =
+                connector.getConnectionFactory(HttpConnectionFactory.class).getHttpConfiguration();
+            assertEquals(64 * 1024, httpConfiguration.getOutputBufferSize());
+            assertEquals(32 * 1024, httpConfiguration.getOutputAggregationSize());
+
+            // the preset doesn't send the server version, and the default connector is unaffected
+            HttpResponse response = client.execute(new HttpGet("http://localhost:" + port + "/test"));
+            EntityUtils.consume(response.getEntity());
+            assertNull(response.getFirstHeader("Server"));
+            assertNotNull(response.getFirstHeader("Date"));
+
+            HttpResponse defaultResponse = client.execute(new HttpGet("http://localhost:" + HTTP_PORT + "/test"));
+            EntityUtils.consume(defaultResponse.getEntity());
+            assertNotNull(defaultResponse.getFirstHeader("Server"));
+        } finally {
+            highThroughputServer.stop();
+        }
+    }
+
+    @Test
+    public void testConnectorsUseSharedByteBufferPool() throws IOException {
+        HttpResponse response = client.execute(new HttpGet("http://localhost:" + HTTP_PORT + "/test"));
+        EntityUtils.consume(response.getEntity());
+
+        InstrumentedByteBufferPool pool = server.getByteBufferPool();
+        assertTrue(pool.getAcquisitions() > 0);
+        assertTrue(pool.getMisses() > 0);
+        assertFalse(pool.getBucketStats().isEmpty());
+    }
+
+    @Test
+    public void testStartupReport() {
+        List<String> phaseNames = Lists.newArrayList();
+        for (StartupReport.Phase phase : server.getStartupReport().getPhases()) {
+            phaseNames.add(phase.getName());
+        }
+
+        assertTrue(phaseNames.contains("bind connector localhost:" + HTTP_PORT));
+        assertTrue(phaseNames.contains("bind connector localhost:" + TLS_PORT));
+        assertTrue(phaseNames.contains("build resource handler 1"));
+        assertTrue(phaseNames.contains("load access log config"));
+        assertTrue(phaseNames.contains("start server"));
+    }
+
+    @Test
+    public void testFailedStartUnbindsConnectors() throws Exception {
+        int port = HTTP_PORT + 1;
+        HttpServerWrapperConfig config = new HttpServerWrapperConfig()
+            .withAccessLogConfigFileInClasspath("/logback-access-test.xml")
+            .withHttpServerConnectorConfig(HttpServerConnectorConfig.forHttp("localhost", port));
+        // fails while the connector is being bound, before start() waits for it
+        config.addServletContextListenerProvider(new Provider<ServletContextListener>() {
+            @Override
+            public ServletContextListener get() {
+                throw new IllegalStateException("listener failed");
+            }
+        });
+
+        try {
+            getServer(config).start();
+            fail("Expected start to fail");
+        } catch (IllegalStateException e) {
+            assertEquals("listener failed", e.getMessage());
+        }
+
+        new ServerSocket(port, 0, InetAddress.getByName("localhost")).close();
+    }
+
     @Test
     public void test404() throws IOException {
         HttpResponse response = client.execute(new HttpGet("http://localhost:" + HTTP_PORT + "/nowhere"));
@@ -205,12 +349,8 @@ public final class HttpServerWrapperTest {
     private static HttpServerWrapperConfig getDefaultConfig() throws KeyStoreException, CertificateException,
         NoSuchAlgorithmException, IOException {
 
-        InputStream stream = HttpServerWrapperTest.class.getResourceAsStream("/cert-and-key.p12");
-        KeyStore keyStore = KeyStore.getInstance("PKCS12");
-        keyStore.load(stream, "password".toCharArray());
-
         HttpServerConnectorConfig httpsConfig = HttpServerConnectorConfig.forHttps("localhost", TLS_PORT)
-            .withTlsKeystore(keyStore)
+            .withTlsKeystore(getKeyStore())
             .withTlsKeystorePassphrase("password");
 
         HttpResourceHandlerConfig httpResourceHandlerConfig1 = new HttpResourceHandlerConfig()
@@ -255,4 +395,45 @@ public final class HttpServerWrapperTest {
             .withResourceHandlerConfig(withIndex)
             .withResourceHandlerConfig(withAltIndex);
     }
+
+    /**
+     * @return the subject of the certificate a new handshake gets
+     */
+    private static String getServerCertSubject() throws Exception {
+        SSLContext sslContext = SSLContext.getInstance("TLS");
+        sslContext.init(null, new TrustManager[]{new X509TrustManager() {
+            @Override
+            public void checkClientTrusted(X509Certificate[] x509Certificates, String s) {
+                throw new UnsupportedOperationException();
+            }
+
+            @Override
+            public void checkServerTrusted(X509Certificate[] x509Certificates, String s) {
+            }
+
+            @Override
+            public X509Certificate[] getAcceptedIssuers() {
+                return null;
+            }
+        }}, null);
+
+        try (SSLSocket socket = (SSLSocket) sslContext.getSocketFactory().createSocket("localhost", TLS_PORT)) {
+            socket.startHandshake();
+            X509Certificate cert = (X509Certificate) socket.getSession().getPeerCertificates()[0];
+            return cert.getSubjectX500Principal().getName(X500Principal.RFC1779);
+        }
+    }
+
+    private static KeyStore getKeyStore() throws KeyStoreException, CertificateException, NoSuchAlgorithmException,
+        IOException {
+        return getKeyStore("/cert-and-key.p12");
+    }
+
+    private static KeyStore getKeyStore(String path) throws KeyStoreException, CertificateException,
+        NoSuchAlgorithmException, IOException {
+        InputStream stream = HttpServerWrapperTest.class.getResourceAsStream(path);
+        KeyStore keyStore = KeyStore.getInstance("PKCS12");
+        keyStore.load(stream, "password".toCharArray());
+        return keyStore;
+    }
 }
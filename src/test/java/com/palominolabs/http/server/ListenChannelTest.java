@@ -0,0 +1,193 @@
+package com.palominolabs.http.server;
+
+import com.google.inject.AbstractModule;
+import com.google.inject.Guice;
+import com.google.inject.servlet.ServletModule;
+import org.apache.http.HttpResponse;
+import org.apache.http.client.methods.HttpGet;
+import org.apache.http.impl.client.CloseableHttpClient;
+import org.apache.http.impl.client.HttpClients;
+import org.apache.http.util.EntityUtils;
+import org.junit.After;
+import org.junit.BeforeClass;
+import org.junit.Test;
+import org.slf4j.bridge.SLF4JBridgeHandler;
+
+import javax.servlet.http.HttpServlet;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.channels.ServerSocketChannel;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.logging.LogManager;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+import static org.junit.Assume.assumeTrue;
+
+public final class ListenChannelTest {
+
+    private final List<HttpServerWrapper> servers = new ArrayList<>();
+    private final List<ServerSocketChannel> channels = new ArrayList<>();
+
+    @BeforeClass
+    public static void setUpClass() throws Exception {
+        LogManager.getLogManager().reset();
+        SLF4JBridgeHandler.install();
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        for (HttpServerWrapper server : servers) {
+            server.stop();
+        }
+        for (ServerSocketChannel channel : channels) {
+            channel.close();
+        }
+    }
+
+    @Test
+    public void testServesOnGivenChannelAndLeavesItOpen() throws Exception {
+        ServerSocketChannel channel = openChannel();
+        HttpServerWrapper server = startServer(HttpServerConnectorConfig.forHttp(channel), "a");
+        int port = channel.socket().getLocalPort();
+
+        try (CloseableHttpClient client = HttpClients.createDefault()) {
+            assertEquals("a", get(client, port));
+        }
+        server.stop();
+        assertTrue(channel.isOpen());
+    }
+
+    @Test
+    public void testHandOffRefusesNoConnections() throws Exception {
+        final ServerSocketChannel channel = openChannel();
+        HttpServerWrapper oldServer = startServer(HttpServerConnectorConfig.forHttp(channel), "old");
+        final int port = channel.socket().getLocalPort();
+
+        // a new connection for every request, so that each one has to be accepted
+        final AtomicBoolean running = new AtomicBoolean(true);
+        final List<String> responses = Collections.synchronizedList(new ArrayList<String>());
+        final List<Exception> failures = Collections.synchronizedList(new ArrayList<Exception>());
+        Thread client = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                while (running.get()) {
+                    try (CloseableHttpClient client = HttpClients.createDefault()) {
+                        responses.add(get(client, port));
+                    } catch (Exception e) {
+                        failures.add(e);
+                    }
+                }
+            }
+        });
+        client.start();
+
+        awaitMoreResponses(responses, 5);
+        startServer(HttpServerConnectorConfig.forHttp(channel), "new");
+        awaitMoreResponses(responses, 5);
+        oldServer.stop();
+        awaitMoreResponses(responses, 5);
+        running.set(false);
+        client.join();
+
+        assertEquals(Collections.emptyList(), failures);
+        assertTrue(responses.toString(), responses.contains("old"));
+        assertEquals("new", responses.get(responses.size() - 1));
+    }
+
+    private static void awaitMoreResponses(List<String> responses, int count) throws InterruptedException {
+        int target = responses.size() + count;
+        for (int i = 0; i < 500 && responses.size() < target; i++) {
+            Thread.sleep(10);
+        }
+        assertTrue("Only got " + responses.size() + " responses", responses.size() >= target);
+    }
+
+    @Test
+    public void testReusePortChannelsShareAPort() throws Exception {
+        ServerSocketChannel first;
+        try {
+            first = ListenChannels.openReusePort("localhost", 0, 0);
+        } catch (IOException e) {
+            assumeTrue("SO_REUSEPORT isn't available: " + e.getMessage(), false);
+            return;
+        }
+        channels.add(first);
+        int port = first.socket().getLocalPort();
+        ServerSocketChannel second = ListenChannels.openReusePort("localhost", port, 0);
+        channels.add(second);
+
+        startServer(HttpServerConnectorConfig.forHttp(second), "second");
+        first.close();
+        try (CloseableHttpClient client = HttpClients.createDefault()) {
+            assertEquals("second", get(client, port));
+        }
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testChannelMustBeBound() throws Exception {
+        ServerSocketChannel channel = ServerSocketChannel.open();
+        channels.add(channel);
+        HttpServerConnectorConfig.forHttp(channel);
+    }
+
+    @Test
+    public void testInheritedFailsWithoutInheritedSocket() {
+        try {
+            ListenChannels.inherited();
+            fail("Expected no inherited socket");
+        } catch (IOException e) {
+            assertTrue(e.getMessage(), e.getMessage().startsWith("No listening socket was inherited"));
+        }
+    }
+
+    private ServerSocketChannel openChannel() throws IOException {
+        ServerSocketChannel channel = ServerSocketChannel.open();
+        channels.add(channel);
+        channel.bind(new InetSocketAddress("localhost", 0));
+        return channel;
+    }
+
+    private HttpServerWrapper startServer(HttpServerConnectorConfig connectorConfig, String name) throws Exception {
+        HttpServerWrapper server = Guice.createInjector(new AbstractModule() {
+            @Override
+            protected void configure() {
+                binder().requireExplicitBindings();
+                install(new HttpServerWrapperModule());
+                install(new ServletModule());
+            }
+        }).getInstance(HttpServerWrapperFactory.class).getHttpServerWrapper(new HttpServerWrapperConfig()
+            .withAccessLogConfigFileInClasspath(null)
+            .withStopTimeoutMillis(5000)
+            .withServletDispatchConfig(new ServletDispatchConfig().withServlet("/*", new NameServlet(name)))
+            .withHttpServerConnectorConfig(connectorConfig));
+        servers.add(server);
+        server.start();
+        return server;
+    }
+
+    private static String get(CloseableHttpClient client, int port) throws IOException {
+        HttpResponse response = client.execute(new HttpGet("http://localhost:" + port + "/"));
+        assertEquals(200, response.getStatusLine().getStatusCode());
+        return EntityUtils.toString(response.getEntity());
+    }
+
+    private static final class NameServlet extends HttpServlet {
+        private final String name;
+
+        NameServlet(String name) {
+            this.name = name;
+        }
+
+        @Override
+        protected void doGet(HttpServletRequest req, HttpServletResponse resp) throws IOException {
+            resp.getWriter().print(name);
+        }
+    }
+}
@@ -0,0 +1,199 @@
+package com.palominolabs.http.server;
+
+import com.google.inject.AbstractModule;
+import com.google.inject.Guice;
+import com.google.inject.Injector;
+import com.google.inject.servlet.ServletModule;
+import org.apache.http.Header;
+import org.apache.http.HttpResponse;
+import org.apache.http.client.methods.HttpGet;
+import org.apache.http.impl.client.CloseableHttpClient;
+import org.apache.http.impl.client.HttpClients;
+import org.apache.http.util.EntityUtils;
+import org.eclipse.jetty.server.HttpConnectionFactory;
+import org.eclipse.jetty.server.ServerConnector;
+import org.eclipse.jetty.util.resource.Resource;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.BeforeClass;
+import org.junit.Test;
+import org.slf4j.bridge.SLF4JBridgeHandler;
+
+import java.io.IOException;
+import java.util.logging.LogManager;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.fail;
+
+public final class ReconfigureTest {
+
+    private static final int HTTP_PORT = 28080;
+    private static final int OTHER_HTTP_PORT = 28081;
+
+    private HttpServerWrapperFactory factory;
+    private HttpServerWrapper server;
+    private CloseableHttpClient client;
+
+    @BeforeClass
+    public static void setUpClass() throws Exception {
+        LogManager.getLogManager().reset();
+        SLF4JBridgeHandler.install();
+    }
+
+    @Before
+    public void setUp() throws Exception {
+        Injector injector = Guice.createInjector(new AbstractModule() {
+            @Override
+            protected void configure() {
+                binder().requireExplicitBindings();
+                install(new HttpServerWrapperModule());
+                install(new ServletModule() {
+                    @Override
+                    protected void configureServlets() {
+                        bind(TestServlet.class);
+                        serve("/test").with(TestServlet.class);
+                    }
+                });
+            }
+        });
+        factory = injector.getInstance(HttpServerWrapperFactory.class);
+
+        server = factory.getHttpServerWrapper(getConfig(HTTP_PORT, "/resourceBase1"));
+        server.start();
+
+        client = HttpClients.createDefault();
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        client.close();
+        server.stop();
+    }
+
+    @Test
+    public void testAddAndRemoveConnector() throws Exception {
+        assertEquals(200, get(HTTP_PORT, "/test"));
+
+        server.reconfigure(getConfig(OTHER_HTTP_PORT, "/resourceBase1"));
+
+        assertEquals(200, get(OTHER_HTTP_PORT, "/test"));
+        assertEquals(1, server.getServer().getConnectors().length);
+        try {
+            get(HTTP_PORT, "/test");
+            fail();
+        } catch (IOException e) {
+            // expected, nothing is listening
+        }
+    }
+
+    @Test
+    public void testUnchangedConnectorIsKept() throws Exception {
+        ServerConnector connector = (ServerConnector) server.getServer().getConnectors()[0];
+
+        // the client keeps its connection alive across the reconfiguration
+        assertEquals(200, get(HTTP_PORT, "/test"));
+        server.reconfigure(getConfig(HTTP_PORT, "/resourceBase1")
+            .withHttpServerConnectorConfig(HttpServerConnectorConfig.forHttp("localhost", OTHER_HTTP_PORT)));
+        assertEquals(200, get(HTTP_PORT, "/test"));
+
+        assertSame(connector, server.getServer().getConnectors()[0]);
+        assertEquals(2, server.getServer().getConnectors().length);
+        assertEquals(200, get(OTHER_HTTP_PORT, "/test"));
+    }
+
+    @Test
+    public void testConnectionSettingsApplyToNewConnections() throws Exception {
+        // opens a kept-alive connection with the old settings
+        assertNotNull(getServerHeader(client));
+
+        HttpServerWrapperConfig config = new HttpServerWrapperConfig()
+            .withAccessLogConfigFileInClasspath("/logback-access-test.xml")
+            .withHttpServerConnectorConfig(HttpServerConnectorConfig.forHttp("localhost", HTTP_PORT)
+                .withHttpConnectionConfig(new HttpConnectionConfig().withSendServerVersion(false)));
+
+        server.reconfigure(config);
+
+        ServerConnector connector = (ServerConnector) server.getServer().getConnectors()[0];
+        assertEquals(false, connector.getConnectionFactory(HttpConnectionFactory.class).getHttpConfiguration()
+            .getSendServerVersion());
+
+        // the open connection keeps its settings, and new connections get the new ones
+        assertNotNull(getServerHeader(client));
+        try (CloseableHttpClient newClient = HttpClients.createDefault()) {
+            assertNull(getServerHeader(newClient));
+        }
+    }
+
+    @Test
+    public void testResourceHandlersReplaced() throws Exception {
+        assertEquals("res1", getBody(HTTP_PORT, "/static/static-res-1.txt"));
+
+        server.reconfigure(getConfig(HTTP_PORT, "/resourceBase2"));
+
+        assertEquals("conflict2", getBody(HTTP_PORT, "/static/name-conflict.txt"));
+        assertEquals(404, get(HTTP_PORT, "/static/static-res-1.txt"));
+    }
+
+    @Test
+    public void testConfigHasOnlyAppliedSettings() throws Exception {
+        HttpServerWrapperConfig started = server.getHttpServerWrapperConfig();
+        HttpServerWrapperConfig newConfig = getConfig(OTHER_HTTP_PORT, "/resourceBase2")
+            .withMaxFormContentSize(1000)
+            .withStopTimeoutMillis(5000)
+            .withRequestTimingConfig(new RequestTimingConfig());
+
+        server.reconfigure(newConfig);
+
+        HttpServerWrapperConfig config = server.getHttpServerWrapperConfig();
+        assertEquals(newConfig.getHttpServerConnectorConfigs(), config.getHttpServerConnectorConfigs());
+        assertEquals(newConfig.getHttpResourceHandlerConfigs(), config.getHttpResourceHandlerConfigs());
+        assertEquals(1000, config.getMaxFormContentSize());
+        // not applied, so still as started
+        assertEquals(started.getStopTimeoutMillis(), config.getStopTimeoutMillis());
+        assertNull(config.getRequestTimingConfig());
+        assertEquals(started.getAccessLogConfigFileInClasspath(), config.getAccessLogConfigFileInClasspath());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testDuplicateAddressRejected() throws Exception {
+        server.reconfigure(getConfig(HTTP_PORT, "/resourceBase1")
+            .withHttpServerConnectorConfig(HttpServerConnectorConfig.forHttp("localhost", HTTP_PORT)));
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void testNotStarted() throws Exception {
+        factory.getHttpServerWrapper(getConfig(OTHER_HTTP_PORT, "/resourceBase1"))
+            .reconfigure(getConfig(OTHER_HTTP_PORT, "/resourceBase1"));
+    }
+
+    private static HttpServerWrapperConfig getConfig(int port, String resourceBase) {
+        return new HttpServerWrapperConfig()
+            .withAccessLogConfigFileInClasspath("/logback-access-test.xml")
+            .withHttpServerConnectorConfig(HttpServerConnectorConfig.forHttp("localhost", port))
+            .withResourceHandlerConfig(new HttpResourceHandlerConfig()
+                .withBaseResource(Resource.newClassPathResource(resourceBase))
+                .withContextPath("/static"));
+    }
+
+    private int get(int port, String path) throws IOException {
+        HttpResponse response = client.execute(new HttpGet("http://localhost:" + port + path));
+        EntityUtils.consume(response.getEntity());
+        return response.getStatusLine().getStatusCode();
+    }
+
+    private static String getServerHeader(CloseableHttpClient httpClient) throws IOException {
+        HttpResponse response = httpClient.execute(new HttpGet("http://localhost:" + HTTP_PORT + "/test"));
+        EntityUtils.consume(response.getEntity());
+        Header header = response.getFirstHeader("Server");
+        return header == null ? null : header.getValue();
+    }
+
+    private String getBody(int port, String path) throws IOException {
+        HttpResponse response = client.execute(new HttpGet("http://localhost:" + port + path));
+        assertEquals(200, response.getStatusLine().getStatusCode());
+        return EntityUtils.toString(response.getEntity());
+    }
+}
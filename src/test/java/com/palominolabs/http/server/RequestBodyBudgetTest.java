@@ -0,0 +1,207 @@
+package com.palominolabs.http.server;
+
+import com.google.inject.AbstractModule;
+import com.google.inject.Guice;
+import com.google.inject.Injector;
+import com.google.inject.Singleton;
+import com.google.inject.servlet.ServletModule;
+import org.apache.http.HttpResponse;
+import org.apache.http.client.methods.HttpPost;
+import org.apache.http.entity.ByteArrayEntity;
+import org.apache.http.entity.ContentType;
+import org.apache.http.entity.InputStreamEntity;
+import org.apache.http.entity.StringEntity;
+import org.apache.http.impl.client.CloseableHttpClient;
+import org.apache.http.impl.client.HttpClients;
+import org.apache.http.util.EntityUtils;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.BeforeClass;
+import org.junit.Test;
+import org.slf4j.bridge.SLF4JBridgeHandler;
+
+import javax.servlet.ServletException;
+import javax.servlet.http.HttpServlet;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import javax.servlet.http.Part;
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.LogManager;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public final class RequestBodyBudgetTest {
+
+    private static final int HTTP_PORT = 28080;
+
+    private HttpServerWrapper server;
+    private CloseableHttpClient client;
+
+    @BeforeClass
+    public static void setUpClass() throws Exception {
+        LogManager.getLogManager().reset();
+        SLF4JBridgeHandler.install();
+    }
+
+    @Before
+    public void setUp() throws Exception {
+        Injector injector = Guice.createInjector(new AbstractModule() {
+            @Override
+            protected void configure() {
+                binder().requireExplicitBindings();
+                install(new HttpServerWrapperModule());
+                install(new ServletModule() {
+                    @Override
+                    protected void configureServlets() {
+                        bind(UploadServlet.class);
+                        serve("/upload").with(UploadServlet.class);
+                    }
+                });
+            }
+        });
+
+        server = injector.getInstance(HttpServerWrapperFactory.class).getHttpServerWrapper(
+            new HttpServerWrapperConfig()
+                .withAccessLogConfigFileInClasspath("/logback-access-test.xml")
+                .withRequestBodyBudgetConfig(new RequestBodyBudgetConfig(1000)
+                    .withSpillThresholdBytes(100)
+                    .withUnknownLengthReservation(100))
+                .withHttpServerConnectorConfig(HttpServerConnectorConfig.forHttp("localhost", HTTP_PORT)));
+        server.start();
+
+        client = HttpClients.createDefault();
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        client.close();
+        server.stop();
+    }
+
+    @Test
+    public void testReserveAndRelease() throws InterruptedException {
+        RequestBodyBudget budget = new RequestBodyBudget(100);
+
+        assertTrue(budget.reserve(60, 0));
+        assertFalse(budget.reserve(60, 0));
+        assertEquals(60, budget.getBytesInUse());
+        assertEquals(1, budget.getRejectedRequests());
+
+        budget.release(60);
+        assertTrue(budget.reserve(60, 0));
+    }
+
+    @Test
+    public void testWaitingReservationSucceedsOnRelease() throws InterruptedException {
+        final RequestBodyBudget budget = new RequestBodyBudget(100);
+        assertTrue(budget.reserve(100, 0));
+
+        final CountDownLatch reserved = new CountDownLatch(1);
+        Thread waiter = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    if (budget.reserve(50, TimeUnit.SECONDS.toMillis(10))) {
+                        reserved.countDown();
+                    }
+                } catch (InterruptedException e) {
+                    throw new RuntimeException(e);
+                }
+            }
+        });
+        waiter.start();
+
+        budget.release(100);
+        assertTrue(reserved.await(10, TimeUnit.SECONDS));
+        assertEquals(50, budget.getBytesInUse());
+    }
+
+    @Test
+    public void testBodyLargerThanBudgetIsRejected() throws IOException {
+        HttpPost post = new HttpPost("http://localhost:" + HTTP_PORT + "/upload");
+        post.setEntity(new ByteArrayEntity(new byte[2000]));
+
+        HttpResponse response = client.execute(post);
+        EntityUtils.consume(response.getEntity());
+
+        assertEquals(413, response.getStatusLine().getStatusCode());
+        assertEquals(1, server.getRequestBodyBudget().getRejectedRequests());
+    }
+
+    @Test
+    public void testChunkedBodyGrowsItsReservation() throws IOException {
+        HttpPost post = new HttpPost("http://localhost:" + HTTP_PORT + "/upload");
+        post.setEntity(new InputStreamEntity(new ByteArrayInputStream(new byte[500]), -1));
+
+        HttpResponse response = client.execute(post);
+
+        assertEquals(200, response.getStatusLine().getStatusCode());
+        assertEquals("body:500", EntityUtils.toString(response.getEntity()));
+        assertEquals(0, server.getRequestBodyBudget().getBytesInUse());
+    }
+
+    @Test
+    public void testChunkedBodyLargerThanBudgetIsRejected() throws IOException {
+        // only the unknown length reservation is known up front
+        HttpPost post = new HttpPost("http://localhost:" + HTTP_PORT + "/upload");
+        post.setEntity(new InputStreamEntity(new ByteArrayInputStream(new byte[2000]), -1));
+
+        HttpResponse response = client.execute(post);
+        EntityUtils.consume(response.getEntity());
+
+        assertEquals(413, response.getStatusLine().getStatusCode());
+        assertEquals(1, server.getRequestBodyBudget().getRejectedRequests());
+        assertEquals(0, server.getRequestBodyBudget().getBytesInUse());
+    }
+
+    @Test
+    public void testMultipartUploadToGuiceServletSpillsToDisk() throws IOException {
+        // larger than the spill threshold, which is all that is reserved up front
+        StringBuilder content = new StringBuilder();
+        for (int i = 0; i < 600; i++) {
+            content.append('x');
+        }
+        String body = "--boundary\r\n" +
+            "Content-Disposition: form-data; name=\"file\"; filename=\"file.txt\"\r\n" +
+            "Content-Type: text/plain\r\n\r\n" +
+            content + "\r\n" +
+            "--boundary--\r\n";
+
+        HttpPost post = new HttpPost("http://localhost:" + HTTP_PORT + "/upload");
+        post.setEntity(new StringEntity(body, ContentType.create("multipart/form-data", "US-ASCII")));
+        post.setHeader("Content-Type", "multipart/form-data; boundary=boundary");
+
+        HttpResponse response = client.execute(post);
+
+        assertEquals(200, response.getStatusLine().getStatusCode());
+        assertEquals("file:600", EntityUtils.toString(response.getEntity()));
+    }
+
+    @Singleton
+    public static class UploadServlet extends HttpServlet {
+        @Override
+        protected void doPost(HttpServletRequest req, HttpServletResponse resp) throws IOException,
+            ServletException {
+            resp.setContentType("text/plain");
+            if (req.getContentType() != null && req.getContentType().startsWith("multipart/")) {
+                for (Part part : req.getParts()) {
+                    resp.getWriter().append(part.getName()).append(':').append(Long.toString(part.getSize()));
+                }
+            } else {
+                long length = 0;
+                try (InputStream in = req.getInputStream()) {
+                    while (in.read() != -1) {
+                        length++;
+                    }
+                }
+                resp.getWriter().append("body:").append(Long.toString(length));
+            }
+        }
+    }
+}
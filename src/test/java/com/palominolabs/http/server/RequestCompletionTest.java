@@ -0,0 +1,107 @@
+package com.palominolabs.http.server;
+
+import org.eclipse.jetty.server.LocalConnector;
+import org.eclipse.jetty.server.Request;
+import org.eclipse.jetty.server.Server;
+import org.eclipse.jetty.server.handler.AbstractHandler;
+import org.eclipse.jetty.server.handler.HandlerWrapper;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import javax.servlet.AsyncContext;
+import javax.servlet.DispatcherType;
+import javax.servlet.ServletException;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import java.io.IOException;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public final class RequestCompletionTest {
+
+    private final AtomicInteger completions = new AtomicInteger();
+    private final CountDownLatch completed = new CountDownLatch(1);
+
+    private Server server;
+    private LocalConnector connector;
+
+    @Before
+    public void setUp() throws Exception {
+        server = new Server();
+        connector = new LocalConnector(server);
+        server.addConnector(connector);
+
+        HandlerWrapper completionHandler = new HandlerWrapper() {
+            @Override
+            public void handle(String target, Request baseRequest, HttpServletRequest request,
+                HttpServletResponse response) throws IOException, ServletException {
+                if (baseRequest.getDispatcherType() != DispatcherType.REQUEST) {
+                    super.handle(target, baseRequest, request, response);
+                    return;
+                }
+                try {
+                    super.handle(target, baseRequest, request, response);
+                } finally {
+                    RequestCompletion.onComplete(request, new Runnable() {
+                        @Override
+                        public void run() {
+                            completions.incrementAndGet();
+                            completed.countDown();
+                        }
+                    });
+                }
+            }
+        };
+        completionHandler.setHandler(new AsyncHandler());
+        server.setHandler(completionHandler);
+        server.start();
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        server.stop();
+    }
+
+    @Test
+    public void testRunsNowWhenNotAsync() throws Exception {
+        assertTrue(connector.getResponse("GET /sync HTTP/1.1\r\nHost: localhost\r\n\r\n").contains("sync"));
+
+        assertEquals(1, completions.get());
+    }
+
+    @Test
+    public void testRunsOnceAfterAsyncStartedAgain() throws Exception {
+        assertTrue(connector.getResponse("GET /async HTTP/1.1\r\nHost: localhost\r\n\r\n").contains("async"));
+
+        assertTrue(completed.await(10, TimeUnit.SECONDS));
+        assertEquals(1, completions.get());
+    }
+
+    /**
+     * For /async, goes async and dispatches again, then goes async a second time before completing
+     */
+    private static final class AsyncHandler extends AbstractHandler {
+        @Override
+        public void handle(String target, Request baseRequest, HttpServletRequest request,
+            HttpServletResponse response) throws IOException {
+            baseRequest.setHandled(true);
+            if (!target.equals("/async")) {
+                response.getWriter().print("sync");
+                return;
+            }
+
+            AsyncContext asyncContext = request.startAsync();
+            if (baseRequest.getDispatcherType() == DispatcherType.REQUEST) {
+                asyncContext.dispatch();
+            } else {
+                response.getWriter().print("async");
+                asyncContext.complete();
+            }
+        }
+    }
+}
@@ -0,0 +1,222 @@
+package com.palominolabs.http.server;
+
+import com.google.inject.AbstractModule;
+import com.google.inject.Guice;
+import com.google.inject.Injector;
+import com.google.inject.Singleton;
+import com.google.inject.servlet.ServletModule;
+import org.apache.http.HttpResponse;
+import org.apache.http.client.methods.HttpGet;
+import org.apache.http.impl.client.CloseableHttpClient;
+import org.apache.http.impl.client.HttpClients;
+import org.apache.http.util.EntityUtils;
+import org.eclipse.jetty.util.thread.QueuedThreadPool;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.BeforeClass;
+import org.junit.Test;
+import org.slf4j.bridge.SLF4JBridgeHandler;
+
+import javax.servlet.http.HttpServlet;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.logging.LogManager;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public final class RequestDeadlineTest {
+
+    private static final int HTTP_PORT = 28080;
+
+    private HttpServerWrapper server;
+    private CloseableHttpClient client;
+
+    @BeforeClass
+    public static void setUpClass() throws Exception {
+        LogManager.getLogManager().reset();
+        SLF4JBridgeHandler.install();
+    }
+
+    @Before
+    public void setUp() throws Exception {
+        Injector injector = Guice.createInjector(new AbstractModule() {
+            @Override
+            protected void configure() {
+                binder().requireExplicitBindings();
+                install(new HttpServerWrapperModule());
+                install(new ServletModule() {
+                    @Override
+                    protected void configureServlets() {
+                        bind(DeadlineServlet.class);
+                        serve("/deadline").with(DeadlineServlet.class);
+                        bind(DisconnectServlet.class);
+                        serve("/disconnect").with(DisconnectServlet.class);
+                    }
+                });
+            }
+        });
+
+        server = injector.getInstance(HttpServerWrapperFactory.class).getHttpServerWrapper(
+            new HttpServerWrapperConfig()
+                .withAccessLogConfigFileInClasspath("/logback-access-test.xml")
+                .withRequestDeadlineConfig(new RequestDeadlineConfig().withMaxTimeoutMillis(60000))
+                .withHttpServerConnectorConfig(HttpServerConnectorConfig.forHttp("localhost", HTTP_PORT)));
+        server.start();
+
+        client = HttpClients.createDefault();
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        client.close();
+        server.stop();
+    }
+
+    @Test
+    public void testNoHeaderMeansNoDeadline() throws IOException {
+        HttpResponse response = client.execute(new HttpGet("http://localhost:" + HTTP_PORT + "/deadline"));
+        assertEquals(200, response.getStatusLine().getStatusCode());
+        assertEquals("none", EntityUtils.toString(response.getEntity()));
+    }
+
+    @Test
+    public void testDeadlineVisibleToServlet() throws IOException {
+        HttpGet get = new HttpGet("http://localhost:" + HTTP_PORT + "/deadline");
+        get.setHeader("X-Request-Timeout", "10000");
+        HttpResponse response = client.execute(get);
+
+        assertEquals(200, response.getStatusLine().getStatusCode());
+        long remaining = Long.parseLong(EntityUtils.toString(response.getEntity()));
+        assertTrue(remaining > 0 && remaining <= 10000);
+    }
+
+    @Test
+    public void testTimeoutCappedAtMax() throws IOException {
+        HttpGet get = new HttpGet("http://localhost:" + HTTP_PORT + "/deadline");
+        get.setHeader("X-Request-Timeout", "600000");
+        HttpResponse response = client.execute(get);
+
+        long remaining = Long.parseLong(EntityUtils.toString(response.getEntity()));
+        assertTrue(remaining <= 60000);
+    }
+
+    @Test
+    public void testExpiredRequestIsNotDispatched() throws IOException {
+        HttpGet get = new HttpGet("http://localhost:" + HTTP_PORT + "/deadline");
+        get.setHeader("X-Request-Timeout", "0");
+        HttpResponse response = client.execute(get);
+        EntityUtils.consume(response.getEntity());
+
+        assertEquals(504, response.getStatusLine().getStatusCode());
+    }
+
+    @Test
+    public void testRequestQueuedPastDeadlineIsNotDispatched() throws Exception {
+        // keep every pool thread busy so that the request waits in the pool's queue
+        QueuedThreadPool threadPool = (QueuedThreadPool) server.getServer().getThreadPool();
+        final CountDownLatch release = new CountDownLatch(1);
+        try (Socket socket = new Socket("localhost", HTTP_PORT)) {
+            try {
+                for (int i = 0; i < threadPool.getMaxThreads(); i++) {
+                    threadPool.execute(new Runnable() {
+                        @Override
+                        public void run() {
+                            try {
+                                release.await();
+                            } catch (InterruptedException e) {
+                                Thread.currentThread().interrupt();
+                            }
+                        }
+                    });
+                }
+
+                socket.getOutputStream().write(("GET /deadline HTTP/1.1\r\nHost: localhost\r\n" +
+                    "X-Request-Timeout: 200\r\n\r\n").getBytes(StandardCharsets.US_ASCII));
+                socket.getOutputStream().flush();
+                Thread.sleep(1000);
+            } finally {
+                release.countDown();
+            }
+
+            BufferedReader reader = new BufferedReader(
+                new InputStreamReader(socket.getInputStream(), StandardCharsets.US_ASCII));
+            assertEquals("HTTP/1.1 504 Gateway Timeout", reader.readLine());
+        }
+    }
+
+    @Test
+    public void testDisconnectIsSeenOnceServletWrites() throws Exception {
+        try (Socket socket = new Socket("localhost", HTTP_PORT)) {
+            socket.getOutputStream().write(("GET /disconnect HTTP/1.1\r\nHost: localhost\r\n" +
+                "X-Request-Timeout: 10000\r\n\r\n").getBytes(StandardCharsets.US_ASCII));
+            socket.getOutputStream().flush();
+            assertTrue(DisconnectServlet.started.await(10, TimeUnit.SECONDS));
+        }
+        DisconnectServlet.clientClosed.countDown();
+
+        assertTrue(DisconnectServlet.done.await(10, TimeUnit.SECONDS));
+        // nothing reads from the connection while the servlet runs
+        assertFalse(DisconnectServlet.cancelledBeforeWriting.get());
+        assertTrue(DisconnectServlet.cancelledAfterWriting.get());
+    }
+
+    @Singleton
+    public static class DisconnectServlet extends HttpServlet {
+        static final CountDownLatch started = new CountDownLatch(1);
+        static final CountDownLatch clientClosed = new CountDownLatch(1);
+        static final CountDownLatch done = new CountDownLatch(1);
+        static final AtomicBoolean cancelledBeforeWriting = new AtomicBoolean();
+        static final AtomicBoolean cancelledAfterWriting = new AtomicBoolean();
+
+        @Override
+        protected void doGet(HttpServletRequest req, HttpServletResponse resp) throws IOException {
+            RequestDeadline deadline = RequestDeadline.get(req);
+            try {
+                started.countDown();
+                clientClosed.await(10, TimeUnit.SECONDS);
+                Thread.sleep(100);
+                cancelledBeforeWriting.set(deadline.isCancelled());
+
+                // the first writes may still fit in the socket buffer before the client's reset arrives
+                for (int i = 0; i < 50 && !deadline.isCancelled(); i++) {
+                    try {
+                        resp.getOutputStream().write(new byte[1024]);
+                        resp.flushBuffer();
+                    } catch (IOException e) {
+                        break;
+                    }
+                    Thread.sleep(20);
+                }
+                cancelledAfterWriting.set(deadline.isCancelled());
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            } finally {
+                done.countDown();
+            }
+        }
+    }
+
+    @Singleton
+    public static class DeadlineServlet extends HttpServlet {
+        @Override
+        protected void doGet(HttpServletRequest req, HttpServletResponse resp) throws IOException {
+            resp.setContentType("text/plain");
+            RequestDeadline deadline = RequestDeadline.get(req);
+            if (deadline == null) {
+                resp.getWriter().append("none");
+            } else {
+                resp.getWriter().append(Long.toString(deadline.getRemainingMillis()));
+            }
+        }
+    }
+}
@@ -0,0 +1,274 @@
+package com.palominolabs.http.server;
+
+import com.google.inject.AbstractModule;
+import com.google.inject.Guice;
+import com.google.inject.Injector;
+import com.google.inject.Singleton;
+import com.google.inject.servlet.ServletModule;
+import org.apache.http.HttpResponse;
+import org.apache.http.client.methods.HttpPost;
+import org.apache.http.entity.ByteArrayEntity;
+import org.apache.http.entity.ContentType;
+import org.apache.http.entity.InputStreamEntity;
+import org.apache.http.impl.client.CloseableHttpClient;
+import org.apache.http.impl.client.HttpClients;
+import org.apache.http.util.EntityUtils;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.BeforeClass;
+import org.junit.Test;
+import org.slf4j.bridge.SLF4JBridgeHandler;
+
+import javax.servlet.http.HttpServlet;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Random;
+import java.util.logging.LogManager;
+import java.util.zip.CRC32;
+import java.util.zip.Deflater;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.GZIPOutputStream;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public final class RequestDecompressionTest {
+
+    private static final int HTTP_PORT = 28080;
+    private static final int MAX_DECOMPRESSED_BYTES = 1024 * 1024;
+
+    private HttpServerWrapper server;
+    private CloseableHttpClient client;
+
+    @BeforeClass
+    public static void setUpClass() throws Exception {
+        LogManager.getLogManager().reset();
+        SLF4JBridgeHandler.install();
+    }
+
+    @Before
+    public void setUp() throws Exception {
+        Injector injector = Guice.createInjector(new AbstractModule() {
+            @Override
+            protected void configure() {
+                binder().requireExplicitBindings();
+                install(new HttpServerWrapperModule());
+                install(new ServletModule() {
+                    @Override
+                    protected void configureServlets() {
+                        bind(BodyServlet.class);
+                        serve("/body").with(BodyServlet.class);
+                        bind(FormServlet.class);
+                        serve("/form").with(FormServlet.class);
+                    }
+                });
+            }
+        });
+
+        server = injector.getInstance(HttpServerWrapperFactory.class).getHttpServerWrapper(
+            new HttpServerWrapperConfig()
+                .withAccessLogConfigFileInClasspath("/logback-access-test.xml")
+                .withRequestDecompressionConfig(new RequestDecompressionConfig()
+                    .withMaxDecompressedBytes(MAX_DECOMPRESSED_BYTES)
+                    .withBufferSize(1024))
+                .withHttpServerConnectorConfig(HttpServerConnectorConfig.forHttp("localhost", HTTP_PORT)));
+        server.start();
+
+        client = HttpClients.createDefault();
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        client.close();
+        server.stop();
+    }
+
+    @Test
+    public void testGzipBodyIsDecoded() throws IOException {
+        byte[] body = randomText(200 * 1024);
+        byte[] gzipped = gzip(body);
+
+        assertEquals(describe(body) + " gzip -1", post("/body", gzipped, "gzip", false));
+
+        RequestDecompressionStats stats = server.getRequestDecompressionStats();
+        assertEquals(1, stats.getRequests());
+        assertEquals(gzipped.length, stats.getCompressedBytes());
+        assertEquals(body.length, stats.getDecompressedBytes());
+    }
+
+    @Test
+    public void testChunkedGzipBodyIsDecoded() throws IOException {
+        byte[] body = randomText(200 * 1024);
+
+        assertEquals(describe(body) + " gzip -1", post("/body", gzip(body), "gzip", true));
+    }
+
+    @Test
+    public void testConcatenatedGzipMembersAreDecoded() throws IOException {
+        byte[] first = randomText(5000);
+        byte[] second = randomText(7000);
+        ByteArrayOutputStream body = new ByteArrayOutputStream();
+        body.write(first);
+        body.write(second);
+        ByteArrayOutputStream gzipped = new ByteArrayOutputStream();
+        gzipped.write(gzip(first));
+        gzipped.write(gzip(second));
+
+        assertEquals(describe(body.toByteArray()) + " gzip -1", post("/body", gzipped.toByteArray(), "gzip", false));
+    }
+
+    @Test
+    public void testZlibAndRawDeflateBodiesAreDecoded() throws IOException {
+        byte[] body = randomText(50 * 1024);
+
+        assertEquals(describe(body) + " deflate -1", post("/body", deflate(body, false), "deflate", false));
+        assertEquals(describe(body) + " deflate -1", post("/body", deflate(body, true), "deflate", false));
+    }
+
+    @Test
+    public void testInflatersAreReused() throws IOException {
+        byte[] body = randomText(10 * 1024);
+        for (int i = 0; i < 5; i++) {
+            assertEquals(describe(body) + " gzip -1", post("/body", gzip(body), "gzip", false));
+        }
+
+        assertEquals(5, server.getRequestDecompressionStats().getRequests());
+        assertEquals(1, server.getRequestDecompressionStats().getInflatersCreated());
+    }
+
+    @Test
+    public void testFormParametersAreDecoded() throws IOException {
+        HttpPost post = new HttpPost("http://localhost:" + HTTP_PORT + "/form");
+        post.setHeader("Content-Encoding", "gzip");
+        post.setEntity(new ByteArrayEntity(gzip("greeting=hello&name=world".getBytes(StandardCharsets.UTF_8)),
+            ContentType.APPLICATION_FORM_URLENCODED));
+        HttpResponse response = client.execute(post);
+
+        assertEquals(200, response.getStatusLine().getStatusCode());
+        assertEquals("hello world", EntityUtils.toString(response.getEntity()));
+    }
+
+    @Test
+    public void testOtherEncodingsArePassedThrough() throws IOException {
+        byte[] body = randomText(1000);
+
+        assertEquals(describe(body) + " null " + body.length, post("/body", body, "identity", false));
+        assertEquals(0, server.getRequestDecompressionStats().getRequests());
+    }
+
+    @Test
+    public void testDecompressionBombIsRejected() throws IOException {
+        byte[] gzipped = gzip(new byte[10 * MAX_DECOMPRESSED_BYTES]);
+        assertTrue(gzipped.length < MAX_DECOMPRESSED_BYTES / 10);
+
+        assertEquals(413, postForStatus(gzipped, "gzip"));
+        assertEquals(1, server.getRequestDecompressionStats().getRejectedRequests());
+        assertTrue(server.getRequestDecompressionStats().getDecompressedBytes() <= MAX_DECOMPRESSED_BYTES + 1024);
+    }
+
+    @Test
+    public void testCorruptBodyIsRejected() throws IOException {
+        byte[] gzipped = gzip(randomText(10 * 1024));
+        gzipped[gzipped.length / 2] ^= 0x55;
+
+        assertEquals(400, postForStatus(gzipped, "gzip"));
+        assertEquals(400, postForStatus(Arrays.copyOf(gzipped, 5), "gzip"));
+        assertEquals(400, postForStatus(randomText(1000), "gzip"));
+        assertEquals(3, server.getRequestDecompressionStats().getFailedRequests());
+    }
+
+    @Test
+    public void testTruncatedBodyIsRejected() throws IOException {
+        byte[] gzipped = gzip(randomText(10 * 1024));
+
+        assertEquals(400, postForStatus(Arrays.copyOf(gzipped, gzipped.length - 4), "gzip"));
+        assertEquals(1, server.getRequestDecompressionStats().getFailedRequests());
+    }
+
+    private String post(String path, byte[] entity, String encoding, boolean chunked) throws IOException {
+        HttpPost post = new HttpPost("http://localhost:" + HTTP_PORT + path);
+        post.setHeader("Content-Encoding", encoding);
+        if (chunked) {
+            post.setEntity(new InputStreamEntity(new ByteArrayInputStream(entity), -1));
+        } else {
+            post.setEntity(new ByteArrayEntity(entity));
+        }
+        HttpResponse response = client.execute(post);
+        assertEquals(200, response.getStatusLine().getStatusCode());
+        return EntityUtils.toString(response.getEntity());
+    }
+
+    private int postForStatus(byte[] entity, String encoding) throws IOException {
+        HttpPost post = new HttpPost("http://localhost:" + HTTP_PORT + "/body");
+        post.setHeader("Content-Encoding", encoding);
+        post.setEntity(new ByteArrayEntity(entity));
+        HttpResponse response = client.execute(post);
+        EntityUtils.consume(response.getEntity());
+        return response.getStatusLine().getStatusCode();
+    }
+
+    private static byte[] randomText(int length) {
+        Random random = new Random(length);
+        byte[] text = new byte[length];
+        for (int i = 0; i < length; i++) {
+            // compressible, but not so much that the whole body is in one read
+            text[i] = (byte) ('a' + random.nextInt(8));
+        }
+        return text;
+    }
+
+    private static byte[] gzip(byte[] body) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        try (GZIPOutputStream gzip = new GZIPOutputStream(out)) {
+            gzip.write(body);
+        }
+        return out.toByteArray();
+    }
+
+    private static byte[] deflate(byte[] body, boolean raw) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        Deflater deflater = new Deflater(Deflater.DEFAULT_COMPRESSION, raw);
+        try (DeflaterOutputStream deflate = new DeflaterOutputStream(out, deflater)) {
+            deflate.write(body);
+        }
+        deflater.end();
+        return out.toByteArray();
+    }
+
+    private static String describe(byte[] body) {
+        CRC32 crc = new CRC32();
+        crc.update(body);
+        return body.length + " " + crc.getValue();
+    }
+
+    @Singleton
+    private static class BodyServlet extends HttpServlet {
+        @Override
+        protected void doPost(HttpServletRequest req, HttpServletResponse resp) throws IOException {
+            ByteArrayOutputStream body = new ByteArrayOutputStream();
+            byte[] buffer = new byte[4096];
+            try (InputStream in = req.getInputStream()) {
+                int read;
+                while ((read = in.read(buffer)) != -1) {
+                    body.write(buffer, 0, read);
+                }
+            }
+            resp.getWriter().print(describe(body.toByteArray()) + " " + req.getHeader("X-Content-Encoding") + " " +
+                req.getContentLengthLong());
+        }
+    }
+
+    @Singleton
+    private static class FormServlet extends HttpServlet {
+        @Override
+        protected void doPost(HttpServletRequest req, HttpServletResponse resp) throws IOException {
+            resp.getWriter().print(req.getParameter("greeting") + " " + req.getParameter("name"));
+        }
+    }
+}
@@ -0,0 +1,173 @@
+package com.palominolabs.http.server;
+
+import com.google.inject.AbstractModule;
+import com.google.inject.Guice;
+import com.google.inject.Injector;
+import com.google.inject.servlet.ServletModule;
+import org.apache.http.HttpResponse;
+import org.apache.http.client.methods.HttpGet;
+import org.apache.http.impl.client.CloseableHttpClient;
+import org.apache.http.impl.client.HttpClients;
+import org.apache.http.util.EntityUtils;
+import org.eclipse.jetty.util.thread.QueuedThreadPool;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.BeforeClass;
+import org.junit.Test;
+import org.slf4j.bridge.SLF4JBridgeHandler;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.LogManager;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public final class RequestTimingTest {
+
+    private static final int HTTP_PORT = 28080;
+
+    private HttpServerWrapper server;
+    private CloseableHttpClient client;
+
+    @BeforeClass
+    public static void setUpClass() throws Exception {
+        LogManager.getLogManager().reset();
+        SLF4JBridgeHandler.install();
+    }
+
+    @Before
+    public void setUp() throws Exception {
+        Injector injector = Guice.createInjector(new AbstractModule() {
+            @Override
+            protected void configure() {
+                binder().requireExplicitBindings();
+                install(new HttpServerWrapperModule());
+                install(new ServletModule() {
+                    @Override
+                    protected void configureServlets() {
+                        bind(TestServlet.class);
+                        serve("/test").with(TestServlet.class);
+                    }
+                });
+            }
+        });
+
+        server = injector.getInstance(HttpServerWrapperFactory.class).getHttpServerWrapper(
+            new HttpServerWrapperConfig()
+                .withAccessLogConfigFileInClasspath("/logback-access-test.xml")
+                .withRequestTimingConfig(new RequestTimingConfig().withServerTimingSampleInterval(2))
+                .withHttpServerConnectorConfig(HttpServerConnectorConfig.forHttp("localhost", HTTP_PORT)));
+        server.start();
+
+        client = HttpClients.createDefault();
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        client.close();
+        server.stop();
+    }
+
+    @Test
+    public void testPhasesRecordedAndSampledHeader() throws IOException {
+        HttpResponse first = client.execute(new HttpGet("http://localhost:" + HTTP_PORT + "/test"));
+        assertEquals("test", EntityUtils.toString(first.getEntity()));
+        assertNull(first.getFirstHeader("Server-Timing"));
+
+        HttpResponse second = client.execute(new HttpGet("http://localhost:" + HTTP_PORT + "/test"));
+        assertEquals("test", EntityUtils.toString(second.getEntity()));
+        String serverTiming = second.getFirstHeader("Server-Timing").getValue();
+        assertTrue(serverTiming, serverTiming.matches(
+            "queue;dur=\\d+\\.\\d{3}, handlers;dur=\\d+\\.\\d{3}, servlet;dur=\\d+\\.\\d{3}, write;dur=\\d+\\.\\d{3}, "
+                + "total;dur=\\d+\\.\\d{3}"));
+
+        RequestTimingStats stats = server.getRequestTimingStats();
+        // both requests were on one connection
+        assertEquals(1, stats.getAccept().getCount());
+        assertEquals(2, stats.getQueue().getCount());
+        assertEquals(2, stats.getHandlers().getCount());
+        assertEquals(2, stats.getServlet().getCount());
+        assertEquals(2, stats.getWrite().getCount());
+        assertEquals(2, stats.getTotal().getCount());
+    }
+
+    @Test
+    public void testTimeWaitingForThreadIsQueueTime() throws Exception {
+        // keep every pool thread busy so that the request waits in the pool's queue
+        QueuedThreadPool threadPool = (QueuedThreadPool) server.getServer().getThreadPool();
+        final CountDownLatch release = new CountDownLatch(1);
+        try (Socket socket = new Socket("localhost", HTTP_PORT)) {
+            try {
+                for (int i = 0; i < threadPool.getMaxThreads(); i++) {
+                    threadPool.execute(new Runnable() {
+                        @Override
+                        public void run() {
+                            try {
+                                release.await();
+                            } catch (InterruptedException e) {
+                                Thread.currentThread().interrupt();
+                            }
+                        }
+                    });
+                }
+
+                socket.getOutputStream().write(
+                    "GET /test HTTP/1.1\r\nHost: localhost\r\n\r\n".getBytes(StandardCharsets.US_ASCII));
+                socket.getOutputStream().flush();
+                Thread.sleep(500);
+            } finally {
+                release.countDown();
+            }
+
+            BufferedReader reader = new BufferedReader(
+                new InputStreamReader(socket.getInputStream(), StandardCharsets.US_ASCII));
+            assertEquals("HTTP/1.1 200 OK", reader.readLine());
+        }
+
+        LatencyHistogram queue = server.getRequestTimingStats().getQueue();
+        assertEquals(1, queue.getCount());
+        assertTrue(Long.toString(queue.getMaxNanos()), queue.getMaxNanos() >= TimeUnit.MILLISECONDS.toNanos(400));
+    }
+
+    @Test
+    public void testUnmatchedRequestIsTimed() throws IOException {
+        HttpResponse response = client.execute(new HttpGet("http://localhost:" + HTTP_PORT + "/missing"));
+        EntityUtils.consume(response.getEntity());
+        assertEquals(404, response.getStatusLine().getStatusCode());
+        assertEquals(1, server.getRequestTimingStats().getTotal().getCount());
+    }
+
+    @Test
+    public void testHistogramBuckets() {
+        long previous = -1;
+        for (long micros = 0; micros < 100000; micros++) {
+            int index = LatencyHistogram.indexFor(micros);
+            assertTrue(micros <= LatencyHistogram.upperBoundFor(index));
+            assertTrue(index == 0 || micros > LatencyHistogram.upperBoundFor(index - 1));
+            assertTrue(LatencyHistogram.upperBoundFor(index) >= previous);
+            previous = LatencyHistogram.upperBoundFor(index);
+        }
+    }
+
+    @Test
+    public void testHistogramPercentiles() {
+        LatencyHistogram histogram = new LatencyHistogram();
+        for (int i = 1; i <= 1000; i++) {
+            histogram.recordNanos(TimeUnit.MICROSECONDS.toNanos(i));
+        }
+
+        assertEquals(1000, histogram.getCount());
+        assertEquals(TimeUnit.MICROSECONDS.toNanos(1000), histogram.getMaxNanos());
+        assertEquals(TimeUnit.MICROSECONDS.toNanos(500), histogram.getMeanNanos());
+        long p50 = TimeUnit.NANOSECONDS.toMicros(histogram.getPercentileNanos(50));
+        assertTrue(Long.toString(p50), p50 >= 500 && p50 <= 500 * 1.125);
+        assertEquals(histogram.getMaxNanos(), histogram.getPercentileNanos(100));
+    }
+}
@@ -0,0 +1,130 @@
+package com.palominolabs.http.server;
+
+import com.google.inject.AbstractModule;
+import com.google.inject.Guice;
+import com.google.inject.Injector;
+import com.google.inject.Singleton;
+import com.google.inject.servlet.ServletModule;
+import org.apache.http.HttpResponse;
+import org.apache.http.client.methods.HttpGet;
+import org.apache.http.impl.client.CloseableHttpClient;
+import org.apache.http.impl.client.HttpClients;
+import org.apache.http.util.EntityUtils;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.BeforeClass;
+import org.junit.Test;
+import org.slf4j.bridge.SLF4JBridgeHandler;
+
+import javax.servlet.http.HttpServlet;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import java.io.IOException;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.logging.LogManager;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public final class RequestWatchdogTest {
+
+    private static final int HTTP_PORT = 28080;
+
+    private static volatile CountDownLatch release;
+
+    private HttpServerWrapper server;
+    private CloseableHttpClient client;
+    private ExecutorService executor;
+
+    @BeforeClass
+    public static void setUpClass() throws Exception {
+        LogManager.getLogManager().reset();
+        SLF4JBridgeHandler.install();
+    }
+
+    @Before
+    public void setUp() throws Exception {
+        release = new CountDownLatch(1);
+
+        Injector injector = Guice.createInjector(new AbstractModule() {
+            @Override
+            protected void configure() {
+                binder().requireExplicitBindings();
+                install(new HttpServerWrapperModule());
+                install(new ServletModule() {
+                    @Override
+                    protected void configureServlets() {
+                        bind(BlockingServlet.class);
+                        serve("/block").with(BlockingServlet.class);
+                    }
+                });
+            }
+        });
+
+        server = injector.getInstance(HttpServerWrapperFactory.class).getHttpServerWrapper(
+            new HttpServerWrapperConfig()
+                .withAccessLogConfigFileInClasspath("/logback-access-test.xml")
+                .withRequestWatchdogConfig(new RequestWatchdogConfig()
+                    .withThresholdMillis(50)
+                    .withCheckIntervalMillis(20))
+                .withHttpServerConnectorConfig(HttpServerConnectorConfig.forHttp("localhost", HTTP_PORT)));
+        server.start();
+
+        client = HttpClients.createDefault();
+        executor = Executors.newSingleThreadExecutor();
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        release.countDown();
+        executor.shutdown();
+        client.close();
+        server.stop();
+    }
+
+    @Test
+    public void testInFlightRequestIsListed() throws Exception {
+        Future<String> future = executor.submit(new Callable<String>() {
+            @Override
+            public String call() throws IOException {
+                HttpResponse response = client.execute(new HttpGet("http://localhost:" + HTTP_PORT + "/block?x=1"));
+                return EntityUtils.toString(response.getEntity());
+            }
+        });
+
+        RequestWatchdog watchdog = server.getRequestWatchdog();
+        List<InFlightRequest> inFlight = watchdog.getInFlightRequests();
+        for (int i = 0; i < 100 && (inFlight.isEmpty() || inFlight.get(0).getElapsedMillis() < 100); i++) {
+            Thread.sleep(20);
+            inFlight = watchdog.getInFlightRequests();
+        }
+
+        assertEquals(1, inFlight.size());
+        assertEquals("GET", inFlight.get(0).getMethod());
+        assertEquals("/block", inFlight.get(0).getUri());
+        assertTrue(inFlight.get(0).getElapsedMillis() >= 100);
+
+        release.countDown();
+        assertEquals("done", future.get());
+        assertTrue(watchdog.getInFlightRequests().isEmpty());
+    }
+
+    @Singleton
+    public static class BlockingServlet extends HttpServlet {
+        @Override
+        protected void doGet(HttpServletRequest req, HttpServletResponse resp) throws IOException {
+            try {
+                release.await();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            resp.setContentType("text/plain");
+            resp.getWriter().append("done");
+        }
+    }
+}
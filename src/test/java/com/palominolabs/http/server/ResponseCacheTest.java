@@ -0,0 +1,218 @@
+package com.palominolabs.http.server;
+
+import com.google.inject.AbstractModule;
+import com.google.inject.Guice;
+import com.google.inject.Injector;
+import com.google.inject.Singleton;
+import com.google.inject.servlet.ServletModule;
+import org.apache.http.HttpResponse;
+import org.apache.http.client.methods.HttpGet;
+import org.apache.http.impl.client.CloseableHttpClient;
+import org.apache.http.impl.client.HttpClients;
+import org.apache.http.util.EntityUtils;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.BeforeClass;
+import org.junit.Test;
+import org.slf4j.bridge.SLF4JBridgeHandler;
+
+import javax.servlet.http.HttpServlet;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import java.io.IOException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.logging.LogManager;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+
+public final class ResponseCacheTest {
+
+    private static final int HTTP_PORT = 28080;
+
+    private static final AtomicInteger invocations = new AtomicInteger();
+
+    private HttpServerWrapper server;
+    private CloseableHttpClient client;
+
+    @BeforeClass
+    public static void setUpClass() throws Exception {
+        LogManager.getLogManager().reset();
+        SLF4JBridgeHandler.install();
+    }
+
+    @Before
+    public void setUp() throws Exception {
+        invocations.set(0);
+
+        Injector injector = Guice.createInjector(new AbstractModule() {
+            @Override
+            protected void configure() {
+                binder().requireExplicitBindings();
+                install(new HttpServerWrapperModule());
+                install(new ServletModule() {
+                    @Override
+                    protected void configureServlets() {
+                        bind(CountingServlet.class);
+                        serve("/*").with(CountingServlet.class);
+                    }
+                });
+            }
+        });
+
+        server = injector.getInstance(HttpServerWrapperFactory.class).getHttpServerWrapper(
+            new HttpServerWrapperConfig()
+                .withAccessLogConfigFileInClasspath("/logback-access-test.xml")
+                .withResponseCacheConfig(new ResponseCacheConfig(1024 * 1024))
+                .withHttpServerConnectorConfig(HttpServerConnectorConfig.forHttp("localhost", HTTP_PORT)));
+        server.start();
+
+        client = HttpClients.createDefault();
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        client.close();
+        server.stop();
+    }
+
+    @Test
+    public void testMaxAgeResponseIsCached() throws IOException {
+        assertEquals("1", get("/max-age"));
+        HttpResponse response = client.execute(new HttpGet("http://localhost:" + HTTP_PORT + "/max-age"));
+        assertEquals("1", EntityUtils.toString(response.getEntity()));
+        assertEquals("max-age=60", response.getFirstHeader("Cache-Control").getValue());
+
+        assertEquals(1, invocations.get());
+        ResponseCache cache = server.getResponseCache();
+        assertEquals(1, cache.getHits());
+        assertEquals(1, cache.getMisses());
+        assertEquals(1, cache.getEntryCount());
+    }
+
+    @Test
+    public void testApiTtlResponseIsCached() throws IOException {
+        assertEquals("1", get("/api"));
+        assertEquals("1", get("/api"));
+        assertEquals(1, invocations.get());
+    }
+
+    @Test
+    public void testUncacheableResponsesAreNotCached() throws IOException {
+        assertEquals("1", get("/plain"));
+        assertEquals("2", get("/plain"));
+        assertEquals("3", get("/no-store"));
+        assertEquals("4", get("/no-store"));
+        assertEquals("5", get("/cookie"));
+        assertEquals("6", get("/cookie"));
+        assertEquals(0, server.getResponseCache().getEntryCount());
+    }
+
+    @Test
+    public void testQueryAndKeyHeadersAreInKey() throws IOException {
+        assertEquals("1", get("/max-age?a=1"));
+        assertEquals("2", get("/max-age?a=2"));
+
+        HttpGet get = new HttpGet("http://localhost:" + HTTP_PORT + "/max-age?a=1");
+        get.setHeader("Accept", "text/html");
+        assertEquals("3", EntityUtils.toString(client.execute(get).getEntity()));
+        assertEquals("1", get("/max-age?a=1"));
+    }
+
+    @Test
+    public void testHostIsInKey() throws IOException {
+        assertEquals("1", getFromHost("/max-age", "a.example.com"));
+        assertEquals("2", getFromHost("/max-age", "b.example.com"));
+        assertEquals("1", getFromHost("/max-age", "a.example.com"));
+    }
+
+    @Test
+    public void testVaryOnHeaderOutsideKeyIsNotCached() throws IOException {
+        assertEquals("1", get("/vary-cookie"));
+        assertEquals("2", get("/vary-cookie"));
+        assertEquals("3", get("/vary-all"));
+        assertEquals("4", get("/vary-all"));
+        assertEquals(0, server.getResponseCache().getEntryCount());
+
+        // Accept is a key header
+        assertEquals("5", get("/vary-accept"));
+        assertEquals("5", get("/vary-accept"));
+    }
+
+    @Test
+    public void testAuthorizedRequestsAreNotCached() throws IOException {
+        assertEquals("1", get("/max-age"));
+        for (int i = 2; i <= 3; i++) {
+            HttpGet get = new HttpGet("http://localhost:" + HTTP_PORT + "/max-age");
+            get.setHeader("Authorization", "Bearer " + i);
+            assertEquals(Integer.toString(i), EntityUtils.toString(client.execute(get).getEntity()));
+        }
+        assertEquals(1, server.getResponseCache().getEntryCount());
+    }
+
+    @Test
+    public void testLeastRecentlyUsedEntriesAreEvicted() {
+        // entries can be as big as the whole cache, so it has one segment and evicts exactly
+        ResponseCache cache = new ResponseCache(3000, 3000);
+        for (int i = 0; i < 5; i++) {
+            cache.put("key" + i, new ResponseCache.Entry(200, new String[0], new String[0], new byte[1000], 60000));
+        }
+
+        assertEquals(3, cache.getEntryCount());
+        assertEquals(3000, cache.getBytes());
+        assertEquals(2, cache.getEvictions());
+        assertNull(cache.get("key0"));
+        assertNotNull(cache.get("key4"));
+
+        cache.clear();
+        assertEquals(0, cache.getEntryCount());
+        assertEquals(0, cache.getBytes());
+    }
+
+    @Test
+    public void testExpiredEntriesAreRemoved() {
+        ResponseCache cache = new ResponseCache(3000, 1000);
+        cache.put("key", new ResponseCache.Entry(200, new String[0], new String[0], new byte[1000], 0));
+
+        assertNull(cache.get("key"));
+        assertEquals(0, cache.getEntryCount());
+        assertEquals(0, cache.getBytes());
+    }
+
+    private String get(String path) throws IOException {
+        HttpResponse response = client.execute(new HttpGet("http://localhost:" + HTTP_PORT + path));
+        assertEquals(200, response.getStatusLine().getStatusCode());
+        return EntityUtils.toString(response.getEntity());
+    }
+
+    private String getFromHost(String path, String host) throws IOException {
+        HttpGet get = new HttpGet("http://localhost:" + HTTP_PORT + path);
+        get.setHeader("Host", host);
+        return EntityUtils.toString(client.execute(get).getEntity());
+    }
+
+    @Singleton
+    public static class CountingServlet extends HttpServlet {
+        @Override
+        protected void doGet(HttpServletRequest req, HttpServletResponse resp) throws IOException {
+            String path = req.getRequestURI();
+            if (path.equals("/max-age")) {
+                resp.setHeader("Cache-Control", "max-age=60");
+            } else if (path.equals("/no-store")) {
+                resp.setHeader("Cache-Control", "max-age=60, no-store");
+            } else if (path.equals("/cookie")) {
+                resp.setHeader("Cache-Control", "max-age=60");
+                resp.addHeader("Set-Cookie", "a=b");
+            } else if (path.startsWith("/vary-")) {
+                resp.setHeader("Cache-Control", "max-age=60");
+                resp.setHeader("Vary", path.equals("/vary-cookie") ? "Accept-Encoding, Cookie"
+                    : path.equals("/vary-all") ? "*" : "Accept");
+            } else if (path.equals("/api")) {
+                ResponseCache.setTtlMillis(req, 60000);
+            }
+            resp.setContentType("text/plain");
+            resp.getWriter().append(Integer.toString(invocations.incrementAndGet()));
+        }
+    }
+}
@@ -0,0 +1,204 @@
+package com.palominolabs.http.server;
+
+import com.google.inject.AbstractModule;
+import com.google.inject.Guice;
+import com.google.inject.Injector;
+import com.google.inject.servlet.ServletModule;
+import org.apache.http.HttpResponse;
+import org.apache.http.client.methods.HttpGet;
+import org.apache.http.impl.client.CloseableHttpClient;
+import org.apache.http.impl.client.HttpClients;
+import org.apache.http.util.EntityUtils;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.BeforeClass;
+import org.junit.Test;
+import org.slf4j.bridge.SLF4JBridgeHandler;
+
+import javax.net.ssl.SSLContext;
+import javax.net.ssl.SSLSocket;
+import javax.net.ssl.TrustManager;
+import javax.net.ssl.X509TrustManager;
+import java.io.InputStream;
+import java.security.KeyStore;
+import java.security.cert.X509Certificate;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.logging.LogManager;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public final class ServerEventsTest {
+
+    private static final int HTTP_PORT = 28080;
+    private static final int TLS_PORT = 28443;
+
+    private final RecordingListener listener = new RecordingListener();
+
+    private HttpServerWrapper server;
+    private CloseableHttpClient client;
+
+    @BeforeClass
+    public static void setUpClass() throws Exception {
+        LogManager.getLogManager().reset();
+        SLF4JBridgeHandler.install();
+    }
+
+    @Before
+    public void setUp() throws Exception {
+        Injector injector = Guice.createInjector(new AbstractModule() {
+            @Override
+            protected void configure() {
+                binder().requireExplicitBindings();
+                install(new HttpServerWrapperModule());
+                install(new ServletModule() {
+                    @Override
+                    protected void configureServlets() {
+                        bind(TestServlet.class);
+                        serve("/test").with(TestServlet.class);
+                    }
+                });
+            }
+        });
+
+        InputStream stream = getClass().getResourceAsStream("/cert-and-key.p12");
+        KeyStore keyStore = KeyStore.getInstance("PKCS12");
+        keyStore.load(stream, "password".toCharArray());
+
+        server = injector.getInstance(HttpServerWrapperFactory.class).getHttpServerWrapper(
+            new HttpServerWrapperConfig()
+                .withAccessLogConfigFileInClasspath("/logback-access-test.xml")
+                .withServerEventsConfig(new ServerEventsConfig(listener)
+                    .withRequestThresholdMillis(0)
+                    .withConnectionThresholdMillis(0)
+                    .withTlsHandshakeEvents(true))
+                .withHttpServerConnectorConfig(HttpServerConnectorConfig.forHttp("localhost", HTTP_PORT))
+                .withHttpServerConnectorConfig(HttpServerConnectorConfig.forHttps("localhost", TLS_PORT)
+                    .withTlsKeystore(keyStore)
+                    .withTlsKeystorePassphrase("password")));
+        server.start();
+
+        client = HttpClients.createDefault();
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        client.close();
+        server.stop();
+    }
+
+    @Test
+    public void testRequestAndConnectionEvents() throws Exception {
+        HttpResponse response = client.execute(new HttpGet("http://localhost:" + HTTP_PORT + "/test?a=b"));
+        assertEquals("test", EntityUtils.toString(response.getEntity()));
+        client.close();
+
+        assertEquals(1, listener.requests.size());
+        RequestEvent request = listener.requests.get(0);
+        assertEquals("GET", request.getMethod());
+        assertEquals("/test", request.getUri());
+        assertEquals(200, request.getStatus());
+        assertNull(request.getPathTemplate());
+
+        // the server sees the close asynchronously
+        for (int i = 0; i < 100 && listener.connections.isEmpty(); i++) {
+            Thread.sleep(20);
+        }
+        assertEquals(1, listener.connections.size());
+        assertEquals(HTTP_PORT, listener.connections.get(0).getLocalAddress().getPort());
+    }
+
+    @Test
+    public void testTlsHandshakeEvent() throws Exception {
+        SSLContext sslContext = SSLContext.getInstance("TLS");
+        sslContext.init(null, new TrustManager[]{new X509TrustManager() {
+            @Override
+            public void checkClientTrusted(X509Certificate[] x509Certificates, String s) {
+                throw new UnsupportedOperationException();
+            }
+
+            @Override
+            public void checkServerTrusted(X509Certificate[] x509Certificates, String s) {
+            }
+
+            @Override
+            public X509Certificate[] getAcceptedIssuers() {
+                return null;
+            }
+        }}, null);
+
+        SSLSocket socket = (SSLSocket) sslContext.getSocketFactory().createSocket("localhost", TLS_PORT);
+        try {
+            socket.startHandshake();
+        } finally {
+            socket.close();
+        }
+
+        for (int i = 0; i < 100 && listener.handshakes.isEmpty(); i++) {
+            Thread.sleep(20);
+        }
+        assertEquals(1, listener.handshakes.size());
+        TlsHandshakeEvent handshake = listener.handshakes.get(0);
+        assertTrue(handshake.isSucceeded());
+        assertTrue(handshake.getProtocol().startsWith("TLS"));
+    }
+
+    @Test
+    public void testThreadPoolSaturation() throws Exception {
+        EventReportingThreadPool pool = new EventReportingThreadPool(listener, 1);
+        pool.setMinThreads(1);
+        pool.setMaxThreads(1);
+        pool.start();
+        final CountDownLatch latch = new CountDownLatch(1);
+        try {
+            for (int i = 0; i < 3; i++) {
+                pool.execute(new Runnable() {
+                    @Override
+                    public void run() {
+                        try {
+                            latch.await();
+                        } catch (InterruptedException e) {
+                            Thread.currentThread().interrupt();
+                        }
+                    }
+                });
+            }
+        } finally {
+            latch.countDown();
+            pool.stop();
+        }
+
+        assertEquals(1, listener.threadPool.size());
+        assertEquals(ThreadPoolEvent.Type.SATURATED, listener.threadPool.get(0).getType());
+    }
+
+    private static final class RecordingListener extends ServerEventListener {
+        private final List<RequestEvent> requests = new CopyOnWriteArrayList<>();
+        private final List<ConnectionEvent> connections = new CopyOnWriteArrayList<>();
+        private final List<TlsHandshakeEvent> handshakes = new CopyOnWriteArrayList<>();
+        private final List<ThreadPoolEvent> threadPool = new CopyOnWriteArrayList<>();
+
+        @Override
+        public void onRequest(RequestEvent event) {
+            requests.add(event);
+        }
+
+        @Override
+        public void onConnection(ConnectionEvent event) {
+            connections.add(event);
+        }
+
+        @Override
+        public void onTlsHandshake(TlsHandshakeEvent event) {
+            handshakes.add(event);
+        }
+
+        @Override
+        public void onThreadPool(ThreadPoolEvent event) {
+            threadPool.add(event);
+        }
+    }
+}
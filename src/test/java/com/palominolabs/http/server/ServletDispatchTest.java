@@ -0,0 +1,240 @@
+package com.palominolabs.http.server;
+
+import com.google.inject.AbstractModule;
+import com.google.inject.Guice;
+import com.google.inject.Inject;
+import com.google.inject.Injector;
+import com.google.inject.Provider;
+import com.google.inject.Singleton;
+import com.google.inject.servlet.RequestScoped;
+import com.google.inject.servlet.ServletModule;
+import org.apache.http.HttpResponse;
+import org.apache.http.client.methods.HttpGet;
+import org.apache.http.impl.client.CloseableHttpClient;
+import org.apache.http.impl.client.HttpClients;
+import org.apache.http.util.EntityUtils;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.BeforeClass;
+import org.junit.Test;
+import org.slf4j.bridge.SLF4JBridgeHandler;
+
+import javax.servlet.Filter;
+import javax.servlet.FilterChain;
+import javax.servlet.FilterConfig;
+import javax.servlet.ServletException;
+import javax.servlet.ServletRequest;
+import javax.servlet.ServletResponse;
+import javax.servlet.http.HttpServlet;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import java.io.IOException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.logging.LogManager;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.fail;
+
+public final class ServletDispatchTest {
+
+    private static final int HTTP_PORT = 28080;
+
+    private HttpServerWrapper server;
+    private CloseableHttpClient client;
+
+    @BeforeClass
+    public static void setUpClass() throws Exception {
+        LogManager.getLogManager().reset();
+        SLF4JBridgeHandler.install();
+    }
+
+    @Before
+    public void setUp() throws Exception {
+        final BinderProviderCapture<ScopedServlet> scopedServletProvider =
+            new BinderProviderCapture<>(ScopedServlet.class);
+        Injector injector = Guice.createInjector(new AbstractModule() {
+            @Override
+            protected void configure() {
+                binder().requireExplicitBindings();
+                install(new HttpServerWrapperModule());
+                install(new ServletModule() {
+                    @Override
+                    protected void configureServlets() {
+                        bind(HeaderFilter.class);
+                        bind(GuiceServlet.class);
+                        filter("/*").through(HeaderFilter.class);
+                        serve("/guice").with(GuiceServlet.class);
+                    }
+                });
+                bind(RequestId.class);
+                bind(ScopedServlet.class);
+                scopedServletProvider.saveProvider(binder());
+            }
+        });
+
+        PathServlet pathServlet = new PathServlet();
+        server = injector.getInstance(HttpServerWrapperFactory.class).getHttpServerWrapper(
+            new HttpServerWrapperConfig()
+                .withAccessLogConfigFileInClasspath("/logback-access-test.xml")
+                .withServletDispatchConfig(new ServletDispatchConfig()
+                    .withServlet("/a", new NamedServlet("exact"))
+                    .withServlet("/a/*", pathServlet)
+                    .withServlet("/a/b/*", new NamedServlet("longer prefix"))
+                    .withServlet("*.json", new NamedServlet("extension"))
+                    .withServlet("/guice", new NamedServlet("shadowed by guice"))
+                    .withRegexServlet("/r/[0-9]+", new NamedServlet("regex"))
+                    .withServlet("/r/*", new NamedServlet("prefix before regex"))
+                    .withServletProvider("/scoped", scopedServletProvider))
+                .withHttpServerConnectorConfig(HttpServerConnectorConfig.forHttp("localhost", HTTP_PORT)));
+        server.start();
+
+        client = HttpClients.createDefault();
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        client.close();
+        server.stop();
+    }
+
+    @Test
+    public void testMatchesLikeServletSpec() throws IOException {
+        assertEquals("exact", get("/a"));
+        assertEquals("/a /x/c", get("/a/x/c"));
+        assertEquals("longer prefix", get("/a/b/c"));
+        assertEquals("/a /", get("/a/"));
+        assertEquals("extension", get("/x/y.json"));
+        // prefixes come first
+        assertEquals("/a /y.json", get("/a/y.json"));
+        assertEquals("prefix before regex", get("/r/123"));
+    }
+
+    @Test
+    public void testRegexIsFallback() throws Exception {
+        server.stop();
+        Injector injector = Guice.createInjector(new HttpServerWrapperModule(), new ServletModule());
+        server = injector.getInstance(HttpServerWrapperFactory.class).getHttpServerWrapper(
+            new HttpServerWrapperConfig()
+                .withAccessLogConfigFileInClasspath("/logback-access-test.xml")
+                .withServletDispatchConfig(new ServletDispatchConfig()
+                    .withRegexServlet("/r/[0-9]+", new NamedServlet("first regex"))
+                    .withRegexServlet("/r/.*", new NamedServlet("second regex")))
+                .withHttpServerConnectorConfig(HttpServerConnectorConfig.forHttp("localhost", HTTP_PORT)));
+        server.start();
+
+        assertEquals("first regex", get("/r/123"));
+        assertEquals("second regex", get("/r/abc"));
+        HttpResponse response = client.execute(new HttpGet("http://localhost:" + HTTP_PORT + "/other"));
+        EntityUtils.consume(response.getEntity());
+        assertEquals(404, response.getStatusLine().getStatusCode());
+    }
+
+    @Test
+    public void testRunsInsideGuiceFilter() throws IOException {
+        HttpResponse response = client.execute(new HttpGet("http://localhost:" + HTTP_PORT + "/scoped"));
+        String first = EntityUtils.toString(response.getEntity());
+        // guice filters run first
+        assertEquals("yes", response.getFirstHeader("X-Guice-Filter").getValue());
+        String second = get("/scoped");
+        // one request scoped instance per request, shared within it
+        assertFalse(first.isEmpty());
+        assertEquals(first.split(" ")[0], first.split(" ")[1]);
+        assertNotEquals(first, second);
+
+        // guice servlets are served first
+        assertEquals("guice", get("/guice"));
+    }
+
+    @Test
+    public void testInvalidPatterns() {
+        ServletDispatchConfig config = new ServletDispatchConfig().withServlet("/a", new NamedServlet("a"));
+        for (String pattern : new String[]{"a", "/a*", "/*/a", "*.", "*.a/b", "/a"}) {
+            try {
+                config.addServlet(pattern, new NamedServlet(pattern));
+                fail(pattern);
+            } catch (IllegalArgumentException e) {
+                // expected
+            }
+        }
+    }
+
+    private String get(String path) throws IOException {
+        HttpResponse response = client.execute(new HttpGet("http://localhost:" + HTTP_PORT + path));
+        assertEquals(200, response.getStatusLine().getStatusCode());
+        return EntityUtils.toString(response.getEntity());
+    }
+
+    private static final class NamedServlet extends HttpServlet {
+        private final String name;
+
+        NamedServlet(String name) {
+            this.name = name;
+        }
+
+        @Override
+        protected void doGet(HttpServletRequest req, HttpServletResponse resp) throws IOException {
+            resp.getWriter().print(name);
+        }
+    }
+
+    private static final class PathServlet extends HttpServlet {
+        @Override
+        protected void doGet(HttpServletRequest req, HttpServletResponse resp) throws IOException {
+            resp.getWriter().print(req.getServletPath() + " " + req.getPathInfo());
+        }
+    }
+
+    @Singleton
+    public static class GuiceServlet extends HttpServlet {
+        @Override
+        protected void doGet(HttpServletRequest req, HttpServletResponse resp) throws IOException {
+            resp.getWriter().print("guice");
+        }
+    }
+
+    @Singleton
+    public static class HeaderFilter implements Filter {
+        @Override
+        public void init(FilterConfig filterConfig) {
+        }
+
+        @Override
+        public void doFilter(ServletRequest request, ServletResponse response, FilterChain chain)
+            throws IOException, ServletException {
+            ((HttpServletResponse) response).setHeader("X-Guice-Filter", "yes");
+            chain.doFilter(request, response);
+        }
+
+        @Override
+        public void destroy() {
+        }
+    }
+
+    @RequestScoped
+    public static class RequestId {
+        private static final AtomicInteger count = new AtomicInteger();
+
+        private final int id = count.incrementAndGet();
+
+        @Inject
+        RequestId() {
+        }
+    }
+
+    @Singleton
+    public static class ScopedServlet extends HttpServlet {
+        private final Provider<RequestId> requestId;
+
+        @Inject
+        ScopedServlet(Provider<RequestId> requestId) {
+            this.requestId = requestId;
+        }
+
+        @Override
+        protected void doGet(HttpServletRequest req, HttpServletResponse resp) throws IOException {
+            resp.getWriter().print(requestId.get().id + " " + requestId.get().id);
+        }
+    }
+}
@@ -0,0 +1,188 @@
+package com.palominolabs.http.server;
+
+import com.google.inject.AbstractModule;
+import com.google.inject.Guice;
+import com.google.inject.Injector;
+import com.google.inject.servlet.ServletModule;
+import org.apache.http.HttpResponse;
+import org.apache.http.client.methods.HttpGet;
+import org.apache.http.impl.client.CloseableHttpClient;
+import org.apache.http.impl.client.HttpClients;
+import org.apache.http.util.EntityUtils;
+import org.eclipse.jetty.server.ServerConnector;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.BeforeClass;
+import org.junit.Test;
+import org.slf4j.bridge.SLF4JBridgeHandler;
+
+import java.io.IOException;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.LogManager;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+public final class SharedServerResourcesTest {
+
+    private static final int HTTP_PORT = 28080;
+    private static final int OTHER_HTTP_PORT = 28081;
+
+    private SharedServerResources sharedServerResources;
+    private HttpServerWrapper server;
+    private HttpServerWrapper otherServer;
+    private CloseableHttpClient client;
+
+    @BeforeClass
+    public static void setUpClass() throws Exception {
+        LogManager.getLogManager().reset();
+        SLF4JBridgeHandler.install();
+    }
+
+    @Before
+    public void setUp() throws Exception {
+        Injector injector = Guice.createInjector(new AbstractModule() {
+            @Override
+            protected void configure() {
+                binder().requireExplicitBindings();
+                install(new HttpServerWrapperModule(new SharedServerResourcesConfig()
+                    .withMaxThreads(40)
+                    .withMaxThreadsPerServer(20)));
+                install(new ServletModule() {
+                    @Override
+                    protected void configureServlets() {
+                        bind(TestServlet.class);
+                        serve("/test").with(TestServlet.class);
+                    }
+                });
+            }
+        });
+        sharedServerResources = injector.getInstance(SharedServerResources.class);
+
+        HttpServerWrapperFactory factory = injector.getInstance(HttpServerWrapperFactory.class);
+        server = factory.getHttpServerWrapper(getConfig(HTTP_PORT));
+        otherServer = factory.getHttpServerWrapper(getConfig(OTHER_HTTP_PORT));
+        server.start();
+        otherServer.start();
+
+        client = HttpClients.createDefault();
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        client.close();
+        server.stop();
+        otherServer.stop();
+        sharedServerResources.stop();
+    }
+
+    @Test
+    public void testServersShareResources() throws IOException {
+        assertEquals(200, get(HTTP_PORT));
+        assertEquals(200, get(OTHER_HTTP_PORT));
+
+        ThreadPoolShare share = server.getThreadPoolShare();
+        ThreadPoolShare otherShare = otherServer.getThreadPoolShare();
+        assertNotNull(share);
+        assertNotNull(otherShare);
+        assertTrue(share != otherShare);
+        assertSame(share, server.getServer().getThreadPool());
+        assertEquals(20, share.getMaxThreads());
+
+        assertSame(sharedServerResources.getByteBufferPool(), server.getByteBufferPool());
+        assertSame(sharedServerResources.getByteBufferPool(), otherServer.getByteBufferPool());
+
+        ServerConnector connector = (ServerConnector) server.getServer().getConnectors()[0];
+        assertSame(sharedServerResources.getScheduler(), connector.getScheduler());
+        assertSame(share, connector.getExecutor());
+    }
+
+    @Test
+    public void testStoppingOneServerLeavesTheOtherRunning() throws Exception {
+        server.stop();
+
+        assertTrue(sharedServerResources.getThreadPool().isRunning());
+        assertEquals(200, get(OTHER_HTTP_PORT));
+    }
+
+    @Test
+    public void testShareLimitsConcurrentJobs() throws Exception {
+        ThreadPoolShare share = sharedServerResources.newThreadPoolShare(null, -1);
+        // a share of 20 threads
+        int running = 20;
+        final CountDownLatch release = new CountDownLatch(1);
+        final CountDownLatch done = new CountDownLatch(running + 5);
+        for (int i = 0; i < running + 5; i++) {
+            share.execute(new Runnable() {
+                @Override
+                public void run() {
+                    try {
+                        release.await();
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                    }
+                    done.countDown();
+                }
+            });
+        }
+
+        assertEquals(running, share.getThreads());
+        assertEquals(5, share.getQueueSize());
+        assertEquals(5, share.getQueuedJobs());
+        assertTrue(share.isLowOnThreads());
+
+        release.countDown();
+        assertTrue(done.await(10, TimeUnit.SECONDS));
+        assertEquals(0, share.getQueueSize());
+    }
+
+    @Test
+    public void testRaisingMaxThreadsStartsQueuedJobs() throws Exception {
+        ThreadPoolShare share = sharedServerResources.newThreadPoolShare(null, -1);
+        share.setMaxThreads(2);
+        final CountDownLatch release = new CountDownLatch(1);
+        final CountDownLatch started = new CountDownLatch(4);
+        for (int i = 0; i < 4; i++) {
+            share.execute(new Runnable() {
+                @Override
+                public void run() {
+                    started.countDown();
+                    try {
+                        release.await();
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                    }
+                }
+            });
+        }
+        assertEquals(2, share.getThreads());
+        assertEquals(2, share.getQueueSize());
+
+        share.setMaxThreads(4);
+        share.setMinThreads(1);
+        try {
+            assertTrue(started.await(10, TimeUnit.SECONDS));
+            assertEquals(4, share.getThreads());
+            assertEquals(0, share.getQueueSize());
+            assertEquals(4, share.getMaxThreads());
+            assertEquals(1, share.getMinThreads());
+        } finally {
+            release.countDown();
+        }
+    }
+
+    private static HttpServerWrapperConfig getConfig(int port) {
+        return new HttpServerWrapperConfig()
+            .withAccessLogConfigFileInClasspath("/logback-access-test.xml")
+            .withHttpServerConnectorConfig(HttpServerConnectorConfig.forHttp("localhost", port));
+    }
+
+    private int get(int port) throws IOException {
+        HttpResponse response = client.execute(new HttpGet("http://localhost:" + port + "/test"));
+        EntityUtils.consume(response.getEntity());
+        return response.getStatusLine().getStatusCode();
+    }
+}
@@ -0,0 +1,120 @@
+package com.palominolabs.http.server;
+
+import org.junit.Test;
+
+import javax.annotation.Nonnull;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static java.util.Arrays.asList;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public final class SingleConsumerQueueTest {
+
+    @Test
+    public void testItemsAreDrainedOnStop() throws Exception {
+        RecordingSink sink = new RecordingSink();
+        SingleConsumerQueue<Integer> queue = new SingleConsumerQueue<>("test", 10, true, sink);
+        queue.start();
+        for (int i = 0; i < 5; i++) {
+            assertTrue(queue.add(i));
+        }
+        queue.stop();
+
+        assertEquals(asList(0, 1, 2, 3, 4), sink.items);
+        assertEquals(0, sink.stopped.getCount());
+        assertFalse(queue.add(5));
+        assertEquals(0, queue.getDropped());
+    }
+
+    @Test
+    public void testItemsOverCapacityAreDropped() throws Exception {
+        RecordingSink sink = new RecordingSink();
+        sink.blocked = new CountDownLatch(1);
+        SingleConsumerQueue<Integer> queue = new SingleConsumerQueue<>("test", 2, true, sink);
+        queue.start();
+
+        // the first item is taken and blocks the consumer, then two fit in the queue
+        assertTrue(queue.add(0));
+        assertTrue(sink.accepting.await(10, TimeUnit.SECONDS));
+        assertTrue(queue.add(1));
+        assertTrue(queue.add(2));
+        assertFalse(queue.add(3));
+        sink.blocked.countDown();
+        queue.stop();
+
+        assertEquals(asList(0, 1, 2), sink.items);
+        assertEquals(1, queue.getDropped());
+    }
+
+    @Test
+    public void testSinkFailuresDropTheItem() throws Exception {
+        RecordingSink sink = new RecordingSink();
+        sink.failOn = 1;
+        SingleConsumerQueue<Integer> queue = new SingleConsumerQueue<>("test", 10, true, sink);
+        queue.start();
+        for (int i = 0; i < 3; i++) {
+            queue.add(i);
+        }
+        queue.stop();
+
+        assertEquals(asList(0, 2), sink.items);
+        assertEquals(1, queue.getDropped());
+    }
+
+    @Test
+    public void testSinkErrorFailsTheQueue() throws Exception {
+        RecordingSink sink = new RecordingSink();
+        sink.errorOn = 0;
+        SingleConsumerQueue<Integer> queue = new SingleConsumerQueue<>("test", 10, true, sink);
+        queue.start();
+        queue.add(0);
+        assertTrue(sink.stopped.await(10, TimeUnit.SECONDS));
+
+        assertFalse(queue.isRunning());
+        assertFalse(queue.add(1));
+        assertEquals(2, queue.getDropped());
+        queue.stop();
+    }
+
+    private static class RecordingSink implements SingleConsumerQueue.Sink<Integer> {
+        final List<Integer> items = new CopyOnWriteArrayList<>();
+        final CountDownLatch accepting = new CountDownLatch(1);
+        final CountDownLatch stopped = new CountDownLatch(1);
+        volatile CountDownLatch blocked;
+        volatile int failOn = -1;
+        volatile int errorOn = -1;
+
+        @Override
+        public void accept(@Nonnull Integer item) {
+            accepting.countDown();
+            if (item == failOn) {
+                throw new IllegalStateException("failed on " + item);
+            }
+            if (item == errorOn) {
+                throw new AssertionError("error on " + item);
+            }
+            if (blocked != null) {
+                try {
+                    blocked.await();
+                } catch (InterruptedException e) {
+                    throw new IllegalStateException(e);
+                }
+            }
+            items.add(item);
+        }
+
+        @Override
+        public void idle() {
+        }
+
+        @Override
+        public void stopped() {
+            stopped.countDown();
+        }
+    }
+}
@@ -0,0 +1,176 @@
+package com.palominolabs.http.server;
+
+import com.google.common.io.ByteStreams;
+import com.google.inject.AbstractModule;
+import com.google.inject.Guice;
+import com.google.inject.Injector;
+import com.google.inject.Singleton;
+import com.google.inject.servlet.ServletModule;
+import org.apache.http.HttpResponse;
+import org.apache.http.client.methods.HttpGet;
+import org.apache.http.client.methods.HttpPost;
+import org.apache.http.client.methods.HttpUriRequest;
+import org.apache.http.entity.ByteArrayEntity;
+import org.apache.http.impl.client.CloseableHttpClient;
+import org.apache.http.impl.client.HttpClients;
+import org.apache.http.util.EntityUtils;
+import org.junit.After;
+import org.junit.BeforeClass;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.slf4j.bridge.SLF4JBridgeHandler;
+
+import javax.servlet.http.HttpServlet;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.Random;
+import java.util.logging.LogManager;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public final class TrafficCaptureTest {
+
+    private static final int HTTP_PORT = 28080;
+
+    @Rule
+    public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+    private HttpServerWrapper server;
+    private CloseableHttpClient client;
+
+    @BeforeClass
+    public static void setUpClass() throws Exception {
+        LogManager.getLogManager().reset();
+        SLF4JBridgeHandler.install();
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        client.close();
+        server.stop();
+    }
+
+    @Test
+    public void testRequestsCapturedWithBodies() throws Exception {
+        File directory = temporaryFolder.getRoot();
+        startServer(new TrafficCaptureConfig(directory).withSampleRate(1).withCaptureBodies(true));
+
+        HttpGet get = new HttpGet("http://localhost:" + HTTP_PORT + "/test?a=b");
+        get.setHeader("X-Test", "1");
+        get.setHeader("Authorization", "Basic c2VjcmV0");
+        assertEquals(200, execute(get));
+        HttpPost post = new HttpPost("http://localhost:" + HTTP_PORT + "/echo");
+        post.setEntity(new ByteArrayEntity("posted body".getBytes(StandardCharsets.UTF_8)));
+        assertEquals(200, execute(post));
+        // arrives in several chunks
+        byte[] largeBody = new byte[40 * 1024];
+        new Random(0).nextBytes(largeBody);
+        HttpPost largePost = new HttpPost("http://localhost:" + HTTP_PORT + "/echo");
+        largePost.setEntity(new ByteArrayEntity(largeBody));
+        assertEquals(200, execute(largePost));
+
+        // stopping writes what's queued
+        server.stop();
+        assertEquals(3, server.getTrafficCapture().getCapturedRequests());
+
+        List<File> captures = TrafficCaptureReader.listCaptures(directory);
+        assertEquals(1, captures.size());
+        List<CapturedRequest> requests = TrafficCaptureReader.read(captures.get(0));
+        assertEquals(3, requests.size());
+
+        CapturedRequest first = requests.get(0);
+        assertEquals("GET", first.getMethod());
+        assertEquals("/test?a=b", first.getUri());
+        assertEquals("1", first.getHeaders().get("X-Test").get(0));
+        assertFalse(first.getHeaders().containsKey("Authorization"));
+        assertArrayEquals(new byte[0], first.getBody());
+
+        CapturedRequest second = requests.get(1);
+        assertEquals("POST", second.getMethod());
+        assertEquals("/echo", second.getUri());
+        assertArrayEquals("posted body".getBytes(StandardCharsets.UTF_8), second.getBody());
+        assertTrue(second.getOffsetNanos() >= first.getOffsetNanos());
+        assertArrayEquals(largeBody, requests.get(2).getBody());
+    }
+
+    @Test
+    public void testBodiesTooLongAreLeftOut() throws Exception {
+        File directory = temporaryFolder.getRoot();
+        startServer(new TrafficCaptureConfig(directory).withSampleRate(1).withCaptureBodies(true)
+            .withMaxBodyBytes(4));
+
+        HttpPost post = new HttpPost("http://localhost:" + HTTP_PORT + "/echo");
+        post.setEntity(new ByteArrayEntity("posted body".getBytes(StandardCharsets.UTF_8)));
+        assertEquals(200, execute(post));
+        server.stop();
+
+        List<CapturedRequest> requests = TrafficCaptureReader.read(server.getTrafficCapture().getFile());
+        assertEquals(1, requests.size());
+        assertNull(requests.get(0).getBody());
+    }
+
+    @Test
+    public void testNothingCapturedAtZeroSampleRate() throws Exception {
+        startServer(new TrafficCaptureConfig(temporaryFolder.getRoot()).withSampleRate(0));
+
+        for (int i = 0; i < 10; i++) {
+            assertEquals(200, execute(new HttpGet("http://localhost:" + HTTP_PORT + "/test")));
+        }
+        server.stop();
+
+        assertEquals(0, server.getTrafficCapture().getCapturedRequests());
+        assertTrue(TrafficCaptureReader.read(server.getTrafficCapture().getFile()).isEmpty());
+    }
+
+    private void startServer(TrafficCaptureConfig trafficCaptureConfig) throws Exception {
+        Injector injector = Guice.createInjector(new AbstractModule() {
+            @Override
+            protected void configure() {
+                binder().requireExplicitBindings();
+                install(new HttpServerWrapperModule());
+                install(new ServletModule() {
+                    @Override
+                    protected void configureServlets() {
+                        bind(TestServlet.class);
+                        bind(EchoServlet.class);
+                        serve("/test").with(TestServlet.class);
+                        serve("/echo").with(EchoServlet.class);
+                    }
+                });
+            }
+        });
+
+        server = injector.getInstance(HttpServerWrapperFactory.class).getHttpServerWrapper(
+            new HttpServerWrapperConfig()
+                .withTrafficCaptureConfig(trafficCaptureConfig)
+                .withHttpServerConnectorConfig(HttpServerConnectorConfig.forHttp("localhost", HTTP_PORT)));
+        server.start();
+
+        client = HttpClients.createDefault();
+    }
+
+    private int execute(HttpUriRequest request) throws IOException {
+        HttpResponse response = client.execute(request);
+        EntityUtils.consume(response.getEntity());
+        return response.getStatusLine().getStatusCode();
+    }
+
+    @Singleton
+    public static class EchoServlet extends HttpServlet {
+        @Override
+        protected void doPost(HttpServletRequest req, HttpServletResponse resp) throws IOException {
+            byte[] body = ByteStreams.toByteArray(req.getInputStream());
+            resp.setStatus(HttpServletResponse.SC_OK);
+            resp.getOutputStream().write(body);
+        }
+    }
+}
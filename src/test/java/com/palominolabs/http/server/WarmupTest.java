@@ -0,0 +1,142 @@
+package com.palominolabs.http.server;
+
+import com.google.inject.AbstractModule;
+import com.google.inject.Guice;
+import com.google.inject.Injector;
+import com.google.inject.Singleton;
+import com.google.inject.servlet.ServletModule;
+import org.apache.http.HttpResponse;
+import org.apache.http.client.methods.HttpGet;
+import org.apache.http.impl.client.CloseableHttpClient;
+import org.apache.http.impl.client.HttpClients;
+import org.apache.http.util.EntityUtils;
+import org.eclipse.jetty.server.Connector;
+import org.eclipse.jetty.server.ServerConnector;
+import org.eclipse.jetty.server.handler.StatisticsHandler;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.BeforeClass;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.slf4j.bridge.SLF4JBridgeHandler;
+
+import javax.servlet.http.HttpServlet;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import java.io.IOException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.logging.LogManager;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public final class WarmupTest {
+
+    private static final int HTTP_PORT = 28080;
+
+    private static final AtomicInteger invocations = new AtomicInteger();
+
+    @Rule
+    public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+    private HttpServerWrapper server;
+    private CloseableHttpClient client;
+
+    @BeforeClass
+    public static void setUpClass() throws Exception {
+        LogManager.getLogManager().reset();
+        SLF4JBridgeHandler.install();
+    }
+
+    @Before
+    public void setUp() throws Exception {
+        invocations.set(0);
+
+        Injector injector = Guice.createInjector(new AbstractModule() {
+            @Override
+            protected void configure() {
+                binder().requireExplicitBindings();
+                install(new HttpServerWrapperModule());
+                install(new ServletModule() {
+                    @Override
+                    protected void configureServlets() {
+                        bind(CountingServlet.class);
+                        serve("/count").with(CountingServlet.class);
+                    }
+                });
+            }
+        });
+
+        server = injector.getInstance(HttpServerWrapperFactory.class).getHttpServerWrapper(
+            new HttpServerWrapperConfig()
+                .withBinaryAccessLogConfig(new BinaryAccessLogConfig(temporaryFolder.newFolder()))
+                .withStopTimeoutMillis(5000)
+                .withRequestTimingConfig(new RequestTimingConfig())
+                .withResponseCacheConfig(new ResponseCacheConfig(1024 * 1024))
+                .withWarmupConfig(new WarmupConfig()
+                    .withGetRequest("/count")
+                    .withRequest("POST /count HTTP/1.1\r\nHost: localhost\r\nContent-Length: 3\r\n\r\nabc")
+                    .withIterations(10))
+                .withHttpServerConnectorConfig(HttpServerConnectorConfig.forHttp("localhost", HTTP_PORT)));
+        server.start();
+
+        client = HttpClients.createDefault();
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        client.close();
+        server.stop();
+    }
+
+    @Test
+    public void testWarmupRunsBeforeConnectorsOpen() throws IOException {
+        assertEquals(20, invocations.get());
+
+        Connector[] connectors = server.getServer().getConnectors();
+        assertEquals(1, connectors.length);
+        assertTrue(connectors[0] instanceof ServerConnector);
+        assertTrue(connectors[0].isStarted());
+
+        HttpResponse response = client.execute(new HttpGet("http://localhost:" + HTTP_PORT + "/count"));
+        assertEquals("21", EntityUtils.toString(response.getEntity()));
+    }
+
+    @Test
+    public void testWarmupSkipsLoggingAndStats() throws Exception {
+        assertEquals(20, invocations.get());
+        StatisticsHandler statisticsHandler = server.getServer().getChildHandlerByClass(StatisticsHandler.class);
+        BinaryAccessLog accessLog = server.getBinaryAccessLog();
+
+        assertEquals(0, accessLog.getWrittenRecords() + accessLog.getDroppedRecords());
+        assertEquals(0, statisticsHandler.getRequests());
+        assertEquals(0, server.getRequestTimingStats().getTotal().getCount());
+        assertEquals(0, server.getResponseCache().getMisses());
+
+        // a real request shows up in all of them
+        HttpResponse response = client.execute(new HttpGet("http://localhost:" + HTTP_PORT + "/count"));
+        assertEquals("21", EntityUtils.toString(response.getEntity()));
+        for (int i = 0; i < 1000 && accessLog.getWrittenRecords() == 0; i++) {
+            Thread.sleep(10);
+        }
+        assertEquals(1, accessLog.getWrittenRecords());
+        assertEquals(1, statisticsHandler.getRequests());
+        assertEquals(1, server.getRequestTimingStats().getTotal().getCount());
+        assertEquals(1, server.getResponseCache().getMisses());
+    }
+
+    @Singleton
+    public static class CountingServlet extends HttpServlet {
+        @Override
+        protected void doGet(HttpServletRequest req, HttpServletResponse resp) throws IOException {
+            resp.setContentType("text/plain");
+            resp.getWriter().append(Integer.toString(invocations.incrementAndGet()));
+        }
+
+        @Override
+        protected void doPost(HttpServletRequest req, HttpServletResponse resp) throws IOException {
+            doGet(req, resp);
+        }
+    }
+}